@@ -0,0 +1,53 @@
+package main.java.com.moneytransfer.benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import main.java.com.moneytransfer.config.StoreMode;
+import main.java.com.moneytransfer.exception.AccountNotFoundException;
+import main.java.com.moneytransfer.model.Account;
+import main.java.com.moneytransfer.repository.AccountStore;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AccountRepositoryBenchmark {
+
+	@Param({ "1000", "1000000" })
+	public int accountCount;
+
+	@Param({ "heap", "off-heap" })
+	public String store;
+
+	private AccountStore accountRepository;
+	private long firstId;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+
+		accountRepository = StoreMode.fromName(store).create(accountCount, accountCount);
+		firstId = Fixtures.createAccounts(accountRepository, accountCount, 100000L);
+	}
+
+	@Benchmark
+	public Account getById() throws AccountNotFoundException {
+		return accountRepository.getById(firstId + ThreadLocalRandom.current().nextInt(accountCount));
+	}
+
+}
@@ -0,0 +1,152 @@
+package main.java.com.moneytransfer.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import main.java.com.moneytransfer.exception.AccountNotFoundException;
+import main.java.com.moneytransfer.exception.InsufficientBalanceException;
+import main.java.com.moneytransfer.exception.InvalidReceiverException;
+import main.java.com.moneytransfer.exception.UnsupportedCurrencyException;
+import main.java.com.moneytransfer.model.Account;
+import main.java.com.moneytransfer.model.Amount;
+import main.java.com.moneytransfer.model.BatchMode;
+import main.java.com.moneytransfer.model.TransferRequest;
+import main.java.com.moneytransfer.model.TransferResult;
+import main.java.com.moneytransfer.service.AccountService;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AccountServiceBenchmark {
+
+	private static final int BATCH_SIZE = 100;
+	private static final int READ_SIZE = 10;
+
+	@Param({ "1000", "1000000" })
+	public int accountCount;
+
+	private AccountService accountService;
+	private long firstId;
+
+	private final Amount gbpAmount = new Amount(1L, "GBP");
+	private final Amount eurAmount = new Amount(1L, "EUR");
+	// more than any account holds
+	private final Amount overdraftAmount = new Amount(2000000000000L, "GBP");
+	private final Amount balance = new Amount(100000000L, "GBP");
+
+	@Setup(Level.Trial)
+	public void setUp() throws UnsupportedCurrencyException {
+
+		accountService = new AccountService();
+		firstId = Fixtures.createAccounts(accountService, accountCount, 1000000000000L);
+	}
+
+	@Benchmark
+	public void transferSameCurrency(Blackhole blackhole) {
+		transfer(gbpAmount, blackhole);
+	}
+
+	@Benchmark
+	public void transferCrossCurrency(Blackhole blackhole) {
+		transfer(eurAmount, blackhole);
+	}
+
+	// rejections, compare them with transferSameCurrency
+	@Benchmark
+	public void transferInsufficientBalance(Blackhole blackhole) {
+		transfer(overdraftAmount, blackhole);
+	}
+
+	@Benchmark
+	public void transferUnknownAccount(Blackhole blackhole) {
+
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		try {
+			accountService.transferAmount(firstId + random.nextInt(accountCount),
+					firstId + accountCount + random.nextInt(accountCount), gbpAmount);
+		} catch (InvalidReceiverException | AccountNotFoundException | UnsupportedCurrencyException
+				| InsufficientBalanceException e) {
+			blackhole.consume(e);
+		}
+	}
+
+	// one operation is a whole batch of BATCH_SIZE transfers
+	@Benchmark
+	@OperationsPerInvocation(BATCH_SIZE)
+	public List<TransferResult> transferBatch() {
+
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		List<TransferRequest> transfers = new ArrayList<>(BATCH_SIZE);
+		for (int i = 0; i < BATCH_SIZE; i++) {
+			transfers.add(new TransferRequest(firstId + random.nextInt(accountCount),
+					firstId + random.nextInt(accountCount), 1L, "GBP"));
+		}
+		return accountService.transferBatch(transfers, BatchMode.BEST_EFFORT);
+	}
+
+	// a reader beside every transferring thread, compare the transfers with transferSameCurrency
+	@Benchmark
+	@Group("transferWhileReading")
+	public void transferBesideReader(Blackhole blackhole) {
+		transfer(gbpAmount, blackhole);
+	}
+
+	@Benchmark
+	@Group("transferWhileReading")
+	@OperationsPerInvocation(READ_SIZE)
+	public Account[] readBesideTransfer() {
+
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		long[] accountIds = new long[READ_SIZE];
+		for (int i = 0; i < READ_SIZE; i++) {
+			accountIds[i] = firstId + random.nextInt(accountCount);
+		}
+		return accountService.searchAccounts(accountIds);
+	}
+
+	@Benchmark
+	public Amount calculateAmount() throws UnsupportedCurrencyException, InsufficientBalanceException {
+		return accountService.calculateAmount(balance, eurAmount, "subtract");
+	}
+
+	@Benchmark
+	public Amount convertCurrency() throws UnsupportedCurrencyException {
+		return accountService.convertCurrency(eurAmount, "USD");
+	}
+
+	private void transfer(Amount amount, Blackhole blackhole) {
+
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		long senderId = firstId + random.nextInt(accountCount);
+		long receiverId = firstId + random.nextInt(accountCount);
+
+		try {
+			accountService.transferAmount(senderId, receiverId, amount);
+		} catch (InvalidReceiverException | AccountNotFoundException | UnsupportedCurrencyException
+				| InsufficientBalanceException e) {
+			blackhole.consume(e);
+		}
+	}
+
+}
@@ -0,0 +1,38 @@
+package main.java.com.moneytransfer.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Runs the selected benchmarks once per thread count with the GC profiler attached,
+// so every report carries throughput, latency percentiles and allocation rate.
+//
+//   java -Dthreads=1,4,8 -jar target/benchmarks.jar "AccountService.*"
+//
+// Plain JMH options are still available through org.openjdk.jmh.Main.
+public class BenchmarkRunner {
+
+	public static void main(String[] args) throws RunnerException {
+
+		String include = args.length > 0 ? args[0] : "main.java.com.moneytransfer.benchmark.*";
+		String threads = System.getProperty("threads", "1," + Runtime.getRuntime().availableProcessors());
+
+		for (String threadCount : threads.split(",")) {
+			int count = Integer.parseInt(threadCount.trim());
+
+			Options options = new OptionsBuilder()
+					.include(include)
+					.threads(count)
+					.addProfiler(GCProfiler.class)
+					.resultFormat(ResultFormatType.JSON)
+					.result("jmh-result-" + count + "t.json")
+					.build();
+
+			new Runner(options).run();
+		}
+	}
+
+}
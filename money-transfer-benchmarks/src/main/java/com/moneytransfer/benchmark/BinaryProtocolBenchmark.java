@@ -0,0 +1,215 @@
+package main.java.com.moneytransfer.benchmark;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sun.net.httpserver.HttpServer;
+
+import main.java.com.moneytransfer.api.RequestHandler;
+import main.java.com.moneytransfer.binary.BinaryClient;
+import main.java.com.moneytransfer.binary.BinaryServer;
+import main.java.com.moneytransfer.config.ServerConfig;
+import main.java.com.moneytransfer.config.ServerMode;
+import main.java.com.moneytransfer.exception.UnsupportedCurrencyException;
+import main.java.com.moneytransfer.metrics.Metrics;
+import main.java.com.moneytransfer.model.Account;
+import main.java.com.moneytransfer.model.Amount;
+import main.java.com.moneytransfer.service.AccountService;
+import main.java.com.moneytransfer.service.LockingTransferEngine;
+
+// Account reads and transfers over loopback, JSON over HTTP (the NIO server with keep-alive)
+// against the binary protocol, one request at a time and 16 pipelined per write. Both
+// listeners serve the same AccountService on the same executor, each client is a connection
+// per benchmark thread and its own cost is part of the numbers.
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BinaryProtocolBenchmark {
+
+	private static final int ACCOUNT_COUNT = 1000;
+	private static final int PIPELINE_DEPTH = 16;
+
+	@Param({ "http", "binary" })
+	public String protocol;
+
+	private HttpServer httpServer;
+	private BinaryServer binaryServer;
+	private ExecutorService executor;
+	private long firstId;
+
+	private final Amount amount = new Amount(1L, "GBP");
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException, UnsupportedCurrencyException {
+
+		AccountService accountService = new AccountService();
+		firstId = Fixtures.createAccounts(accountService, ACCOUNT_COUNT, 1000000000000L);
+		ServerConfig config = new ServerConfig(new Properties());
+		executor = Executors.newFixedThreadPool(config.getThreads());
+
+		if ("http".equals(protocol)) {
+			httpServer = ServerMode.NIO.create(new InetSocketAddress("127.0.0.1", 0), config);
+			httpServer.createContext("/", new RequestHandler(accountService)::handle);
+			httpServer.setExecutor(executor);
+			httpServer.start();
+		} else {
+			binaryServer = new BinaryServer(accountService, new LockingTransferEngine(accountService), Metrics.disabled(),
+					Runtime.getRuntime().availableProcessors(), 1024);
+			binaryServer.bind(new InetSocketAddress("127.0.0.1", 0), 0);
+			binaryServer.setExecutor(executor);
+			binaryServer.start();
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+
+		if (httpServer != null) {
+			httpServer.stop(0);
+		}
+		if (binaryServer != null) {
+			binaryServer.stop();
+		}
+		executor.shutdownNow();
+	}
+
+	@Benchmark
+	public Object getAccount(Connection connection) throws Exception {
+
+		long id = randomId();
+		if (connection.http != null) {
+			connection.http.send(("GET /accounts/" + id + " HTTP/1.1\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+			return connection.http.readResponse();
+		}
+		CompletableFuture<Account> account = connection.binary.getAccount(id);
+		connection.binary.flush();
+		return account.get();
+	}
+
+	@Benchmark
+	public Object transfer(Connection connection) throws Exception {
+
+		if (connection.http != null) {
+			connection.http.send(transferRequest());
+			return connection.http.readResponse();
+		}
+		CompletableFuture<Account[]> accounts = sendTransfer(connection.binary);
+		connection.binary.flush();
+		return accounts.get();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(PIPELINE_DEPTH)
+	public Object transferPipelined(Connection connection) throws Exception {
+
+		if (connection.http != null) {
+			byte[][] requests = new byte[PIPELINE_DEPTH][];
+			int length = 0;
+			for (int i = 0; i < PIPELINE_DEPTH; i++) {
+				requests[i] = transferRequest();
+				length += requests[i].length;
+			}
+			byte[] batch = new byte[length];
+			for (int i = 0, offset = 0; i < PIPELINE_DEPTH; offset += requests[i].length, i++) {
+				System.arraycopy(requests[i], 0, batch, offset, requests[i].length);
+			}
+			connection.http.send(batch);
+			int bytes = 0;
+			for (int i = 0; i < PIPELINE_DEPTH; i++) {
+				bytes += connection.http.readResponse();
+			}
+			return bytes;
+		}
+
+		@SuppressWarnings("unchecked")
+		CompletableFuture<Account[]>[] transfers = new CompletableFuture[PIPELINE_DEPTH];
+		for (int i = 0; i < PIPELINE_DEPTH; i++) {
+			transfers[i] = sendTransfer(connection.binary);
+		}
+		connection.binary.flush();
+		return CompletableFuture.allOf(transfers).get();
+	}
+
+	private CompletableFuture<Account[]> sendTransfer(BinaryClient client) {
+
+		long senderId = randomId();
+		return client.transfer(senderId, otherId(senderId), amount);
+	}
+
+	private byte[] transferRequest() {
+
+		long senderId = randomId();
+		byte[] body = ("{\"sender\":" + senderId + ",\"receiver\":" + otherId(senderId)
+				+ ",\"amount\":\"0.01\",\"currency\":\"GBP\"}").getBytes(StandardCharsets.US_ASCII);
+		byte[] head = ("POST /transfer HTTP/1.1\r\nContent-Type: application/json\r\nContent-Length: " + body.length
+				+ "\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+		byte[] request = new byte[head.length + body.length];
+		System.arraycopy(head, 0, request, 0, head.length);
+		System.arraycopy(body, 0, request, head.length, body.length);
+		return request;
+	}
+
+	private long randomId() {
+		return firstId + ThreadLocalRandom.current().nextInt(ACCOUNT_COUNT);
+	}
+
+	private long otherId(long senderId) {
+		return firstId + (senderId - firstId + 1 + ThreadLocalRandom.current().nextInt(ACCOUNT_COUNT - 1)) % ACCOUNT_COUNT;
+	}
+
+	@State(Scope.Thread)
+	public static class Connection {
+
+		private LoopbackHttpClient http;
+		private BinaryClient binary;
+
+		@Setup(Level.Trial)
+		public void open(BinaryProtocolBenchmark benchmark) throws IOException {
+
+			if (benchmark.httpServer != null) {
+				http = new LoopbackHttpClient(benchmark.httpServer.getAddress().getPort());
+			} else {
+				binary = new BinaryClient(benchmark.binaryServer.getAddress(), 1024);
+				binary.setAutoFlush(false);
+			}
+		}
+
+		@TearDown(Level.Trial)
+		public void close() throws IOException {
+
+			if (http != null) {
+				http.close();
+			}
+			if (binary != null) {
+				binary.close();
+			}
+		}
+
+	}
+
+}
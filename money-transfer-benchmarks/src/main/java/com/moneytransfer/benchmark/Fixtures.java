@@ -0,0 +1,39 @@
+package main.java.com.moneytransfer.benchmark;
+
+import main.java.com.moneytransfer.exception.UnsupportedCurrencyException;
+import main.java.com.moneytransfer.model.Account;
+import main.java.com.moneytransfer.model.Amount;
+import main.java.com.moneytransfer.repository.AccountStore;
+import main.java.com.moneytransfer.service.AccountService;
+
+final class Fixtures {
+
+	private Fixtures() {
+	}
+
+	// creates count GBP accounts with consecutive ids and returns the first id
+	static long createAccounts(AccountService accountService, int count, long units) throws UnsupportedCurrencyException {
+
+		long firstId = -1;
+		for (int i = 0; i < count; i++) {
+			Account account = accountService.createAccount(new Amount(units, "GBP"));
+			if (firstId < 0) {
+				firstId = account.getId();
+			}
+		}
+		return firstId;
+	}
+
+	static long createAccounts(AccountStore accountRepository, int count, long units) {
+
+		long firstId = -1;
+		for (int i = 0; i < count; i++) {
+			Account account = accountRepository.add(new Account(new Amount(units, "GBP")));
+			if (firstId < 0) {
+				firstId = account.getId();
+			}
+		}
+		return firstId;
+	}
+
+}
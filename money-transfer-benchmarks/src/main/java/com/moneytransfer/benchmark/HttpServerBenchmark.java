@@ -0,0 +1,146 @@
+package main.java.com.moneytransfer.benchmark;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sun.net.httpserver.HttpServer;
+
+import main.java.com.moneytransfer.api.RequestHandler;
+import main.java.com.moneytransfer.config.ServerConfig;
+import main.java.com.moneytransfer.config.ServerMode;
+import main.java.com.moneytransfer.exception.UnsupportedCurrencyException;
+import main.java.com.moneytransfer.service.AccountService;
+
+// GET /accounts/{id} over loopback against both HTTP front ends, with a new connection per
+// request, one kept-alive connection per client thread and 16 pipelined requests per write.
+// The client is a plain blocking socket, so the numbers include its own cost as well. The
+// JDK server gets TCP_NODELAY too, without it every kept-alive response waits ~40ms for the
+// client's delayed ACK.
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dsun.net.httpserver.nodelay=true")
+public class HttpServerBenchmark {
+
+	private static final int ACCOUNT_COUNT = 1000;
+	private static final int PIPELINE_DEPTH = 16;
+
+	@Param({ "jdk", "nio" })
+	public String server;
+
+	private HttpServer httpServer;
+	private ExecutorService executor;
+	private int port;
+	private long firstId;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException, UnsupportedCurrencyException {
+
+		AccountService accountService = new AccountService();
+		firstId = Fixtures.createAccounts(accountService, ACCOUNT_COUNT, 1000000L);
+		RequestHandler requestHandler = new RequestHandler(accountService);
+
+		ServerConfig config = new ServerConfig(new Properties());
+		httpServer = ServerMode.fromName(server).create(new InetSocketAddress("127.0.0.1", 0), config);
+		httpServer.createContext("/", requestHandler::handle);
+		executor = Executors.newFixedThreadPool(config.getThreads());
+		httpServer.setExecutor(executor);
+		httpServer.start();
+		port = httpServer.getAddress().getPort();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+
+		httpServer.stop(0);
+		executor.shutdownNow();
+	}
+
+	@Benchmark
+	public int connectPerRequest() throws IOException {
+
+		try (LoopbackHttpClient client = new LoopbackHttpClient(port)) {
+			client.resetOnClose();
+			client.send(request(true));
+			return client.readResponse();
+		}
+	}
+
+	@Benchmark
+	public int keepAlive(Connection connection) throws IOException {
+
+		connection.client.send(request(false));
+		return connection.client.readResponse();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(PIPELINE_DEPTH)
+	public int pipelined(Connection connection) throws IOException {
+
+		byte[][] requests = new byte[PIPELINE_DEPTH][];
+		int length = 0;
+		for (int i = 0; i < PIPELINE_DEPTH; i++) {
+			requests[i] = request(false);
+			length += requests[i].length;
+		}
+		byte[] batch = new byte[length];
+		for (int i = 0, offset = 0; i < PIPELINE_DEPTH; offset += requests[i].length, i++) {
+			System.arraycopy(requests[i], 0, batch, offset, requests[i].length);
+		}
+		connection.client.send(batch);
+
+		int bytes = 0;
+		for (int i = 0; i < PIPELINE_DEPTH; i++) {
+			bytes += connection.client.readResponse();
+		}
+		return bytes;
+	}
+
+	private byte[] request(boolean close) {
+
+		long id = firstId + ThreadLocalRandom.current().nextInt(ACCOUNT_COUNT);
+		return ("GET /accounts/" + id + " HTTP/1.1\r\nHost: localhost\r\n" + (close ? "Connection: close\r\n" : "")
+				+ "\r\n").getBytes(StandardCharsets.US_ASCII);
+	}
+
+	@State(Scope.Thread)
+	public static class Connection {
+
+		private LoopbackHttpClient client;
+
+		@Setup(Level.Trial)
+		public void open(HttpServerBenchmark benchmark) throws IOException {
+			client = new LoopbackHttpClient(benchmark.port);
+		}
+
+		@TearDown(Level.Trial)
+		public void close() throws IOException {
+			client.close();
+		}
+
+	}
+
+}
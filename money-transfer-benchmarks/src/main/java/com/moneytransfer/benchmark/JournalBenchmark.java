@@ -0,0 +1,89 @@
+package main.java.com.moneytransfer.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import main.java.com.moneytransfer.exception.AccountNotFoundException;
+import main.java.com.moneytransfer.exception.InsufficientBalanceException;
+import main.java.com.moneytransfer.exception.InvalidReceiverException;
+import main.java.com.moneytransfer.exception.UnsupportedCurrencyException;
+import main.java.com.moneytransfer.journal.DurabilityMode;
+import main.java.com.moneytransfer.journal.Journal;
+import main.java.com.moneytransfer.journal.JournalRecovery;
+import main.java.com.moneytransfer.model.Amount;
+import main.java.com.moneytransfer.repository.AccountRepository;
+import main.java.com.moneytransfer.service.AccountLocks;
+import main.java.com.moneytransfer.service.AccountService;
+
+// Transfer throughput and latency with the journal in each durability mode, none is the
+// in-memory baseline. Run with several threads to see group commit amortize the syncs.
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JournalBenchmark {
+
+	private static final int ACCOUNT_COUNT = 1000;
+
+	@Param({ "none", "async", "group-commit", "sync" })
+	public String durability;
+
+	@Param({ "1000" })
+	public long maxDelayMicros;
+
+	private Path file;
+	private Journal journal;
+	private AccountService accountService;
+	private long firstId;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException, UnsupportedCurrencyException {
+
+		file = Files.createTempFile("journal-benchmark", ".log");
+		Files.delete(file);
+
+		AccountRepository accountRepository = new AccountRepository(ACCOUNT_COUNT);
+		journal = Journal.open(file, DurabilityMode.fromName(durability), maxDelayMicros,
+				Journal.replay(file, new JournalRecovery(accountRepository)));
+		accountService = new AccountService(accountRepository, new AccountLocks(), journal);
+		firstId = Fixtures.createAccounts(accountService, ACCOUNT_COUNT, Long.MAX_VALUE / 4);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+
+		journal.close();
+		Files.deleteIfExists(file);
+	}
+
+	@Benchmark
+	public void transfer() throws InvalidReceiverException, AccountNotFoundException,
+			UnsupportedCurrencyException, InsufficientBalanceException {
+
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		long senderId = firstId + random.nextInt(ACCOUNT_COUNT);
+		long receiverId = firstId + (senderId - firstId + 1 + random.nextInt(ACCOUNT_COUNT - 1)) % ACCOUNT_COUNT;
+
+		accountService.transferAmount(senderId, receiverId, new Amount(1, "GBP"));
+	}
+
+}
@@ -0,0 +1,66 @@
+package main.java.com.moneytransfer.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import main.java.com.moneytransfer.api.JsonCodec;
+import main.java.com.moneytransfer.api.ResponseBuffer;
+import main.java.com.moneytransfer.exception.IncorrectInputException;
+import main.java.com.moneytransfer.model.Account;
+import main.java.com.moneytransfer.model.Amount;
+import main.java.com.moneytransfer.model.TransferRequest;
+
+// The request parse and response write steps of RequestHandler.handleTransfer.
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonCodecBenchmark {
+
+	private final JsonCodec jsonCodec = new JsonCodec();
+
+	private byte[] transferBody;
+	private Account senderAccount;
+	private Account receiverAccount;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+
+		transferBody = "{ \"sender\":\"1000000\", \"receiver\":\"1000001\", \"amount\":\"200.50\", \"currency\":\"GBP\" }"
+				.getBytes(StandardCharsets.UTF_8);
+
+		senderAccount = new Account(new Amount(80000L, "GBP"));
+		senderAccount.setId(1000000L);
+		receiverAccount = new Account(new Amount(70050L, "EUR"));
+		receiverAccount.setId(1000001L);
+	}
+
+	@Benchmark
+	public TransferRequest parseTransferRequest() throws IOException, IncorrectInputException {
+		return jsonCodec.readTransferRequest(new ByteArrayInputStream(transferBody));
+	}
+
+	@Benchmark
+	public int writeTransferResponse() throws IOException {
+
+		ResponseBuffer response = jsonCodec.writeTransferred(senderAccount, receiverAccount);
+		return response.size();
+	}
+
+}
@@ -0,0 +1,100 @@
+package main.java.com.moneytransfer.benchmark;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import main.java.com.moneytransfer.exception.AccountNotFoundException;
+import main.java.com.moneytransfer.exception.InsufficientBalanceException;
+import main.java.com.moneytransfer.exception.InvalidReceiverException;
+import main.java.com.moneytransfer.exception.UnsupportedCurrencyException;
+import main.java.com.moneytransfer.fx.ExchangeRates;
+import main.java.com.moneytransfer.journal.Journal;
+import main.java.com.moneytransfer.ledger.Ledger;
+import main.java.com.moneytransfer.model.Amount;
+import main.java.com.moneytransfer.model.Posting;
+import main.java.com.moneytransfer.repository.AccountRepository;
+import main.java.com.moneytransfer.service.AccountLocks;
+import main.java.com.moneytransfer.service.AccountService;
+
+// The cost of recording both legs of every transfer, compare ledger=true with ledger=false.
+// The history only grows, so accounts and ledger are rebuilt for every iteration and the
+// iterations are short enough to stay within the default direct memory limit.
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LedgerBenchmark {
+
+	private static final int PAGE_SIZE = 50;
+
+	@Param({ "1000", "100000" })
+	public int accountCount;
+
+	@Param({ "false", "true" })
+	public boolean ledger;
+
+	private AccountService accountService;
+	private long firstId;
+
+	private final Amount gbpAmount = new Amount(1L, "GBP");
+	private final Amount eurAmount = new Amount(1L, "EUR");
+
+	@Setup(Level.Iteration)
+	public void setUp() throws Exception {
+
+		accountService = new AccountService(new AccountRepository(accountCount), new AccountLocks(), Journal.disabled(),
+				new ExchangeRates(), ledger ? new Ledger(accountCount) : Ledger.disabled());
+		firstId = Fixtures.createAccounts(accountService, accountCount, 1000000000000L);
+		// some history to page through
+		for (int i = 0; i < PAGE_SIZE; i++) {
+			accountService.transferAmount(firstId, firstId + 1, gbpAmount);
+		}
+	}
+
+	@Benchmark
+	public void transferSameCurrency(Blackhole blackhole) {
+		transfer(gbpAmount, blackhole);
+	}
+
+	@Benchmark
+	public void transferCrossCurrency(Blackhole blackhole) {
+		transfer(eurAmount, blackhole);
+	}
+
+	@Benchmark
+	public List<Posting> readPage() throws AccountNotFoundException {
+		return accountService.searchTransactions(firstId, Long.MAX_VALUE, PAGE_SIZE);
+	}
+
+	private void transfer(Amount amount, Blackhole blackhole) {
+
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		long senderId = firstId + random.nextInt(accountCount);
+		long receiverId = firstId + random.nextInt(accountCount);
+
+		try {
+			accountService.transferAmount(senderId, receiverId, amount);
+		} catch (InvalidReceiverException | AccountNotFoundException | UnsupportedCurrencyException
+				| InsufficientBalanceException e) {
+			blackhole.consume(e);
+		}
+	}
+
+}
@@ -0,0 +1,74 @@
+package main.java.com.moneytransfer.benchmark;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+
+// Just enough HTTP/1.1 over a blocking socket to send raw requests and read responses with a
+// Content-Length, so the benchmarks measure the server rather than an HTTP client library.
+final class LoopbackHttpClient implements AutoCloseable {
+
+	private final Socket socket;
+	private final OutputStream output;
+	private final InputStream input;
+	private final byte[] body = new byte[4096];
+
+	LoopbackHttpClient(int port) throws IOException {
+		socket = new Socket("127.0.0.1", port);
+		socket.setTcpNoDelay(true);
+		output = socket.getOutputStream();
+		input = new BufferedInputStream(socket.getInputStream(), 16384);
+	}
+
+	// reset instead of TIME_WAIT, a run opens far more connections than there are ports
+	void resetOnClose() throws IOException {
+		socket.setSoLinger(true, 0);
+	}
+
+	void send(byte[] request) throws IOException {
+		output.write(request);
+	}
+
+	// the length of the body read
+	int readResponse() throws IOException {
+
+		int contentLength = 0;
+		StringBuilder line = new StringBuilder(64);
+		while (true) {
+			int b = input.read();
+			if (b < 0) {
+				throw new IOException("Connection closed in the middle of a response.");
+			}
+			if (b != '\n') {
+				if (b != '\r') {
+					line.append((char) b);
+				}
+				continue;
+			}
+			if (line.length() == 0) {
+				break;
+			}
+			if (line.length() > 15 && line.substring(0, 15).equalsIgnoreCase("Content-Length:")) {
+				contentLength = Integer.parseInt(line.substring(15).trim());
+			}
+			line.setLength(0);
+		}
+
+		for (int read = 0; read < contentLength;) {
+			int count = input.read(body, 0, Math.min(body.length, contentLength - read));
+			if (count < 0) {
+				throw new IOException("Connection closed in the middle of a body.");
+			}
+			read += count;
+		}
+		return contentLength;
+	}
+
+	@Override
+	public void close() throws IOException {
+		socket.close();
+	}
+
+}
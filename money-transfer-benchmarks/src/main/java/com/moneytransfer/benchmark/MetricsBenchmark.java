@@ -0,0 +1,62 @@
+package main.java.com.moneytransfer.benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import main.java.com.moneytransfer.metrics.LatencyHistogram;
+import main.java.com.moneytransfer.metrics.Metrics;
+
+// What RequestHandler adds to every request when metrics are enabled. Threads share the
+// histograms, run with -Dthreads to see the cost under contention.
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetricsBenchmark {
+
+	private final LatencyHistogram histogram = new LatencyHistogram();
+	private final Metrics metrics = new Metrics();
+	private final Metrics disabledMetrics = Metrics.disabled();
+
+	@Benchmark
+	public void recordLatency() {
+		histogram.record(ThreadLocalRandom.current().nextLong(10000000));
+	}
+
+	@Benchmark
+	public void recordRequest() {
+
+		long latency = ThreadLocalRandom.current().nextLong(10000000);
+		metrics.requestStarted("/transfer");
+		metrics.requestCompleted("/transfer", 200, latency);
+	}
+
+	@Benchmark
+	public void recordRequestDisabled() {
+
+		long latency = ThreadLocalRandom.current().nextLong(10000000);
+		disabledMetrics.requestStarted("/transfer");
+		disabledMetrics.requestCompleted("/transfer", 200, latency);
+	}
+
+	@Benchmark
+	public int writeMetrics() {
+
+		StringBuilder out = new StringBuilder(16384);
+		metrics.write(out);
+		return out.length();
+	}
+
+}
@@ -0,0 +1,87 @@
+package main.java.com.moneytransfer.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import main.java.com.moneytransfer.config.EngineMode;
+import main.java.com.moneytransfer.config.ServerConfig;
+import main.java.com.moneytransfer.exception.UnsupportedCurrencyException;
+import main.java.com.moneytransfer.model.Amount;
+import main.java.com.moneytransfer.repository.AccountStore;
+import main.java.com.moneytransfer.service.AccountLocks;
+import main.java.com.moneytransfer.service.AccountService;
+import main.java.com.moneytransfer.service.TransferEngine;
+
+// Transfer throughput of each engine with few (contended) and many accounts. Callbacks run
+// inline, and once the sequenced engine's ring is full submitting runs at the writer's pace,
+// so its throughput is that of the single writer thread. The sharded engine's throughput
+// should grow with the shards as long as there are cores for them, run it with -Dthreads.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransferEngineBenchmark {
+
+	private static final TransferEngine.TransferCallback IGNORE = error -> {
+	};
+
+	@Param({ "locking", "sequenced", "sharded" })
+	public String engine;
+
+	// only used by the sharded engine
+	@Param({ "4" })
+	public int shards;
+
+	@Param({ "16", "100000" })
+	public int accountCount;
+
+	private TransferEngine transferEngine;
+	private long firstId;
+
+	private final Amount amount = new Amount(1L, "GBP");
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException, UnsupportedCurrencyException {
+
+		EngineMode engineMode = EngineMode.fromName(engine);
+		AccountLocks accountLocks = engineMode.createLocks();
+		ServerConfig config = ServerConfig.fromArgs(new String[] { "--engine.shards=" + shards });
+		AccountStore accountRepository = engineMode.createRepository(config, accountCount, accountCount);
+		AccountService accountService = new AccountService(accountRepository, accountLocks);
+		firstId = Fixtures.createAccounts(accountService, accountCount, 1000000000000L);
+		transferEngine = engineMode.create(accountService, accountRepository, accountLocks, config, Runnable::run);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		transferEngine.close();
+	}
+
+	@Benchmark
+	public void transfer() {
+
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		long senderId = firstId + random.nextInt(accountCount);
+		long receiverId = firstId + (senderId - firstId + 1 + random.nextInt(accountCount - 1)) % accountCount;
+
+		transferEngine.transfer(senderId, receiverId, amount, IGNORE);
+	}
+
+}
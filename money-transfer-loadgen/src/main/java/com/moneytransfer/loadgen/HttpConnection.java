@@ -0,0 +1,146 @@
+package main.java.com.moneytransfer.loadgen;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// One kept-alive HTTP/1.1 connection over a blocking socket, a request at a time. Responses
+// need a Content-Length, which every response of the server has. Opens its socket on the
+// first request and again after the server closed it.
+final class HttpConnection implements Closeable {
+
+	private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+	private static final int READ_TIMEOUT_MILLIS = 30000;
+
+	private final InetSocketAddress address;
+	private final StringBuilder line = new StringBuilder(128);
+
+	private Socket socket;
+	private OutputStream output;
+	private InputStream input;
+	private byte[] body = new byte[1024];
+	private int bodyLength;
+
+	HttpConnection(InetSocketAddress address) {
+		this.address = address;
+	}
+
+	// the status code, the body is kept until the next request
+	int execute(byte[] request) throws IOException {
+
+		if (socket == null) {
+			connect();
+		}
+		try {
+			output.write(request);
+			output.flush();
+			return readResponse();
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+	}
+
+	String body() {
+		return new String(body, 0, bodyLength, StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public void close() {
+
+		if (socket != null) {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// dropped either way
+			}
+			socket = null;
+		}
+	}
+
+	private void connect() throws IOException {
+
+		Socket connected = new Socket();
+		try {
+			connected.setTcpNoDelay(true);
+			connected.setSoTimeout(READ_TIMEOUT_MILLIS);
+			connected.connect(address, CONNECT_TIMEOUT_MILLIS);
+			output = new BufferedOutputStream(connected.getOutputStream(), 4096);
+			input = new BufferedInputStream(connected.getInputStream(), 16384);
+		} catch (IOException e) {
+			connected.close();
+			throw e;
+		}
+		socket = connected;
+	}
+
+	private int readResponse() throws IOException {
+
+		int status = -1;
+		int contentLength = -1;
+		boolean closeAfter = false;
+		while (readLine()) {
+			if (status < 0) {
+				// HTTP/1.1 200 OK
+				if (line.length() < 12 || !line.substring(0, 5).equals("HTTP/")) {
+					throw new IOException("Malformed status line - " + line);
+				}
+				status = Integer.parseInt(line.substring(9, 12));
+			} else if (startsWith("Content-Length:")) {
+				contentLength = Integer.parseInt(line.substring(15).trim());
+			} else if (startsWith("Connection:")) {
+				closeAfter = line.substring(11).trim().equalsIgnoreCase("close");
+			}
+		}
+		if (status < 0 || contentLength < 0) {
+			throw new IOException("Response without a status or a Content-Length.");
+		}
+
+		if (body.length < contentLength) {
+			body = Arrays.copyOf(body, Math.max(contentLength, body.length * 2));
+		}
+		for (int read = 0; read < contentLength;) {
+			int count = input.read(body, read, contentLength - read);
+			if (count < 0) {
+				throw new IOException("Connection closed in the middle of a body.");
+			}
+			read += count;
+		}
+		bodyLength = contentLength;
+
+		if (closeAfter) {
+			close();
+		}
+		return status;
+	}
+
+	// false at the empty line that ends the headers
+	private boolean readLine() throws IOException {
+
+		line.setLength(0);
+		while (true) {
+			int b = input.read();
+			if (b < 0) {
+				throw new IOException("Connection closed by the server.");
+			}
+			if (b == '\n') {
+				return line.length() > 0;
+			}
+			if (b != '\r') {
+				line.append((char) b);
+			}
+		}
+	}
+
+	private boolean startsWith(String header) {
+		return line.length() >= header.length() && line.substring(0, header.length()).equalsIgnoreCase(header);
+	}
+
+}
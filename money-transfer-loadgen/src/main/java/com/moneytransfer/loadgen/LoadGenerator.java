@@ -0,0 +1,230 @@
+package main.java.com.moneytransfer.loadgen;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import main.java.com.moneytransfer.AppServer;
+import main.java.com.moneytransfer.config.ServerConfig;
+
+// Drives the HTTP API with a mix of /create and /transfer requests and reports throughput and
+// latency distributions. Without --target it starts AppServer in this JVM on a free port, with
+// the --app.* flags as its options, e.g.
+//
+//   java -jar target/loadgen.jar --mode=open --rate=5000 --duration=60 --app.engine=sharded
+//   java -jar target/loadgen.jar --target=localhost:8080 --mode=closed --connections=64
+//
+// Accounts are created first, then the load runs for warmup plus duration seconds and only
+// the requests sent after the warm-up are reported. Runs with the same seed send the same
+// requests.
+public class LoadGenerator {
+
+	private static final String APP_PREFIX = "--app.";
+	private static final String SETUP_BALANCE = "1000000000.00";
+
+	public static void main(String[] args) {
+
+		int status = 0;
+		try {
+			run(args);
+		} catch (Exception e) {
+			System.err.println("Load cannot be generated - " + e.getMessage());
+			status = 1;
+		}
+		// stops the in-process server through its shutdown hook
+		System.exit(status);
+	}
+
+	private static void run(String[] args) throws Exception {
+
+		ServerConfig config = ServerConfig.fromArgs(args);
+		LoadMode mode = LoadMode.fromName(config.get("mode", LoadMode.OPEN.name()));
+		double rate = getDouble(config, "rate", 1000);
+		int connections = config.getInt("connections", 16);
+		int duration = config.getInt("duration", 30);
+		int warmup = config.getInt("warmup", 5);
+		int accountCount = config.getInt("accounts", 10000);
+		String[] currencies = config.get("currencies", "GBP,EUR,USD").split(",");
+		double zipf = getDouble(config, "zipf", 0.99);
+		double createRatio = getDouble(config, "createRatio", 0.05);
+		double crossCurrencyRatio = getDouble(config, "crossCurrencyRatio", 0.1);
+		long thinkNanos = TimeUnit.MICROSECONDS.toNanos(config.getLong("thinkMicros", 0));
+		long seed = config.getLong("seed", 42);
+		int reportSeconds = config.getInt("reportSeconds", 5);
+		if (rate <= 0 || connections < 1 || duration < 1 || warmup < 0) {
+			throw new IllegalArgumentException("rate, connections and duration must be positive, warmup not negative.");
+		}
+
+		String target = config.get("target", null);
+		InetSocketAddress address = target == null ? startServer(args) : parseAddress(target);
+		String host = address.getHostString() + ":" + address.getPort();
+
+		long startTime = System.nanoTime();
+		long[][] accounts = createAccounts(address, host, currencies, accountCount, connections);
+		System.out.println("Created " + accountCount + " accounts in "
+				+ TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) + "ms.");
+
+		Workload workload = new Workload(host, currencies, accounts, zipf, createRatio, crossCurrencyRatio);
+		Results results = new Results();
+		System.out.println("Running " + mode.name().toLowerCase(Locale.ROOT) + " loop"
+				+ (mode == LoadMode.OPEN ? " at " + rate + " requests/s" : "") + " on " + connections
+				+ " connections for " + warmup + "s warm-up and " + duration + "s (zipf=" + zipf + ", createRatio="
+				+ createRatio + ", crossCurrencyRatio=" + crossCurrencyRatio + ", seed=" + seed + ")...");
+
+		// each connection takes every connections-th slot of the schedule
+		long intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) * connections / rate));
+		long firstNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+		long measureNanos = firstNanos + TimeUnit.SECONDS.toNanos(warmup);
+		long endNanos = measureNanos + TimeUnit.SECONDS.toNanos(duration);
+		List<Thread> threads = new ArrayList<>();
+		for (int i = 0; i < connections; i++) {
+			Worker worker = new Worker(address, workload, results, new SplittableRandom(seed + i), mode, intervalNanos,
+					thinkNanos, firstNanos + intervalNanos * i / connections, measureNanos, endNanos);
+			Thread thread = new Thread(worker, "loadgen-" + i);
+			thread.setDaemon(true);
+			thread.start();
+			threads.add(thread);
+		}
+
+		report(results, measureNanos, endNanos, reportSeconds);
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		results.print(System.out, duration);
+	}
+
+	// progress every reportSeconds of the measured part
+	private static void report(Results results, long measureNanos, long endNanos, int reportSeconds)
+			throws InterruptedException {
+
+		if (reportSeconds < 1) {
+			return;
+		}
+		long reportNanos = TimeUnit.SECONDS.toNanos(reportSeconds);
+		long last = 0;
+		for (long next = measureNanos + reportNanos; next <= endNanos; next += reportNanos) {
+			TimeUnit.NANOSECONDS.sleep(Math.max(0, next - System.nanoTime()));
+			long count = results.count();
+			System.out.printf(Locale.ROOT, "%5ds %10d requests %10.1f/s%n",
+					TimeUnit.NANOSECONDS.toSeconds(next - measureNanos), count, (count - last) / (double) reportSeconds);
+			last = count;
+		}
+	}
+
+	// AppServer with the --app.* flags, its access log off unless asked for
+	private static InetSocketAddress startServer(String[] args) throws IOException {
+
+		int port;
+		try (ServerSocket socket = new ServerSocket(0)) {
+			port = socket.getLocalPort();
+		}
+		List<String> appArgs = new ArrayList<>();
+		appArgs.add("--port=" + port);
+		appArgs.add("--log.level=off");
+		for (String arg : args) {
+			if (arg.startsWith(APP_PREFIX)) {
+				appArgs.add("--" + arg.substring(APP_PREFIX.length()));
+			}
+		}
+		// like the nio server, the JDK server should not hold kept-alive responses for a delayed ACK
+		if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+		}
+		AppServer.main(appArgs.toArray(new String[0]));
+		return new InetSocketAddress("127.0.0.1", port);
+	}
+
+	private static InetSocketAddress parseAddress(String target) {
+
+		int separator = target.lastIndexOf(':');
+		if (separator < 0) {
+			throw new IllegalArgumentException("Target must be host:port - " + target);
+		}
+		try {
+			return new InetSocketAddress(target.substring(0, separator), Integer.parseInt(target.substring(separator + 1)));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Target must be host:port - " + target);
+		}
+	}
+
+	// accountCount accounts spread evenly over the currencies, created over all connections
+	private static long[][] createAccounts(InetSocketAddress address, String host, String[] currencies,
+			int accountCount, int connections) throws Exception {
+
+		long[][] accounts = new long[currencies.length][];
+		for (int c = 0; c < currencies.length; c++) {
+			accounts[c] = new long[accountCount / currencies.length + (c < accountCount % currencies.length ? 1 : 0)];
+		}
+
+		List<Thread> threads = new ArrayList<>();
+		Exception[] failure = new Exception[1];
+		for (int i = 0; i < connections; i++) {
+			int first = i;
+			Thread thread = new Thread(() -> {
+				try (HttpConnection connection = new HttpConnection(address)) {
+					for (int n = first; n < accountCount; n += connections) {
+						int currency = n % currencies.length;
+						int status;
+						while ((status = connection.execute(
+								Workload.createRequest(host, currencies[currency], SETUP_BALANCE))) == 429) {
+							TimeUnit.MILLISECONDS.sleep(10);
+						}
+						if (status != 200) {
+							throw new IOException("Account cannot be created - " + status + " " + connection.body());
+						}
+						accounts[currency][n / currencies.length] = parseId(connection.body());
+					}
+				} catch (IOException | InterruptedException | RuntimeException e) {
+					synchronized (failure) {
+						failure[0] = e;
+					}
+				}
+			}, "loadgen-setup-" + i);
+			thread.start();
+			threads.add(thread);
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		synchronized (failure) {
+			if (failure[0] != null) {
+				throw failure[0];
+			}
+		}
+		return accounts;
+	}
+
+	// the account id of a /create response
+	private static long parseId(String body) throws IOException {
+
+		int start = body.indexOf("\"id\":");
+		if (start < 0) {
+			throw new IOException("Response without an account id - " + body);
+		}
+		start += 5;
+		int end = start;
+		while (end < body.length() && Character.isDigit(body.charAt(end))) {
+			end++;
+		}
+		return Long.parseLong(body.substring(start, end));
+	}
+
+	private static double getDouble(ServerConfig config, String key, double defaultValue) {
+
+		String value = config.get(key, null);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Double.parseDouble(value);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid number for " + key + " - " + value);
+		}
+	}
+
+}
@@ -0,0 +1,22 @@
+package main.java.com.moneytransfer.loadgen;
+
+import java.util.Locale;
+
+public enum LoadMode {
+
+	// requests are sent on a fixed schedule whatever the server does, latency counts from the
+	// scheduled time, so a stall is charged to every request it delayed
+	OPEN,
+	// each connection sends its next request once the last one is answered
+	CLOSED;
+
+	public static LoadMode fromName(String name) {
+
+		try {
+			return valueOf(name.trim().toUpperCase(Locale.ROOT));
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Unsupported mode - " + name + ". Supported modes are open and closed.");
+		}
+	}
+
+}
@@ -0,0 +1,148 @@
+package main.java.com.moneytransfer.loadgen;
+
+import java.io.PrintStream;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+import main.java.com.moneytransfer.metrics.LatencyHistogram;
+
+// Outcomes and latencies of the measured requests by kind. Latencies are kept for answered
+// requests other than 429, which the server sends without doing the work; failed connections
+// and timeouts are counted as errors.
+public final class Results {
+
+	static final int ERROR = -1;
+
+	private static final String[] OUTCOMES = { "2xx", "4xx", "429", "5xx", "errors" };
+	private static final int REJECTED = 2;
+	private static final int FAILED = 4;
+	private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999, 0.9999 };
+	private static final int TICKS_PER_HALF = 5;
+
+	private final LongAdder[][] outcomes = new LongAdder[Workload.KINDS.length][OUTCOMES.length];
+	private final LatencyHistogram[] latencies = new LatencyHistogram[Workload.KINDS.length];
+	private final LatencyHistogram all = new LatencyHistogram();
+	private final LongAdder missed = new LongAdder();
+
+	public Results() {
+
+		for (int k = 0; k < Workload.KINDS.length; k++) {
+			for (int o = 0; o < OUTCOMES.length; o++) {
+				outcomes[k][o] = new LongAdder();
+			}
+			latencies[k] = new LatencyHistogram();
+		}
+	}
+
+	void record(int kind, int status, long latencyNanos) {
+
+		int outcome = outcomeOf(status);
+		outcomes[kind][outcome].increment();
+		if (outcome != REJECTED && outcome != FAILED) {
+			latencies[kind].record(latencyNanos);
+			all.record(latencyNanos);
+		}
+	}
+
+	// scheduled requests of the open loop never sent
+	void missed(long count) {
+		missed.add(count);
+	}
+
+	public long missedCount() {
+		return missed.sum();
+	}
+
+	public long count() {
+
+		long count = 0;
+		for (LongAdder[] kind : outcomes) {
+			for (LongAdder outcome : kind) {
+				count += outcome.sum();
+			}
+		}
+		return count;
+	}
+
+	void print(PrintStream out, double seconds) {
+
+		out.println();
+		out.printf(Locale.ROOT, "%-10s %10s %10s %9s %9s %9s %9s %9s %9s %9s %9s %9s %9s %9s %9s%n", "", "requests",
+				"per sec", "2xx", "4xx", "429", "5xx", "errors", "mean ms", "p50", "p90", "p99", "p99.9", "p99.99", "max");
+		long total = 0;
+		for (int k = 0; k < Workload.KINDS.length; k++) {
+			long count = 0;
+			for (LongAdder outcome : outcomes[k]) {
+				count += outcome.sum();
+			}
+			total += count;
+			out.printf(Locale.ROOT, "%-10s %10d %10.1f", Workload.KINDS[k], count, count / seconds);
+			for (LongAdder outcome : outcomes[k]) {
+				out.printf(Locale.ROOT, " %9d", outcome.sum());
+			}
+			printLatencies(out, latencies[k].snapshot());
+		}
+		out.printf(Locale.ROOT, "%-10s %10d %10.1f", "all", total, total / seconds);
+		for (int o = 0; o < OUTCOMES.length; o++) {
+			long sum = 0;
+			for (int k = 0; k < Workload.KINDS.length; k++) {
+				sum += outcomes[k][o].sum();
+			}
+			out.printf(Locale.ROOT, " %9d", sum);
+		}
+		printLatencies(out, all.snapshot());
+		if (missed.sum() > 0) {
+			out.println("Missed " + missed.sum() + " scheduled requests, the server did not keep up with the rate.");
+		}
+
+		printDistribution(out, all.snapshot());
+	}
+
+	private static void printLatencies(PrintStream out, LatencyHistogram.Snapshot snapshot) {
+
+		out.printf(Locale.ROOT, " %9.3f", snapshot.getCount() == 0 ? 0 : snapshot.getSum() / 1e6 / snapshot.getCount());
+		for (double quantile : QUANTILES) {
+			out.printf(Locale.ROOT, " %9.3f", snapshot.getValueAtQuantile(quantile) / 1e6);
+		}
+		out.printf(Locale.ROOT, " %9.3f%n", snapshot.getValueAtQuantile(1) / 1e6);
+	}
+
+	// percentiles closer together towards the tail like HdrHistogram's percentile output, each
+	// halving of the distance to 100% in TICKS_PER_HALF steps, down to a single request
+	private static void printDistribution(PrintStream out, LatencyHistogram.Snapshot snapshot) {
+
+		if (snapshot.getCount() == 0) {
+			return;
+		}
+		out.println();
+		out.printf(Locale.ROOT, "%12s %14s %12s %16s%n", "Value (ms)", "Percentile", "TotalCount", "1/(1-Percentile)");
+		for (double half = 1; half * snapshot.getCount() >= 1; half /= 2) {
+			for (int tick = 0; tick < TICKS_PER_HALF; tick++) {
+				double quantile = 1 - half + half / 2 * tick / TICKS_PER_HALF;
+				out.printf(Locale.ROOT, "%12.3f %14.12f %12d %16.2f%n", snapshot.getValueAtQuantile(quantile) / 1e6,
+						quantile, (long) Math.ceil(quantile * snapshot.getCount()), 1 / (1 - quantile));
+			}
+		}
+		out.printf(Locale.ROOT, "%12.3f %14.12f %12d %16s%n", snapshot.getValueAtQuantile(1) / 1e6, 1.0,
+				snapshot.getCount(), "inf");
+	}
+
+	private static int outcomeOf(int status) {
+
+		if (status == ERROR) {
+			return FAILED;
+		}
+		if (status == 429) {
+			return REJECTED;
+		}
+		switch (status / 100) {
+		case 2:
+			return 0;
+		case 4:
+			return 1;
+		default:
+			return 3;
+		}
+	}
+
+}
@@ -0,0 +1,105 @@
+package main.java.com.moneytransfer.loadgen;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// One connection of the load, on its own thread. Open, it sends on a schedule of one request
+// every intervalNanos from firstNanos and measures each from its scheduled time; a connection
+// that falls behind sends at once until it has caught up, and what it has not sent by the end
+// is reported as missed. Closed, it sends as soon as the last response is in, after
+// thinkNanos, and measures from the send. Requests sent before measureNanos are warm-up and
+// are not recorded.
+public final class Worker implements Runnable {
+
+	private static final long ERROR_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private final HttpConnection connection;
+	private final Workload workload;
+	private final Results results;
+	private final SplittableRandom random;
+	private final LoadMode mode;
+	private final long intervalNanos;
+	private final long thinkNanos;
+	private final long firstNanos;
+	private final long measureNanos;
+	private final long endNanos;
+
+	public Worker(InetSocketAddress address, Workload workload, Results results, SplittableRandom random, LoadMode mode,
+			long intervalNanos, long thinkNanos, long firstNanos, long measureNanos, long endNanos) {
+		this.connection = new HttpConnection(address);
+		this.workload = workload;
+		this.results = results;
+		this.random = random;
+		this.mode = mode;
+		this.intervalNanos = intervalNanos;
+		this.thinkNanos = thinkNanos;
+		this.firstNanos = firstNanos;
+		this.measureNanos = measureNanos;
+		this.endNanos = endNanos;
+	}
+
+	@Override
+	public void run() {
+
+		long scheduled = firstNanos;
+		parkUntil(firstNanos);
+		try {
+			while (true) {
+				long sendTime;
+				if (mode == LoadMode.OPEN) {
+					if (scheduled < measureNanos && System.nanoTime() >= measureNanos) {
+						// what is left of the warm-up is dropped, the measured schedule starts on time
+						scheduled += (measureNanos - scheduled + intervalNanos - 1) / intervalNanos * intervalNanos;
+					}
+					if (scheduled >= endNanos) {
+						return;
+					}
+					if (System.nanoTime() >= endNanos) {
+						// too far behind to send the rest of the schedule in time
+						results.missed((endNanos - Math.max(scheduled, measureNanos) + intervalNanos - 1) / intervalNanos);
+						return;
+					}
+					parkUntil(scheduled);
+					sendTime = scheduled;
+					scheduled += intervalNanos;
+				} else {
+					sendTime = System.nanoTime();
+					if (sendTime >= endNanos) {
+						return;
+					}
+				}
+
+				Workload.Request request = workload.next(random);
+				int status;
+				try {
+					status = connection.execute(request.bytes);
+				} catch (IOException e) {
+					status = Results.ERROR;
+				}
+				long latency = System.nanoTime() - sendTime;
+				if (sendTime >= measureNanos) {
+					results.record(request.kind, status, latency);
+				}
+
+				if (status == Results.ERROR) {
+					LockSupport.parkNanos(ERROR_BACKOFF_NANOS);
+				} else if (mode == LoadMode.CLOSED && thinkNanos > 0) {
+					LockSupport.parkNanos(thinkNanos);
+				}
+			}
+		} finally {
+			connection.close();
+		}
+	}
+
+	private static void parkUntil(long deadline) {
+
+		for (long wait = deadline - System.nanoTime(); wait > 0; wait = deadline - System.nanoTime()) {
+			LockSupport.parkNanos(wait);
+		}
+	}
+
+}
@@ -0,0 +1,94 @@
+package main.java.com.moneytransfer.loadgen;
+
+import java.nio.charset.StandardCharsets;
+import java.util.SplittableRandom;
+
+// The request mix: createRatio of the requests open an account, the rest transfer between
+// the accounts created up front. Senders and receivers are drawn with Zipfian popularity within
+// their currency, a crossCurrencyRatio of the transfers go to an account in another currency.
+// Amounts are 0.01 to 1.00 in the sender's currency, new accounts get 1000.00.
+public final class Workload {
+
+	public static final int CREATE = 0;
+	public static final int TRANSFER = 1;
+	static final String[] KINDS = { "create", "transfer" };
+
+	private final String host;
+	private final String[] currencies;
+	// account ids by currency, most popular first
+	private final long[][] accounts;
+	private final ZipfDistribution[] popularity;
+	private final double createRatio;
+	private final double crossCurrencyRatio;
+
+	public Workload(String host, String[] currencies, long[][] accounts, double zipfExponent, double createRatio,
+			double crossCurrencyRatio) {
+
+		this.host = host;
+		this.currencies = currencies;
+		this.accounts = accounts;
+		this.popularity = new ZipfDistribution[accounts.length];
+		for (int c = 0; c < accounts.length; c++) {
+			if (accounts[c].length < 2) {
+				throw new IllegalArgumentException("Every currency needs at least two accounts - " + currencies[c]);
+			}
+			popularity[c] = new ZipfDistribution(accounts[c].length, zipfExponent);
+		}
+		this.createRatio = createRatio;
+		this.crossCurrencyRatio = crossCurrencyRatio;
+	}
+
+	public Request next(SplittableRandom random) {
+
+		if (random.nextDouble() < createRatio) {
+			return new Request(CREATE, createRequest(host, currencies[random.nextInt(currencies.length)], "1000.00"));
+		}
+
+		int senderCurrency = random.nextInt(accounts.length);
+		int senderRank = popularity[senderCurrency].sample(random);
+		int receiverCurrency = senderCurrency;
+		if (accounts.length > 1 && random.nextDouble() < crossCurrencyRatio) {
+			receiverCurrency = (senderCurrency + 1 + random.nextInt(accounts.length - 1)) % accounts.length;
+		}
+		int receiverRank = popularity[receiverCurrency].sample(random);
+		if (receiverCurrency == senderCurrency && receiverRank == senderRank) {
+			receiverRank = (receiverRank + 1) % accounts[receiverCurrency].length;
+		}
+
+		int cents = 1 + random.nextInt(100);
+		String amount = cents / 100 + "." + cents % 100 / 10 + cents % 10;
+		String body = "{\"sender\":" + accounts[senderCurrency][senderRank] + ",\"receiver\":"
+				+ accounts[receiverCurrency][receiverRank] + ",\"amount\":\"" + amount + "\",\"currency\":\""
+				+ currencies[senderCurrency] + "\"}";
+		return new Request(TRANSFER, post(host, "/transfer", body));
+	}
+
+	static byte[] createRequest(String host, String currency, String balance) {
+		return post(host, "/create", "{\"amount\":\"" + balance + "\",\"currency\":\"" + currency + "\"}");
+	}
+
+	private static byte[] post(String host, String path, String body) {
+
+		byte[] content = body.getBytes(StandardCharsets.UTF_8);
+		String head = "POST " + path + " HTTP/1.1\r\nHost: " + host + "\r\nContent-Type: application/json\r\n"
+				+ "Content-Length: " + content.length + "\r\n\r\n";
+		byte[] headBytes = head.getBytes(StandardCharsets.US_ASCII);
+		byte[] request = new byte[headBytes.length + content.length];
+		System.arraycopy(headBytes, 0, request, 0, headBytes.length);
+		System.arraycopy(content, 0, request, headBytes.length, content.length);
+		return request;
+	}
+
+	public static final class Request {
+
+		public final int kind;
+		public final byte[] bytes;
+
+		Request(int kind, byte[] bytes) {
+			this.kind = kind;
+			this.bytes = bytes;
+		}
+
+	}
+
+}
@@ -0,0 +1,36 @@
+package main.java.com.moneytransfer.loadgen;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+// Ranks 0 to n - 1 drawn with probability proportional to 1 / (rank + 1)^exponent, from a
+// precomputed cumulative table searched by bisection. Exponent 0 is uniform, around 1 a few
+// ranks take most of the draws. The table is shared, callers bring their own random.
+public final class ZipfDistribution {
+
+	private final double[] cumulative;
+
+	public ZipfDistribution(int n, double exponent) {
+
+		if (n < 1 || exponent < 0) {
+			throw new IllegalArgumentException("Zipf needs n >= 1 and exponent >= 0 - " + n + ", " + exponent);
+		}
+		cumulative = new double[n];
+		double total = 0;
+		for (int rank = 0; rank < n; rank++) {
+			total += 1 / Math.pow(rank + 1, exponent);
+			cumulative[rank] = total;
+		}
+		for (int rank = 0; rank < n; rank++) {
+			cumulative[rank] /= total;
+		}
+	}
+
+	public int sample(SplittableRandom random) {
+
+		int index = Arrays.binarySearch(cumulative, random.nextDouble());
+		int rank = index < 0 ? -index - 1 : index;
+		return Math.min(rank, cumulative.length - 1);
+	}
+
+}
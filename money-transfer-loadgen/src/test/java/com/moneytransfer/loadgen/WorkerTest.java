@@ -0,0 +1,188 @@
+package test.java.com.moneytransfer.loadgen;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import main.java.com.moneytransfer.loadgen.LoadMode;
+import main.java.com.moneytransfer.loadgen.Results;
+import main.java.com.moneytransfer.loadgen.Worker;
+import main.java.com.moneytransfer.loadgen.Workload;
+
+public class WorkerTest {
+
+	private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private final Workload workload = new Workload("x", new String[] { "GBP" }, new long[][] { { 1, 2 } }, 0, 0, 0);
+	private StubServer server;
+
+	@After
+	public void tearDown() throws IOException {
+		server.close();
+	}
+
+	@Test
+	public void run_OpenLoopServerKeepsUp_RequestsSentOnScheduleAndWarmUpNotRecorded() throws Exception {
+
+		server = new StubServer(0);
+		Results results = new Results();
+		long first = System.nanoTime() + 50 * MILLIS;
+		long interval = 10 * MILLIS;
+		// 10 requests of warm-up, then 10 measured ones
+		run(new Worker(server.address(), workload, results, new SplittableRandom(1), LoadMode.OPEN, interval, 0, first,
+				first + 10 * interval, first + 20 * interval));
+
+		List<Long> arrivals = server.arrivals();
+		assertEquals(20, arrivals.size());
+		for (int i = 0; i < arrivals.size(); i++) {
+			// never ahead of its scheduled time
+			assertTrue("Request " + i + " was early.", arrivals.get(i) >= first + i * interval);
+		}
+		assertEquals(10, results.count());
+		assertEquals(0, results.missedCount());
+
+	}
+
+	@Test
+	public void run_OpenLoopServerStalls_UnsentRequestsCountedMissed() throws Exception {
+
+		// every response takes as long as 12 scheduled requests
+		server = new StubServer(60);
+		Results results = new Results();
+		long first = System.nanoTime() + 20 * MILLIS;
+		long interval = 5 * MILLIS;
+		run(new Worker(server.address(), workload, results, new SplittableRandom(1), LoadMode.OPEN, interval, 0, first,
+				first, first + 40 * interval));
+
+		assertTrue(results.missedCount() > 0);
+		assertEquals(server.arrivals().size(), results.count());
+		// every scheduled request is either sent or missed
+		assertEquals(40, results.count() + results.missedCount());
+
+	}
+
+	@Test
+	public void run_ClosedLoop_NoRequestMissed() throws Exception {
+
+		server = new StubServer(5);
+		Results results = new Results();
+		long first = System.nanoTime();
+		run(new Worker(server.address(), workload, results, new SplittableRandom(1), LoadMode.CLOSED, 0, 0, first,
+				first, first + 100 * MILLIS));
+
+		assertTrue(results.count() > 0);
+		assertEquals(server.arrivals().size(), results.count());
+		assertEquals(0, results.missedCount());
+
+	}
+
+	private static void run(Worker worker) throws InterruptedException {
+
+		Thread thread = new Thread(worker);
+		thread.start();
+		thread.join(10000);
+		assertFalse(thread.isAlive());
+	}
+
+	// answers every request with an empty 200 after delayMillis, one connection at a time
+	private static final class StubServer implements AutoCloseable {
+
+		private static final byte[] RESPONSE = "HTTP/1.1 200 OK\r\nContent-Length: 0\r\n\r\n"
+				.getBytes(StandardCharsets.US_ASCII);
+
+		private final ServerSocket serverSocket;
+		private final long delayMillis;
+		private final List<Long> arrivals = new ArrayList<>();
+		private final Thread thread;
+
+		StubServer(long delayMillis) throws IOException {
+
+			this.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+			this.delayMillis = delayMillis;
+			this.thread = new Thread(this::serve);
+			this.thread.setDaemon(true);
+			this.thread.start();
+		}
+
+		InetSocketAddress address() {
+			return new InetSocketAddress(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+		}
+
+		synchronized List<Long> arrivals() {
+			return new ArrayList<>(arrivals);
+		}
+
+		private void serve() {
+
+			while (!serverSocket.isClosed()) {
+				try (Socket socket = serverSocket.accept()) {
+					InputStream input = new BufferedInputStream(socket.getInputStream());
+					OutputStream output = socket.getOutputStream();
+					while (readRequest(input)) {
+						synchronized (this) {
+							arrivals.add(System.nanoTime());
+						}
+						if (delayMillis > 0) {
+							Thread.sleep(delayMillis);
+						}
+						output.write(RESPONSE);
+						output.flush();
+					}
+				} catch (IOException e) {
+					// closed by the worker or the test
+				} catch (InterruptedException e) {
+					return;
+				}
+			}
+		}
+
+		// false once the client closed the connection
+		private static boolean readRequest(InputStream input) throws IOException {
+
+			StringBuilder head = new StringBuilder();
+			while (head.length() < 4 || !head.substring(head.length() - 4).equals("\r\n\r\n")) {
+				int b = input.read();
+				if (b < 0) {
+					return false;
+				}
+				head.append((char) b);
+			}
+			int length = 0;
+			for (String line : head.toString().split("\r\n")) {
+				if (line.regionMatches(true, 0, "Content-Length:", 0, 15)) {
+					length = Integer.parseInt(line.substring(15).trim());
+				}
+			}
+			for (int i = 0; i < length; i++) {
+				if (input.read() < 0) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public void close() throws IOException {
+			serverSocket.close();
+		}
+
+	}
+
+}
@@ -0,0 +1,140 @@
+package test.java.com.moneytransfer.loadgen;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.SplittableRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import main.java.com.moneytransfer.loadgen.Workload;
+
+public class WorkloadTest {
+
+	private static final String[] CURRENCIES = { "GBP", "EUR", "USD" };
+	private static final Pattern TRANSFER = Pattern.compile("\\{\"sender\":(\\d+),\"receiver\":(\\d+),"
+			+ "\"amount\":\"([^\"]*)\",\"currency\":\"([A-Z]{3})\"\\}$");
+	private static final int REQUESTS = 100000;
+
+	@Test
+	public void next_CrossCurrencyRatio_ShareOfTransfersToOtherCurrencies() {
+
+		Workload workload = new Workload("x", CURRENCIES, accounts(3, 50), 1.0, 0, 0.3);
+		SplittableRandom random = new SplittableRandom(7);
+
+		int cross = 0;
+		for (int i = 0; i < REQUESTS; i++) {
+			Workload.Request request = workload.next(random);
+			assertEquals(Workload.TRANSFER, request.kind);
+			Matcher transfer = parse(request);
+			int senderCurrency = currencyOf(Long.parseLong(transfer.group(1)));
+			int receiverCurrency = currencyOf(Long.parseLong(transfer.group(2)));
+			// the amount is always in the sender's currency
+			assertEquals(CURRENCIES[senderCurrency], transfer.group(4));
+			if (senderCurrency != receiverCurrency) {
+				cross++;
+			}
+		}
+
+		assertEquals(0.3, (double) cross / REQUESTS, 0.01);
+
+	}
+
+	@Test
+	public void next_SkewedPopularity_NeverTransfersToSender() {
+
+		// two accounts each and a steep skew, so sender and receiver mostly draw the same rank
+		Workload workload = new Workload("x", CURRENCIES, accounts(3, 2), 3.0, 0, 0.1);
+		SplittableRandom random = new SplittableRandom(11);
+
+		for (int i = 0; i < REQUESTS; i++) {
+			Matcher transfer = parse(workload.next(random));
+			assertNotEquals(transfer.group(1), transfer.group(2));
+		}
+
+	}
+
+	@Test
+	public void next_Transfer_AmountFormattedBetweenOneCentAndOneUnit() {
+
+		Workload workload = new Workload("x", new String[] { "GBP" }, accounts(1, 10), 0, 0, 0.5);
+		SplittableRandom random = new SplittableRandom(3);
+
+		boolean[] seen = new boolean[101];
+		for (int i = 0; i < REQUESTS; i++) {
+			String amount = parse(workload.next(random)).group(3);
+			assertTrue(amount, amount.matches("[01]\\.\\d\\d"));
+			int cents = Integer.parseInt(amount.replace(".", ""));
+			assertTrue(amount, cents >= 1 && cents <= 100);
+			seen[cents] = true;
+		}
+		// every amount turns up, the smallest and largest ones included
+		for (int cents = 1; cents <= 100; cents++) {
+			assertTrue("Missing amount - " + cents, seen[cents]);
+		}
+
+	}
+
+	@Test
+	public void next_CreateRatioOne_OnlyCreateRequests() {
+
+		Workload workload = new Workload("x", CURRENCIES, accounts(3, 2), 1.0, 1, 0);
+		SplittableRandom random = new SplittableRandom(5);
+
+		for (int i = 0; i < 1000; i++) {
+			Workload.Request request = workload.next(random);
+			assertEquals(Workload.CREATE, request.kind);
+			String text = new String(request.bytes, StandardCharsets.UTF_8);
+			assertTrue(text, text.startsWith("POST /create HTTP/1.1\r\n"));
+			assertTrue(text, text.matches("(?s).*\\{\"amount\":\"1000.00\",\"currency\":\"(GBP|EUR|USD)\"\\}$"));
+		}
+
+	}
+
+	@Test
+	public void next_Transfer_ContentLengthMatchesBody() {
+
+		Workload workload = new Workload("localhost:8080", CURRENCIES, accounts(3, 5), 1.0, 0, 0.5);
+		String text = new String(workload.next(new SplittableRandom(1)).bytes, StandardCharsets.UTF_8);
+
+		String[] parts = text.split("\r\n\r\n", 2);
+		assertTrue(parts[0], parts[0].startsWith("POST /transfer HTTP/1.1\r\nHost: localhost:8080\r\n"));
+		assertTrue(parts[0], parts[0].contains("\r\nContent-Length: " + parts[1].length()));
+
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void new_CurrencyWithOneAccount_IllegalArgumentException() {
+		new Workload("x", new String[] { "GBP" }, new long[][] { { 1 } }, 1.0, 0, 0);
+	}
+
+	// ids encode their currency, 1000 * (currency + 1) + rank
+	private static long[][] accounts(int currencies, int perCurrency) {
+
+		long[][] accounts = new long[currencies][perCurrency];
+		for (int c = 0; c < currencies; c++) {
+			for (int rank = 0; rank < perCurrency; rank++) {
+				accounts[c][rank] = 1000L * (c + 1) + rank;
+			}
+		}
+		return accounts;
+	}
+
+	private static int currencyOf(long id) {
+		return (int) (id / 1000) - 1;
+	}
+
+	private static Matcher parse(Workload.Request request) {
+
+		String text = new String(request.bytes, StandardCharsets.UTF_8);
+		assertTrue(text, text.startsWith("POST /transfer HTTP/1.1\r\n"));
+		Matcher transfer = TRANSFER.matcher(text);
+		assertTrue(text, transfer.find());
+		return transfer;
+	}
+
+}
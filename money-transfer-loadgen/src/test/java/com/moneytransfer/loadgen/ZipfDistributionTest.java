@@ -0,0 +1,70 @@
+package test.java.com.moneytransfer.loadgen;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+
+import main.java.com.moneytransfer.loadgen.ZipfDistribution;
+
+public class ZipfDistributionTest {
+
+	private static final int SAMPLES = 1000000;
+
+	@Test
+	public void sample_ExponentZero_UniformOverRanks() {
+
+		int[] counts = sample(new ZipfDistribution(10, 0), 10);
+
+		for (int count : counts) {
+			assertEquals(0.1, (double) count / SAMPLES, 0.005);
+		}
+
+	}
+
+	@Test
+	public void sample_ExponentOne_RanksInverseToTheirPosition() {
+
+		int n = 10;
+		int[] counts = sample(new ZipfDistribution(n, 1), n);
+
+		double harmonic = 0;
+		for (int rank = 0; rank < n; rank++) {
+			harmonic += 1.0 / (rank + 1);
+		}
+		for (int rank = 0; rank < n; rank++) {
+			assertEquals(1 / ((rank + 1) * harmonic), (double) counts[rank] / SAMPLES, 0.005);
+		}
+
+	}
+
+	@Test
+	public void sample_SingleRank_AlwaysZero() {
+
+		int[] counts = sample(new ZipfDistribution(1, 1.5), 1);
+		assertEquals(SAMPLES, counts[0]);
+
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void new_NegativeExponent_IllegalArgumentException() {
+		new ZipfDistribution(10, -0.5);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void new_NoRanks_IllegalArgumentException() {
+		new ZipfDistribution(0, 1);
+	}
+
+	private static int[] sample(ZipfDistribution distribution, int n) {
+
+		SplittableRandom random = new SplittableRandom(42);
+		int[] counts = new int[n];
+		for (int i = 0; i < SAMPLES; i++) {
+			counts[distribution.sample(random)]++;
+		}
+		return counts;
+	}
+
+}
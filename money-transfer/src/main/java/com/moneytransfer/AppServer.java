@@ -1,28 +1,312 @@
 package main.java.com.moneytransfer;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import com.sun.net.httpserver.HttpContext;
 import com.sun.net.httpserver.HttpServer;
 
+import main.java.com.moneytransfer.admission.AdmissionControl;
+import main.java.com.moneytransfer.api.IdempotencyCache;
+import main.java.com.moneytransfer.api.ImportHandler;
+import main.java.com.moneytransfer.api.JsonCodec;
+import main.java.com.moneytransfer.api.MetricsHandler;
+import main.java.com.moneytransfer.api.RatesHandler;
 import main.java.com.moneytransfer.api.RequestHandler;
+import main.java.com.moneytransfer.binary.BinaryServer;
+import main.java.com.moneytransfer.bulk.AccountImporter;
+import main.java.com.moneytransfer.bulk.ImportFormat;
+import main.java.com.moneytransfer.bulk.ImportResult;
+import main.java.com.moneytransfer.config.EngineMode;
+import main.java.com.moneytransfer.config.ExecutorMode;
+import main.java.com.moneytransfer.config.ServerConfig;
+import main.java.com.moneytransfer.config.ServerMode;
+import main.java.com.moneytransfer.exception.IncorrectInputException;
+import main.java.com.moneytransfer.fx.ExchangeRates;
+import main.java.com.moneytransfer.journal.DurabilityMode;
+import main.java.com.moneytransfer.journal.Journal;
+import main.java.com.moneytransfer.journal.JournalRecovery;
+import main.java.com.moneytransfer.journal.Snapshot;
+import main.java.com.moneytransfer.ledger.Ledger;
+import main.java.com.moneytransfer.log.AccessLog;
+import main.java.com.moneytransfer.metrics.Metrics;
+import main.java.com.moneytransfer.repository.AccountStore;
+import main.java.com.moneytransfer.repository.OffHeapAccountRepository;
+import main.java.com.moneytransfer.service.AccountLocks;
 import main.java.com.moneytransfer.service.AccountService;
+import main.java.com.moneytransfer.service.TransferEngine;
 
 public class AppServer {
 
 	public static void main(String[] args) throws IOException {
 
-		final RequestHandler requestHandler = new RequestHandler(new AccountService());
+		ServerConfig config = ServerConfig.fromArgs(args);
 
-		int port = 8080;
-		HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+		final AccessLog accessLog = AccessLog.create(config);
+		final String snapshotFile = config.get("snapshot.file", null);
+		final Path snapshotPath = snapshotFile == null ? null : Paths.get(snapshotFile);
+
+		final EngineMode engineMode = config.getEngineMode();
+		// shards apply a cross-shard transfer in two steps, a fuzzy snapshot could see only one
+		if (engineMode == EngineMode.SHARDED && snapshotPath != null) {
+			throw new IllegalArgumentException("Snapshots are not supported with the sharded engine.");
+		}
+
+		long startTime = System.nanoTime();
+		final AccountStore accountRepository = engineMode.createRepository(config,
+				snapshotPath == null ? 0 : Snapshot.accountCount(snapshotPath),
+				config.getLong("store.capacity", OffHeapAccountRepository.DEFAULT_CAPACITY));
+		final Snapshot snapshot = snapshotPath == null ? null : Snapshot.load(snapshotPath, accountRepository);
+		final Journal journal = openJournal(config, accountRepository, snapshot);
+		System.out.println("Recovered " + accountRepository.size() + " accounts in "
+				+ TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) + "ms.");
+
+		final String ratesFile = config.get("fx.file", null);
+		final ExchangeRates exchangeRates = new ExchangeRates();
+		if (ratesFile != null) {
+			exchangeRates.load(Paths.get(ratesFile));
+		}
+
+		final AccountLocks accountLocks = engineMode.createLocks();
+		// history of every account since startup, kept in memory up to ledger.maxMB
+		final Ledger ledger = config.getBoolean("ledger.enabled", false)
+				? new Ledger(accountRepository.size(), config.getLong("ledger.maxMB", Ledger.DEFAULT_MAX_BYTES >> 20) << 20)
+				: Ledger.disabled();
+		final AccountService accountService = new AccountService(accountRepository, accountLocks, journal, exchangeRates,
+				ledger);
+		final AccountImporter importer = new AccountImporter(accountRepository, accountService, new JsonCodec(),
+				config.getInt("import.threads", Runtime.getRuntime().availableProcessors()),
+				config.getInt("import.chunkKB", AccountImporter.DEFAULT_CHUNK_BYTES / 1024) * 1024);
+		// accounts migrated from elsewhere, stored before the engine starts or any request is served
+		final String importFile = config.get("import.file", null);
+		if (importFile != null) {
+			importAccounts(importer, Paths.get(importFile), config.get("import.format", null));
+		}
+		// responses of queued transfers are written on these threads, not on the engine's
+		final ExecutorService completionExecutor = engineMode == EngineMode.LOCKING ? null
+				: ExecutorMode.FIXED.create(config.getInt("engine.completionThreads", Runtime.getRuntime().availableProcessors()));
+		final TransferEngine transferEngine = engineMode.create(accountService, accountRepository, accountLocks, config,
+				completionExecutor);
+		// retried transfers with the same Idempotency-Key get the first response, for a day by default
+		final IdempotencyCache idempotencyCache = new IdempotencyCache(config.getInt("idempotency.maxEntries", 100000),
+				TimeUnit.SECONDS.toMillis(config.getLong("idempotency.ttlSeconds", 86400)));
+		final Metrics metrics = config.getBoolean("metrics.enabled", true) ? new Metrics() : Metrics.disabled();
+		if (metrics.isEnabled()) {
+			registerMetrics(metrics, idempotencyCache, accessLog, ledger);
+		}
+
+		int port = config.getPort();
+		ExecutorMode executorMode = config.getExecutorMode();
+		ExecutorService executor = executorMode.create(config.getThreads());
+
+		// sheds load with 429 before requests queue for the executor
+		final AdmissionControl admission = AdmissionControl.create(config, executor);
+		if (admission.isEnabled() && metrics.isEnabled()) {
+			registerMetrics(metrics, admission);
+		}
+		final RequestHandler requestHandler = new RequestHandler(accountService, transferEngine, new JsonCodec(), accessLog,
+				idempotencyCache, metrics, admission);
+
+		ServerMode serverMode = config.getServerMode();
+		HttpServer server = serverMode.create(new InetSocketAddress(port), config);
 		HttpContext context = server.createContext("/");
 		context.setHandler(arg0 -> requestHandler.handle(arg0));
+		String adminToken = config.get("admin.token", null);
+		if (adminToken != null) {
+			server.createContext("/admin/rates", new RatesHandler(exchangeRates, adminToken, new JsonCodec(), accessLog));
+			server.createContext("/admin/accounts/import", new ImportHandler(importer, adminToken, new JsonCodec(),
+					accessLog, admission.isEnabled() ? executor : null));
+		}
+		if (metrics.isEnabled()) {
+			server.createContext("/metrics", new MetricsHandler(metrics));
+		}
+		// with admission control the request handler hands requests to the executor itself, the
+		// metrics and admin endpoints are served on the dispatcher
+		server.setExecutor(admission.isEnabled() ? null : executor);
 		server.start();
+
+		// internal clients on the binary protocol, served by the same service and engine
+		int binaryPort = config.getInt("binary.port", 0);
+		final BinaryServer binaryServer = binaryPort <= 0 ? null
+				: new BinaryServer(accountService, transferEngine, metrics,
+						config.getInt("binary.selectors", Runtime.getRuntime().availableProcessors()),
+						config.getInt("binary.maxInFlight", 1024));
+		if (binaryServer != null) {
+			binaryServer.bind(new InetSocketAddress(binaryPort), config.getBacklog());
+			binaryServer.setExecutor(executor);
+			binaryServer.start();
+			if (metrics.isEnabled()) {
+				metrics.addGauge("binary_connections", "Open connections of the binary protocol.",
+						binaryServer::getConnectionCount);
+			}
+		}
+
+		final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "scheduler");
+			thread.setDaemon(true);
+			return thread;
+		});
+		long snapshotInterval = config.getLong("snapshot.intervalSeconds", 300);
+		if (snapshotPath != null && snapshotInterval > 0) {
+			scheduler.scheduleWithFixedDelay(() -> takeSnapshot(snapshotPath, accountRepository, accountLocks, journal),
+					snapshotInterval, snapshotInterval, TimeUnit.SECONDS);
+		}
+		long ratesReloadInterval = config.getLong("fx.reloadSeconds", 60);
+		if (ratesFile != null && ratesReloadInterval > 0) {
+			scheduler.scheduleWithFixedDelay(() -> reloadRates(Paths.get(ratesFile), exchangeRates),
+					ratesReloadInterval, ratesReloadInterval, TimeUnit.SECONDS);
+		}
+
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			server.stop(0);
+			if (binaryServer != null) {
+				binaryServer.stop();
+			}
+			if (executor != null) {
+				executor.shutdown();
+			}
+			transferEngine.close();
+			if (completionExecutor != null) {
+				completionExecutor.shutdown();
+			}
+			scheduler.shutdownNow();
+			if (snapshotPath != null) {
+				takeSnapshot(snapshotPath, accountRepository, accountLocks, journal);
+			}
+			try {
+				journal.close();
+			} catch (IOException e) {
+				System.err.println("Journal cannot be closed - " + e.getMessage());
+			}
+			if (idempotencyCache.isEnabled()) {
+				System.out.println("Idempotency cache hits=" + idempotencyCache.getHits() + ", misses="
+						+ idempotencyCache.getMisses() + ", evictions=" + idempotencyCache.getEvictions()
+						+ ", expirations=" + idempotencyCache.getExpirations() + ".");
+			}
+			try {
+				accessLog.close();
+			} catch (IOException e) {
+				System.err.println("Access log cannot be closed - " + e.getMessage());
+			}
+		}));
 		
-		System.out.println("Server started on port " + port + "...");
+		System.out.println("Server started on port " + port + " (server=" + serverMode.name().toLowerCase()
+				+ ", executor=" + executorMode.name().toLowerCase()
+				+ ", threads=" + config.getThreads() + ", backlog=" + config.getBacklog()
+				+ ", engine=" + engineMode.name().toLowerCase()
+				+ ", store=" + config.getStoreMode().name().toLowerCase()
+				+ ", durability=" + journal.getMode().name().toLowerCase()
+				+ (admission.isEnabled() ? ", admission limit=" + admission.getLimit() : "")
+				+ (binaryServer == null ? "" : ", binary port=" + binaryPort) + ")...");
+
+	}
+
+	// replays the journal into the repository before any request is served, only the part
+	// after the snapshot when one was loaded
+	private static Journal openJournal(ServerConfig config, AccountStore accountRepository, Snapshot snapshot)
+			throws IOException {
+
+		String file = config.get("journal.file", null);
+		if (file == null) {
+			return Journal.disabled();
+		}
+
+		Path path = Paths.get(file);
+		DurabilityMode mode = DurabilityMode.fromName(config.get("journal.durability", "group-commit"));
+		JournalRecovery recovery = new JournalRecovery(accountRepository);
+		Journal.Replay replay = snapshot == null ?
+				Journal.replay(path, recovery)
+				: Journal.replay(path, snapshot.getJournalOffset(), snapshot.getJournalLsn(), recovery);
+		System.out.println("Replayed " + replay.getRecords() + " journal records.");
+
+		return Journal.open(path, mode, config.getLong("journal.maxDelayMicros", 1000), replay);
+	}
+
+	private static void importAccounts(AccountImporter importer, Path path, String formatName) throws IOException {
+
+		ImportFormat format = formatName == null ? ImportFormat.fromFileName(path.toString())
+				: ImportFormat.fromName(formatName);
+		ImportResult result;
+		try (InputStream in = Files.newInputStream(path)) {
+			result = importer.importFrom(in, format, soFar -> System.out.println("Importing accounts... "
+					+ soFar.getImported() + " imported, " + soFar.getRejected() + " rejected, "
+					+ soFar.getBytes() / (1024 * 1024) + "MB read."));
+		} catch (IncorrectInputException e) {
+			throw new IllegalArgumentException("Accounts cannot be imported from " + path + " - " + e.getMessage());
+		}
+
+		long millis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(result.getNanos()));
+		System.out.println("Imported " + result.getImported() + " accounts"
+				+ (result.getRecords() > 0 ? " (ids " + result.getFirstId() + " to " + result.getLastId() + ")" : "")
+				+ ", rejected " + result.getRejected() + " in " + millis + "ms (" + result.getRecords() * 1000 / millis
+				+ " records/s).");
+		for (String error : result.getErrors()) {
+			System.err.println("Account not imported - " + error);
+		}
+	}
+
+	private static void reloadRates(Path path, ExchangeRates exchangeRates) {
+
+		try {
+			if (exchangeRates.reloadIfModified(path)) {
+				System.out.println("Reloaded FX rates for " + exchangeRates.current().getCurrencies() + ".");
+			}
+		} catch (IOException | RuntimeException e) {
+			System.err.println("FX rates cannot be reloaded - " + e.getMessage());
+		}
+	}
+
+	private static void registerMetrics(Metrics metrics, IdempotencyCache idempotencyCache, AccessLog accessLog,
+			Ledger ledger) {
+
+		if (idempotencyCache.isEnabled()) {
+			metrics.addCounter("idempotency_hits_total", "Requests answered from the idempotency cache.",
+					idempotencyCache::getHits);
+			metrics.addCounter("idempotency_misses_total", "Requests with a key not in the idempotency cache.",
+					idempotencyCache::getMisses);
+			metrics.addCounter("idempotency_evictions_total", "Idempotency entries evicted for space.",
+					idempotencyCache::getEvictions);
+			metrics.addCounter("idempotency_expirations_total", "Idempotency entries expired.",
+					idempotencyCache::getExpirations);
+			metrics.addGauge("idempotency_entries", "Entries in the idempotency cache.", idempotencyCache::size);
+		}
+		if (accessLog.isEnabled()) {
+			metrics.addCounter("access_log_dropped_total", "Access log lines dropped because the log fell behind or could not be written.",
+					accessLog::getDropped);
+		}
+		if (ledger.isEnabled()) {
+			metrics.addGauge("ledger_bytes", "Off-heap bytes taken by the transaction history.", ledger::getAllocatedBytes);
+		}
+	}
+
+	private static void registerMetrics(Metrics metrics, AdmissionControl admission) {
+
+		metrics.addGauge("admission_limit", "Requests that may be in flight before new ones get 429.",
+				admission::getLimit);
+		metrics.addGauge("admission_in_flight", "Admitted requests not yet answered.", admission::getInFlight);
+		metrics.addGauge("admission_queued", "Admitted requests waiting for a worker thread.", admission::getQueued);
+		metrics.addCounter("admission_rejected_total", "Requests answered with 429 at the concurrency limit.",
+				admission::getRejected);
+		metrics.addCounter("admission_queue_full_total",
+				"Requests answered with 429 because too many were waiting for a worker thread.", admission::getQueueFull);
+	}
+
+	private static void takeSnapshot(Path path, AccountStore accountRepository, AccountLocks accountLocks,
+			Journal journal) {
 
+		try {
+			Snapshot.write(path, accountRepository, accountLocks, journal);
+		} catch (IOException | RuntimeException e) {
+			System.err.println("Snapshot cannot be written - " + e.getMessage());
+		}
 	}
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,139 @@
+package main.java.com.moneytransfer.admission;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import main.java.com.moneytransfer.config.ServerConfig;
+
+// Decides which requests the server takes on, before they are queued for a worker thread.
+//
+// A request is admitted while fewer than the limit are in flight, counted from admission until
+// completed is called, and fewer than maxQueue admitted ones are still waiting for a worker.
+// Admitted requests run on the executor, or at once without one. The rest are turned away
+// and counted, for the caller to answer at once instead of adding to the queue.
+public class AdmissionControl {
+
+	private final boolean enabled;
+	private final Executor executor;
+	private final GradientLimit limit;
+	private final int maxQueue;
+	private final int retryAfterSeconds;
+
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final AtomicInteger queued = new AtomicInteger();
+	private final LongAdder rejected = new LongAdder();
+	private final LongAdder queueFull = new LongAdder();
+
+	private AdmissionControl(boolean enabled, Executor executor, GradientLimit limit, int maxQueue,
+			int retryAfterSeconds) {
+		this.enabled = enabled;
+		this.executor = executor;
+		this.limit = limit;
+		this.maxQueue = maxQueue;
+		this.retryAfterSeconds = retryAfterSeconds;
+	}
+
+	public AdmissionControl(Executor executor, GradientLimit limit, int maxQueue, int retryAfterSeconds) {
+		this(true, executor, limit, maxQueue, retryAfterSeconds);
+	}
+
+	public static AdmissionControl disabled() {
+		return new AdmissionControl(false, null, null, 0, 0);
+	}
+
+	// admission.enabled, admission.initialLimit, admission.minLimit, admission.maxLimit,
+	// admission.window (requests per limit update), admission.maxQueue and admission.retryAfterSeconds
+	public static AdmissionControl create(ServerConfig config, Executor executor) {
+
+		if (!config.getBoolean("admission.enabled", true)) {
+			return disabled();
+		}
+		GradientLimit limit = new GradientLimit(config.getInt("admission.initialLimit", 100),
+				config.getInt("admission.minLimit", 10), config.getInt("admission.maxLimit", 1000),
+				config.getInt("admission.window", 100));
+		return new AdmissionControl(executor, limit, config.getInt("admission.maxQueue", 200),
+				config.getInt("admission.retryAfterSeconds", 1));
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	// false when the request is turned away, it is not run then
+	public boolean tryExecute(Runnable request) {
+
+		if (!enabled) {
+			request.run();
+			return true;
+		}
+		int current;
+		do {
+			current = inFlight.get();
+			if (current >= limit.getLimit()) {
+				rejected.increment();
+				return false;
+			}
+		} while (!inFlight.compareAndSet(current, current + 1));
+
+		if (executor == null) {
+			request.run();
+			return true;
+		}
+		if (queued.incrementAndGet() > maxQueue) {
+			queued.decrementAndGet();
+			inFlight.decrementAndGet();
+			queueFull.increment();
+			return false;
+		}
+		try {
+			executor.execute(() -> {
+				queued.decrementAndGet();
+				request.run();
+			});
+			return true;
+		} catch (RejectedExecutionException e) {
+			// shutting down
+			queued.decrementAndGet();
+			inFlight.decrementAndGet();
+			rejected.increment();
+			return false;
+		}
+	}
+
+	// once per admitted request, latency from before it was admitted to its response
+	public void completed(long latencyNanos) {
+
+		if (enabled) {
+			limit.sample(latencyNanos, inFlight.decrementAndGet());
+		}
+	}
+
+	public int getRetryAfterSeconds() {
+		return retryAfterSeconds;
+	}
+
+	public int getLimit() {
+		return enabled ? limit.getLimit() : 0;
+	}
+
+	public int getInFlight() {
+		return inFlight.get();
+	}
+
+	public int getQueued() {
+		return queued.get();
+	}
+
+	// turned away at the concurrency limit
+	public long getRejected() {
+		return rejected.sum();
+	}
+
+	// turned away with too many requests waiting for a worker
+	public long getQueueFull() {
+		return queueFull.sum();
+	}
+
+}
@@ -0,0 +1,83 @@
+package main.java.com.moneytransfer.admission;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Concurrency limit that follows the latency of the requests it lets in.
+//
+// Latencies are averaged over windows of windowSamples requests and compared with a slow
+// moving average of past windows. While a window is no slower than TOLERANCE times the long
+// term, the limit grows by about its square root; once requests queue and get slower, it
+// shrinks in proportion, by at most half per window. Changes are smoothed and kept between
+// minLimit and maxLimit. A limit that is not being used does not grow, nothing shows it
+// could be.
+public class GradientLimit {
+
+	private static final double TOLERANCE = 1.5;
+	private static final double SMOOTHING = 0.2;
+	private static final int LONG_WINDOWS = 20;
+
+	private final int minLimit;
+	private final int maxLimit;
+	private final int windowSamples;
+
+	private final AtomicLong samples = new AtomicLong();
+	private final LongAdder latencySum = new LongAdder();
+	private volatile int limit;
+
+	// guarded by this
+	private double estimate;
+	private double longLatency;
+
+	public GradientLimit(int initialLimit, int minLimit, int maxLimit, int windowSamples) {
+
+		if (minLimit < 1 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+			throw new IllegalArgumentException("Limits must be 1 <= min <= initial <= max - " + minLimit + ", "
+					+ initialLimit + ", " + maxLimit);
+		}
+		if (windowSamples < 1) {
+			throw new IllegalArgumentException("Window must be positive - " + windowSamples);
+		}
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.windowSamples = windowSamples;
+		this.estimate = initialLimit;
+		this.limit = initialLimit;
+	}
+
+	public int getLimit() {
+		return limit;
+	}
+
+	// latency of a completed request and the requests still in flight after it
+	public void sample(long latencyNanos, int inFlight) {
+
+		latencySum.add(latencyNanos);
+		// windows are cut by count, samples racing the cut may land in the neighbouring window
+		if (samples.incrementAndGet() % windowSamples == 0) {
+			update(latencySum.sumThenReset() / (double) windowSamples, inFlight);
+		}
+	}
+
+	private synchronized void update(double latency, int inFlight) {
+
+		if (longLatency == 0) {
+			longLatency = latency;
+		} else {
+			longLatency += (latency - longLatency) / LONG_WINDOWS;
+			// well below the long term, an overload is over and is forgotten faster
+			if (longLatency > 2 * latency) {
+				longLatency *= 0.95;
+			}
+		}
+
+		double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longLatency / Math.max(latency, 1)));
+		double target = estimate * gradient + Math.sqrt(estimate);
+		if (target > estimate && inFlight < estimate / 2) {
+			return;
+		}
+		estimate = Math.max(minLimit, Math.min(maxLimit, estimate * (1 - SMOOTHING) + target * SMOOTHING));
+		limit = (int) estimate;
+	}
+
+}
@@ -0,0 +1,248 @@
+package main.java.com.moneytransfer.api;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+// Responses of requests sent with an Idempotency-Key header, so that a retried request is
+// answered with the first response instead of being executed again.
+//
+// Keys are split by hash into segments, each an insertion-ordered map under its own lock.
+// An entry expires ttl after its response was stored, and the oldest entries are evicted
+// when a segment is full. An entry whose request is still running is never evicted, its
+// duplicates are queued and get the response once it is stored.
+public class IdempotencyCache {
+
+	private static final int SEGMENTS = 16;
+	private static final int MIN_SEGMENT_SIZE = 64;
+
+	private final Segment[] segments;
+	private final long ttlNanos;
+	private final LongSupplier clock;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder expirations = new LongAdder();
+
+	public static IdempotencyCache disabled() {
+		return new IdempotencyCache(0, 0, System::nanoTime);
+	}
+
+	public IdempotencyCache(int maxEntries, long ttlMillis) {
+		this(maxEntries, ttlMillis, System::nanoTime);
+	}
+
+	public IdempotencyCache(int maxEntries, long ttlMillis, LongSupplier clock) {
+
+		if (maxEntries < 0 || ttlMillis < 0) {
+			throw new IllegalArgumentException("Idempotency cache size and ttl cannot be negative.");
+		}
+
+		// small caches are not split, each segment evicts on its own share of the entries
+		int segmentCount = maxEntries == 0 ? 0 : Math.max(1, Math.min(SEGMENTS, maxEntries / MIN_SEGMENT_SIZE));
+		this.segments = new Segment[segmentCount];
+		for (int i = 0; i < segmentCount; i++) {
+			// the first segments take the remainder, so that the sizes add up to maxEntries
+			this.segments[i] = new Segment(maxEntries / segmentCount + (i < maxEntries % segmentCount ? 1 : 0));
+		}
+		// no ttl keeps the responses until they are evicted
+		this.ttlNanos = ttlMillis == 0 ? Long.MAX_VALUE : TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+		this.clock = clock;
+	}
+
+	public boolean isEnabled() {
+		return segments.length > 0;
+	}
+
+	// Returns true when the request is the first with the key, it must then be executed and
+	// its response stored with complete. Otherwise the listener gets the stored response,
+	// at once or when the first request completes.
+	public boolean begin(String key, Consumer<Response> listener) {
+
+		Segment segment = segmentOf(key);
+		Response response;
+		synchronized (segment) {
+			long now = clock.getAsLong();
+			Entry entry = segment.entries.get(key);
+			if (entry != null && entry.response != null && now - entry.storedAt >= ttlNanos) {
+				segment.entries.remove(key);
+				expirations.increment();
+				entry = null;
+			}
+
+			if (entry == null) {
+				segment.entries.put(key, new Entry());
+				segment.trim(now);
+				misses.increment();
+				return true;
+			}
+
+			hits.increment();
+			if (entry.response == null) {
+				entry.listeners.add(listener);
+				return false;
+			}
+			response = entry.response;
+		}
+
+		listener.accept(response);
+		return false;
+	}
+
+	// stores the response of the first request and passes it to the duplicates waiting for it
+	public void complete(String key, Response response) {
+
+		Segment segment = segmentOf(key);
+		List<Consumer<Response>> listeners;
+		synchronized (segment) {
+			Entry entry = segment.entries.get(key);
+			if (entry == null) {
+				return;
+			}
+			entry.response = response;
+			entry.storedAt = clock.getAsLong();
+			listeners = entry.listeners;
+			entry.listeners = null;
+			segment.trim(entry.storedAt);
+		}
+
+		for (Consumer<Response> listener : listeners) {
+			listener.accept(response);
+		}
+	}
+
+	// Forgets the key of a first request that failed before it stored a response, for example
+	// because its body could not be read, so that a retry runs it again. The duplicates already
+	// waiting get the given response. Does nothing once a response is stored.
+	public void abandon(String key, Response response) {
+
+		Segment segment = segmentOf(key);
+		List<Consumer<Response>> listeners;
+		synchronized (segment) {
+			Entry entry = segment.entries.get(key);
+			if (entry == null || entry.response != null) {
+				return;
+			}
+			segment.entries.remove(key);
+			listeners = entry.listeners;
+		}
+
+		for (Consumer<Response> listener : listeners) {
+			listener.accept(response);
+		}
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	public double getHitRate() {
+
+		long hitCount = hits.sum();
+		long total = hitCount + misses.sum();
+		return total == 0 ? 0 : (double) hitCount / total;
+	}
+
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	public long getExpirations() {
+		return expirations.sum();
+	}
+
+	public long size() {
+
+		long size = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				size += segment.entries.size();
+			}
+		}
+		return size;
+	}
+
+	private Segment segmentOf(String key) {
+
+		int hash = key.hashCode();
+		return segments[((hash ^ (hash >>> 16)) & 0x7FFFFFFF) % segments.length];
+	}
+
+	private class Segment {
+
+		private final int maxEntries;
+		private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+
+		Segment(int maxEntries) {
+			this.maxEntries = maxEntries;
+		}
+
+		// drops expired and, while the segment is full, the oldest completed entries from the
+		// head, skipping the entries of requests still running
+		void trim(long now) {
+
+			Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+			while (iterator.hasNext()) {
+				Entry entry = iterator.next().getValue();
+				if (entry.response == null) {
+					continue;
+				}
+				if (now - entry.storedAt >= ttlNanos) {
+					expirations.increment();
+				} else if (entries.size() > maxEntries) {
+					evictions.increment();
+				} else {
+					return;
+				}
+				iterator.remove();
+			}
+		}
+
+	}
+
+	private static class Entry {
+
+		private Response response;
+		private long storedAt;
+		private List<Consumer<Response>> listeners = new ArrayList<>(0);
+
+	}
+
+	public static class Response {
+
+		private final int code;
+		private final String contentType;
+		private final byte[] body;
+
+		public Response(int code, String contentType, byte[] body) {
+			this.code = code;
+			this.contentType = contentType;
+			this.body = body;
+		}
+
+		public int getCode() {
+			return code;
+		}
+
+		public String getContentType() {
+			return contentType;
+		}
+
+		public byte[] getBody() {
+			return body;
+		}
+
+	}
+
+}
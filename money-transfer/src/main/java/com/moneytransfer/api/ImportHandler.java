@@ -0,0 +1,143 @@
+package main.java.com.moneytransfer.api;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import main.java.com.moneytransfer.bulk.AccountImporter;
+import main.java.com.moneytransfer.bulk.ImportFormat;
+import main.java.com.moneytransfer.bulk.ImportResult;
+import main.java.com.moneytransfer.exception.IncorrectInputException;
+import main.java.com.moneytransfer.log.AccessLog;
+
+// Admin endpoint for bulk account creation. POST streams the body through the importer, as
+// CSV or NDJSON by the format query parameter or else the Content-Type, and answers with the
+// counts, the ids given out and the first rejected lines. Needs the admin token in a header.
+// An import can take long, it runs on the executor when one is given, not on the dispatcher.
+public class ImportHandler implements HttpHandler {
+
+	private static final String JSON_CONTENT_TYPE = "application/json; charset=utf-8";
+	private static final String FORMAT_PARAMETER = "format=";
+
+	private final AccountImporter importer;
+	private final byte[] adminToken;
+	private final JsonCodec jsonCodec;
+	private final AccessLog accessLog;
+	private final Executor executor;
+
+	public ImportHandler(AccountImporter importer, String adminToken, JsonCodec jsonCodec, AccessLog accessLog,
+			Executor executor) {
+		this.importer = importer;
+		this.adminToken = adminToken.getBytes(StandardCharsets.UTF_8);
+		this.jsonCodec = jsonCodec;
+		this.accessLog = accessLog;
+		this.executor = executor;
+	}
+
+	@Override
+	public void handle(HttpExchange exchange) throws IOException {
+
+		if (executor == null) {
+			serve(exchange);
+			return;
+		}
+		try {
+			executor.execute(() -> {
+				try {
+					serve(exchange);
+				} catch (IOException | RuntimeException e) {
+					exchange.close();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			exchange.close();
+		}
+	}
+
+	private void serve(HttpExchange exchange) throws IOException {
+
+		long startTime = System.nanoTime();
+		String requestMethod = exchange.getRequestMethod();
+		int responseCode = 0;
+
+		try {
+			if (!RatesHandler.isAuthorized(exchange, adminToken)) {
+				responseCode = 401;
+				sendText(exchange, responseCode, "Admin token is missing or incorrect.");
+			} else if ("POST".equalsIgnoreCase(requestMethod)) {
+				responseCode = importAccounts(exchange);
+			} else {
+				responseCode = 405;
+				sendText(exchange, responseCode, "Incorrect HTTP method. Only POST is allowed for this request.");
+			}
+		} finally {
+			accessLog.log(requestMethod, exchange.getRequestURI().toString(), responseCode, System.nanoTime() - startTime);
+		}
+	}
+
+	private int importAccounts(HttpExchange exchange) throws IOException {
+
+		ImportResult result;
+		try {
+			ImportFormat format = formatOf(exchange);
+			result = importer.importFrom(exchange.getRequestBody(), format, null);
+		} catch (IncorrectInputException | IllegalArgumentException e) {
+			sendText(exchange, 400, e.getMessage());
+			return 400;
+		} catch (RuntimeException e) {
+			sendText(exchange, 500, "Accounts cannot be imported - " + e.getMessage());
+			return 500;
+		}
+
+		ResponseBuffer response = jsonCodec.writeImportResult(result);
+		try {
+			exchange.getResponseHeaders().set("Content-Type", JSON_CONTENT_TYPE);
+			exchange.sendResponseHeaders(200, response.size());
+			exchange.getResponseBody().write(response.array(), 0, response.size());
+		} finally {
+			exchange.getResponseBody().close();
+		}
+		return 200;
+	}
+
+	private static ImportFormat formatOf(HttpExchange exchange) {
+
+		String query = exchange.getRequestURI().getRawQuery();
+		if (query != null) {
+			for (String parameter : query.split("&")) {
+				if (parameter.startsWith(FORMAT_PARAMETER)) {
+					return ImportFormat.fromName(parameter.substring(FORMAT_PARAMETER.length()));
+				}
+			}
+		}
+
+		String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+		String type = contentType == null ? "" : contentType.toLowerCase(Locale.ROOT);
+		if (type.startsWith("text/csv")) {
+			return ImportFormat.CSV;
+		}
+		if (type.startsWith("application/x-ndjson") || type.startsWith("application/jsonl")) {
+			return ImportFormat.NDJSON;
+		}
+		throw new IllegalArgumentException("Import format is missing. Use ?format=csv or ?format=ndjson,"
+				+ " or a Content-Type of text/csv or application/x-ndjson.");
+	}
+
+	private void sendText(HttpExchange exchange, int responseCode, String message) throws IOException {
+
+		try {
+			ResponseBuffer response = jsonCodec.writeText(message);
+			exchange.getResponseHeaders().set("Content-Type", RatesHandler.TEXT_CONTENT_TYPE);
+			exchange.sendResponseHeaders(responseCode, response.size());
+			exchange.getResponseBody().write(response.array(), 0, response.size());
+		} finally {
+			exchange.getResponseBody().close();
+		}
+	}
+
+}
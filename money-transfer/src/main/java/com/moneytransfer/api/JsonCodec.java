@@ -0,0 +1,451 @@
+package main.java.com.moneytransfer.api;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import main.java.com.moneytransfer.bulk.ImportResult;
+import main.java.com.moneytransfer.exception.IncorrectInputException;
+import main.java.com.moneytransfer.model.Account;
+import main.java.com.moneytransfer.model.Amount;
+import main.java.com.moneytransfer.model.BatchMode;
+import main.java.com.moneytransfer.model.BatchRequest;
+import main.java.com.moneytransfer.model.CreateRequest;
+import main.java.com.moneytransfer.model.Money;
+import main.java.com.moneytransfer.model.Posting;
+import main.java.com.moneytransfer.model.TransferRequest;
+import main.java.com.moneytransfer.model.TransferResult;
+
+// Streaming JSON reader and writer shared by all request threads.
+// Requests are bound field by field into typed objects, amounts go straight
+// from the parser's character buffer into minor units.
+public class JsonCodec {
+
+	public static final String INCORRECT_FORMAT =
+			"Incorrect request body format. Please refer to API Document for correct input format.";
+
+	public static final int MAX_BATCH_SIZE = 10000;
+
+	// Money.RATE_SCALE as a number of decimals
+	private static final int RATE_DECIMALS = 6;
+
+	private final JsonFactory jsonFactory = new JsonFactory();
+	private final ThreadLocal<ResponseBuffer> buffers = ThreadLocal.withInitial(ResponseBuffer::new);
+
+	public CreateRequest readCreateRequest(InputStream in) throws IOException, IncorrectInputException {
+
+		try (JsonParser parser = jsonFactory.createParser(in)) {
+			return readCreateRequest(parser);
+		}
+	}
+
+	// one line of an NDJSON import, read in place
+	public CreateRequest readCreateRequest(byte[] bytes, int offset, int length) throws IOException, IncorrectInputException {
+
+		try (JsonParser parser = jsonFactory.createParser(bytes, offset, length)) {
+			return readCreateRequest(parser);
+		}
+	}
+
+	public TransferRequest readTransferRequest(InputStream in) throws IOException, IncorrectInputException {
+
+		TransferRequest request = new TransferRequest();
+
+		try (JsonParser parser = jsonFactory.createParser(in)) {
+			startObject(parser);
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				readTransferField(parser, request);
+			}
+		}
+
+		if (!request.isComplete()) {
+			throw new IncorrectInputException(INCORRECT_FORMAT);
+		}
+		return request;
+	}
+
+	public BatchRequest readBatchRequest(InputStream in) throws IOException, IncorrectInputException {
+
+		BatchMode mode = BatchMode.BEST_EFFORT;
+		List<TransferRequest> transfers = null;
+
+		try (JsonParser parser = jsonFactory.createParser(in)) {
+			startObject(parser);
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String field = parser.getCurrentName();
+				JsonToken token = parser.nextToken();
+				if (token == JsonToken.VALUE_NULL) {
+					continue;
+				}
+				if ("mode".equals(field)) {
+					try {
+						mode = BatchMode.fromName(readText(parser, token));
+					} catch (IllegalArgumentException e) {
+						throw new IncorrectInputException(e.getMessage());
+					}
+				} else if ("transfers".equals(field)) {
+					transfers = readTransfers(parser, token);
+				} else {
+					parser.skipChildren();
+				}
+			}
+		}
+
+		if (transfers == null || transfers.isEmpty()) {
+			throw new IncorrectInputException(INCORRECT_FORMAT);
+		}
+		return new BatchRequest(mode, transfers);
+	}
+
+	public ResponseBuffer writeAccountCreated(Account account) throws IOException {
+
+		ResponseBuffer buffer = acquire();
+		try (JsonGenerator generator = jsonFactory.createGenerator(buffer, JsonEncoding.UTF8)) {
+			generator.writeStartObject();
+			generator.writeStringField("message", "Account create success");
+			writeAccount(generator, "account", account, buffer.scratch);
+			generator.writeEndObject();
+		}
+		return buffer;
+	}
+
+	public ResponseBuffer writeTransferred(Account senderAccount, Account receiverAccount) throws IOException {
+
+		ResponseBuffer buffer = acquire();
+		try (JsonGenerator generator = jsonFactory.createGenerator(buffer, JsonEncoding.UTF8)) {
+			generator.writeStartObject();
+			generator.writeStringField("message", "Transfer success");
+			writeAccount(generator, "sender", senderAccount, buffer.scratch);
+			writeAccount(generator, "receiver", receiverAccount, buffer.scratch);
+			generator.writeEndObject();
+		}
+		return buffer;
+	}
+
+	public ResponseBuffer writeAccount(Account account) throws IOException {
+
+		ResponseBuffer buffer = acquire();
+		try (JsonGenerator generator = jsonFactory.createGenerator(buffer, JsonEncoding.UTF8)) {
+			generator.writeStartObject();
+			writeAccount(generator, "account", account, buffer.scratch);
+			generator.writeEndObject();
+		}
+		return buffer;
+	}
+
+	// the found accounts in request order, then the ids of the missing ones
+	public ResponseBuffer writeAccounts(long[] accountIds, Account[] accounts) throws IOException {
+
+		ResponseBuffer buffer = acquire();
+		try (JsonGenerator generator = jsonFactory.createGenerator(buffer, JsonEncoding.UTF8)) {
+			generator.writeStartObject();
+			generator.writeArrayFieldStart("accounts");
+			for (Account account : accounts) {
+				if (account != null) {
+					writeAccountFields(generator, account, buffer.scratch);
+				}
+			}
+			generator.writeEndArray();
+			generator.writeArrayFieldStart("notFound");
+			for (int i = 0; i < accounts.length; i++) {
+				if (accounts[i] == null) {
+					generator.writeNumber(accountIds[i]);
+				}
+			}
+			generator.writeEndArray();
+			generator.writeEndObject();
+		}
+		return buffer;
+	}
+
+	// a page of an account's history, nextCursor is left out on the last page
+	public ResponseBuffer writeTransactions(long accountId, List<Posting> postings, long nextCursor) throws IOException {
+
+		ResponseBuffer buffer = acquire();
+		try (JsonGenerator generator = jsonFactory.createGenerator(buffer, JsonEncoding.UTF8)) {
+			generator.writeStartObject();
+			generator.writeNumberField("accountId", accountId);
+			generator.writeArrayFieldStart("transactions");
+			for (Posting posting : postings) {
+				generator.writeStartObject();
+				generator.writeNumberField("index", posting.getIndex());
+				generator.writeStringField("kind", posting.getKind().toName());
+				generator.writeStringField("time", Instant.ofEpochMilli(posting.getTimeMillis()).toString());
+				if (posting.getCounterpartyId() != 0) {
+					generator.writeNumberField("counterparty", posting.getCounterpartyId());
+				}
+				generator.writeFieldName("amount");
+				generator.writeString(buffer.scratch, 0, Money.format(posting.getUnits(), buffer.scratch));
+				generator.writeFieldName("balance");
+				generator.writeString(buffer.scratch, 0, Money.format(posting.getBalance(), buffer.scratch));
+				generator.writeStringField("rate", BigDecimal.valueOf(posting.getRate(), RATE_DECIMALS)
+						.stripTrailingZeros().toPlainString());
+				if (posting.getLsn() != 0) {
+					generator.writeNumberField("lsn", posting.getLsn());
+				}
+				generator.writeEndObject();
+			}
+			generator.writeEndArray();
+			if (nextCursor > 0) {
+				generator.writeNumberField("nextCursor", nextCursor);
+			}
+			generator.writeEndObject();
+		}
+		return buffer;
+	}
+
+	public ResponseBuffer writeBatchResults(BatchMode mode, List<TransferResult> results) throws IOException {
+
+		int succeeded = 0;
+		for (TransferResult result : results) {
+			if (result.isSuccess()) {
+				succeeded++;
+			}
+		}
+
+		ResponseBuffer buffer = acquire();
+		try (JsonGenerator generator = jsonFactory.createGenerator(buffer, JsonEncoding.UTF8)) {
+			generator.writeStartObject();
+			generator.writeStringField("message", "Batch transfer processed");
+			generator.writeStringField("mode", mode.toName());
+			generator.writeNumberField("succeeded", succeeded);
+			generator.writeNumberField("failed", results.size() - succeeded);
+			generator.writeArrayFieldStart("results");
+			for (int i = 0; i < results.size(); i++) {
+				TransferResult result = results.get(i);
+				generator.writeStartObject();
+				generator.writeNumberField("index", i);
+				generator.writeStringField("status", result.isSuccess() ? "success" : "failed");
+				if (!result.isSuccess()) {
+					generator.writeStringField("reason", result.getReason());
+				}
+				generator.writeEndObject();
+			}
+			generator.writeEndArray();
+			generator.writeEndObject();
+		}
+		return buffer;
+	}
+
+	public ResponseBuffer writeImportResult(ImportResult result) throws IOException {
+
+		ResponseBuffer buffer = acquire();
+		try (JsonGenerator generator = jsonFactory.createGenerator(buffer, JsonEncoding.UTF8)) {
+			generator.writeStartObject();
+			generator.writeStringField("message", "Accounts imported");
+			generator.writeNumberField("records", result.getRecords());
+			generator.writeNumberField("imported", result.getImported());
+			generator.writeNumberField("rejected", result.getRejected());
+			if (result.getRecords() > 0) {
+				generator.writeNumberField("firstId", result.getFirstId());
+				generator.writeNumberField("lastId", result.getLastId());
+			}
+			generator.writeArrayFieldStart("errors");
+			for (String error : result.getErrors()) {
+				generator.writeString(error);
+			}
+			generator.writeEndArray();
+			generator.writeEndObject();
+		}
+		return buffer;
+	}
+
+	public ResponseBuffer writeText(String message) {
+
+		ResponseBuffer buffer = acquire();
+		byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+		buffer.write(bytes, 0, bytes.length);
+		return buffer;
+	}
+
+	// NDJSON to a streamed response, lines are written with writeAccountLine
+	public JsonGenerator createLineGenerator(OutputStream out) throws IOException {
+
+		JsonGenerator generator = jsonFactory.createGenerator(out, JsonEncoding.UTF8);
+		// the default separator puts a space between objects, lines end with a newline instead
+		generator.setRootValueSeparator(null);
+		return generator;
+	}
+
+	// one account of an export, with the fields of the other account responses
+	public static void writeAccountLine(JsonGenerator generator, long id, long units, String currency, char[] scratch)
+			throws IOException {
+
+		writeAccountFields(generator, id, units, currency, scratch);
+		generator.writeRaw('\n');
+	}
+
+	public JsonFactory getJsonFactory() {
+		return jsonFactory;
+	}
+
+	ResponseBuffer acquire() {
+
+		ResponseBuffer buffer = buffers.get();
+		buffer.recycle();
+		return buffer;
+	}
+
+	private CreateRequest readCreateRequest(JsonParser parser) throws IOException, IncorrectInputException {
+
+		CreateRequest request = new CreateRequest();
+		startObject(parser);
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String field = parser.getCurrentName();
+			JsonToken token = parser.nextToken();
+			if (token == JsonToken.VALUE_NULL) {
+				continue;
+			}
+			if ("amount".equals(field)) {
+				request.setAmountUnits(readUnits(parser, token));
+			} else if ("currency".equals(field)) {
+				request.setCurrency(readText(parser, token));
+			} else {
+				parser.skipChildren();
+			}
+		}
+
+		if (!request.isComplete()) {
+			throw new IncorrectInputException(INCORRECT_FORMAT);
+		}
+		return request;
+	}
+
+	void readTransferField(JsonParser parser, TransferRequest request) throws IOException, IncorrectInputException {
+
+		String field = parser.getCurrentName();
+		JsonToken token = parser.nextToken();
+		if (token == JsonToken.VALUE_NULL) {
+			return;
+		}
+		if ("sender".equals(field)) {
+			request.setSenderId(readId(parser, token));
+		} else if ("receiver".equals(field)) {
+			request.setReceiverId(readId(parser, token));
+		} else if ("amount".equals(field)) {
+			request.setAmountUnits(readUnits(parser, token));
+		} else if ("currency".equals(field)) {
+			request.setCurrency(readText(parser, token));
+		} else {
+			parser.skipChildren();
+		}
+	}
+
+	private List<TransferRequest> readTransfers(JsonParser parser, JsonToken token)
+			throws IOException, IncorrectInputException {
+
+		if (token != JsonToken.START_ARRAY) {
+			throw new IncorrectInputException(INCORRECT_FORMAT);
+		}
+
+		List<TransferRequest> transfers = new ArrayList<>();
+		while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+			if (token != JsonToken.START_OBJECT) {
+				throw new IncorrectInputException(INCORRECT_FORMAT);
+			}
+			if (transfers.size() == MAX_BATCH_SIZE) {
+				throw new IncorrectInputException("A batch cannot hold more than " + MAX_BATCH_SIZE + " transfers.");
+			}
+
+			TransferRequest transfer = new TransferRequest();
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				readTransferField(parser, transfer);
+			}
+			if (!transfer.isComplete()) {
+				throw new IncorrectInputException(INCORRECT_FORMAT);
+			}
+			transfers.add(transfer);
+		}
+		return transfers;
+	}
+
+	static void writeAccount(JsonGenerator generator, String name, Account account, char[] scratch) throws IOException {
+
+		generator.writeFieldName(name);
+		writeAccountFields(generator, account, scratch);
+	}
+
+	private static void writeAccountFields(JsonGenerator generator, Account account, char[] scratch) throws IOException {
+
+		// read once, the balance and currency are of the same version of the account
+		Amount amount = account.getAmount();
+		writeAccountFields(generator, account.getId(), amount.getUnits(), amount.getCurrency(), scratch);
+	}
+
+	private static void writeAccountFields(JsonGenerator generator, long id, long units, String currency, char[] scratch)
+			throws IOException {
+
+		generator.writeStartObject();
+		generator.writeNumberField("id", id);
+		generator.writeFieldName("amount");
+		generator.writeString(scratch, 0, Money.format(units, scratch));
+		generator.writeStringField("currency", currency);
+		generator.writeEndObject();
+	}
+
+	private static void startObject(JsonParser parser) throws IOException, IncorrectInputException {
+
+		if (parser.nextToken() != JsonToken.START_OBJECT) {
+			throw new IncorrectInputException(INCORRECT_FORMAT);
+		}
+	}
+
+	static long readUnits(JsonParser parser, JsonToken token) throws IOException, IncorrectInputException {
+
+		if (token != JsonToken.VALUE_STRING && token != JsonToken.VALUE_NUMBER_INT && token != JsonToken.VALUE_NUMBER_FLOAT) {
+			throw new IncorrectInputException(INCORRECT_FORMAT);
+		}
+		try {
+			return Money.parseUnits(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+		} catch (NumberFormatException e) {
+			throw new IncorrectInputException(INCORRECT_FORMAT);
+		}
+	}
+
+	static long readId(JsonParser parser, JsonToken token) throws IOException, IncorrectInputException {
+
+		if (token == JsonToken.VALUE_NUMBER_INT) {
+			return parser.getLongValue();
+		}
+		if (token != JsonToken.VALUE_STRING) {
+			throw new IncorrectInputException(INCORRECT_FORMAT);
+		}
+
+		char[] chars = parser.getTextCharacters();
+		int offset = parser.getTextOffset();
+		int length = parser.getTextLength();
+		if (length == 0 || length > 18) {
+			throw new IncorrectInputException(INCORRECT_FORMAT);
+		}
+
+		long id = 0;
+		for (int i = offset; i < offset + length; i++) {
+			char c = chars[i];
+			if (c < '0' || c > '9') {
+				throw new IncorrectInputException(INCORRECT_FORMAT);
+			}
+			id = id * 10 + (c - '0');
+		}
+		return id;
+	}
+
+	static String readText(JsonParser parser, JsonToken token) throws IOException, IncorrectInputException {
+
+		if (!token.isScalarValue()) {
+			throw new IncorrectInputException(INCORRECT_FORMAT);
+		}
+		return parser.getText();
+	}
+
+}
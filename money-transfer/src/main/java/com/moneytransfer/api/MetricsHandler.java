@@ -0,0 +1,46 @@
+package main.java.com.moneytransfer.api;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import main.java.com.moneytransfer.metrics.Metrics;
+
+// Serves the metrics in the Prometheus text format on GET. Scrapes are not themselves recorded,
+// so they do not show up in the request latencies.
+public class MetricsHandler implements HttpHandler {
+
+	private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+	private final Metrics metrics;
+
+	public MetricsHandler(Metrics metrics) {
+		this.metrics = metrics;
+	}
+
+	@Override
+	public void handle(HttpExchange exchange) throws IOException {
+
+		try {
+			byte[] body;
+			int responseCode;
+			if ("GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+				StringBuilder text = new StringBuilder(16384);
+				metrics.write(text);
+				body = text.toString().getBytes(StandardCharsets.UTF_8);
+				responseCode = 200;
+			} else {
+				body = "Incorrect HTTP method. Only GET is allowed for this request.".getBytes(StandardCharsets.UTF_8);
+				responseCode = 405;
+			}
+			exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+			exchange.sendResponseHeaders(responseCode, body.length);
+			exchange.getResponseBody().write(body);
+		} finally {
+			exchange.getResponseBody().close();
+		}
+	}
+
+}
@@ -0,0 +1,93 @@
+package main.java.com.moneytransfer.api;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import main.java.com.moneytransfer.fx.ExchangeRates;
+import main.java.com.moneytransfer.fx.RateTable;
+import main.java.com.moneytransfer.log.AccessLog;
+
+// Admin endpoint for the FX rates. GET returns the current table, POST replaces it with the
+// table in the body, in the text form of RateTable. Both need the admin token in a header.
+public class RatesHandler implements HttpHandler {
+
+	static final String TEXT_CONTENT_TYPE = "text/plain; charset=utf-8";
+	private static final String TOKEN_HEADER = "X-Admin-Token";
+
+	private final ExchangeRates exchangeRates;
+	private final byte[] adminToken;
+	private final JsonCodec jsonCodec;
+	private final AccessLog accessLog;
+
+	public RatesHandler(ExchangeRates exchangeRates, String adminToken, JsonCodec jsonCodec, AccessLog accessLog) {
+		this.exchangeRates = exchangeRates;
+		this.adminToken = adminToken.getBytes(StandardCharsets.UTF_8);
+		this.jsonCodec = jsonCodec;
+		this.accessLog = accessLog;
+	}
+
+	@Override
+	public void handle(HttpExchange exchange) throws IOException {
+
+		long startTime = System.nanoTime();
+		String requestMethod = exchange.getRequestMethod();
+		int responseCode = 0;
+
+		try {
+			if (!isAuthorized(exchange, adminToken)) {
+				responseCode = 401;
+				send(exchange, responseCode, "Admin token is missing or incorrect.");
+			} else if ("GET".equalsIgnoreCase(requestMethod)) {
+				responseCode = 200;
+				send(exchange, responseCode, exchangeRates.current().format());
+			} else if ("POST".equalsIgnoreCase(requestMethod)) {
+				responseCode = replace(exchange);
+			} else {
+				responseCode = 405;
+				send(exchange, responseCode, "Incorrect HTTP method. Only GET and POST are allowed for this request.");
+			}
+		} finally {
+			accessLog.log(requestMethod, exchange.getRequestURI().toString(), responseCode, System.nanoTime() - startTime);
+		}
+	}
+
+	private int replace(HttpExchange exchange) throws IOException {
+
+		RateTable table;
+		try {
+			table = RateTable.parse(new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8));
+			exchangeRates.replace(table);
+		} catch (IllegalArgumentException e) {
+			send(exchange, 400, e.getMessage());
+			return 400;
+		}
+
+		send(exchange, 200, "Rates replaced - " + table.getCurrencies() + ".");
+		return 200;
+	}
+
+	static boolean isAuthorized(HttpExchange exchange, byte[] adminToken) {
+
+		String token = exchange.getRequestHeaders().getFirst(TOKEN_HEADER);
+		// compared in constant time, the comparison does not tell how much of a guess was right
+		return token != null && MessageDigest.isEqual(adminToken, token.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private void send(HttpExchange exchange, int responseCode, String message) throws IOException {
+
+		try {
+			ResponseBuffer response = jsonCodec.writeText(message);
+			exchange.getResponseHeaders().set("Content-Type", TEXT_CONTENT_TYPE);
+			exchange.sendResponseHeaders(responseCode, response.size());
+			exchange.getResponseBody().write(response.array(), 0, response.size());
+		} finally {
+			exchange.getResponseBody().close();
+		}
+	}
+
+}
@@ -2,156 +2,620 @@ package main.java.com.moneytransfer.api;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.math.BigDecimal;
+import java.io.UncheckedIOException;
 import java.net.URI;
-import java.util.Map;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParseException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 
+import main.java.com.moneytransfer.admission.AdmissionControl;
 import main.java.com.moneytransfer.exception.AccountNotFoundException;
 import main.java.com.moneytransfer.exception.IncorrectInputException;
 import main.java.com.moneytransfer.exception.InsufficientBalanceException;
 import main.java.com.moneytransfer.exception.InvalidReceiverException;
 import main.java.com.moneytransfer.exception.UnsupportedCurrencyException;
+import main.java.com.moneytransfer.log.AccessLog;
+import main.java.com.moneytransfer.metrics.Metrics;
 import main.java.com.moneytransfer.model.Account;
-import main.java.com.moneytransfer.model.Amount;
+import main.java.com.moneytransfer.model.BatchRequest;
+import main.java.com.moneytransfer.model.CreateRequest;
+import main.java.com.moneytransfer.model.Money;
+import main.java.com.moneytransfer.model.Posting;
+import main.java.com.moneytransfer.model.TransferRequest;
+import main.java.com.moneytransfer.model.TransferResult;
 import main.java.com.moneytransfer.service.AccountService;
+import main.java.com.moneytransfer.service.LockingTransferEngine;
+import main.java.com.moneytransfer.service.TransferEngine;
 
 public class RequestHandler implements HttpHandler {
+
+	private static final String JSON_CONTENT_TYPE = "application/json; charset=utf-8";
+	private static final String TEXT_CONTENT_TYPE = "text/plain; charset=utf-8";
+	private static final String NDJSON_CONTENT_TYPE = "application/x-ndjson; charset=utf-8";
+	
+	private static final int COMPLETED_LATER = -1;
+
+	private static final String ACCOUNTS_PATH = "/accounts";
+	private static final String IDS_PARAMETER = "ids=";
+	public static final int MAX_QUERY_IDS = 1000;
+	private static final String TRANSACTIONS_PATH = "/transactions";
+	private static final String EXPORT_PATH = ACCOUNTS_PATH + "/export";
+	private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+	private static final int DEFAULT_PAGE_SIZE = 50;
+	public static final int MAX_PAGE_SIZE = 1000;
+
+	private static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+	private static final String REPLAYED_HEADER = "Idempotent-Replayed";
+	private static final String OVERLOADED_MESSAGE = "Server is overloaded. Please retry later.";
+	private static final String UNPROCESSED_MESSAGE = "Request cannot be processed.";
 	
 	private final AccountService accountService;
+	private final TransferEngine transferEngine;
+	private final JsonCodec jsonCodec;
+	private final AccessLog accessLog;
+	private final IdempotencyCache idempotencyCache;
+	private final Metrics metrics;
+	private final AdmissionControl admission;
 
 	public RequestHandler(AccountService accountService) {
+		this(accountService, new JsonCodec(), AccessLog.disabled());
+	}
+
+	public RequestHandler(AccountService accountService, JsonCodec jsonCodec, AccessLog accessLog) {
+		this(accountService, new LockingTransferEngine(accountService), jsonCodec, accessLog);
+	}
+
+	public RequestHandler(AccountService accountService, TransferEngine transferEngine, JsonCodec jsonCodec,
+			AccessLog accessLog) {
+		this(accountService, transferEngine, jsonCodec, accessLog, IdempotencyCache.disabled());
+	}
+
+	public RequestHandler(AccountService accountService, TransferEngine transferEngine, JsonCodec jsonCodec,
+			AccessLog accessLog, IdempotencyCache idempotencyCache) {
+		this(accountService, transferEngine, jsonCodec, accessLog, idempotencyCache, Metrics.disabled());
+	}
+
+	public RequestHandler(AccountService accountService, TransferEngine transferEngine, JsonCodec jsonCodec,
+			AccessLog accessLog, IdempotencyCache idempotencyCache, Metrics metrics) {
+		this(accountService, transferEngine, jsonCodec, accessLog, idempotencyCache, metrics, AdmissionControl.disabled());
+	}
+
+	public RequestHandler(AccountService accountService, TransferEngine transferEngine, JsonCodec jsonCodec,
+			AccessLog accessLog, IdempotencyCache idempotencyCache, Metrics metrics, AdmissionControl admission) {
 		this.accountService = accountService;
+		this.transferEngine = transferEngine;
+		this.jsonCodec = jsonCodec;
+		this.accessLog = accessLog;
+		this.idempotencyCache = idempotencyCache;
+		this.metrics = metrics;
+		this.admission = admission;
 	}
 
+	// with admission control this runs on the server's dispatcher, which only decides whether the
+	// request is queued for a worker or answered with 429 at once
 	@Override
 	public void handle(HttpExchange exchange) throws IOException {
 
-		URI requestUri = exchange.getRequestURI();
-		String requestMethod = exchange.getRequestMethod();
-		OutputStream responseBody = exchange.getResponseBody();
-		
-		System.out.println("---------------------------------------------------");
-		System.out.println(">> Request URI : " +  requestUri);
-		System.out.println(">> Request Method : " +  requestMethod);
-
-		if (!"POST".equalsIgnoreCase(requestMethod)) {
-			String errorMessage = "Incorrect HTTP method. Only POST is allowed for this request.";
-			exchange.sendResponseHeaders(405, errorMessage.getBytes().length);
-			responseBody.write(errorMessage.getBytes());
-			responseBody.close();
+		long startTime = System.nanoTime();
+		if (!admission.isEnabled()) {
+			process(exchange, startTime);
 			return;
 		}
 
-		if ("/create".equals(requestUri.toString())) {
-			handleCreate(exchange);
-		} else if ("/transfer".equals(requestUri.toString())) {
-			handleTransfer(exchange);
+		boolean admitted = admission.tryExecute(() -> {
+			try {
+				process(exchange, startTime);
+			} catch (IOException | RuntimeException e) {
+				exchange.close();
+			}
+		});
+		if (!admitted) {
+			reject(exchange, startTime);
 		}
-
 	}
 
-	private void handleCreate(HttpExchange exchange) throws IOException {
+	private void process(HttpExchange exchange, long startTime) throws IOException {
 
-		OutputStream responseBody = exchange.getResponseBody();
+		URI requestUri = exchange.getRequestURI();
+		String requestMethod = exchange.getRequestMethod();
 		int responseCode = 0;
-		String responseMessage = "";
+		metrics.requestStarted(requestUri.toString());
 
 		try {
-			ObjectMapper mapper = new ObjectMapper();
-			Map<String, Object> requestBody = mapper.reader().withType(Map.class).readValue(exchange.getRequestBody());
+			if (isAccountsPath(requestUri.getPath())) {
+				responseCode = handleAccounts(exchange, requestMethod, requestUri);
+				return;
+			}
 
-			if (requestBody == null || requestBody.get("amount") == null || requestBody.get("currency") == null) {
-				throw new IncorrectInputException("Incorrect request body format. Please refer to API Document for correct input format.");
+			if (!"POST".equalsIgnoreCase(requestMethod)) {
+				String errorMessage = "Incorrect HTTP method. Only POST is allowed for this request.";
+				try {
+					responseCode = 405;
+					sendResponse(exchange, responseCode, TEXT_CONTENT_TYPE, jsonCodec.writeText(errorMessage));
+				} finally {
+					exchange.getResponseBody().close();
+				}
+				return;
 			}
-			
-			String amountValue = requestBody.get("amount").toString();
-			String currency = requestBody.get("currency").toString();
 
-			Amount amount = new Amount(new BigDecimal(amountValue), currency);
-			Account account = accountService.createAccount(amount);
+			String idempotencyKey = idempotencyKey(exchange, requestUri.toString());
+			if (idempotencyKey != null && !idempotencyCache.begin(idempotencyKey,
+					response -> replay(exchange, requestMethod, requestUri.toString(), startTime, response))) {
+				// a retry, answered with the response of the first request once there is one
+				responseCode = COMPLETED_LATER;
+				return;
+			}
+			try {
+				if ("/create".equals(requestUri.toString())) {
+					responseCode = handleCreate(exchange);
+				} else if ("/transfer".equals(requestUri.toString())) {
+					responseCode = handleTransfer(exchange, idempotencyKey, requestMethod, requestUri.toString(),
+							startTime);
+				} else if ("/transfers/batch".equals(requestUri.toString())) {
+					responseCode = handleBatchTransfer(exchange, idempotencyKey, requestMethod, requestUri.toString(),
+							startTime);
+				}
+			} catch (IOException | RuntimeException e) {
+				// failed before a response was stored, e.g. the client went away while sending the
+				// body, a retry must not wait for it forever
+				if (idempotencyKey != null) {
+					idempotencyCache.abandon(idempotencyKey, new IdempotencyCache.Response(500, TEXT_CONTENT_TYPE,
+							UNPROCESSED_MESSAGE.getBytes(StandardCharsets.UTF_8)));
+				}
+				throw e;
+			}
+		} finally {
+			// requests completed by the transfer engine are logged on completion
+			if (responseCode != COMPLETED_LATER) {
+				completed(requestMethod, requestUri.toString(), responseCode, startTime);
+			}
+		}
+
+	}
+
+	private int handleCreate(HttpExchange exchange) throws IOException {
+
+		OutputStream responseBody = exchange.getResponseBody();
+		int responseCode = 0;
+		ResponseBuffer response;
+
+		try {
+			CreateRequest request = jsonCodec.readCreateRequest(exchange.getRequestBody());
+			Account account = accountService.createAccount(request.toAmount());
+			metrics.accountCreated();
 
 			responseCode = 200;
-			responseMessage = "Account create success\n" + account;
-			exchange.sendResponseHeaders(responseCode, responseMessage.getBytes().length);
-			responseBody.write(responseMessage.getBytes());
+			response = jsonCodec.writeAccountCreated(account);
+			sendResponse(exchange, responseCode, JSON_CONTENT_TYPE, response);
 			
-		} catch (JsonParseException | IncorrectInputException | UnsupportedCurrencyException e) {
+		} catch (JsonParseException | IncorrectInputException | UnsupportedCurrencyException | ArithmeticException e) {
 			
 			responseCode = 400;
-			responseMessage = e.getMessage();
-			exchange.sendResponseHeaders(responseCode, responseMessage.getBytes().length);
-			responseBody.write(responseMessage.getBytes());
+			response = jsonCodec.writeText(e.getMessage());
+			sendResponse(exchange, responseCode, TEXT_CONTENT_TYPE, response);
 
 		} finally {
 			responseBody.close();
 		}
-		
-		System.out.println("<< Response Code : " +  responseCode);
-		System.out.println("<< Response Message : " +  responseMessage);
+
+		return responseCode;
 
 	}
 
-	private void handleTransfer(HttpExchange exchange) throws IOException {
+	// GET /accounts/{id}, GET /accounts?ids=1,2,3, GET /accounts/{id}/transactions and GET
+	// /accounts/export, answered from the published balances and history without taking the
+	// locks transfers hold
+	private int handleAccounts(HttpExchange exchange, String requestMethod, URI requestUri) throws IOException {
 
-		OutputStream responseBody = exchange.getResponseBody();
-		int responseCode = 0;
-		String responseMessage = "";
-		
 		try {
-			ObjectMapper mapper = new ObjectMapper();
-			Map<String, Object> requestBody = mapper.reader().withType(Map.class).readValue(exchange.getRequestBody());
-
-			if (requestBody == null 
-					|| requestBody.get("sender") == null || requestBody.get("receiver") == null
-					|| requestBody.get("amount") == null || requestBody.get("currency") == null) {
-				
-				throw new IncorrectInputException("Incorrect request body format. Please refer to API Document for correct input format.");
+			String path = requestUri.getPath();
+			int idStart = ACCOUNTS_PATH.length() + 1;
+			if (!"GET".equalsIgnoreCase(requestMethod)) {
+				return sendText(exchange, 405, "Incorrect HTTP method. Only GET is allowed for this request.");
+			} else if (path.length() <= idStart) {
+				return readAccounts(exchange, requestUri.getRawQuery());
+			} else if (EXPORT_PATH.equals(path)) {
+				return exportAccounts(exchange);
+			} else if (path.endsWith(TRANSACTIONS_PATH)) {
+				return readTransactions(exchange, parseId(path, idStart, path.length() - TRANSACTIONS_PATH.length()),
+						requestUri.getRawQuery());
+			} else {
+				return readAccount(exchange, parseId(path, idStart, path.length()));
 			}
-			
-			String sender = requestBody.get("sender").toString();
-			String receiver = requestBody.get("receiver").toString();
-			String amountValue = requestBody.get("amount").toString();
-			String currency = requestBody.get("currency").toString();
+		} finally {
+			exchange.getResponseBody().close();
+		}
 
-			Long senderId = Long.parseLong(sender);
-			Long receiverId = Long.parseLong(receiver);
-			Amount amount = new Amount(new BigDecimal(amountValue), currency);
+	}
 
-			accountService.transferAmount(senderId, receiverId, amount);
+	private int readAccount(HttpExchange exchange, long accountId) throws IOException {
 
-			Account senderAccount = accountService.searchAccount(senderId);
-			Account receiverAccount = accountService.searchAccount(receiverId);
+		if (accountId < 0) {
+			return sendText(exchange, 400, JsonCodec.INCORRECT_FORMAT);
+		}
+		Account account = accountService.searchAccounts(new long[] { accountId })[0];
+		if (account == null) {
+			return sendText(exchange, 404, "Account cannot be found - " + accountId);
+		}
+		sendResponse(exchange, 200, JSON_CONTENT_TYPE, jsonCodec.writeAccount(account));
+		return 200;
+	}
 
-			responseCode = 200;
-			responseMessage = new StringBuilder()
-					.append("Transfer success")
-					.append("\nSender ").append(senderAccount)
-					.append("\nReceiver ").append(receiverAccount)
-					.toString();
+	private int readAccounts(HttpExchange exchange, String query) throws IOException {
+
+		long[] accountIds = parseIds(query);
+		if (accountIds == null) {
+			return sendText(exchange, 400, "Query must be ids=<id>,<id>,... with 1 to " + MAX_QUERY_IDS + " account ids.");
+		}
+		sendResponse(exchange, 200, JSON_CONTENT_TYPE,
+				jsonCodec.writeAccounts(accountIds, accountService.searchAccounts(accountIds)));
+		return 200;
+	}
+
+	// Every account as one NDJSON line, streamed in chunks while the accounts are visited and
+	// gzipped when the client accepts it. The balances are those of one point in time, see
+	// AccountService.exportAccounts. A failure after the headers cuts the stream short.
+	private int exportAccounts(HttpExchange exchange) throws IOException {
+
+		if (!transferEngine.appliesAtomically()) {
+			return sendText(exchange, 501, "Account export is not supported with the sharded engine.");
+		}
+
+		boolean gzip = acceptsGzip(exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+		exchange.getResponseHeaders().set("Content-Type", NDJSON_CONTENT_TYPE);
+		if (gzip) {
+			exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+		}
+		exchange.sendResponseHeaders(200, 0);
+
+		OutputStream body = gzip ? new GZIPOutputStream(exchange.getResponseBody(), GZIP_BUFFER_SIZE)
+				: exchange.getResponseBody();
+		char[] scratch = new char[Money.FORMAT_LENGTH];
+		try (JsonGenerator generator = jsonCodec.createLineGenerator(body)) {
+			accountService.exportAccounts((id, units, currency) -> {
+				try {
+					JsonCodec.writeAccountLine(generator, id, units, currency, scratch);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		return 200;
+	}
+
+	// gzip or * in an Accept-Encoding header, unless given a q of 0
+	static boolean acceptsGzip(String acceptEncoding) {
+
+		if (acceptEncoding == null) {
+			return false;
+		}
+		for (String coding : acceptEncoding.toLowerCase(Locale.ROOT).split(",")) {
+			String[] parts = coding.split(";");
+			String name = parts[0].trim();
+			if (name.equals("gzip") || name.equals("*")) {
+				for (int i = 1; i < parts.length; i++) {
+					if (parts[i].trim().matches("q=0(\\.0*)?")) {
+						return false;
+					}
+				}
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// newest first, a page ends with the cursor of the next one while there are older postings
+	private int readTransactions(HttpExchange exchange, long accountId, String query) throws IOException {
+
+		if (!accountService.isLedgerEnabled()) {
+			return sendText(exchange, 404, "Transaction history is not enabled.");
+		}
+		String limitText = queryParameter(query, "limit");
+		String cursorText = queryParameter(query, "cursor");
+		long limit = limitText == null ? DEFAULT_PAGE_SIZE : parseId(limitText, 0, limitText.length());
+		long cursor = cursorText == null ? Long.MAX_VALUE : parseId(cursorText, 0, cursorText.length());
+		if (accountId < 0 || limit < 1 || limit > MAX_PAGE_SIZE || cursor < 0) {
+			return sendText(exchange, 400, "Query may have limit=<1 to " + MAX_PAGE_SIZE
+					+ "> and cursor=<nextCursor of the previous page>.");
+		}
+
+		try {
+			List<Posting> postings = accountService.searchTransactions(accountId, cursor, (int) limit);
+			long nextCursor = postings.size() == limit ? postings.get(postings.size() - 1).getIndex() : 0;
+			sendResponse(exchange, 200, JSON_CONTENT_TYPE, jsonCodec.writeTransactions(accountId, postings, nextCursor));
+			return 200;
+		} catch (AccountNotFoundException e) {
+			return sendText(exchange, 404, e.getMessage());
+		}
+	}
+
+	private int sendText(HttpExchange exchange, int responseCode, String message) throws IOException {
+		sendResponse(exchange, responseCode, TEXT_CONTENT_TYPE, jsonCodec.writeText(message));
+		return responseCode;
+	}
+
+	// the value of the first name=value pair of the query, null when it has none
+	private static String queryParameter(String query, String name) {
+
+		if (query == null) {
+			return null;
+		}
+		for (String pair : query.split("&")) {
+			if (pair.length() > name.length() && pair.startsWith(name) && pair.charAt(name.length()) == '=') {
+				return pair.substring(name.length() + 1);
+			}
+		}
+		return null;
+	}
+
+	private static boolean isAccountsPath(String path) {
+		return path != null && path.startsWith(ACCOUNTS_PATH)
+				&& (path.length() == ACCOUNTS_PATH.length() || path.charAt(ACCOUNTS_PATH.length()) == '/');
+	}
+
+	// the ids of an ids=... query, null when it has none, too many or one that is not a number
+	private static long[] parseIds(String query) {
 
-			exchange.sendResponseHeaders(responseCode, responseMessage.getBytes().length);
-			responseBody.write(responseMessage.getBytes());
+		if (query == null || !query.startsWith(IDS_PARAMETER)) {
+			return null;
+		}
+		int start = IDS_PARAMETER.length();
+		int count = 0;
+		for (int i = start; i <= query.length(); i++) {
+			if (i == query.length() || query.charAt(i) == ',') {
+				count++;
+			}
+		}
+		if (count > MAX_QUERY_IDS) {
+			return null;
+		}
+
+		long[] accountIds = new long[count];
+		for (int i = 0; i < count; i++) {
+			int end = query.indexOf(',', start);
+			end = end < 0 ? query.length() : end;
+			if ((accountIds[i] = parseId(query, start, end)) < 0) {
+				return null;
+			}
+			start = end + 1;
+		}
+		return accountIds;
+	}
+
+	// a decimal account id, -1 when the text is not one
+	private static long parseId(String text, int start, int end) {
+
+		if (start >= end || end - start > 18) {
+			return -1;
+		}
+		long id = 0;
+		for (int i = start; i < end; i++) {
+			char c = text.charAt(i);
+			if (c < '0' || c > '9') {
+				return -1;
+			}
+			id = id * 10 + (c - '0');
+		}
+		return id;
+	}
 
-		} catch (JsonParseException | IncorrectInputException | AccountNotFoundException | 
-				UnsupportedCurrencyException | InsufficientBalanceException | InvalidReceiverException e) {
+	// the response is sent when the engine completes the transfer, possibly on another thread
+	private int handleTransfer(HttpExchange exchange, String idempotencyKey, String requestMethod, String requestUri,
+			long startTime) throws IOException {
+
+		TransferRequest request;
+		try {
+			request = jsonCodec.readTransferRequest(exchange.getRequestBody());
+		} catch (JsonParseException | IncorrectInputException | ArithmeticException e) {
+			return sendError(exchange, idempotencyKey, 400, e);
+		}
+
+		try {
+			transferEngine.transfer(request.getSenderId(), request.getReceiverId(), request.toAmount(), error -> {
+				int responseCode = 0;
+				try {
+					responseCode = completeTransfer(exchange, idempotencyKey, request, error);
+				} catch (IOException e) {
+					exchange.close();
+				} finally {
+					completed(requestMethod, requestUri, responseCode, startTime);
+				}
+			});
+		} catch (RuntimeException e) {
+			// the engine is closed, the response still completes a cached key
+			return sendError(exchange, idempotencyKey, 500, e);
+		}
+
+		return COMPLETED_LATER;
+
+	}
+
+	private int completeTransfer(HttpExchange exchange, String idempotencyKey, TransferRequest request, Exception error)
+			throws IOException {
+
+		if (error != null) {
+			return sendError(exchange, idempotencyKey, isClientError(error) ? 400 : 500, error);
+		}
+		metrics.transfersApplied(1);
+
+		OutputStream responseBody = exchange.getResponseBody();
+		int responseCode = 0;
+		ResponseBuffer response;
+
+		try {
+			Account senderAccount = accountService.searchAccount(request.getSenderId());
+			Account receiverAccount = accountService.searchAccount(request.getReceiverId());
+
+			responseCode = 200;
+			response = jsonCodec.writeTransferred(senderAccount, receiverAccount);
+			sendResponse(exchange, idempotencyKey, responseCode, JSON_CONTENT_TYPE, response);
+
+		} catch (AccountNotFoundException e) {
 
 			responseCode = 400;
-			responseMessage = e.getMessage();
-			exchange.sendResponseHeaders(responseCode, responseMessage.getBytes().length);
-			responseBody.write(responseMessage.getBytes());
+			response = jsonCodec.writeText(e.getMessage());
+			sendResponse(exchange, idempotencyKey, responseCode, TEXT_CONTENT_TYPE, response);
 
 		} finally {
 			responseBody.close();
 		}
-		
-		System.out.println("<< Response Code : " +  responseCode);
-		System.out.println("<< Response Message : " +  responseMessage);
 
+		return responseCode;
+
+	}
+
+	private int handleBatchTransfer(HttpExchange exchange, String idempotencyKey, String requestMethod,
+			String requestUri, long startTime) throws IOException {
+
+		BatchRequest request;
+		try {
+			request = jsonCodec.readBatchRequest(exchange.getRequestBody());
+		} catch (JsonParseException | IncorrectInputException | ArithmeticException e) {
+			return sendError(exchange, idempotencyKey, 400, e);
+		}
+
+		try {
+			transferEngine.transferBatch(request.getTransfers(), request.getMode(), (results, error) -> {
+				int responseCode = 0;
+				try {
+					if (error != null) {
+						responseCode = sendError(exchange, idempotencyKey, isClientError(error) ? 400 : 500, error);
+					} else {
+						metrics.transfersApplied(countApplied(results));
+						responseCode = 200;
+						try {
+							sendResponse(exchange, idempotencyKey, responseCode, JSON_CONTENT_TYPE,
+									jsonCodec.writeBatchResults(request.getMode(), results));
+						} finally {
+							exchange.getResponseBody().close();
+						}
+					}
+				} catch (IOException e) {
+					exchange.close();
+				} finally {
+					completed(requestMethod, requestUri, responseCode, startTime);
+				}
+			});
+		} catch (RuntimeException e) {
+			return sendError(exchange, idempotencyKey, 500, e);
+		}
+
+		return COMPLETED_LATER;
+
+	}
+
+	private static int countApplied(List<TransferResult> results) {
+
+		int applied = 0;
+		for (TransferResult result : results) {
+			if (result.isSuccess()) {
+				applied++;
+			}
+		}
+		return applied;
+	}
+
+	// every admitted request ends here once its response is sent
+	private void completed(String requestMethod, String requestUri, int responseCode, long startTime) {
+
+		long latency = System.nanoTime() - startTime;
+		accessLog.log(requestMethod, requestUri, responseCode, latency);
+		metrics.requestCompleted(requestUri, responseCode, latency);
+		admission.completed(latency);
+	}
+
+	// the request body is left unread, the server discards it
+	private void reject(HttpExchange exchange, long startTime) throws IOException {
+
+		String requestUri = exchange.getRequestURI().toString();
+		metrics.requestStarted(requestUri);
+		try {
+			exchange.getResponseHeaders().set("Retry-After", Integer.toString(admission.getRetryAfterSeconds()));
+			sendText(exchange, 429, OVERLOADED_MESSAGE);
+		} finally {
+			exchange.getResponseBody().close();
+			long latency = System.nanoTime() - startTime;
+			accessLog.log(exchange.getRequestMethod(), requestUri, 429, latency);
+			metrics.requestCompleted(requestUri, 429, latency);
+		}
+	}
+
+	private static boolean isClientError(Exception error) {
+		return error instanceof AccountNotFoundException || error instanceof UnsupportedCurrencyException
+				|| error instanceof InsufficientBalanceException || error instanceof InvalidReceiverException
+				|| error instanceof ArithmeticException;
+	}
+
+	// unexpected failures are reported without their details
+	private int sendError(HttpExchange exchange, String idempotencyKey, int responseCode, Exception error)
+			throws IOException {
+
+		String message = responseCode == 500 ? UNPROCESSED_MESSAGE : error.getMessage();
+		try {
+			sendResponse(exchange, idempotencyKey, responseCode, TEXT_CONTENT_TYPE, jsonCodec.writeText(message));
+		} finally {
+			exchange.getResponseBody().close();
+		}
+		return responseCode;
+	}
+
+	// transfers sent with an idempotency key are cached per endpoint, null for other requests
+	private String idempotencyKey(HttpExchange exchange, String requestUri) {
+
+		if (!idempotencyCache.isEnabled()
+				|| !("/transfer".equals(requestUri) || "/transfers/batch".equals(requestUri))) {
+			return null;
+		}
+		String key = exchange.getRequestHeaders().getFirst(IDEMPOTENCY_KEY_HEADER);
+		return key == null || key.isEmpty() ? null : requestUri + " " + key;
+	}
+
+	// answers a retried request with the stored response of the first one
+	private void replay(HttpExchange exchange, String requestMethod, String requestUri, long startTime,
+			IdempotencyCache.Response response) {
+
+		try {
+			try {
+				exchange.getResponseHeaders().set("Content-Type", response.getContentType());
+				exchange.getResponseHeaders().set(REPLAYED_HEADER, "true");
+				exchange.sendResponseHeaders(response.getCode(), response.getBody().length);
+				exchange.getResponseBody().write(response.getBody());
+			} finally {
+				exchange.getResponseBody().close();
+			}
+		} catch (IOException e) {
+			exchange.close();
+		} finally {
+			completed(requestMethod, requestUri, response.getCode(), startTime);
+		}
+	}
+
+	// the response is stored before it is sent, a failure to send it does not run the request again
+	private void sendResponse(HttpExchange exchange, String idempotencyKey, int responseCode, String contentType,
+			ResponseBuffer response) throws IOException {
+
+		if (idempotencyKey != null) {
+			idempotencyCache.complete(idempotencyKey, new IdempotencyCache.Response(responseCode, contentType,
+					Arrays.copyOf(response.array(), response.size())));
+		}
+		sendResponse(exchange, responseCode, contentType, response);
+	}
+
+	private static void sendResponse(HttpExchange exchange, int responseCode, String contentType, ResponseBuffer response)
+			throws IOException {
+
+		exchange.getResponseHeaders().set("Content-Type", contentType);
+		exchange.sendResponseHeaders(responseCode, response.size());
+		exchange.getResponseBody().write(response.array(), 0, response.size());
 	}
 
 }
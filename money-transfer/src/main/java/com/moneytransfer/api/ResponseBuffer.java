@@ -0,0 +1,33 @@
+package main.java.com.moneytransfer.api;
+
+import java.io.ByteArrayOutputStream;
+
+import main.java.com.moneytransfer.model.Money;
+
+// Per-thread response body buffer, reset and reused for every response
+// written on the same thread.
+public class ResponseBuffer extends ByteArrayOutputStream {
+
+	private static final int INITIAL_SIZE = 512;
+	private static final int MAX_RETAINED_SIZE = 64 * 1024;
+
+	final char[] scratch = new char[Money.FORMAT_LENGTH];
+
+	public ResponseBuffer() {
+		super(INITIAL_SIZE);
+	}
+
+	public byte[] array() {
+		return buf;
+	}
+
+	void recycle() {
+
+		// do not keep an unusually large body alive for the lifetime of the thread
+		if (buf.length > MAX_RETAINED_SIZE) {
+			buf = new byte[INITIAL_SIZE];
+		}
+		reset();
+	}
+
+}
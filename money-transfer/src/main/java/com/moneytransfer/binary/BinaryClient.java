@@ -0,0 +1,225 @@
+package main.java.com.moneytransfer.binary;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import main.java.com.moneytransfer.model.Account;
+import main.java.com.moneytransfer.model.Amount;
+
+// Client of BinaryServer over one persistent connection, safe to share between threads.
+//
+// Every request returns a future at once and any number of them, up to maxInFlight, may be
+// waiting for their responses, which a reader thread matches to their futures by correlation
+// id. A caller beyond maxInFlight waits for a response first. Requests are written as they
+// are made; with autoFlush off they collect in the send buffer until flush, so a batch of
+// requests goes out in one write. A failed request completes its future with the exception
+// AccountService would have thrown, a lost connection fails every waiting future.
+public class BinaryClient implements Closeable {
+
+	private static final int SEND_BUFFER_SIZE = 64 * 1024;
+	private static final int RECEIVE_BUFFER_SIZE = 64 * 1024;
+
+	private final SocketChannel channel;
+	private final AtomicReferenceArray<CompletableFuture<Object>> pending;
+	private final Semaphore permits;
+	private final Thread reader;
+
+	// guarded by this
+	private final ByteBuffer requests = ByteBuffer.allocateDirect(SEND_BUFFER_SIZE);
+	private int nextSlot;
+	private long sequence;
+	private boolean autoFlush = true;
+
+	private volatile IOException failure;
+
+	public BinaryClient(InetSocketAddress address, int maxInFlight) throws IOException {
+
+		if (maxInFlight < 1) {
+			throw new IllegalArgumentException("Requests in flight must be positive.");
+		}
+		channel = SocketChannel.open(address);
+		channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+		pending = new AtomicReferenceArray<>(maxInFlight);
+		permits = new Semaphore(maxInFlight);
+		reader = new Thread(this::read, "binary-client-" + channel.getLocalAddress());
+		reader.setDaemon(true);
+		reader.start();
+	}
+
+	public CompletableFuture<Account> createAccount(Amount balance) {
+
+		return send(BinaryProtocol.CREATE, BinaryProtocol.CREATE_BYTES, buffer -> {
+			buffer.putLong(balance.getUnits());
+			BinaryProtocol.putCurrency(buffer, balance.getCurrency());
+		});
+	}
+
+	// completes with the sender's and the receiver's account after the transfer
+	public CompletableFuture<Account[]> transfer(long senderId, long receiverId, Amount amount) {
+
+		return send(BinaryProtocol.TRANSFER, BinaryProtocol.TRANSFER_BYTES, buffer -> {
+			buffer.putLong(senderId);
+			buffer.putLong(receiverId);
+			buffer.putLong(amount.getUnits());
+			BinaryProtocol.putCurrency(buffer, amount.getCurrency());
+		});
+	}
+
+	public CompletableFuture<Account> getAccount(long accountId) {
+		return send(BinaryProtocol.GET, BinaryProtocol.GET_BYTES, buffer -> buffer.putLong(accountId));
+	}
+
+	// off, requests wait in the send buffer until flush or until it is full
+	public synchronized void setAutoFlush(boolean autoFlush) {
+		this.autoFlush = autoFlush;
+	}
+
+	public synchronized void flush() {
+		writeRequests();
+	}
+
+	@Override
+	public void close() throws IOException {
+
+		channel.close();
+		fail(new IOException("Client is closed."));
+		try {
+			reader.join(1000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private interface Payload {
+
+		void write(ByteBuffer buffer);
+
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> CompletableFuture<T> send(byte opcode, int length, Payload payload) {
+
+		CompletableFuture<Object> future = new CompletableFuture<>();
+		try {
+			if (!permits.tryAcquire()) {
+				// the responses to wait for may belong to requests still in the send buffer
+				flush();
+				permits.acquire();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			future.completeExceptionally(e);
+			return (CompletableFuture<T>) future;
+		}
+
+		synchronized (this) {
+			if (failure != null) {
+				permits.release();
+				future.completeExceptionally(failure);
+				return (CompletableFuture<T>) future;
+			}
+			// a permit guarantees a free slot
+			int slot = nextSlot;
+			while (pending.get(slot) != null) {
+				slot = (slot + 1) % pending.length();
+			}
+			nextSlot = (slot + 1) % pending.length();
+			pending.set(slot, future);
+
+			if (requests.remaining() < BinaryProtocol.LENGTH_BYTES + length) {
+				writeRequests();
+			}
+			requests.putInt(length);
+			requests.putLong(++sequence << 32 | slot);
+			requests.put(opcode);
+			payload.write(requests);
+			if (autoFlush) {
+				writeRequests();
+			}
+		}
+		return (CompletableFuture<T>) future;
+	}
+
+	// guarded by this
+	private void writeRequests() {
+
+		requests.flip();
+		try {
+			while (requests.hasRemaining()) {
+				channel.write(requests);
+			}
+		} catch (IOException e) {
+			fail(e);
+		} finally {
+			requests.clear();
+		}
+	}
+
+	private void read() {
+
+		ByteBuffer responses = ByteBuffer.allocateDirect(RECEIVE_BUFFER_SIZE);
+		try {
+			while (channel.read(responses) >= 0) {
+				responses.flip();
+				while (responses.remaining() >= BinaryProtocol.LENGTH_BYTES) {
+					int length = responses.getInt(responses.position());
+					if (length < BinaryProtocol.HEADER_BYTES || length > BinaryProtocol.MAX_RESPONSE_BYTES) {
+						throw new IOException("Response frame is malformed.");
+					}
+					if (responses.remaining() < BinaryProtocol.LENGTH_BYTES + length) {
+						break;
+					}
+					responses.getInt();
+					complete(responses, length);
+				}
+				responses.compact();
+			}
+			fail(new IOException("Connection closed by the server."));
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	private void complete(ByteBuffer responses, int length) throws IOException {
+
+		long correlationId = responses.getLong();
+		byte status = responses.get();
+		int slot = (int) correlationId;
+		CompletableFuture<Object> future = slot < 0 || slot >= pending.length() ? null : pending.getAndSet(slot, null);
+		if (future == null) {
+			throw new IOException("Response to an unknown request - " + correlationId);
+		}
+		permits.release();
+
+		if (status != BinaryProtocol.OK) {
+			future.completeExceptionally(BinaryProtocol.errorOf(status, BinaryProtocol.getMessage(responses)));
+		} else if (length == BinaryProtocol.HEADER_BYTES + BinaryProtocol.ACCOUNT_BYTES) {
+			future.complete(BinaryProtocol.getAccount(responses));
+		} else {
+			future.complete(new Account[] { BinaryProtocol.getAccount(responses), BinaryProtocol.getAccount(responses) });
+		}
+	}
+
+	// synchronized with send, a request either sees the failure or is failed here
+	private synchronized void fail(IOException error) {
+
+		if (failure == null) {
+			failure = error;
+		}
+		for (int slot = 0; slot < pending.length(); slot++) {
+			CompletableFuture<Object> future = pending.getAndSet(slot, null);
+			if (future != null) {
+				permits.release();
+				future.completeExceptionally(failure);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,283 @@
+package main.java.com.moneytransfer.binary;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+import main.java.com.moneytransfer.model.Account;
+
+// One client connection of BinaryServer.
+//
+// The selector thread cuts complete frames out of what it reads and hands them to the
+// server, a partial frame waits for the next read. Responses are appended to one output
+// buffer by whichever thread completes the request: the selector thread writes its own once
+// it has parsed everything it read, other threads write at once. Reading stops while
+// maxInFlight requests are unanswered or the client leaves a full buffer of responses unread.
+final class BinaryConnection {
+
+	private final BinaryServer server;
+	private final BinaryServer.SelectorLoop loop;
+	private final SocketChannel channel;
+	private final SelectionKey key;
+
+	// used by the selector thread only
+	private ByteBuffer unparsed;
+
+	// guarded by this, output is in write mode and null while there is nothing to send
+	private ByteBuffer output;
+	private int inFlight;
+	private boolean closed;
+	private boolean writeScheduled;
+
+	private volatile boolean paused;
+
+	BinaryConnection(BinaryServer server, BinaryServer.SelectorLoop loop, SocketChannel channel, SelectionKey key) {
+		this.server = server;
+		this.loop = loop;
+		this.channel = channel;
+		this.key = key;
+	}
+
+	// selector thread
+	void onReadable(ByteBuffer readBuffer) {
+
+		readBuffer.clear();
+		if (unparsed != null) {
+			// at most one partial frame while the connection is reading
+			readBuffer.put(unparsed);
+			unparsed = null;
+		}
+
+		int read;
+		try {
+			read = channel.read(readBuffer);
+		} catch (IOException e) {
+			close();
+			return;
+		}
+		if (read < 0) {
+			close();
+			return;
+		}
+
+		readBuffer.flip();
+		parse(readBuffer);
+		flush();
+	}
+
+	// selector thread
+	void onWritable() {
+
+		interest(0, SelectionKey.OP_WRITE);
+		synchronized (this) {
+			writeScheduled = false;
+		}
+		flush();
+	}
+
+	void sendAccounts(long correlationId, Account account, Account other) {
+
+		synchronized (this) {
+			ByteBuffer buffer = reserve(BinaryProtocol.LENGTH_BYTES + BinaryProtocol.HEADER_BYTES
+					+ (other == null ? 1 : 2) * BinaryProtocol.ACCOUNT_BYTES);
+			if (buffer == null) {
+				return;
+			}
+			buffer.putInt(BinaryProtocol.HEADER_BYTES + (other == null ? 1 : 2) * BinaryProtocol.ACCOUNT_BYTES);
+			buffer.putLong(correlationId);
+			buffer.put(BinaryProtocol.OK);
+			BinaryProtocol.putAccount(buffer, account);
+			if (other != null) {
+				BinaryProtocol.putAccount(buffer, other);
+			}
+		}
+		flushFromRequest();
+	}
+
+	void sendError(long correlationId, byte status, String message) {
+
+		synchronized (this) {
+			ByteBuffer buffer = reserve(BinaryProtocol.MAX_RESPONSE_BYTES);
+			if (buffer == null) {
+				return;
+			}
+			int start = buffer.position();
+			buffer.putInt(0);
+			buffer.putLong(correlationId);
+			buffer.put(status);
+			BinaryProtocol.putMessage(buffer, message);
+			buffer.putInt(start, buffer.position() - start - BinaryProtocol.LENGTH_BYTES);
+		}
+		flushFromRequest();
+	}
+
+	void close() {
+
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			server.getBufferPool().release(output);
+			output = null;
+		}
+		key.cancel();
+		try {
+			channel.close();
+		} catch (IOException e) {
+			// the connection is gone either way
+		}
+		loop.closed();
+	}
+
+	private void parse(ByteBuffer input) {
+
+		while (!paused && input.remaining() >= BinaryProtocol.LENGTH_BYTES) {
+			int start = input.position();
+			int length = input.getInt(start);
+			if (length < BinaryProtocol.HEADER_BYTES || length > BinaryProtocol.MAX_REQUEST_BYTES) {
+				// the stream cannot be cut into frames any more
+				close();
+				return;
+			}
+			if (input.remaining() < BinaryProtocol.LENGTH_BYTES + length) {
+				break;
+			}
+
+			int end = start + BinaryProtocol.LENGTH_BYTES + length;
+			input.position(start + BinaryProtocol.LENGTH_BYTES);
+			long correlationId = input.getLong();
+			byte opcode = input.get();
+			synchronized (this) {
+				if (++inFlight >= server.getMaxInFlight()) {
+					paused = true;
+				}
+			}
+			if (BinaryProtocol.requestBytes(opcode) != length) {
+				sendError(correlationId, BinaryProtocol.BAD_REQUEST, "Unknown opcode or frame length - " + opcode);
+			} else {
+				server.handle(this, correlationId, opcode, input);
+			}
+			input.position(end);
+
+			synchronized (this) {
+				if (output != null && output.position() >= output.capacity() / 2) {
+					// the responses of this read are piling up, send them before reading on
+					flushLocked();
+					if (output != null && output.position() >= output.capacity() / 2) {
+						paused = true;
+					}
+				}
+			}
+		}
+
+		if (input.hasRemaining()) {
+			unparsed = ByteBuffer.allocate(input.remaining());
+			unparsed.put(input);
+			unparsed.flip();
+		}
+		if (paused) {
+			interest(0, SelectionKey.OP_READ);
+		}
+	}
+
+	// selector thread, reads on once the client has caught up
+	private void resume() {
+
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+		}
+		if (unparsed != null) {
+			ByteBuffer input = unparsed;
+			unparsed = null;
+			parse(input);
+			flush();
+		}
+		if (!paused) {
+			interest(SelectionKey.OP_READ, 0);
+		}
+	}
+
+	// room for length bytes in the output buffer, null once the connection is closed
+	private ByteBuffer reserve(int length) {
+
+		if (closed) {
+			return null;
+		}
+		inFlight--;
+		if (output == null) {
+			output = server.getBufferPool().acquire();
+		} else if (output.remaining() < length) {
+			// a client not reading its responses, kept on the heap until it does
+			ByteBuffer grown = ByteBuffer.allocate(Math.max(output.capacity() * 2, output.position() + length));
+			output.flip();
+			grown.put(output);
+			server.getBufferPool().release(output);
+			output = grown;
+		}
+		return output;
+	}
+
+	// the selector thread sends its responses after the read, other threads right away
+	private void flushFromRequest() {
+
+		if (!loop.inLoop()) {
+			flush();
+		}
+	}
+
+	private void flush() {
+
+		synchronized (this) {
+			flushLocked();
+		}
+	}
+
+	private void flushLocked() {
+
+		if (closed) {
+			return;
+		}
+		if (output != null && !writeScheduled) {
+			output.flip();
+			try {
+				channel.write(output);
+			} catch (IOException e) {
+				output.clear();
+				close();
+				return;
+			}
+			output.compact();
+
+			if (output.position() == 0) {
+				server.getBufferPool().release(output);
+				output = null;
+			} else {
+				// the socket is full, the selector finishes the write
+				writeScheduled = true;
+				loop.execute(() -> interest(SelectionKey.OP_WRITE, 0));
+			}
+		}
+
+		if (paused && inFlight <= server.getMaxInFlight() / 2
+				&& (output == null || output.position() < output.capacity() / 2)) {
+			paused = false;
+			loop.execute(this::resume);
+		}
+	}
+
+	// selector thread, the key may have been cancelled by a request thread closing the connection
+	private void interest(int add, int remove) {
+
+		try {
+			key.interestOps((key.interestOps() | add) & ~remove);
+		} catch (CancelledKeyException e) {
+			// closed, nothing left to wait for
+		}
+	}
+
+}
@@ -0,0 +1,157 @@
+package main.java.com.moneytransfer.binary;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import main.java.com.moneytransfer.exception.AccountNotFoundException;
+import main.java.com.moneytransfer.exception.IncorrectInputException;
+import main.java.com.moneytransfer.exception.InsufficientBalanceException;
+import main.java.com.moneytransfer.exception.InvalidReceiverException;
+import main.java.com.moneytransfer.exception.UnsupportedCurrencyException;
+import main.java.com.moneytransfer.model.Account;
+import main.java.com.moneytransfer.model.Amount;
+
+// Frame layout of the binary protocol, shared by BinaryServer and BinaryClient.
+//
+// Every frame is a big-endian int length of the rest of the frame, the client's long
+// correlation id and a one byte opcode (requests) or status (responses), followed by a fixed
+// layout payload. Amounts are long minor units (see Money) and a three letter ASCII currency.
+//
+//   CREATE    units, currency                      -> OK account
+//   TRANSFER  senderId, receiverId, units, currency -> OK sender account, receiver account
+//   GET       accountId                            -> OK account
+//
+// An account is its id, units and currency. A failed request is answered with its status and
+// a short length-prefixed UTF-8 message. Responses carry the correlation id of their request
+// and may come back in any order.
+public final class BinaryProtocol {
+
+	public static final byte CREATE = 1;
+	public static final byte TRANSFER = 2;
+	public static final byte GET = 3;
+
+	public static final byte OK = 0;
+	public static final byte BAD_REQUEST = 1;
+	public static final byte NOT_FOUND = 2;
+	public static final byte INSUFFICIENT_BALANCE = 3;
+	public static final byte INVALID_RECEIVER = 4;
+	public static final byte UNSUPPORTED_CURRENCY = 5;
+	public static final byte SERVER_ERROR = 6;
+
+	// the length field itself
+	static final int LENGTH_BYTES = 4;
+	// correlation id and opcode or status
+	static final int HEADER_BYTES = 9;
+	static final int CURRENCY_BYTES = 3;
+	static final int ACCOUNT_BYTES = 8 + 8 + CURRENCY_BYTES;
+	static final int CREATE_BYTES = HEADER_BYTES + 8 + CURRENCY_BYTES;
+	static final int TRANSFER_BYTES = HEADER_BYTES + 8 + 8 + 8 + CURRENCY_BYTES;
+	static final int GET_BYTES = HEADER_BYTES + 8;
+	// no request is longer, a longer frame means the stream is out of step
+	static final int MAX_REQUEST_BYTES = TRANSFER_BYTES;
+	static final int MAX_MESSAGE_BYTES = 256;
+	static final int MAX_RESPONSE_BYTES = LENGTH_BYTES + HEADER_BYTES + Math.max(2 * ACCOUNT_BYTES, 2 + MAX_MESSAGE_BYTES);
+
+	private BinaryProtocol() {
+	}
+
+	// the frame length a request with this opcode must have, -1 for an unknown opcode
+	static int requestBytes(byte opcode) {
+
+		switch (opcode) {
+		case CREATE:
+			return CREATE_BYTES;
+		case TRANSFER:
+			return TRANSFER_BYTES;
+		case GET:
+			return GET_BYTES;
+		default:
+			return -1;
+		}
+	}
+
+	static void putCurrency(ByteBuffer buffer, String currency) {
+
+		for (int i = 0; i < CURRENCY_BYTES; i++) {
+			buffer.put(currency != null && i < currency.length() ? (byte) currency.charAt(i) : (byte) ' ');
+		}
+	}
+
+	static String getCurrency(ByteBuffer buffer) {
+
+		char[] currency = new char[CURRENCY_BYTES];
+		for (int i = 0; i < CURRENCY_BYTES; i++) {
+			currency[i] = (char) (buffer.get() & 0xFF);
+		}
+		return new String(currency).trim();
+	}
+
+	static void putAccount(ByteBuffer buffer, Account account) {
+
+		Amount amount = account.getAmount();
+		buffer.putLong(account.getId());
+		buffer.putLong(amount.getUnits());
+		putCurrency(buffer, amount.getCurrency());
+	}
+
+	static Account getAccount(ByteBuffer buffer) {
+
+		long id = buffer.getLong();
+		long units = buffer.getLong();
+		Account account = new Account(new Amount(units, getCurrency(buffer)));
+		account.setId(id);
+		return account;
+	}
+
+	// the message, cut to MAX_MESSAGE_BYTES
+	static void putMessage(ByteBuffer buffer, String message) {
+
+		byte[] bytes = (message == null ? "" : message).getBytes(StandardCharsets.UTF_8);
+		int length = Math.min(bytes.length, MAX_MESSAGE_BYTES);
+		buffer.putShort((short) length);
+		buffer.put(bytes, 0, length);
+	}
+
+	static String getMessage(ByteBuffer buffer) {
+
+		byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	static byte statusOf(Exception error) {
+
+		if (error instanceof AccountNotFoundException) {
+			return NOT_FOUND;
+		} else if (error instanceof InsufficientBalanceException) {
+			return INSUFFICIENT_BALANCE;
+		} else if (error instanceof InvalidReceiverException) {
+			return INVALID_RECEIVER;
+		} else if (error instanceof UnsupportedCurrencyException) {
+			return UNSUPPORTED_CURRENCY;
+		} else if (error instanceof IncorrectInputException || error instanceof ArithmeticException) {
+			return BAD_REQUEST;
+		}
+		return SERVER_ERROR;
+	}
+
+	// the exception a client sees for a failed request, the same types the service throws
+	static Exception errorOf(byte status, String message) {
+
+		switch (status) {
+		case NOT_FOUND:
+			return new AccountNotFoundException(message);
+		case INSUFFICIENT_BALANCE:
+			return new InsufficientBalanceException(message);
+		case INVALID_RECEIVER:
+			return new InvalidReceiverException(message);
+		case UNSUPPORTED_CURRENCY:
+			return new UnsupportedCurrencyException(message);
+		case BAD_REQUEST:
+			return new IncorrectInputException(message);
+		default:
+			return new IllegalStateException(message);
+		}
+	}
+
+}
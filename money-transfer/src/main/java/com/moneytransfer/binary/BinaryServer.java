@@ -0,0 +1,347 @@
+package main.java.com.moneytransfer.binary;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import main.java.com.moneytransfer.exception.AccountNotFoundException;
+import main.java.com.moneytransfer.http.BufferPool;
+import main.java.com.moneytransfer.metrics.Metrics;
+import main.java.com.moneytransfer.model.Account;
+import main.java.com.moneytransfer.model.Amount;
+import main.java.com.moneytransfer.service.AccountService;
+import main.java.com.moneytransfer.service.TransferEngine;
+
+// Listener for the binary protocol (BinaryProtocol), serving the same AccountService and
+// TransferEngine as the HTTP server.
+//
+// Connections are persistent and handed round-robin to selector loops, which cut the byte
+// stream into frames without parsing any text. Account reads are answered on the selector
+// thread from the published balances, creations and transfers run on the executor like HTTP
+// requests do, so a connection has many requests in flight and their responses go back in
+// the order they complete, matched by correlation id.
+public class BinaryServer {
+
+	private static final int READ_BUFFER_SIZE = 64 * 1024;
+	private static final int OUTPUT_BUFFER_SIZE = 16 * 1024;
+	private static final int MAX_POOLED_BUFFERS = 1024;
+
+	private final AccountService accountService;
+	private final TransferEngine transferEngine;
+	private final Metrics metrics;
+	private final int selectorCount;
+	private final int maxInFlight;
+	private final BufferPool bufferPool = new BufferPool(OUTPUT_BUFFER_SIZE, MAX_POOLED_BUFFERS);
+	private final AtomicInteger connections = new AtomicInteger();
+
+	private volatile Executor executor;
+	private volatile boolean running;
+
+	private ServerSocketChannel serverChannel;
+	private SelectorLoop[] loops;
+	private Thread acceptor;
+
+	public BinaryServer(AccountService accountService, TransferEngine transferEngine, Metrics metrics,
+			int selectorCount, int maxInFlight) {
+
+		if (selectorCount < 1 || maxInFlight < 1) {
+			throw new IllegalArgumentException("Selector count and requests in flight must be positive.");
+		}
+		this.accountService = accountService;
+		this.transferEngine = transferEngine;
+		this.metrics = metrics;
+		this.selectorCount = selectorCount;
+		this.maxInFlight = maxInFlight;
+	}
+
+	public void bind(InetSocketAddress address, int backlog) throws IOException {
+
+		if (serverChannel != null) {
+			throw new IllegalStateException("Server is already bound.");
+		}
+		serverChannel = ServerSocketChannel.open();
+		serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+		serverChannel.bind(address, backlog);
+	}
+
+	// creations and transfers run on the executor, on the selector thread when it is null
+	public void setExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
+	public void start() {
+
+		if (serverChannel == null || running) {
+			throw new IllegalStateException("Server is not bound or already started.");
+		}
+		running = true;
+		loops = new SelectorLoop[selectorCount];
+		for (int i = 0; i < selectorCount; i++) {
+			try {
+				loops[i] = new SelectorLoop(Selector.open());
+			} catch (IOException e) {
+				throw new IllegalStateException("Selector cannot be opened.", e);
+			}
+			loops[i].thread = new Thread(loops[i], "binary-selector-" + (i + 1));
+			loops[i].thread.start();
+		}
+		acceptor = new Thread(this::accept, "binary-acceptor");
+		acceptor.start();
+	}
+
+	// closes every connection, requests still running lose their responses
+	public void stop() {
+
+		running = false;
+		try {
+			serverChannel.close();
+		} catch (IOException e) {
+			// closing anyway
+		}
+		if (loops != null) {
+			for (SelectorLoop loop : loops) {
+				loop.selector.wakeup();
+			}
+		}
+		try {
+			if (acceptor != null) {
+				acceptor.join(1000);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	public InetSocketAddress getAddress() {
+
+		try {
+			return (InetSocketAddress) serverChannel.getLocalAddress();
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	public int getConnectionCount() {
+		return connections.get();
+	}
+
+	BufferPool getBufferPool() {
+		return bufferPool;
+	}
+
+	int getMaxInFlight() {
+		return maxInFlight;
+	}
+
+	// selector thread, frame is positioned at the payload of a request of a known opcode
+	void handle(BinaryConnection connection, long correlationId, byte opcode, ByteBuffer frame) {
+
+		switch (opcode) {
+		case BinaryProtocol.GET:
+			long accountId = frame.getLong();
+			try {
+				connection.sendAccounts(correlationId, accountService.searchAccount(accountId), null);
+			} catch (AccountNotFoundException e) {
+				connection.sendError(correlationId, BinaryProtocol.NOT_FOUND, e.getMessage());
+			}
+			break;
+		case BinaryProtocol.CREATE:
+			Amount balance = new Amount(frame.getLong(), BinaryProtocol.getCurrency(frame));
+			execute(connection, correlationId, () -> create(connection, correlationId, balance));
+			break;
+		case BinaryProtocol.TRANSFER:
+			long senderId = frame.getLong();
+			long receiverId = frame.getLong();
+			Amount amount = new Amount(frame.getLong(), BinaryProtocol.getCurrency(frame));
+			execute(connection, correlationId, () -> transfer(connection, correlationId, senderId, receiverId, amount));
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown opcode - " + opcode);
+		}
+	}
+
+	private void execute(BinaryConnection connection, long correlationId, Runnable request) {
+
+		Executor current = executor;
+		if (current == null) {
+			request.run();
+			return;
+		}
+		try {
+			current.execute(request);
+		} catch (RejectedExecutionException e) {
+			connection.sendError(correlationId, BinaryProtocol.SERVER_ERROR, "Server is shutting down.");
+		}
+	}
+
+	private void create(BinaryConnection connection, long correlationId, Amount balance) {
+
+		try {
+			Account account = accountService.createAccount(balance);
+			metrics.accountCreated();
+			connection.sendAccounts(correlationId, account, null);
+		} catch (Exception e) {
+			sendError(connection, correlationId, e);
+		}
+	}
+
+	private void transfer(BinaryConnection connection, long correlationId, long senderId, long receiverId,
+			Amount amount) {
+
+		try {
+			transferEngine.transfer(senderId, receiverId, amount, error -> {
+				if (error != null) {
+					sendError(connection, correlationId, error);
+					return;
+				}
+				metrics.transfersApplied(1);
+				try {
+					connection.sendAccounts(correlationId, accountService.searchAccount(senderId),
+							accountService.searchAccount(receiverId));
+				} catch (AccountNotFoundException e) {
+					sendError(connection, correlationId, e);
+				}
+			});
+		} catch (RuntimeException e) {
+			// the engine is closed
+			sendError(connection, correlationId, e);
+		}
+	}
+
+	// unexpected failures are reported without their details, as over HTTP
+	private static void sendError(BinaryConnection connection, long correlationId, Exception error) {
+
+		byte status = BinaryProtocol.statusOf(error);
+		connection.sendError(correlationId, status,
+				status == BinaryProtocol.SERVER_ERROR ? "Internal server error." : error.getMessage());
+	}
+
+	private void accept() {
+
+		int next = 0;
+		while (running) {
+			try {
+				SocketChannel channel = serverChannel.accept();
+				channel.configureBlocking(false);
+				channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+				loops[next].register(channel);
+				next = (next + 1) % loops.length;
+			} catch (ClosedChannelException e) {
+				return;
+			} catch (IOException e) {
+				if (running) {
+					System.err.println("Binary connection cannot be accepted - " + e.getMessage());
+				}
+			}
+		}
+	}
+
+	// one selector thread and the connections it reads
+	final class SelectorLoop implements Runnable {
+
+		private final Selector selector;
+		private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+		private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+		private Thread thread;
+
+		SelectorLoop(Selector selector) {
+			this.selector = selector;
+		}
+
+		boolean inLoop() {
+			return Thread.currentThread() == thread;
+		}
+
+		// runs the task on the selector thread
+		void execute(Runnable task) {
+
+			tasks.add(task);
+			selector.wakeup();
+		}
+
+		void register(SocketChannel channel) {
+
+			execute(() -> {
+				try {
+					SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+					key.attach(new BinaryConnection(BinaryServer.this, this, channel, key));
+					connections.incrementAndGet();
+				} catch (IOException e) {
+					try {
+						channel.close();
+					} catch (IOException ignored) {
+						// nothing else to do with it
+					}
+				}
+			});
+		}
+
+		void closed() {
+			connections.decrementAndGet();
+		}
+
+		@Override
+		public void run() {
+
+			try {
+				while (running) {
+					selector.select(1000);
+
+					Runnable task;
+					while ((task = tasks.poll()) != null) {
+						task.run();
+					}
+
+					Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+					while (selected.hasNext()) {
+						SelectionKey key = selected.next();
+						selected.remove();
+						BinaryConnection connection = (BinaryConnection) key.attachment();
+						if (connection == null) {
+							continue;
+						}
+						try {
+							if (key.isReadable()) {
+								connection.onReadable(readBuffer);
+							}
+							if (key.isWritable()) {
+								connection.onWritable();
+							}
+						} catch (CancelledKeyException e) {
+							// closed by a request thread meanwhile
+						}
+					}
+				}
+			} catch (IOException e) {
+				System.err.println("Binary selector failed - " + e.getMessage());
+			} finally {
+				for (SelectionKey key : selector.keys()) {
+					BinaryConnection connection = (BinaryConnection) key.attachment();
+					if (connection != null) {
+						connection.close();
+					}
+				}
+				try {
+					selector.close();
+				} catch (IOException e) {
+					// the loop is done either way
+				}
+			}
+		}
+
+	}
+
+}
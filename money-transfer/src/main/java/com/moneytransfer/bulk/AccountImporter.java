@@ -0,0 +1,506 @@
+package main.java.com.moneytransfer.bulk;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import main.java.com.moneytransfer.api.JsonCodec;
+import main.java.com.moneytransfer.exception.IncorrectInputException;
+import main.java.com.moneytransfer.exception.UnsupportedCurrencyException;
+import main.java.com.moneytransfer.fx.RateTable;
+import main.java.com.moneytransfer.model.Account;
+import main.java.com.moneytransfer.model.Amount;
+import main.java.com.moneytransfer.model.CreateRequest;
+import main.java.com.moneytransfer.model.Money;
+import main.java.com.moneytransfer.repository.AccountStore;
+import main.java.com.moneytransfer.service.AccountService;
+
+// Creates accounts in bulk from CSV or NDJSON input, one account per line. The calling thread
+// reads the input into chunks cut at line ends and the workers parse, validate and store
+// them. Chunk buffers come from a pool of 2 * workers + 2, so the memory taken does not grow
+// with the input.
+//
+// A chunk reserves one id per record when it is cut, ids therefore rise in line order and are
+// consecutive unless accounts are created elsewhere during the import. A rejected record
+// leaves its id unused. Accounts are stored like /create stores them, journaled and with their
+// opening posting, BATCH_SIZE at a time. An import that fails part way keeps what it stored.
+public class AccountImporter {
+
+	public interface Progress {
+		void report(ImportResult soFar);
+	}
+
+	public static final int DEFAULT_CHUNK_BYTES = 1024 * 1024;
+	public static final int MAX_ERRORS = 100;
+
+	static final int BATCH_SIZE = 1024;
+
+	private static final int MAX_AMOUNT_LENGTH = 64;
+	private static final long POLL_MILLIS = 100;
+	private static final long REPORT_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	private final AccountStore accountRepository;
+	private final AccountService accountService;
+	private final JsonCodec jsonCodec;
+	private final int workers;
+	private final int chunkBytes;
+
+	public AccountImporter(AccountStore accountRepository, AccountService accountService, JsonCodec jsonCodec,
+			int workers, int chunkBytes) {
+
+		if (workers < 1 || chunkBytes < 1) {
+			throw new IllegalArgumentException("Import workers and chunk size must be positive.");
+		}
+		this.accountRepository = accountRepository;
+		this.accountService = accountService;
+		this.jsonCodec = jsonCodec;
+		this.workers = workers;
+		this.chunkBytes = chunkBytes;
+	}
+
+	// progress may be null, it is called on this thread about once a second
+	public ImportResult importFrom(InputStream in, ImportFormat format, Progress progress)
+			throws IOException, IncorrectInputException {
+		return new Run(format, progress).run(in);
+	}
+
+	private final class Run {
+
+		private final ImportFormat format;
+		private final Progress progress;
+		private final int bufferCount = 2 * workers + 2;
+		private final BlockingQueue<byte[]> buffers = new ArrayBlockingQueue<>(bufferCount);
+		// never full, there are no more chunks than buffers
+		private final BlockingQueue<Chunk> chunks = new ArrayBlockingQueue<>(bufferCount);
+		private final LongAdder imported = new LongAdder();
+		private final LongAdder rejected = new LongAdder();
+		// the rejections with the lowest line numbers
+		private final TreeMap<Long, String> errors = new TreeMap<>();
+		private final long startTime = System.nanoTime();
+		private volatile boolean finished;
+		private volatile Throwable failure;
+
+		// written by the reading thread only
+		private int allocated;
+		private long records;
+		private long bytes;
+		private long firstId;
+		private long lastId;
+
+		Run(ImportFormat format, Progress progress) {
+			this.format = format;
+			this.progress = progress;
+		}
+
+		ImportResult run(InputStream in) throws IOException, IncorrectInputException {
+
+			List<Thread> threads = new ArrayList<>(workers);
+			for (int i = 0; i < workers; i++) {
+				Thread thread = new Thread(this::work, "import-" + i);
+				thread.setDaemon(true);
+				thread.start();
+				threads.add(thread);
+			}
+
+			try {
+				read(in);
+			} catch (IOException | IncorrectInputException | RuntimeException e) {
+				if (failure == null) {
+					failure = e;
+				}
+				throw e;
+			} finally {
+				finished = true;
+				join(threads);
+			}
+			checkFailure();
+			return result();
+		}
+
+		private void read(InputStream in) throws IOException, IncorrectInputException {
+
+			byte[] buffer = takeBuffer();
+			int length = 0;
+			long line = 1;
+			boolean first = true;
+			long lastReport = System.nanoTime();
+
+			while (true) {
+				int read = 0;
+				while (length < buffer.length && (read = in.read(buffer, length, buffer.length - length)) >= 0) {
+					length += read;
+					bytes += read;
+				}
+				boolean end = read < 0;
+
+				int start = 0;
+				if (first) {
+					first = false;
+					start = skipByteOrderMark(buffer, length);
+					int headerEnd = indexOf(buffer, start, length, (byte) '\n');
+					if (format == ImportFormat.CSV && (headerEnd >= 0 || end) && isHeader(buffer, start, length)) {
+						start = headerEnd < 0 ? length : headerEnd + 1;
+						line++;
+					}
+				}
+
+				int lineEnd = lastIndexOf(buffer, start, length, (byte) '\n');
+				if (lineEnd < 0 && !end) {
+					throw new IncorrectInputException("Line " + line + " is longer than " + buffer.length + " bytes.");
+				}
+				int cut = end ? length : lineEnd + 1;
+				byte[] next = null;
+				if (!end) {
+					// the start of the next chunk is copied out before the workers can reuse this buffer
+					next = takeBuffer();
+					System.arraycopy(buffer, cut, next, 0, length - cut);
+				}
+
+				Chunk chunk = cut(buffer, start, cut, line);
+				line += chunk.lines;
+				if (chunk.records > 0) {
+					chunks.add(chunk);
+				} else {
+					buffers.add(buffer);
+				}
+
+				if (progress != null && System.nanoTime() - lastReport >= REPORT_NANOS) {
+					progress.report(result());
+					lastReport = System.nanoTime();
+				}
+				if (end) {
+					return;
+				}
+				length -= cut;
+				buffer = next;
+			}
+		}
+
+		// counts the lines and records of bytes [start, end) and reserves the records' ids
+		private Chunk cut(byte[] buffer, int start, int end, long firstLine) {
+
+			int lines = 0;
+			int count = 0;
+			boolean blank = true;
+			for (int i = start; i < end; i++) {
+				byte b = buffer[i];
+				if (b == '\n') {
+					lines++;
+					if (!blank) {
+						count++;
+					}
+					blank = true;
+				} else if (!isSpace(b)) {
+					blank = false;
+				}
+			}
+			if (!blank) {
+				lines++;
+				count++;
+			}
+
+			long chunkFirstId = count == 0 ? 0 : accountRepository.reserveIds(count);
+			if (count > 0) {
+				if (firstId == 0) {
+					firstId = chunkFirstId;
+				}
+				lastId = chunkFirstId + count - 1;
+				records += count;
+			}
+			return new Chunk(buffer, start, end, firstLine, lines, count, chunkFirstId);
+		}
+
+		private void work() {
+
+			Account[] batch = new Account[BATCH_SIZE];
+			char[] scratch = new char[MAX_AMOUNT_LENGTH];
+			try {
+				while (failure == null) {
+					Chunk chunk = chunks.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+					if (chunk == null) {
+						// nothing is added once finished is set
+						if (finished && chunks.isEmpty()) {
+							return;
+						}
+						continue;
+					}
+					process(chunk, batch, scratch);
+					buffers.add(chunk.bytes);
+				}
+			} catch (InterruptedException | RuntimeException | Error e) {
+				failure = e;
+			}
+		}
+
+		private void process(Chunk chunk, Account[] batch, char[] scratch) {
+
+			// one table per chunk, a replacement during the import applies from the next chunk
+			RateTable rates = accountService.currentRates();
+			byte[] bytes = chunk.bytes;
+			long id = chunk.firstId;
+			long line = chunk.firstLine;
+			int count = 0;
+			int lineStart = chunk.start;
+
+			for (int i = chunk.start; i <= chunk.end; i++) {
+				if (i < chunk.end && bytes[i] != '\n') {
+					continue;
+				}
+				int from = trimStart(bytes, lineStart, i);
+				int to = trimEnd(bytes, from, i);
+				if (from < to) {
+					try {
+						Account account = format == ImportFormat.CSV ?
+								parseCsv(bytes, from, to, scratch, rates)
+								: parseJson(bytes, from, to, rates);
+						account.setId(id);
+						batch[count++] = account;
+						if (count == batch.length) {
+							store(batch, count);
+							count = 0;
+						}
+					} catch (IncorrectInputException | UnsupportedCurrencyException | ArithmeticException e) {
+						reject(line, e.getMessage());
+					}
+					id++;
+				}
+				line++;
+				lineStart = i + 1;
+			}
+			store(batch, count);
+		}
+
+		private Account parseCsv(byte[] bytes, int from, int to, char[] scratch, RateTable rates)
+				throws IncorrectInputException, UnsupportedCurrencyException {
+
+			int comma = indexOf(bytes, from, to, (byte) ',');
+			if (comma < 0 || indexOf(bytes, comma + 1, to, (byte) ',') >= 0) {
+				throw new IncorrectInputException("Expected two fields, amount and currency.");
+			}
+
+			int amountStart = trimStart(bytes, from, comma);
+			int amountEnd = trimEnd(bytes, amountStart, comma);
+			if (amountEnd - amountStart >= 2 && bytes[amountStart] == '"' && bytes[amountEnd - 1] == '"') {
+				amountStart++;
+				amountEnd--;
+			}
+			if (amountEnd - amountStart > scratch.length) {
+				throw new IncorrectInputException("Amount is too long.");
+			}
+			for (int i = amountStart; i < amountEnd; i++) {
+				scratch[i - amountStart] = (char) (bytes[i] & 0xFF);
+			}
+			long units;
+			try {
+				units = Money.parseUnits(scratch, 0, amountEnd - amountStart);
+			} catch (NumberFormatException e) {
+				throw new IncorrectInputException(e.getMessage());
+			}
+
+			int currencyStart = trimStart(bytes, comma + 1, to);
+			int currencyEnd = trimEnd(bytes, currencyStart, to);
+			if (currencyEnd - currencyStart >= 2 && bytes[currencyStart] == '"' && bytes[currencyEnd - 1] == '"') {
+				currencyStart++;
+				currencyEnd--;
+			}
+			return toAccount(units, new String(bytes, currencyStart, currencyEnd - currencyStart, StandardCharsets.UTF_8),
+					rates);
+		}
+
+		private Account parseJson(byte[] bytes, int from, int to, RateTable rates)
+				throws IncorrectInputException, UnsupportedCurrencyException {
+
+			CreateRequest request;
+			try {
+				request = jsonCodec.readCreateRequest(bytes, from, to - from);
+			} catch (IOException e) {
+				throw new IncorrectInputException(JsonCodec.INCORRECT_FORMAT);
+			}
+			return toAccount(request.getAmountUnits(), request.getCurrency(), rates);
+		}
+
+		// validated like a /create request, and the opening balance cannot be negative
+		private Account toAccount(long units, String currency, RateTable rates)
+				throws IncorrectInputException, UnsupportedCurrencyException {
+
+			if (units < 0) {
+				throw new IncorrectInputException("Balance cannot be negative.");
+			}
+			int currencyIndex = rates.indexOf(currency.toUpperCase(Locale.ROOT));
+			if (currencyIndex < 0) {
+				throw rates.unsupported();
+			}
+			return new Account(new Amount(units, rates.currency(currencyIndex)));
+		}
+
+		private void store(Account[] batch, int count) {
+
+			if (count > 0) {
+				accountService.importAccounts(batch, count);
+				imported.add(count);
+			}
+		}
+
+		private void reject(long line, String message) {
+
+			rejected.increment();
+			synchronized (errors) {
+				if (errors.size() < MAX_ERRORS || line < errors.lastKey()) {
+					errors.put(line, message);
+					if (errors.size() > MAX_ERRORS) {
+						errors.pollLastEntry();
+					}
+				}
+			}
+		}
+
+		private ImportResult result() {
+
+			List<String> lines = new ArrayList<>();
+			synchronized (errors) {
+				for (Map.Entry<Long, String> error : errors.entrySet()) {
+					lines.add("Line " + error.getKey() + ": " + error.getValue());
+				}
+			}
+			return new ImportResult(records, imported.sum(), rejected.sum(), firstId, lastId, bytes,
+					System.nanoTime() - startTime, lines);
+		}
+
+		// a buffer from the pool, a new one while fewer than bufferCount exist
+		private byte[] takeBuffer() throws InterruptedIOException {
+
+			try {
+				byte[] buffer = buffers.poll();
+				while (buffer == null) {
+					if (allocated < bufferCount) {
+						allocated++;
+						return new byte[chunkBytes];
+					}
+					checkFailure();
+					buffer = buffers.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+				}
+				return buffer;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Import was interrupted.");
+			}
+		}
+
+		private void join(List<Thread> threads) throws InterruptedIOException {
+
+			try {
+				for (Thread thread : threads) {
+					thread.join();
+				}
+			} catch (InterruptedException e) {
+				// the workers stop after their current chunk
+				failure = e;
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Import was interrupted.");
+			}
+		}
+
+		private void checkFailure() {
+
+			Throwable cause = failure;
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			if (cause != null) {
+				throw new IllegalStateException("Import failed.", cause);
+			}
+		}
+
+	}
+
+	private static final class Chunk {
+
+		final byte[] bytes;
+		final int start;
+		final int end;
+		final long firstLine;
+		final int lines;
+		final int records;
+		final long firstId;
+
+		Chunk(byte[] bytes, int start, int end, long firstLine, int lines, int records, long firstId) {
+			this.bytes = bytes;
+			this.start = start;
+			this.end = end;
+			this.firstLine = firstLine;
+			this.lines = lines;
+			this.records = records;
+			this.firstId = firstId;
+		}
+
+	}
+
+	// a first line that does not start like an amount is taken for column names
+	private static boolean isHeader(byte[] bytes, int start, int end) {
+
+		int i = trimStart(bytes, start, end);
+		if (i < end && bytes[i] == '"') {
+			i++;
+		}
+		return i < end && bytes[i] != '\n' && !(bytes[i] >= '0' && bytes[i] <= '9') && bytes[i] != '-'
+				&& bytes[i] != '+' && bytes[i] != '.';
+	}
+
+	private static int skipByteOrderMark(byte[] bytes, int length) {
+		return length >= 3 && bytes[0] == (byte) 0xEF && bytes[1] == (byte) 0xBB && bytes[2] == (byte) 0xBF ? 3 : 0;
+	}
+
+	private static boolean isSpace(byte b) {
+		return b == ' ' || b == '\t' || b == '\r';
+	}
+
+	private static int trimStart(byte[] bytes, int from, int to) {
+
+		while (from < to && isSpace(bytes[from])) {
+			from++;
+		}
+		return from;
+	}
+
+	private static int trimEnd(byte[] bytes, int from, int to) {
+
+		while (to > from && isSpace(bytes[to - 1])) {
+			to--;
+		}
+		return to;
+	}
+
+	private static int indexOf(byte[] bytes, int from, int to, byte value) {
+
+		for (int i = from; i < to; i++) {
+			if (bytes[i] == value) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static int lastIndexOf(byte[] bytes, int from, int to, byte value) {
+
+		for (int i = to - 1; i >= from; i--) {
+			if (bytes[i] == value) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+}
@@ -0,0 +1,36 @@
+package main.java.com.moneytransfer.bulk;
+
+import java.util.Locale;
+
+public enum ImportFormat {
+
+	// amount,currency per line, the first line may be a header
+	CSV,
+	// one object per line with the fields of a /create body
+	NDJSON;
+
+	public static ImportFormat fromName(String name) {
+
+		try {
+			return valueOf(name.trim().toUpperCase(Locale.ROOT));
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Unsupported import format - " + name
+					+ ". Supported formats are csv and ndjson.");
+		}
+	}
+
+	// by the extension, .csv or .ndjson and .jsonl
+	public static ImportFormat fromFileName(String fileName) {
+
+		String name = fileName.toLowerCase(Locale.ROOT);
+		if (name.endsWith(".csv")) {
+			return CSV;
+		}
+		if (name.endsWith(".ndjson") || name.endsWith(".jsonl")) {
+			return NDJSON;
+		}
+		throw new IllegalArgumentException("Import format cannot be told from the file name - " + fileName
+				+ ". Supported formats are csv and ndjson.");
+	}
+
+}
@@ -0,0 +1,70 @@
+package main.java.com.moneytransfer.bulk;
+
+import java.util.List;
+
+// Counts of an import, final or so far. Records are the non-blank lines other than a header,
+// each was given an id in input order whether it was imported or rejected. Errors hold the
+// first rejections only.
+public class ImportResult {
+
+	private final long records;
+	private final long imported;
+	private final long rejected;
+	private final long firstId;
+	private final long lastId;
+	private final long bytes;
+	private final long nanos;
+	private final List<String> errors;
+
+	public ImportResult(long records, long imported, long rejected, long firstId, long lastId, long bytes, long nanos,
+			List<String> errors) {
+		this.records = records;
+		this.imported = imported;
+		this.rejected = rejected;
+		this.firstId = firstId;
+		this.lastId = lastId;
+		this.bytes = bytes;
+		this.nanos = nanos;
+		this.errors = errors;
+	}
+
+	public long getRecords() {
+		return records;
+	}
+
+	public long getImported() {
+		return imported;
+	}
+
+	public long getRejected() {
+		return rejected;
+	}
+
+	// 0 when the input had no records
+	public long getFirstId() {
+		return firstId;
+	}
+
+	public long getLastId() {
+		return lastId;
+	}
+
+	public long getBytes() {
+		return bytes;
+	}
+
+	public long getNanos() {
+		return nanos;
+	}
+
+	public List<String> getErrors() {
+		return errors;
+	}
+
+	@Override
+	public String toString() {
+		return "ImportResult { records=" + records + ", imported=" + imported + ", rejected=" + rejected + ", ids="
+				+ firstId + ".." + lastId + " }";
+	}
+
+}
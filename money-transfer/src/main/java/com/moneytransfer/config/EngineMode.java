@@ -0,0 +1,68 @@
+package main.java.com.moneytransfer.config;
+
+import java.util.Locale;
+import java.util.concurrent.Executor;
+
+import main.java.com.moneytransfer.repository.AccountStore;
+import main.java.com.moneytransfer.repository.ShardedAccountRepository;
+import main.java.com.moneytransfer.service.AccountLocks;
+import main.java.com.moneytransfer.service.AccountService;
+import main.java.com.moneytransfer.service.LockingTransferEngine;
+import main.java.com.moneytransfer.service.SequencedTransferEngine;
+import main.java.com.moneytransfer.service.ShardedTransferEngine;
+import main.java.com.moneytransfer.service.TransferEngine;
+
+public enum EngineMode {
+
+	// transfers run on the request thread under striped account locks
+	LOCKING,
+	// transfers are queued to a single writer thread that applies them in sequence
+	SEQUENCED,
+	// accounts are split into shards, each owned by one thread, cross-shard transfers are
+	// debited and credited in two steps
+	SHARDED;
+
+	public static EngineMode fromName(String name) {
+
+		try {
+			return valueOf(name.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Unsupported engine - " + name
+					+ ". Supported engines are locking, sequenced and sharded.");
+		}
+	}
+
+	// the single writer holds every stripe while it runs, one stripe makes that a single lock
+	public AccountLocks createLocks() {
+		return this == SEQUENCED ? new AccountLocks(1) : new AccountLocks();
+	}
+
+	// the sharded engine needs the accounts split by shard, which only the heap store does
+	public AccountStore createRepository(ServerConfig config, long expectedSize, long capacity) {
+
+		if (this != SHARDED) {
+			return config.getStoreMode().create(expectedSize, capacity);
+		}
+		if (config.getStoreMode() != StoreMode.HEAP) {
+			throw new IllegalArgumentException("The sharded engine only supports the heap store.");
+		}
+		return new ShardedAccountRepository(config.getInt("engine.shards", Runtime.getRuntime().availableProcessors()),
+				expectedSize);
+	}
+
+	public TransferEngine create(AccountService accountService, AccountStore accountRepository,
+			AccountLocks accountLocks, ServerConfig config, Executor completionExecutor) {
+
+		switch (this) {
+		case SHARDED:
+			return new ShardedTransferEngine(accountService, (ShardedAccountRepository) accountRepository,
+					config.getInt("engine.queueSize", ShardedTransferEngine.DEFAULT_QUEUE_SIZE), completionExecutor);
+		case SEQUENCED:
+			return new SequencedTransferEngine(accountService, accountLocks,
+					config.getInt("engine.ringSize", SequencedTransferEngine.DEFAULT_RING_SIZE), completionExecutor);
+		default:
+			return new LockingTransferEngine(accountService);
+		}
+	}
+
+}
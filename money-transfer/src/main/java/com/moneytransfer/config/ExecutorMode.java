@@ -0,0 +1,71 @@
+package main.java.com.moneytransfer.config;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public enum ExecutorMode {
+
+	// requests run on the HttpServer dispatcher thread
+	DISPATCHER,
+	FIXED,
+	WORK_STEALING,
+	// one virtual thread per request, needs Java 21 or newer
+	VIRTUAL;
+
+	public static ExecutorMode fromName(String name) {
+
+		String normalized = name.trim().toUpperCase(Locale.ROOT).replace('-', '_');
+		if ("WORKSTEALING".equals(normalized)) {
+			return WORK_STEALING;
+		}
+		try {
+			return valueOf(normalized);
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Unsupported executor - " + name
+					+ ". Supported executors are dispatcher, fixed, work-stealing, and virtual.");
+		}
+	}
+
+	public ExecutorService create(int threads) {
+
+		switch (this) {
+		case DISPATCHER:
+			return null;
+		case FIXED:
+			return Executors.newFixedThreadPool(threads, workerThreads());
+		case WORK_STEALING:
+			return Executors.newWorkStealingPool(threads);
+		case VIRTUAL:
+			return newVirtualThreadPerTaskExecutor();
+		default:
+			throw new IllegalStateException("Unknown executor - " + this);
+		}
+	}
+
+	private static ExecutorService newVirtualThreadPerTaskExecutor() {
+
+		// looked up reflectively so that the project still builds for Java 8
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (NoSuchMethodException e) {
+			throw new IllegalStateException("Virtual threads require Java 21 or newer.");
+		} catch (IllegalAccessException | InvocationTargetException e) {
+			throw new IllegalStateException("Virtual thread executor cannot be created.", e);
+		}
+	}
+
+	private static ThreadFactory workerThreads() {
+
+		AtomicInteger counter = new AtomicInteger();
+		return runnable -> {
+			Thread thread = new Thread(runnable, "http-worker-" + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+
+}
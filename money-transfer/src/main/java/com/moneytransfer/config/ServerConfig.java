@@ -0,0 +1,120 @@
+package main.java.com.moneytransfer.config;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+// Server settings, read from an optional properties file (--config=path)
+// and overridden by --key=value command-line flags.
+public class ServerConfig {
+
+	private final Properties properties;
+
+	public ServerConfig() {
+		this(new Properties());
+	}
+
+	public ServerConfig(Properties properties) {
+		this.properties = properties;
+	}
+
+	public static ServerConfig fromArgs(String[] args) throws IOException {
+
+		Properties flags = new Properties();
+		for (String arg : args) {
+			if (!arg.startsWith("--")) {
+				throw new IllegalArgumentException("Unrecognized argument - " + arg);
+			}
+			int separator = arg.indexOf('=');
+			if (separator < 0) {
+				flags.setProperty(arg.substring(2), "true");
+			} else {
+				flags.setProperty(arg.substring(2, separator), arg.substring(separator + 1));
+			}
+		}
+
+		Properties properties = new Properties();
+		String configFile = flags.getProperty("config");
+		if (configFile != null) {
+			try (InputStream in = Files.newInputStream(Paths.get(configFile))) {
+				properties.load(in);
+			}
+		}
+		properties.putAll(flags);
+
+		return new ServerConfig(properties);
+	}
+
+	public int getPort() {
+		return getInt("port", 8080);
+	}
+
+	public int getBacklog() {
+		return getInt("backlog", 0);
+	}
+
+	public ExecutorMode getExecutorMode() {
+		return ExecutorMode.fromName(get("executor", ExecutorMode.FIXED.name()));
+	}
+
+	public EngineMode getEngineMode() {
+		return EngineMode.fromName(get("engine", EngineMode.LOCKING.name()));
+	}
+
+	public ServerMode getServerMode() {
+		return ServerMode.fromName(get("server", ServerMode.JDK.name()));
+	}
+
+	public StoreMode getStoreMode() {
+		return StoreMode.fromName(get("store", StoreMode.HEAP.name()));
+	}
+
+	public int getThreads() {
+		return getInt("threads", Runtime.getRuntime().availableProcessors() * 2);
+	}
+
+	public String get(String key, String defaultValue) {
+		String value = properties.getProperty(key);
+		return value == null ? defaultValue : value.trim();
+	}
+
+	public int getInt(String key, int defaultValue) {
+
+		String value = properties.getProperty(key);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid number for " + key + " - " + value);
+		}
+	}
+
+	public long getLong(String key, long defaultValue) {
+
+		String value = properties.getProperty(key);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid number for " + key + " - " + value);
+		}
+	}
+
+	public boolean getBoolean(String key, boolean defaultValue) {
+
+		String value = properties.getProperty(key);
+		return value == null ? defaultValue : Boolean.parseBoolean(value.trim());
+	}
+
+	@Override
+	public String toString() {
+		return "ServerConfig " + properties;
+	}
+
+}
@@ -0,0 +1,43 @@
+package main.java.com.moneytransfer.config;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpServer;
+
+import main.java.com.moneytransfer.http.NioHttpServer;
+
+public enum ServerMode {
+
+	// the JDK's com.sun.net.httpserver
+	JDK,
+	// selector loops with keep-alive, pipelining and pooled direct buffers (NioHttpServer)
+	NIO;
+
+	public static ServerMode fromName(String name) {
+
+		try {
+			return valueOf(name.trim().toUpperCase(Locale.ROOT));
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Unsupported server - " + name + ". Supported servers are jdk and nio.");
+		}
+	}
+
+	public HttpServer create(InetSocketAddress address, ServerConfig config) throws IOException {
+
+		switch (this) {
+		case NIO:
+			NioHttpServer server = new NioHttpServer(
+					config.getInt("nio.selectors", Runtime.getRuntime().availableProcessors()),
+					TimeUnit.SECONDS.toMillis(config.getLong("nio.idleTimeoutSeconds", 30)),
+					config.getInt("nio.maxPipelined", 64));
+			server.bind(address, config.getBacklog());
+			return server;
+		default:
+			return HttpServer.create(address, config.getBacklog());
+		}
+	}
+
+}
@@ -0,0 +1,41 @@
+package main.java.com.moneytransfer.config;
+
+import java.util.Locale;
+
+import main.java.com.moneytransfer.repository.AccountRepository;
+import main.java.com.moneytransfer.repository.AccountStore;
+import main.java.com.moneytransfer.repository.OffHeapAccountRepository;
+
+public enum StoreMode {
+
+	// accounts are objects in a concurrent map on the heap
+	HEAP,
+	// balances, lsns and currencies are columns in direct buffers, for very large account counts
+	OFF_HEAP;
+
+	public static StoreMode fromName(String name) {
+
+		String normalized = name.trim().toUpperCase(Locale.ROOT).replace('-', '_');
+		if ("OFFHEAP".equals(normalized)) {
+			return OFF_HEAP;
+		}
+		try {
+			return valueOf(normalized);
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Unsupported store - " + name
+					+ ". Supported stores are heap and off-heap.");
+		}
+	}
+
+	// expectedSize presizes the heap store, capacity bounds the ids the off-heap store can hold
+	public AccountStore create(long expectedSize, long capacity) {
+
+		switch (this) {
+		case OFF_HEAP:
+			return new OffHeapAccountRepository(capacity);
+		default:
+			return new AccountRepository(expectedSize);
+		}
+	}
+
+}
@@ -1,11 +1,28 @@
 package main.java.com.moneytransfer.exception;
 
+// A business failure, thrown without a stack trace. Its message is the response body, for a
+// missing id it is only built when it is asked for.
 public class AccountNotFoundException extends Exception {
 
 	private static final long serialVersionUID = 1527022626320247512L;
 
+	private final long accountId;
+
 	public AccountNotFoundException(String message) {
-		super(message);
+		super(message, null, false, false);
+		this.accountId = 0;
+	}
+
+	public AccountNotFoundException(long accountId) {
+		super(null, null, false, false);
+		this.accountId = accountId;
+	}
+
+	@Override
+	public String getMessage() {
+
+		String message = super.getMessage();
+		return message != null ? message : "Account cannot be found - " + accountId;
 	}
 
 }
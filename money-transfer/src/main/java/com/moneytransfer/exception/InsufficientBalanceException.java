@@ -5,7 +5,7 @@ public class InsufficientBalanceException extends Exception {
 	private static final long serialVersionUID = -417891453747661077L;
 
 	public InsufficientBalanceException(String message) {
-		super(message);
+		super(message, null, false, false);
 	}
 
 }
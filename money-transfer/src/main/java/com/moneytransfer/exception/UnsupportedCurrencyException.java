@@ -5,7 +5,7 @@ public class UnsupportedCurrencyException extends Exception {
 	private static final long serialVersionUID = 8659616679727726536L;
 
 	public UnsupportedCurrencyException(String message) {
-		super(message);
+		super(message, null, false, false);
 	}
 
 }
@@ -0,0 +1,59 @@
+package main.java.com.moneytransfer.fx;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+// Holds the current rate table. Readers take the table once per transfer and keep using it,
+// so a replacement never blocks or changes a transfer in flight, it only applies to the
+// transfers that start after it.
+public class ExchangeRates {
+
+	private volatile RateTable table;
+	private FileTime loadedModified;
+
+	public ExchangeRates() {
+		this(RateTable.defaults());
+	}
+
+	public ExchangeRates(RateTable table) {
+		this.table = table;
+	}
+
+	public RateTable current() {
+		return table;
+	}
+
+	// accounts may hold any currency of the current table, so none can be dropped
+	public synchronized void replace(RateTable replacement) {
+
+		if (!replacement.containsAll(table)) {
+			throw new IllegalArgumentException("Rate table must keep every current currency - "
+					+ table.getCurrencies() + ".");
+		}
+		table = replacement;
+	}
+
+	public synchronized void load(Path file) throws IOException {
+
+		// a rejected file is reported once, not again on every reload check
+		loadedModified = Files.getLastModifiedTime(file);
+		try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			replace(RateTable.parse(reader));
+		}
+	}
+
+	// reloads the file when it changed since it was last loaded, returns whether it did
+	public synchronized boolean reloadIfModified(Path file) throws IOException {
+
+		if (Files.getLastModifiedTime(file).equals(loadedModified)) {
+			return false;
+		}
+		load(file);
+		return true;
+	}
+
+}
@@ -0,0 +1,260 @@
+package main.java.com.moneytransfer.fx;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import main.java.com.moneytransfer.exception.UnsupportedCurrencyException;
+import main.java.com.moneytransfer.model.Money;
+
+// Immutable FX rate matrix between a fixed set of currencies.
+//
+// Currency codes are three upper case letters, interned into dense indexes through a small
+// open-addressing table keyed by the packed letters, so a lookup neither hashes nor compares
+// strings. Rates are exact fixed-point longs scaled by Money.RATE_SCALE, stored row by row
+// in one array. A new table is built off the request path and swapped in by ExchangeRates.
+//
+// The text form has one "FROM.TO=rate" line per pair, blank lines and # comments are ignored.
+// Every currency needs a rate to every other one, the rate of a currency to itself is 1.
+public final class RateTable {
+
+	private static final int CODE_LENGTH = 3;
+	// Money.RATE_SCALE as a number of decimals
+	private static final int RATE_DECIMALS = 6;
+
+	private final String[] currencies;
+	private final long[] rates;
+	private final int[] slotKeys;
+	private final int[] slotIndexes;
+	private final int mask;
+	private final UnsupportedCurrencyException unsupported;
+
+	private RateTable(String[] currencies, long[] rates) {
+
+		this.currencies = currencies;
+		this.rates = rates;
+
+		int size = Integer.highestOneBit(Math.max(4, currencies.length * 4 - 1)) << 1;
+		this.slotKeys = new int[size];
+		this.slotIndexes = new int[size];
+		this.mask = size - 1;
+		for (int i = 0; i < currencies.length; i++) {
+			int key = pack(currencies[i]);
+			int slot = mix(key) & mask;
+			while (slotKeys[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			slotKeys[slot] = key;
+			slotIndexes[slot] = i;
+		}
+		this.unsupported = new UnsupportedCurrencyException(supportedMessage());
+	}
+
+	// the rates the service has always used
+	public static RateTable defaults() {
+		try {
+			return parse(new StringReader(
+					"GBP.EUR=1.15\nGBP.USD=1.31\n"
+					+ "EUR.GBP=0.87\nEUR.USD=1.13\n"
+					+ "USD.GBP=0.77\nUSD.EUR=0.88\n"));
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public static RateTable parse(Reader reader) throws IOException {
+
+		List<String> codes = new ArrayList<>();
+		List<String[]> pairs = new ArrayList<>();
+		List<Long> pairRates = new ArrayList<>();
+
+		BufferedReader lines = new BufferedReader(reader);
+		String line;
+		int number = 0;
+		while ((line = lines.readLine()) != null) {
+			number++;
+			line = line.trim();
+			if (line.isEmpty() || line.startsWith("#")) {
+				continue;
+			}
+
+			int separator = line.indexOf('=');
+			int dot = line.indexOf('.');
+			if (separator < 0 || dot < 0 || dot > separator) {
+				throw new IllegalArgumentException("Rate line " + number + " is not FROM.TO=rate - " + line);
+			}
+			String from = checkCode(line.substring(0, dot).trim(), number);
+			String to = checkCode(line.substring(dot + 1, separator).trim(), number);
+
+			long rate;
+			try {
+				rate = new BigDecimal(line.substring(separator + 1).trim())
+						.multiply(BigDecimal.valueOf(Money.RATE_SCALE)).longValueExact();
+			} catch (ArithmeticException | NumberFormatException e) {
+				throw new IllegalArgumentException("Rate on line " + number
+						+ " must be a decimal with at most " + RATE_DECIMALS + " decimals - " + line);
+			}
+			if (rate <= 0) {
+				throw new IllegalArgumentException("Rate on line " + number + " must be positive - " + line);
+			}
+
+			for (String code : new String[] { from, to }) {
+				if (!codes.contains(code)) {
+					codes.add(code);
+				}
+			}
+			pairs.add(new String[] { from, to });
+			pairRates.add(rate);
+		}
+
+		if (codes.isEmpty()) {
+			throw new IllegalArgumentException("Rate table has no currencies.");
+		}
+
+		String[] currencies = codes.toArray(new String[0]);
+		int n = currencies.length;
+		long[] rates = new long[n * n];
+		for (int i = 0; i < n; i++) {
+			rates[i * n + i] = Money.RATE_SCALE;
+		}
+		for (int p = 0; p < pairs.size(); p++) {
+			int from = codes.indexOf(pairs.get(p)[0]);
+			int to = codes.indexOf(pairs.get(p)[1]);
+			if (from != to) {
+				rates[from * n + to] = pairRates.get(p);
+			}
+		}
+		for (int from = 0; from < n; from++) {
+			for (int to = 0; to < n; to++) {
+				if (rates[from * n + to] == 0) {
+					throw new IllegalArgumentException("Rate is missing - " + currencies[from] + "." + currencies[to]);
+				}
+			}
+		}
+		return new RateTable(currencies, rates);
+	}
+
+	// the dense index of the currency, -1 when it is not in the table
+	public int indexOf(String currency) {
+
+		if (currency == null || currency.length() != CODE_LENGTH) {
+			return -1;
+		}
+		int key = pack(currency);
+		if (key == 0) {
+			return -1;
+		}
+		int slot = mix(key) & mask;
+		int candidate;
+		while ((candidate = slotKeys[slot]) != 0) {
+			if (candidate == key) {
+				return slotIndexes[slot];
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	// the table's own instance of the code, accounts keep it so that equal codes are identical
+	public String currency(int index) {
+		return currencies[index];
+	}
+
+	public int size() {
+		return currencies.length;
+	}
+
+	public List<String> getCurrencies() {
+		return Collections.unmodifiableList(Arrays.asList(currencies));
+	}
+
+	public long rate(int from, int to) {
+		return rates[from * currencies.length + to];
+	}
+
+	public long convert(long units, int from, int to) {
+		return from == to ? units : Money.convert(units, rates[from * currencies.length + to]);
+	}
+
+	public boolean containsAll(RateTable other) {
+
+		for (String currency : other.currencies) {
+			if (indexOf(currency) < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// thrown for any currency the table does not have, it carries no stack trace so it is shared
+	public UnsupportedCurrencyException unsupported() {
+		return unsupported;
+	}
+
+	// "Supported currencies are GBP, EUR, and USD."
+	public String supportedMessage() {
+
+		StringBuilder message = new StringBuilder("Supported currencies are ");
+		for (int i = 0; i < currencies.length; i++) {
+			if (i > 0) {
+				message.append(currencies.length == 2 ? " " : ", ");
+			}
+			if (i > 0 && i == currencies.length - 1) {
+				message.append("and ");
+			}
+			message.append(currencies[i]);
+		}
+		return message.append('.').toString();
+	}
+
+	public String format() {
+
+		StringBuilder text = new StringBuilder();
+		for (int from = 0; from < currencies.length; from++) {
+			for (int to = 0; to < currencies.length; to++) {
+				if (from != to) {
+					text.append(currencies[from]).append('.').append(currencies[to]).append('=')
+							.append(BigDecimal.valueOf(rate(from, to), RATE_DECIMALS).stripTrailingZeros().toPlainString())
+							.append('\n');
+				}
+			}
+		}
+		return text.toString();
+	}
+
+	private static String checkCode(String code, int number) {
+
+		if (code.length() != CODE_LENGTH || pack(code) == 0) {
+			throw new IllegalArgumentException("Currency on line " + number + " must be three upper case letters - "
+					+ code);
+		}
+		return code;
+	}
+
+	// three letters A-Z packed into an int, 0 for anything else
+	private static int pack(String code) {
+
+		int key = 0;
+		for (int i = 0; i < CODE_LENGTH; i++) {
+			char c = code.charAt(i);
+			if (c < 'A' || c > 'Z') {
+				return 0;
+			}
+			key = (key << 8) | c;
+		}
+		return key;
+	}
+
+	private static int mix(int key) {
+
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+}
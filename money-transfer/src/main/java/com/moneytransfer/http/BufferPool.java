@@ -0,0 +1,54 @@
+package main.java.com.moneytransfer.http;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Direct buffers of one size, handed out and taken back by any thread without locks.
+//
+// When the pool is empty a new buffer is allocated, when it already holds maxBuffers a
+// returned buffer is left to the collector, so the pool only ever keeps what the busiest
+// moment needed, up to maxBuffers.
+public class BufferPool {
+
+	private final int bufferSize;
+	private final int maxBuffers;
+	private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger pooled = new AtomicInteger();
+
+	public BufferPool(int bufferSize, int maxBuffers) {
+		this.bufferSize = bufferSize;
+		this.maxBuffers = maxBuffers;
+	}
+
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	// a cleared buffer of bufferSize bytes
+	public ByteBuffer acquire() {
+
+		ByteBuffer buffer = buffers.poll();
+		if (buffer == null) {
+			return ByteBuffer.allocateDirect(bufferSize);
+		}
+		pooled.decrementAndGet();
+		buffer.clear();
+		return buffer;
+	}
+
+	// buffers that did not come from the pool are ignored
+	public void release(ByteBuffer buffer) {
+
+		if (buffer == null || !buffer.isDirect() || buffer.capacity() != bufferSize) {
+			return;
+		}
+		if (pooled.incrementAndGet() > maxBuffers) {
+			pooled.decrementAndGet();
+			return;
+		}
+		buffers.add(buffer);
+	}
+
+}
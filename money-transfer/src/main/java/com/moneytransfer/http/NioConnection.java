@@ -0,0 +1,561 @@
+package main.java.com.moneytransfer.http;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+
+// One client connection of NioHttpServer, kept open between requests.
+//
+// Requests are parsed on the selector thread of the connection and queued in the order they
+// arrived, so a client may pipeline them. Handlers run on the server's executor and may
+// finish in any order and on any thread; whoever finishes one writes every complete response
+// at the head of the queue, several in one gathering write, and the socket only waits for
+// OP_WRITE when it is full. Once maxPipelined requests are waiting the connection stops
+// reading until half of them are answered. A response streamed in chunks has at most one
+// chunk waiting, its handler waits for the socket to take it before it writes the next.
+final class NioConnection {
+
+	static final int MAX_HEAD_BYTES = 8192;
+	private static final int MAX_GATHER = 16;
+	private static final byte[] CONTINUE = "HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+	private final NioHttpServer server;
+	private final NioHttpServer.SelectorLoop loop;
+	private final SocketChannel channel;
+	private final SelectionKey key;
+	private final InetSocketAddress remoteAddress;
+	private final InetSocketAddress localAddress;
+
+	// used by the selector thread only
+	private ByteBuffer unparsed;
+	private PartialRequest partial;
+	private boolean lastRequest;
+	private long lastReadMillis;
+
+	// guarded by this
+	private final ArrayDeque<NioExchange> exchanges = new ArrayDeque<>();
+	private final ByteBuffer[] gather = new ByteBuffer[MAX_GATHER];
+	private boolean closed;
+	private boolean inputClosed;
+	private boolean writeScheduled;
+
+	private volatile boolean paused;
+
+	NioConnection(NioHttpServer server, NioHttpServer.SelectorLoop loop, SocketChannel channel, SelectionKey key) {
+		this.server = server;
+		this.loop = loop;
+		this.channel = channel;
+		this.key = key;
+		this.remoteAddress = (InetSocketAddress) channel.socket().getRemoteSocketAddress();
+		this.localAddress = (InetSocketAddress) channel.socket().getLocalSocketAddress();
+		this.lastReadMillis = System.currentTimeMillis();
+	}
+
+	NioHttpServer getServer() {
+		return server;
+	}
+
+	BufferPool getBufferPool() {
+		return server.getBufferPool();
+	}
+
+	InetSocketAddress getRemoteAddress() {
+		return remoteAddress;
+	}
+
+	InetSocketAddress getLocalAddress() {
+		return localAddress;
+	}
+
+	// selector thread, readBuffer is the loop's and empty
+	void onReadable(ByteBuffer readBuffer) {
+
+		readBuffer.clear();
+		if (unparsed != null) {
+			// at most a partial request head while the connection is reading
+			readBuffer.put(unparsed);
+			unparsed = null;
+		}
+
+		int read;
+		try {
+			read = channel.read(readBuffer);
+		} catch (IOException e) {
+			close();
+			return;
+		}
+		if (read < 0) {
+			// the client sent its last request, its responses are still written
+			synchronized (this) {
+				inputClosed = true;
+				if (exchanges.isEmpty()) {
+					closeLocked();
+				}
+			}
+			interest(0, SelectionKey.OP_READ);
+			return;
+		}
+
+		lastReadMillis = System.currentTimeMillis();
+		readBuffer.flip();
+		parse(readBuffer);
+	}
+
+	// selector thread
+	void onWritable() {
+
+		interest(0, SelectionKey.OP_WRITE);
+		synchronized (this) {
+			writeScheduled = false;
+		}
+		flush();
+	}
+
+	// selector thread, a connection with nothing in flight that has been quiet too long
+	boolean isIdle(long nowMillis, long timeoutMillis) {
+
+		synchronized (this) {
+			if (!exchanges.isEmpty()) {
+				return false;
+			}
+		}
+		return nowMillis - lastReadMillis > timeoutMillis;
+	}
+
+	// any thread, called by an exchange once its response is whole
+	void responseComplete(NioExchange exchange) {
+
+		synchronized (this) {
+			exchange.markComplete();
+			if (closed) {
+				getBufferPool().release(exchange.getResponse());
+				return;
+			}
+		}
+		flush();
+	}
+
+	// Any thread, called by a streaming exchange with the next chunk of its body. Waits while
+	// the previous chunk is not written, except on the selector thread, which is the one that
+	// would write it: the response then fails instead of hanging every connection of the loop.
+	void sendChunk(NioExchange exchange, ByteBuffer chunk) throws IOException {
+
+		synchronized (this) {
+			if (exchange.getPendingChunk() != null && !closed && loop.inLoop()) {
+				getBufferPool().release(chunk);
+				throw new IOException("Streamed response cannot wait for the socket on the selector thread.");
+			}
+			while (exchange.getPendingChunk() != null && !closed) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					getBufferPool().release(chunk);
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while the response was streamed.");
+				}
+			}
+			if (closed) {
+				getBufferPool().release(chunk);
+				throw new IOException("Connection is closed.");
+			}
+			exchange.setPendingChunk(chunk);
+		}
+		flush();
+	}
+
+	void close() {
+
+		synchronized (this) {
+			closeLocked();
+		}
+	}
+
+	private void parse(ByteBuffer input) {
+
+		while (input.hasRemaining() && !paused && !lastRequest) {
+			if (partial != null) {
+				if (!partial.fill(input)) {
+					return;
+				}
+				PartialRequest request = partial;
+				partial = null;
+				dispatch(request.toExchange(this));
+				continue;
+			}
+
+			int headEnd = findHeadEnd(input);
+			if (headEnd < 0) {
+				if (input.remaining() > MAX_HEAD_BYTES) {
+					reject(431, "Request head is too large.");
+					return;
+				}
+				break;
+			}
+			if (input.position() == headEnd - 2) {
+				// a blank line between requests
+				input.position(headEnd);
+				continue;
+			}
+			parseHead(input, headEnd);
+		}
+
+		if (lastRequest) {
+			input.position(input.limit());
+		} else if (input.hasRemaining()) {
+			unparsed = ByteBuffer.allocate(input.remaining());
+			unparsed.put(input);
+			unparsed.flip();
+		}
+		if (paused) {
+			interest(0, SelectionKey.OP_READ);
+		}
+	}
+
+	// selector thread, reads on once half of the pipelined requests are answered
+	private void resume() {
+
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+		}
+		if (unparsed != null) {
+			ByteBuffer input = unparsed;
+			unparsed = null;
+			parse(input);
+		}
+		if (!paused && !lastRequest) {
+			interest(SelectionKey.OP_READ, 0);
+		}
+	}
+
+	// selector thread, the key may have been cancelled by a handler thread closing the connection
+	private void interest(int add, int remove) {
+
+		try {
+			key.interestOps((key.interestOps() | add) & ~remove);
+		} catch (CancelledKeyException e) {
+			// closed, nothing left to wait for
+		}
+	}
+
+	// the index after the blank line that ends the head, -1 while it has not arrived
+	private static int findHeadEnd(ByteBuffer input) {
+
+		int start = input.position();
+		int limit = input.limit();
+		// a leading CRLF is tolerated between requests
+		if (limit - start >= 2 && input.get(start) == '\r' && input.get(start + 1) == '\n') {
+			return start + 2;
+		}
+		for (int i = start; i + 3 < limit; i++) {
+			if (input.get(i + 3) == '\n' && input.get(i + 2) == '\r' && input.get(i + 1) == '\n'
+					&& input.get(i) == '\r') {
+				return i + 4;
+			}
+		}
+		return -1;
+	}
+
+	private void parseHead(ByteBuffer input, int headEnd) {
+
+		int headStart = input.position();
+		char[] text = new char[headEnd - 4 - headStart];
+		for (int i = 0; i < text.length; i++) {
+			text[i] = (char) (input.get(headStart + i) & 0xFF);
+		}
+		input.position(headEnd);
+
+		String head = new String(text);
+		int lineEnd = head.indexOf("\r\n");
+		String requestLine = lineEnd < 0 ? head : head.substring(0, lineEnd);
+		int firstSpace = requestLine.indexOf(' ');
+		int lastSpace = requestLine.lastIndexOf(' ');
+		if (firstSpace <= 0 || lastSpace <= firstSpace + 1) {
+			reject(400, "Request line is malformed.");
+			return;
+		}
+		String method = requestLine.substring(0, firstSpace);
+		String target = requestLine.substring(firstSpace + 1, lastSpace);
+		String protocol = requestLine.substring(lastSpace + 1);
+		if (!protocol.startsWith("HTTP/1.")) {
+			reject(400, "Only HTTP/1.0 and HTTP/1.1 are supported.");
+			return;
+		}
+
+		Headers headers = new Headers();
+		int start = lineEnd < 0 ? head.length() : lineEnd + 2;
+		while (start < head.length()) {
+			int end = head.indexOf("\r\n", start);
+			end = end < 0 ? head.length() : end;
+			int colon = head.indexOf(':', start);
+			if (colon <= start || colon >= end) {
+				reject(400, "Header is malformed.");
+				return;
+			}
+			headers.add(head.substring(start, colon).trim(), head.substring(colon + 1, end).trim());
+			start = end + 2;
+		}
+
+		URI requestUri;
+		try {
+			requestUri = new URI(target);
+		} catch (URISyntaxException e) {
+			reject(400, "Request target is malformed.");
+			return;
+		}
+
+		if (headers.containsKey("Transfer-Encoding")) {
+			reject(501, "Chunked request bodies are not supported.");
+			return;
+		}
+		long contentLength = 0;
+		String contentLengthText = headers.getFirst("Content-Length");
+		if (contentLengthText != null) {
+			try {
+				contentLength = Long.parseLong(contentLengthText);
+			} catch (NumberFormatException e) {
+				contentLength = -1;
+			}
+			if (contentLength < 0) {
+				reject(400, "Content-Length is malformed.");
+				return;
+			}
+		}
+		if (contentLength > server.getMaxBodyBytes()) {
+			reject(413, "Request body is larger than " + server.getMaxBodyBytes() + " bytes.");
+			return;
+		}
+
+		String connectionHeader = headers.getFirst("Connection");
+		boolean keepAlive = "HTTP/1.0".equals(protocol) ? "keep-alive".equalsIgnoreCase(connectionHeader)
+				: !"close".equalsIgnoreCase(connectionHeader);
+		HttpContext context = server.findContext(requestUri.getPath());
+		if (context == null) {
+			reject(404, "No context found for request.");
+			return;
+		}
+
+		PartialRequest request = new PartialRequest(context, method, requestUri, protocol, headers, keepAlive,
+				(int) contentLength);
+		if (request.fill(input)) {
+			dispatch(request.toExchange(this));
+			return;
+		}
+		partial = request;
+		if ("100-continue".equalsIgnoreCase(headers.getFirst("Expect"))) {
+			sendContinue();
+		}
+	}
+
+	// only sent when no earlier response is due, it must not overtake one
+	private void sendContinue() {
+
+		synchronized (this) {
+			if (!exchanges.isEmpty() || closed) {
+				return;
+			}
+			try {
+				channel.write(ByteBuffer.wrap(CONTINUE));
+			} catch (IOException e) {
+				closeLocked();
+			}
+		}
+	}
+
+	// answers a request that cannot be parsed and closes the connection after the answer
+	private void reject(int responseCode, String message) {
+
+		byte[] body = message.getBytes(StandardCharsets.UTF_8);
+		NioExchange exchange = new NioExchange(this, null, "GET", null, "HTTP/1.1", new Headers(), null, false);
+		lastRequest = true;
+		enqueue(exchange);
+		try {
+			exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+			exchange.sendResponseHeaders(responseCode, body.length);
+			exchange.getResponseBody().write(body);
+			exchange.getResponseBody().close();
+		} catch (IOException e) {
+			close();
+		}
+	}
+
+	private void dispatch(NioExchange exchange) {
+
+		if (!exchange.isKeepAlive()) {
+			lastRequest = true;
+		}
+		if (enqueue(exchange)) {
+			server.dispatch(exchange);
+		}
+	}
+
+	private boolean enqueue(NioExchange exchange) {
+
+		synchronized (this) {
+			if (closed) {
+				return false;
+			}
+			exchanges.addLast(exchange);
+			if (exchanges.size() >= server.getMaxPipelined()) {
+				paused = true;
+			}
+			return true;
+		}
+	}
+
+	// writes the complete responses at the head of the queue, any thread
+	private void flush() {
+
+		synchronized (this) {
+			while (!closed) {
+				int count = 0;
+				for (NioExchange exchange : exchanges) {
+					if (count >= MAX_GATHER - 1) {
+						break;
+					}
+					if (exchange.getPendingChunk() != null) {
+						gather[count++] = exchange.getPendingChunk();
+					}
+					if (!exchange.isComplete()) {
+						break;
+					}
+					gather[count++] = exchange.getResponse();
+				}
+				if (count == 0) {
+					break;
+				}
+
+				try {
+					channel.write(gather, 0, count);
+				} catch (IOException e) {
+					closeLocked();
+					return;
+				} finally {
+					for (int i = 0; i < count; i++) {
+						gather[i] = null;
+					}
+				}
+
+				while (!exchanges.isEmpty()) {
+					NioExchange head = exchanges.peekFirst();
+					ByteBuffer chunk = head.getPendingChunk();
+					if (chunk != null) {
+						if (chunk.hasRemaining()) {
+							break;
+						}
+						getBufferPool().release(chunk);
+						head.setPendingChunk(null);
+						// the streaming handler may write its next chunk
+						notifyAll();
+					}
+					if (!head.isComplete() || head.getResponse().hasRemaining()) {
+						break;
+					}
+					exchanges.pollFirst();
+					getBufferPool().release(head.getResponse());
+					if (head.closesConnection()) {
+						closeLocked();
+						return;
+					}
+				}
+				if (!exchanges.isEmpty()
+						&& (exchanges.peekFirst().getPendingChunk() != null || exchanges.peekFirst().isComplete())) {
+					// the socket is full, the selector finishes the write
+					if (!writeScheduled) {
+						writeScheduled = true;
+						loop.execute(() -> interest(SelectionKey.OP_WRITE, 0));
+					}
+					break;
+				}
+			}
+
+			if (closed) {
+				return;
+			}
+			if (inputClosed && exchanges.isEmpty()) {
+				closeLocked();
+			} else if (paused && exchanges.size() <= server.getMaxPipelined() / 2) {
+				paused = false;
+				loop.execute(this::resume);
+			}
+		}
+	}
+
+	private void closeLocked() {
+
+		if (closed) {
+			return;
+		}
+		closed = true;
+		for (NioExchange exchange : exchanges) {
+			getBufferPool().release(exchange.getPendingChunk());
+			exchange.setPendingChunk(null);
+			if (exchange.isComplete()) {
+				getBufferPool().release(exchange.getResponse());
+			}
+		}
+		exchanges.clear();
+		// streaming handlers fail their next write instead of waiting
+		notifyAll();
+		key.cancel();
+		try {
+			channel.close();
+		} catch (IOException e) {
+			// the connection is gone either way
+		}
+	}
+
+	// a request whose body has not fully arrived yet
+	private static final class PartialRequest {
+
+		private final HttpContext context;
+		private final String method;
+		private final URI requestUri;
+		private final String protocol;
+		private final Headers headers;
+		private final boolean keepAlive;
+		private final byte[] body;
+		private int filled;
+
+		PartialRequest(HttpContext context, String method, URI requestUri, String protocol, Headers headers,
+				boolean keepAlive, int contentLength) {
+			this.context = context;
+			this.method = method;
+			this.requestUri = requestUri;
+			this.protocol = protocol;
+			this.headers = headers;
+			this.keepAlive = keepAlive;
+			this.body = contentLength == 0 ? null : new byte[contentLength];
+		}
+
+		// true once the whole body is there
+		boolean fill(ByteBuffer input) {
+
+			if (body == null) {
+				return true;
+			}
+			int length = Math.min(input.remaining(), body.length - filled);
+			input.get(body, filled, length);
+			filled += length;
+			return filled == body.length;
+		}
+
+		NioExchange toExchange(NioConnection connection) {
+			return new NioExchange(connection, context, method, requestUri, protocol, headers, body, keepAlive);
+		}
+
+	}
+
+}
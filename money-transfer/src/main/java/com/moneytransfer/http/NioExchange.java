@@ -0,0 +1,437 @@
+package main.java.com.moneytransfer.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpPrincipal;
+
+// One request of a NioConnection and the response being written to it.
+//
+// The status line, headers and body are written straight into a pooled direct buffer, which
+// the connection hands to the socket as it is once the body is closed. A body larger than
+// the pooled buffer moves to a heap buffer of its own, unless its length was left open: then
+// it is sent with chunked encoding a buffer at a time while the handler is still writing it.
+// HTTP/1.0 clients do not know chunks, they get such a body as it is, ended by closing the
+// connection.
+final class NioExchange extends HttpExchange {
+
+	private static final byte[] CRLF = { '\r', '\n' };
+	private static final byte[] LAST_CHUNK = { '0', '\r', '\n', '\r', '\n' };
+	private static final long CHUNKED = -1;
+	private static final long UNFRAMED = -2;
+	private static final InputStream EMPTY_BODY = new ByteArrayInputStream(new byte[0]);
+
+	private final NioConnection connection;
+	private final HttpContext context;
+	private final String method;
+	private final URI requestUri;
+	private final String protocol;
+	private final Headers requestHeaders;
+	private final boolean keepAlive;
+	private final Headers responseHeaders = new Headers();
+
+	private InputStream requestBody;
+	private OutputStream responseBody = new ResponseStream();
+	private Map<String, Object> attributes;
+
+	private int responseCode = -1;
+	private long fixedLength;
+	private ByteBuffer response;
+	private boolean closeConnection;
+	private boolean chunked;
+	// streamed to an HTTP/1.0 client without chunks
+	private boolean unframed;
+	// a chunk could not be sent, the body must not be ended as if it were whole
+	private boolean streamFailed;
+
+	// set by the connection under its lock once the response is whole
+	private boolean complete;
+	// a chunk of a streamed body waiting to be written, guarded by the connection
+	private ByteBuffer pendingChunk;
+
+	NioExchange(NioConnection connection, HttpContext context, String method, URI requestUri, String protocol,
+			Headers requestHeaders, byte[] body, boolean keepAlive) {
+		this.connection = connection;
+		this.context = context;
+		this.method = method;
+		this.requestUri = requestUri;
+		this.protocol = protocol;
+		this.requestHeaders = requestHeaders;
+		this.requestBody = body == null ? EMPTY_BODY : new ByteArrayInputStream(body);
+		this.keepAlive = keepAlive;
+	}
+
+	boolean isKeepAlive() {
+		return keepAlive;
+	}
+
+	boolean isComplete() {
+		return complete;
+	}
+
+	void markComplete() {
+		complete = true;
+	}
+
+	// the connection closes once this response is written
+	boolean closesConnection() {
+		return closeConnection;
+	}
+
+	ByteBuffer getResponse() {
+		return response;
+	}
+
+	ByteBuffer getPendingChunk() {
+		return pendingChunk;
+	}
+
+	void setPendingChunk(ByteBuffer chunk) {
+		this.pendingChunk = chunk;
+	}
+
+	@Override
+	public Headers getRequestHeaders() {
+		return requestHeaders;
+	}
+
+	@Override
+	public Headers getResponseHeaders() {
+		return responseHeaders;
+	}
+
+	@Override
+	public URI getRequestURI() {
+		return requestUri;
+	}
+
+	@Override
+	public String getRequestMethod() {
+		return method;
+	}
+
+	@Override
+	public HttpContext getHttpContext() {
+		return context;
+	}
+
+	// like the JDK server, a response not yet complete ends the connection
+	@Override
+	public void close() {
+
+		try {
+			responseBody.close();
+		} catch (IOException e) {
+			connection.close();
+		}
+	}
+
+	@Override
+	public InputStream getRequestBody() {
+		return requestBody;
+	}
+
+	@Override
+	public OutputStream getResponseBody() {
+		return responseBody;
+	}
+
+	// a length of 0 means the length is not known until the body is closed, -1 means no body
+	@Override
+	public void sendResponseHeaders(int responseCode, long responseLength) throws IOException {
+
+		if (this.responseCode >= 0) {
+			throw new IOException("Response headers have already been sent.");
+		}
+		this.responseCode = responseCode;
+		this.fixedLength = responseLength;
+		closeConnection = !keepAlive;
+
+		response = connection.getBufferPool().acquire();
+		if (responseLength != 0) {
+			writeHead(responseLength < 0 ? 0 : responseLength);
+		}
+	}
+
+	@Override
+	public InetSocketAddress getRemoteAddress() {
+		return connection.getRemoteAddress();
+	}
+
+	@Override
+	public int getResponseCode() {
+		return responseCode;
+	}
+
+	@Override
+	public InetSocketAddress getLocalAddress() {
+		return connection.getLocalAddress();
+	}
+
+	@Override
+	public String getProtocol() {
+		return protocol;
+	}
+
+	@Override
+	public synchronized Object getAttribute(String name) {
+		return attributes == null ? null : attributes.get(name);
+	}
+
+	@Override
+	public synchronized void setAttribute(String name, Object value) {
+
+		if (attributes == null) {
+			attributes = new HashMap<>();
+		}
+		attributes.put(name, value);
+	}
+
+	@Override
+	public void setStreams(InputStream requestBody, OutputStream responseBody) {
+
+		if (requestBody != null) {
+			this.requestBody = requestBody;
+		}
+		if (responseBody != null) {
+			this.responseBody = responseBody;
+		}
+	}
+
+	@Override
+	public HttpPrincipal getPrincipal() {
+		return null;
+	}
+
+	// a contentLength of CHUNKED announces a chunked body, UNFRAMED none at all
+	private void writeHead(long contentLength) {
+
+		put(HttpStatus.statusLine(responseCode));
+		for (Map.Entry<String, List<String>> header : responseHeaders.entrySet()) {
+			for (String value : header.getValue()) {
+				putAscii(header.getKey());
+				put(HttpStatus.HEADER_SEPARATOR);
+				putAscii(value);
+				put(CRLF);
+			}
+		}
+		put(connection.getServer().dateHeader());
+		if (contentLength == CHUNKED) {
+			put(HttpStatus.TRANSFER_ENCODING_CHUNKED);
+		} else if (contentLength != UNFRAMED) {
+			put(HttpStatus.CONTENT_LENGTH);
+			putAscii(Long.toString(contentLength));
+			put(CRLF);
+		}
+		if (closeConnection) {
+			put(HttpStatus.CONNECTION_CLOSE);
+		} else if ("HTTP/1.0".equals(protocol)) {
+			put(HttpStatus.CONNECTION_KEEP_ALIVE);
+		}
+		put(CRLF);
+	}
+
+	// the chunk size line, the data and its CRLF
+	private void putChunk(ByteBuffer data) {
+
+		putAscii(Integer.toHexString(data.remaining()));
+		put(CRLF);
+		ensureRemaining(data.remaining());
+		response.put(data);
+		put(CRLF);
+	}
+
+	private void putAscii(String text) {
+
+		ensureRemaining(text.length());
+		for (int i = 0; i < text.length(); i++) {
+			response.put((byte) text.charAt(i));
+		}
+	}
+
+	private void put(byte[] bytes) {
+		put(bytes, 0, bytes.length);
+	}
+
+	private void put(byte[] bytes, int offset, int length) {
+
+		ensureRemaining(length);
+		response.put(bytes, offset, length);
+	}
+
+	private void ensureRemaining(int length) {
+
+		if (response.remaining() >= length) {
+			return;
+		}
+		ByteBuffer pooled = response;
+		response = ByteBuffer.allocate(Math.max(pooled.capacity() * 2, pooled.position() + length));
+		pooled.flip();
+		response.put(pooled);
+		connection.getBufferPool().release(pooled);
+	}
+
+	private final class ResponseStream extends OutputStream {
+
+		private boolean closed;
+		private long written;
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] bytes, int offset, int length) throws IOException {
+
+			if (closed) {
+				throw new IOException("Response body is closed.");
+			}
+			if (responseCode < 0) {
+				throw new IOException("Response headers have not been sent.");
+			}
+			if (fixedLength < 0 || (fixedLength > 0 && written + length > fixedLength)) {
+				throw new IOException("Response body is longer than its Content-Length.");
+			}
+			if (fixedLength == 0 && response.remaining() < length && response.position() > 0) {
+				sendChunk();
+			}
+			put(bytes, offset, length);
+			written += length;
+		}
+
+		// hands the body written so far to the connection as a chunk, after the head when it is
+		// the first, and waits while the previous chunk is not written yet
+		private void sendChunk() throws IOException {
+
+			ByteBuffer data = response;
+			data.flip();
+			response = connection.getBufferPool().acquire();
+			if (!chunked) {
+				chunked = true;
+				unframed = "HTTP/1.0".equals(protocol);
+				if (unframed) {
+					closeConnection = true;
+					writeHead(UNFRAMED);
+				} else {
+					writeHead(CHUNKED);
+				}
+			}
+			if (unframed) {
+				ensureRemaining(data.remaining());
+				response.put(data);
+			} else {
+				putChunk(data);
+			}
+			ByteBuffer chunk = response;
+			chunk.flip();
+			data.clear();
+			response = data;
+			try {
+				connection.sendChunk(NioExchange.this, chunk);
+			} catch (IOException e) {
+				streamFailed = true;
+				throw e;
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+
+			if (closed) {
+				return;
+			}
+			closed = true;
+			if (responseCode < 0) {
+				// the handler gave up without a response
+				connection.close();
+				throw new IOException("Response headers have not been sent.");
+			}
+			if (streamFailed) {
+				// closing the connection without the last chunk tells the client the body is cut short
+				connection.getBufferPool().release(response);
+				connection.close();
+				throw new IOException("Streamed response was cut short.");
+			}
+			if (chunked) {
+				// an unframed body goes as it is and ends with the connection
+				if (!unframed) {
+					// the rest of the body and the empty chunk that ends it
+					ByteBuffer data = response;
+					data.flip();
+					response = connection.getBufferPool().acquire();
+					if (data.hasRemaining()) {
+						putChunk(data);
+					}
+					put(LAST_CHUNK);
+					connection.getBufferPool().release(data);
+				}
+			} else if (fixedLength == 0) {
+				// the length is known now, the head goes in front of the buffered body
+				ByteBuffer body = response;
+				body.flip();
+				response = connection.getBufferPool().acquire();
+				writeHead(body.remaining());
+				ensureRemaining(body.remaining());
+				response.put(body);
+				connection.getBufferPool().release(body);
+			} else if (fixedLength > 0 && written < fixedLength) {
+				closeConnection = true;
+			}
+
+			response.flip();
+			connection.responseComplete(NioExchange.this);
+		}
+
+	}
+
+	// status lines and fixed header bytes, encoded once
+	static final class HttpStatus {
+
+		static final byte[] HEADER_SEPARATOR = ": ".getBytes(StandardCharsets.US_ASCII);
+		static final byte[] CONTENT_LENGTH = "Content-Length: ".getBytes(StandardCharsets.US_ASCII);
+		static final byte[] TRANSFER_ENCODING_CHUNKED = "Transfer-Encoding: chunked\r\n"
+				.getBytes(StandardCharsets.US_ASCII);
+		static final byte[] CONNECTION_CLOSE = "Connection: close\r\n".getBytes(StandardCharsets.US_ASCII);
+		static final byte[] CONNECTION_KEEP_ALIVE = "Connection: keep-alive\r\n".getBytes(StandardCharsets.US_ASCII);
+
+		private static final byte[][] STATUS_LINES = new byte[600][];
+
+		static {
+			String[][] reasons = { { "100", "Continue" }, { "200", "OK" }, { "201", "Created" },
+					{ "204", "No Content" }, { "400", "Bad Request" }, { "401", "Unauthorized" },
+					{ "403", "Forbidden" }, { "404", "Not Found" }, { "405", "Method Not Allowed" },
+					{ "409", "Conflict" }, { "411", "Length Required" }, { "413", "Payload Too Large" },
+					{ "429", "Too Many Requests" }, { "431", "Request Header Fields Too Large" },
+					{ "500", "Internal Server Error" }, { "501", "Not Implemented" },
+					{ "503", "Service Unavailable" } };
+			for (String[] reason : reasons) {
+				STATUS_LINES[Integer.parseInt(reason[0])] = ("HTTP/1.1 " + reason[0] + " " + reason[1] + "\r\n")
+						.getBytes(StandardCharsets.US_ASCII);
+			}
+		}
+
+		private HttpStatus() {
+		}
+
+		static byte[] statusLine(int code) {
+
+			byte[] line = code >= 0 && code < STATUS_LINES.length ? STATUS_LINES[code] : null;
+			return line != null ? line : ("HTTP/1.1 " + code + " \r\n").getBytes(StandardCharsets.US_ASCII);
+		}
+
+	}
+
+}
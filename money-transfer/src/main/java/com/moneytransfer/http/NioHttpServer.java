@@ -0,0 +1,451 @@
+package main.java.com.moneytransfer.http;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import com.sun.net.httpserver.Authenticator;
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+// HTTP/1.1 server on non-blocking NIO, a drop-in for the JDK's HttpServer.
+//
+// An acceptor thread hands new connections round-robin to selectorCount selector loops, each
+// reading and parsing the requests of its connections (NioConnection). Handlers run on the
+// executor, or on the selector thread without one, and see an ordinary HttpExchange, so the
+// same handlers serve both servers. Connections stay open between requests and requests may
+// be pipelined, responses are written from pooled direct buffers in the order the requests
+// came in. Contexts are matched by the longest path prefix like the JDK server, filters and
+// authenticators are not supported.
+public class NioHttpServer extends HttpServer {
+
+	private static final int READ_BUFFER_SIZE = 64 * 1024;
+	private static final int RESPONSE_BUFFER_SIZE = 8 * 1024;
+	private static final int MAX_POOLED_BUFFERS = 1024;
+	private static final int DEFAULT_MAX_BODY_BYTES = 1024 * 1024;
+	private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.RFC_1123_DATE_TIME.withZone(ZoneOffset.UTC);
+
+	private final int selectorCount;
+	private final long idleTimeoutMillis;
+	private final int maxPipelined;
+	private final BufferPool bufferPool = new BufferPool(RESPONSE_BUFFER_SIZE, MAX_POOLED_BUFFERS);
+
+	// replaced as a whole, longest path first
+	private volatile Context[] contexts = new Context[0];
+	private volatile Executor executor;
+	private volatile boolean running;
+	private volatile DateHeader dateHeader = new DateHeader(0, new byte[0]);
+
+	private ServerSocketChannel serverChannel;
+	private SelectorLoop[] loops;
+	private Thread acceptor;
+
+	public NioHttpServer(int selectorCount, long idleTimeoutMillis, int maxPipelined) {
+
+		if (selectorCount < 1 || maxPipelined < 1) {
+			throw new IllegalArgumentException("Selector count and pipelined requests must be positive.");
+		}
+		this.selectorCount = selectorCount;
+		this.idleTimeoutMillis = idleTimeoutMillis;
+		this.maxPipelined = maxPipelined;
+	}
+
+	@Override
+	public void bind(InetSocketAddress address, int backlog) throws IOException {
+
+		if (serverChannel != null) {
+			throw new IllegalStateException("Server is already bound.");
+		}
+		serverChannel = ServerSocketChannel.open();
+		serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+		serverChannel.bind(address, backlog);
+	}
+
+	@Override
+	public void start() {
+
+		if (serverChannel == null || running) {
+			throw new IllegalStateException("Server is not bound or already started.");
+		}
+		running = true;
+		loops = new SelectorLoop[selectorCount];
+		for (int i = 0; i < selectorCount; i++) {
+			try {
+				loops[i] = new SelectorLoop(Selector.open());
+			} catch (IOException e) {
+				throw new IllegalStateException("Selector cannot be opened.", e);
+			}
+			new Thread(loops[i], "nio-selector-" + (i + 1)).start();
+		}
+		// not daemons, like the JDK server's dispatcher they keep the process alive until stop
+		acceptor = new Thread(this::accept, "nio-acceptor");
+		acceptor.start();
+	}
+
+	@Override
+	public void setExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
+	@Override
+	public Executor getExecutor() {
+		return executor;
+	}
+
+	// closes every connection at once, requests still running lose their responses
+	@Override
+	public void stop(int delaySeconds) {
+
+		running = false;
+		try {
+			serverChannel.close();
+		} catch (IOException e) {
+			// closing anyway
+		}
+		if (loops != null) {
+			for (SelectorLoop loop : loops) {
+				loop.selector.wakeup();
+			}
+		}
+		try {
+			if (acceptor != null) {
+				acceptor.join(1000);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public synchronized HttpContext createContext(String path, HttpHandler handler) {
+
+		HttpContext context = createContext(path);
+		context.setHandler(handler);
+		return context;
+	}
+
+	@Override
+	public synchronized HttpContext createContext(String path) {
+
+		if (path == null || !path.startsWith("/")) {
+			throw new IllegalArgumentException("Context path must start with / - " + path);
+		}
+		for (Context context : contexts) {
+			if (context.path.equals(path)) {
+				throw new IllegalArgumentException("Context already exists - " + path);
+			}
+		}
+		Context context = new Context(path);
+		Context[] grown = Arrays.copyOf(contexts, contexts.length + 1);
+		grown[contexts.length] = context;
+		Arrays.sort(grown, (a, b) -> b.path.length() - a.path.length());
+		contexts = grown;
+		return context;
+	}
+
+	@Override
+	public synchronized void removeContext(String path) {
+
+		Context[] current = contexts;
+		for (int i = 0; i < current.length; i++) {
+			if (current[i].path.equals(path)) {
+				Context[] shrunk = new Context[current.length - 1];
+				System.arraycopy(current, 0, shrunk, 0, i);
+				System.arraycopy(current, i + 1, shrunk, i, current.length - i - 1);
+				contexts = shrunk;
+				return;
+			}
+		}
+		throw new IllegalArgumentException("Context cannot be found - " + path);
+	}
+
+	@Override
+	public void removeContext(HttpContext context) {
+		removeContext(context.getPath());
+	}
+
+	@Override
+	public InetSocketAddress getAddress() {
+
+		try {
+			return (InetSocketAddress) serverChannel.getLocalAddress();
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	BufferPool getBufferPool() {
+		return bufferPool;
+	}
+
+	int getMaxPipelined() {
+		return maxPipelined;
+	}
+
+	int getMaxBodyBytes() {
+		return DEFAULT_MAX_BODY_BYTES;
+	}
+
+	// the context with the longest path the request path starts with, null when there is none
+	HttpContext findContext(String path) {
+
+		if (path == null) {
+			return null;
+		}
+		for (Context context : contexts) {
+			if (path.startsWith(context.path) && context.handler != null) {
+				return context;
+			}
+		}
+		return null;
+	}
+
+	// "Date: ...\r\n", formatted once a second
+	byte[] dateHeader() {
+
+		long second = System.currentTimeMillis() / 1000;
+		DateHeader header = dateHeader;
+		if (header.second != second) {
+			String text = "Date: " + DATE_FORMAT.format(Instant.ofEpochSecond(second)) + "\r\n";
+			header = new DateHeader(second, text.getBytes(StandardCharsets.US_ASCII));
+			dateHeader = header;
+		}
+		return header.bytes;
+	}
+
+	void dispatch(NioExchange exchange) {
+
+		Executor current = executor;
+		if (current == null) {
+			handle(exchange);
+			return;
+		}
+		try {
+			current.execute(() -> handle(exchange));
+		} catch (RejectedExecutionException e) {
+			exchange.close();
+		}
+	}
+
+	private static void handle(NioExchange exchange) {
+
+		try {
+			exchange.getHttpContext().getHandler().handle(exchange);
+		} catch (IOException | RuntimeException e) {
+			// like the JDK server, a failed handler ends the exchange and its connection
+			exchange.close();
+		}
+	}
+
+	private void accept() {
+
+		int next = 0;
+		while (running) {
+			try {
+				SocketChannel channel = serverChannel.accept();
+				channel.configureBlocking(false);
+				channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+				loops[next].register(channel);
+				next = (next + 1) % loops.length;
+			} catch (ClosedChannelException e) {
+				return;
+			} catch (IOException e) {
+				if (running) {
+					System.err.println("Connection cannot be accepted - " + e.getMessage());
+				}
+			}
+		}
+	}
+
+	// one selector thread and the connections it reads
+	final class SelectorLoop implements Runnable {
+
+		private final Selector selector;
+		private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+		private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+		private volatile Thread thread;
+
+		SelectorLoop(Selector selector) {
+			this.selector = selector;
+		}
+
+		// whether the caller is this loop's selector thread, which handlers run on without an executor
+		boolean inLoop() {
+			return Thread.currentThread() == thread;
+		}
+
+		// runs the task on the selector thread
+		void execute(Runnable task) {
+
+			tasks.add(task);
+			selector.wakeup();
+		}
+
+		void register(SocketChannel channel) {
+
+			execute(() -> {
+				try {
+					SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+					key.attach(new NioConnection(NioHttpServer.this, this, channel, key));
+				} catch (IOException e) {
+					try {
+						channel.close();
+					} catch (IOException ignored) {
+						// nothing else to do with it
+					}
+				}
+			});
+		}
+
+		@Override
+		public void run() {
+
+			thread = Thread.currentThread();
+			long lastSweep = System.currentTimeMillis();
+			try {
+				while (running) {
+					selector.select(1000);
+
+					Runnable task;
+					while ((task = tasks.poll()) != null) {
+						task.run();
+					}
+
+					Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+					while (selected.hasNext()) {
+						SelectionKey key = selected.next();
+						selected.remove();
+						NioConnection connection = (NioConnection) key.attachment();
+						if (connection == null) {
+							continue;
+						}
+						try {
+							if (key.isReadable()) {
+								connection.onReadable(readBuffer);
+							}
+							if (key.isWritable()) {
+								connection.onWritable();
+							}
+						} catch (CancelledKeyException e) {
+							// a handler thread closed the connection meanwhile
+						}
+					}
+
+					long now = System.currentTimeMillis();
+					if (idleTimeoutMillis > 0 && now - lastSweep >= 1000) {
+						lastSweep = now;
+						for (SelectionKey key : selector.keys()) {
+							NioConnection connection = (NioConnection) key.attachment();
+							if (connection != null && connection.isIdle(now, idleTimeoutMillis)) {
+								connection.close();
+							}
+						}
+					}
+				}
+			} catch (IOException e) {
+				System.err.println("Selector failed - " + e.getMessage());
+			} finally {
+				for (SelectionKey key : selector.keys()) {
+					NioConnection connection = (NioConnection) key.attachment();
+					if (connection != null) {
+						connection.close();
+					}
+				}
+				try {
+					selector.close();
+				} catch (IOException e) {
+					// the loop is done either way
+				}
+			}
+		}
+
+	}
+
+	private static final class DateHeader {
+
+		final long second;
+		final byte[] bytes;
+
+		DateHeader(long second, byte[] bytes) {
+			this.second = second;
+			this.bytes = bytes;
+		}
+
+	}
+
+	private final class Context extends HttpContext {
+
+		private final String path;
+		private final Map<String, Object> attributes = Collections.synchronizedMap(new HashMap<>());
+		private volatile HttpHandler handler;
+
+		Context(String path) {
+			this.path = path;
+		}
+
+		@Override
+		public HttpHandler getHandler() {
+			return handler;
+		}
+
+		@Override
+		public void setHandler(HttpHandler handler) {
+			this.handler = handler;
+		}
+
+		@Override
+		public String getPath() {
+			return path;
+		}
+
+		@Override
+		public HttpServer getServer() {
+			return NioHttpServer.this;
+		}
+
+		@Override
+		public Map<String, Object> getAttributes() {
+			return attributes;
+		}
+
+		@Override
+		public List<Filter> getFilters() {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public Authenticator setAuthenticator(Authenticator authenticator) {
+			throw new UnsupportedOperationException("Authenticators are not supported by the NIO server.");
+		}
+
+		@Override
+		public Authenticator getAuthenticator() {
+			return null;
+		}
+
+	}
+
+}
@@ -0,0 +1,30 @@
+package main.java.com.moneytransfer.journal;
+
+import java.util.Locale;
+
+public enum DurabilityMode {
+
+	// nothing is journaled, state is lost on restart
+	NONE,
+	// records are written and synced in the background, requests do not wait for the disk
+	ASYNC,
+	// requests wait until a background flush has synced their record together with others
+	GROUP_COMMIT,
+	// every record is written and synced before its request returns
+	SYNC;
+
+	public static DurabilityMode fromName(String name) {
+
+		String normalized = name.trim().toUpperCase(Locale.ROOT).replace('-', '_');
+		if ("GROUP".equals(normalized)) {
+			return GROUP_COMMIT;
+		}
+		try {
+			return valueOf(normalized);
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Unsupported durability - " + name
+					+ ". Supported durability modes are none, async, group-commit, and sync.");
+		}
+	}
+
+}
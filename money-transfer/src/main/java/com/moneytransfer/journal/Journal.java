@@ -0,0 +1,449 @@
+package main.java.com.moneytransfer.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+// Append-only write-ahead journal of account creations and transfers.
+//
+// Every record is framed as [payload length][CRC32 of payload][payload] and carries a
+// log sequence number (lsn). Appends only copy the record into an in-memory buffer.
+// With GROUP_COMMIT a flusher thread swaps the buffer out, writes it and syncs it once
+// for everything appended since the previous flush, waiting at most maxDelay for a
+// group to fill up. SYNC writes and syncs inside every append instead.
+public class Journal implements Closeable {
+
+	public interface Visitor {
+
+		void onCreate(long lsn, long accountId, long units, String currency);
+
+		void onTransfer(long lsn, long senderId, long receiverId, long debitUnits, long creditUnits);
+
+	}
+
+	static final byte CREATE = 1;
+	static final byte TRANSFER = 2;
+	static final int FRAME_HEADER = 8;
+
+	private static final int INITIAL_BUFFER = 64 * 1024;
+	private static final int FLUSH_THRESHOLD = 1024 * 1024;
+	private static final int TRANSFER_PAYLOAD = 1 + 5 * 8;
+
+	private final FileChannel channel;
+	private final DurabilityMode mode;
+	private final long maxDelayNanos;
+	private final Thread flusher;
+
+	private final Object lock = new Object();
+	private final CRC32 crc = new CRC32();
+
+	// all guarded by lock
+	private ByteBuffer pending = ByteBuffer.allocate(INITIAL_BUFFER);
+	private ByteBuffer spare = ByteBuffer.allocate(INITIAL_BUFFER);
+	private long nextLsn;
+	private long pendingLastLsn;
+	private long pendingSince;
+	private long appendedLength;
+	private IOException failure;
+	private boolean closed;
+	// the flusher writes the pending group at once instead of waiting out maxDelay
+	private boolean flushRequested;
+
+	private volatile long durableLsn;
+
+	private Journal(FileChannel channel, DurabilityMode mode, long maxDelayNanos, long lastLsn, long length) {
+
+		this.channel = channel;
+		this.mode = mode;
+		this.maxDelayNanos = maxDelayNanos;
+		this.nextLsn = lastLsn + 1;
+		this.durableLsn = lastLsn;
+		this.appendedLength = length;
+
+		if (mode == DurabilityMode.ASYNC || mode == DurabilityMode.GROUP_COMMIT) {
+			this.flusher = new Thread(this::flushLoop, "journal-flusher");
+			this.flusher.setDaemon(true);
+			this.flusher.start();
+		} else {
+			this.flusher = null;
+		}
+	}
+
+	public static Journal disabled() {
+		return new Journal(null, DurabilityMode.NONE, 0, 0, 0);
+	}
+
+	// opens the journal for appending after replay() has read it, a torn tail
+	// past the last complete record is cut off
+	public static Journal open(Path file, DurabilityMode mode, long maxDelayMicros, Replay replay) throws IOException {
+
+		if (mode == DurabilityMode.NONE) {
+			return disabled();
+		}
+
+		FileChannel channel = FileChannel.open(file,
+				StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		channel.truncate(replay.getValidLength());
+		channel.position(replay.getValidLength());
+
+		return new Journal(channel, mode, TimeUnit.MICROSECONDS.toNanos(maxDelayMicros),
+				replay.getLastLsn(), replay.getValidLength());
+	}
+
+	public static Replay replay(Path file, Visitor visitor) throws IOException {
+		return Replay.run(file, 0, 0, visitor);
+	}
+
+	// replays only the tail after a snapshot that covers the journal up to offset and lastLsn
+	public static Replay replay(Path file, long offset, long lastLsn, Visitor visitor) throws IOException {
+		return Replay.run(file, offset, lastLsn, visitor);
+	}
+
+	public DurabilityMode getMode() {
+		return mode;
+	}
+
+	public boolean isEnabled() {
+		return mode != DurabilityMode.NONE;
+	}
+
+	public long getDurableLsn() {
+		return durableLsn;
+	}
+
+	public long appendCreate(long accountId, long units, String currency) {
+
+		if (mode == DurabilityMode.NONE) {
+			return 0;
+		}
+
+		byte[] currencyBytes = currency.getBytes(StandardCharsets.UTF_8);
+		synchronized (lock) {
+			long lsn = nextLsn++;
+			int start = beginRecord(1 + 3 * 8 + 2 + currencyBytes.length);
+			pending.put(CREATE).putLong(lsn).putLong(accountId).putLong(units)
+					.putShort((short) currencyBytes.length).put(currencyBytes);
+			endRecord(start, lsn);
+			return lsn;
+		}
+	}
+
+	// debit is taken from the sender in its currency, credit is given to the receiver in
+	// its currency, so replay does not depend on the FX rates in force at the time
+	public long appendTransfer(long senderId, long receiverId, long debitUnits, long creditUnits) {
+
+		if (mode == DurabilityMode.NONE) {
+			return 0;
+		}
+
+		synchronized (lock) {
+			long lsn = nextLsn++;
+			int start = beginRecord(TRANSFER_PAYLOAD);
+			pending.put(TRANSFER).putLong(lsn).putLong(senderId).putLong(receiverId)
+					.putLong(debitUnits).putLong(creditUnits);
+			endRecord(start, lsn);
+			return lsn;
+		}
+	}
+
+	// blocks until the record is on disk when the durability mode promises it
+	public void awaitDurable(long lsn) {
+
+		if (mode == DurabilityMode.GROUP_COMMIT) {
+			awaitSynced(lsn);
+		}
+	}
+
+	// blocks until the record is on disk whatever the mode promises requests, a snapshot must
+	// not point past the synced end of the journal
+	public void awaitOnDisk(long lsn) {
+
+		if ((mode == DurabilityMode.ASYNC || mode == DurabilityMode.GROUP_COMMIT) && durableLsn < lsn) {
+			synchronized (lock) {
+				flushRequested = true;
+				lock.notifyAll();
+			}
+			awaitSynced(lsn);
+		}
+	}
+
+	private void awaitSynced(long lsn) {
+
+		if (durableLsn >= lsn) {
+			return;
+		}
+
+		synchronized (lock) {
+			boolean interrupted = false;
+			while (durableLsn < lsn) {
+				if (failure != null) {
+					throw new UncheckedIOException("Journal write failed.", failure);
+				}
+				if (closed) {
+					throw new IllegalStateException("Journal is closed.");
+				}
+				try {
+					lock.wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	// the lsn of the last appended record and the file offset right after it
+	public long[] mark() {
+
+		if (mode == DurabilityMode.NONE) {
+			return new long[] { 0, 0 };
+		}
+		synchronized (lock) {
+			return new long[] { nextLsn - 1, appendedLength };
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+
+		if (mode == DurabilityMode.NONE) {
+			return;
+		}
+
+		synchronized (lock) {
+			closed = true;
+			lock.notifyAll();
+		}
+		if (flusher != null) {
+			try {
+				flusher.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		channel.close();
+	}
+
+	private int beginRecord(int payloadLength) {
+
+		if (closed) {
+			throw new IllegalStateException("Journal is closed.");
+		}
+		if (failure != null) {
+			throw new UncheckedIOException("Journal write failed.", failure);
+		}
+
+		int needed = FRAME_HEADER + payloadLength;
+		if (pending.remaining() < needed) {
+			ByteBuffer grown = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + needed));
+			pending.flip();
+			grown.put(pending);
+			pending = grown;
+		}
+
+		int start = pending.position();
+		pending.position(start + FRAME_HEADER);
+		return start;
+	}
+
+	private void endRecord(int start, long lsn) {
+
+		int length = pending.position() - start - FRAME_HEADER;
+		crc.reset();
+		crc.update(pending.array(), start + FRAME_HEADER, length);
+		pending.putInt(start, length);
+		pending.putInt(start + 4, (int) crc.getValue());
+
+		boolean wasEmpty = start == 0;
+		pendingLastLsn = lsn;
+		appendedLength += FRAME_HEADER + length;
+
+		if (mode == DurabilityMode.SYNC) {
+			try {
+				writeAndSync(pending);
+				durableLsn = lsn;
+			} catch (IOException e) {
+				failure = e;
+				throw new UncheckedIOException("Journal write failed.", e);
+			}
+		} else if (wasEmpty) {
+			// only the first record of a group has to wake the flusher up
+			pendingSince = System.nanoTime();
+			lock.notifyAll();
+		}
+	}
+
+	private void writeAndSync(ByteBuffer buffer) throws IOException {
+
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		channel.force(false);
+		buffer.clear();
+	}
+
+	private void flushLoop() {
+
+		while (true) {
+			ByteBuffer batch;
+			long batchLastLsn;
+
+			synchronized (lock) {
+				try {
+					while (pending.position() == 0 && !closed) {
+						lock.wait();
+					}
+					if (pending.position() == 0) {
+						return;
+					}
+					// give the group until its oldest record has waited maxDelay
+					long waitNanos;
+					while (!closed && !flushRequested && pending.position() < FLUSH_THRESHOLD
+							&& (waitNanos = pendingSince + maxDelayNanos - System.nanoTime()) > 0) {
+						TimeUnit.NANOSECONDS.timedWait(lock, waitNanos);
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+
+				flushRequested = false;
+				batch = pending;
+				batchLastLsn = pendingLastLsn;
+				pending = spare;
+				spare = null;
+			}
+
+			try {
+				writeAndSync(batch);
+			} catch (IOException e) {
+				synchronized (lock) {
+					failure = e;
+					lock.notifyAll();
+				}
+				return;
+			}
+
+			synchronized (lock) {
+				spare = batch;
+				durableLsn = batchLastLsn;
+				lock.notifyAll();
+			}
+		}
+	}
+
+	// Result of reading a journal: the last lsn found and the length of the valid prefix.
+	public static class Replay {
+
+		private final long lastLsn;
+		private final long validLength;
+		private final long records;
+
+		Replay(long lastLsn, long validLength, long records) {
+			this.lastLsn = lastLsn;
+			this.validLength = validLength;
+			this.records = records;
+		}
+
+		// reads the records of file starting at offset, stopping at the first torn or corrupt frame
+		static Replay run(Path file, long offset, long lastLsn, Visitor visitor) throws IOException {
+
+			long fileLength = file.toFile().exists() ? Files.size(file) : 0;
+			if (fileLength < offset) {
+				throw new IllegalStateException("Journal " + file + " is shorter than its snapshot expects - "
+						+ fileLength + " < " + offset);
+			}
+			if (fileLength == 0) {
+				return new Replay(lastLsn, 0, 0);
+			}
+
+			long records = 0;
+			long validLength = offset;
+			CRC32 crc = new CRC32();
+
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+				ByteBuffer buffer = ByteBuffer.allocate(1024 * 1024);
+				channel.position(offset);
+				buffer.flip();
+
+				while (true) {
+					if (buffer.remaining() < FRAME_HEADER && !refill(channel, buffer, FRAME_HEADER)) {
+						break;
+					}
+					int length = buffer.getInt(buffer.position());
+					int checksum = buffer.getInt(buffer.position() + 4);
+					if (length <= 0 || length > FLUSH_THRESHOLD) {
+						break;
+					}
+					if (buffer.remaining() < FRAME_HEADER + length && !refill(channel, buffer, FRAME_HEADER + length)) {
+						break;
+					}
+
+					crc.reset();
+					crc.update(buffer.array(), buffer.position() + FRAME_HEADER, length);
+					if ((int) crc.getValue() != checksum) {
+						break;
+					}
+
+					buffer.position(buffer.position() + FRAME_HEADER);
+					byte type = buffer.get();
+					long lsn = buffer.getLong();
+					if (type == CREATE) {
+						long accountId = buffer.getLong();
+						long units = buffer.getLong();
+						byte[] currency = new byte[buffer.getShort()];
+						buffer.get(currency);
+						visitor.onCreate(lsn, accountId, units, new String(currency, StandardCharsets.UTF_8));
+					} else if (type == TRANSFER) {
+						visitor.onTransfer(lsn, buffer.getLong(), buffer.getLong(), buffer.getLong(), buffer.getLong());
+					} else {
+						break;
+					}
+
+					lastLsn = lsn;
+					records++;
+					validLength += FRAME_HEADER + length;
+				}
+			}
+			return new Replay(lastLsn, validLength, records);
+		}
+
+		private static boolean refill(FileChannel channel, ByteBuffer buffer, int needed) throws IOException {
+
+			buffer.compact();
+			while (buffer.position() < needed) {
+				if (channel.read(buffer) < 0) {
+					buffer.flip();
+					return false;
+				}
+			}
+			buffer.flip();
+			return true;
+		}
+
+		public long getLastLsn() {
+			return lastLsn;
+		}
+
+		public long getValidLength() {
+			return validLength;
+		}
+
+		public long getRecords() {
+			return records;
+		}
+
+	}
+
+}
@@ -0,0 +1,57 @@
+package main.java.com.moneytransfer.journal;
+
+import main.java.com.moneytransfer.exception.AccountNotFoundException;
+import main.java.com.moneytransfer.model.Account;
+import main.java.com.moneytransfer.model.Amount;
+import main.java.com.moneytransfer.model.Money;
+import main.java.com.moneytransfer.repository.AccountStore;
+
+// Rebuilds the repository from journal records on startup, on top of a snapshot when one was loaded.
+public class JournalRecovery implements Journal.Visitor {
+
+	private final AccountStore accountRepository;
+
+	public JournalRecovery(AccountStore accountRepository) {
+		this.accountRepository = accountRepository;
+	}
+
+	@Override
+	public void onCreate(long lsn, long accountId, long units, String currency) {
+
+		// already restored from a snapshot
+		if (accountRepository.contains(accountId)) {
+			return;
+		}
+
+		Account account = new Account(new Amount(units, currency));
+		account.setId(accountId);
+		account.setLsn(lsn);
+		accountRepository.insert(account);
+	}
+
+	@Override
+	public void onTransfer(long lsn, long senderId, long receiverId, long debitUnits, long creditUnits) {
+
+		try {
+			Account senderAccount = accountRepository.getById(senderId);
+			Account receiverAccount = accountRepository.getById(receiverId);
+
+			// a side is skipped when the snapshot already holds the account at or after this record
+			if (senderAccount.getLsn() < lsn) {
+				senderAccount.getAmount().setUnits(Money.subtract(senderAccount.getAmount().getUnits(), debitUnits));
+				senderAccount.setLsn(lsn);
+				accountRepository.update(senderAccount);
+			}
+
+			if (receiverAccount.getLsn() < lsn) {
+				receiverAccount.getAmount().setUnits(Money.add(receiverAccount.getAmount().getUnits(), creditUnits));
+				receiverAccount.setLsn(lsn);
+				accountRepository.update(receiverAccount);
+			}
+
+		} catch (AccountNotFoundException e) {
+			throw new IllegalStateException("Journal record " + lsn + " refers to an unknown account.", e);
+		}
+	}
+
+}
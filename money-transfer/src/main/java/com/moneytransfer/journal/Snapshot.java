@@ -0,0 +1,246 @@
+package main.java.com.moneytransfer.journal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import main.java.com.moneytransfer.exception.AccountNotFoundException;
+import main.java.com.moneytransfer.model.Account;
+import main.java.com.moneytransfer.model.Amount;
+import main.java.com.moneytransfer.repository.AccountStore;
+import main.java.com.moneytransfer.service.AccountLocks;
+
+// Binary point-in-time image of all accounts, written and read through memory-mapped windows.
+//
+// Layout: a fixed header [magic][version][account count][journal lsn][journal offset][CRC32
+// of the records] followed by fixed-size records [id][units][lsn][currency]. The journal
+// position is marked before the accounts are scanned, and every account is copied under its
+// stripe lock together with the lsn of the last record applied to it. Transfers keep running
+// during the scan, recovery replays the journal from the mark and skips the records an
+// account already contains, which makes the fuzzy image consistent.
+public final class Snapshot {
+
+	static final int MAGIC = 0x4D54534E;
+	static final int VERSION = 1;
+	static final int HEADER = 40;
+	static final int RECORD = 8 + 8 + 8 + 4;
+
+	// records per mapped window, about 56MB
+	private static final int WINDOW_RECORDS = 2 * 1024 * 1024;
+
+	private final long accountCount;
+	private final long journalLsn;
+	private final long journalOffset;
+
+	private Snapshot(long accountCount, long journalLsn, long journalOffset) {
+		this.accountCount = accountCount;
+		this.journalLsn = journalLsn;
+		this.journalOffset = journalOffset;
+	}
+
+	public long getAccountCount() {
+		return accountCount;
+	}
+
+	public long getJournalLsn() {
+		return journalLsn;
+	}
+
+	public long getJournalOffset() {
+		return journalOffset;
+	}
+
+	// writes to a temporary file first and moves it over the previous snapshot once synced,
+	// so a crash while writing leaves the previous snapshot in place
+	public static Snapshot write(Path file, AccountStore accountRepository, AccountLocks accountLocks,
+			Journal journal) throws IOException {
+
+		long[] mark = journal.mark();
+		Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+
+		try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+
+			Writer writer = new Writer(channel);
+			accountRepository.forEach((id, account) -> {
+				long units;
+				long lsn;
+				String currency;
+				accountLocks.lock(id, id);
+				try {
+					// looked up again under the lock, a store may have handed out a copy
+					Account current = accountRepository.getById(id);
+					units = current.getAmount().getUnits();
+					currency = current.getAmount().getCurrency();
+					lsn = current.getLsn();
+				} catch (AccountNotFoundException e) {
+					throw new IllegalStateException("Account disappeared during the snapshot - " + id, e);
+				} finally {
+					accountLocks.unlock(id, id);
+				}
+				writer.put(id, units, lsn, currency);
+			});
+			writer.finish();
+			// the journal must reach the mark on disk before a snapshot that replays from it
+			// replaces the previous one, or a crash would leave it pointing past the journal's end
+			journal.awaitOnDisk(mark[0]);
+
+			ByteBuffer header = ByteBuffer.allocate(HEADER);
+			header.putInt(MAGIC).putInt(VERSION).putLong(writer.count).putLong(mark[0]).putLong(mark[1])
+					.putInt((int) writer.crc.getValue()).putInt(0);
+			header.flip();
+			channel.write(header, 0);
+			channel.truncate(HEADER + writer.count * RECORD);
+			channel.force(true);
+
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			return new Snapshot(writer.count, mark[0], mark[1]);
+		}
+	}
+
+	// the number of accounts in the snapshot, to size the repository before loading it
+	public static long accountCount(Path file) throws IOException {
+
+		if (!Files.exists(file)) {
+			return 0;
+		}
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer header = ByteBuffer.allocate(16);
+			channel.read(header, 0);
+			header.flip();
+			return header.remaining() == 16 && header.getInt() == MAGIC ? header.getLong(8) : 0;
+		}
+	}
+
+	// loads the snapshot into an empty repository, null when there is no snapshot yet
+	public static Snapshot load(Path file, AccountStore accountRepository) throws IOException {
+
+		if (!Files.exists(file)) {
+			return null;
+		}
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER);
+			channel.read(header, 0);
+			header.flip();
+			if (header.remaining() < HEADER || header.getInt() != MAGIC || header.getInt() != VERSION) {
+				throw new IOException("Not a snapshot file - " + file);
+			}
+			long count = header.getLong();
+			long journalLsn = header.getLong();
+			long journalOffset = header.getLong();
+			int checksum = header.getInt();
+
+			if (channel.size() != HEADER + count * RECORD) {
+				throw new IOException("Snapshot " + file + " is truncated.");
+			}
+
+			CRC32 crc = new CRC32();
+			Map<Integer, String> currencies = new HashMap<>();
+			for (long first = 0; first < count; first += WINDOW_RECORDS) {
+				int records = (int) Math.min(WINDOW_RECORDS, count - first);
+				MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY,
+						HEADER + first * RECORD, (long) records * RECORD);
+				crc.update(window.duplicate());
+
+				for (int i = 0; i < records; i++) {
+					long id = window.getLong();
+					long units = window.getLong();
+					long lsn = window.getLong();
+					String currency = currencies.computeIfAbsent(window.getInt(), Snapshot::decodeCurrency);
+
+					Account account = new Account(new Amount(units, currency));
+					account.setId(id);
+					account.setLsn(lsn);
+					accountRepository.insert(account);
+				}
+			}
+
+			if ((int) crc.getValue() != checksum) {
+				throw new IOException("Snapshot " + file + " is corrupt.");
+			}
+			return new Snapshot(count, journalLsn, journalOffset);
+		}
+	}
+
+	private static int encodeCurrency(String currency) {
+
+		// up to four ASCII characters packed into an int, zero padded
+		int code = 0;
+		for (int i = 0; i < 4; i++) {
+			code = (code << 8) | (i < currency.length() ? currency.charAt(i) & 0x7F : 0);
+		}
+		return code;
+	}
+
+	private static String decodeCurrency(int code) {
+
+		byte[] bytes = new byte[4];
+		int length = 0;
+		for (int shift = 24; shift >= 0 && ((code >>> shift) & 0xFF) != 0; shift -= 8) {
+			bytes[length++] = (byte) (code >>> shift);
+		}
+		return new String(bytes, 0, length, StandardCharsets.US_ASCII);
+	}
+
+	// fills the file window by window, mapping the next one when the current one is full
+	private static class Writer {
+
+		private final FileChannel channel;
+		private final CRC32 crc = new CRC32();
+		private MappedByteBuffer window;
+		private long count;
+
+		Writer(FileChannel channel) {
+			this.channel = channel;
+		}
+
+		void put(long id, long units, long lsn, String currency) {
+
+			try {
+				if (window == null || !window.hasRemaining()) {
+					nextWindow();
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			window.putLong(id).putLong(units).putLong(lsn).putInt(encodeCurrency(currency));
+			count++;
+		}
+
+		void finish() {
+			if (window != null) {
+				checksum();
+				window.force();
+			}
+		}
+
+		private void nextWindow() throws IOException {
+
+			if (window != null) {
+				checksum();
+				window.force();
+			}
+			window = channel.map(FileChannel.MapMode.READ_WRITE, HEADER + count * RECORD, (long) WINDOW_RECORDS * RECORD);
+		}
+
+		private void checksum() {
+
+			ByteBuffer written = window.duplicate();
+			written.flip();
+			crc.update(written);
+		}
+
+	}
+
+}
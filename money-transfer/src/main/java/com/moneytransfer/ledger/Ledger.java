@@ -0,0 +1,262 @@
+package main.java.com.moneytransfer.ledger;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import main.java.com.moneytransfer.model.Posting;
+import main.java.com.moneytransfer.repository.ConcurrentLongMap;
+
+// Append-only history of every account, kept in memory outside the heap.
+//
+// Each account has its own postings in segments, the first of FIRST_SEGMENT postings and every
+// next one twice as large up to MAX_SEGMENT, so a quiet account stays small and a busy one
+// appends without copying. A posting is found from its index with a little arithmetic, a
+// page of history is read from any index without walking the ones after it. Segments are cut
+// from direct slabs shared by all accounts, the heap only holds a small History per account,
+// because postings kept in heap arrays all survive and made every young collection copy them.
+//
+// Postings of an account are appended by whoever may write its balance at that moment, so
+// there is one writer per account and no lock. The writer fills the slot and then publishes
+// it with an ordered store of the size, readers take the size first and never see a slot
+// being written.
+//
+// The slabs are bounded by maxBytes. A writer reserves the slots of its postings before it
+// journals or writes anything, so a full ledger fails the change cleanly and append itself
+// never allocates a reserved slot.
+public class Ledger {
+
+	private static final int POSTING_BYTES = 48;
+	private static final int FIRST_SHIFT = 2;
+	private static final int MAX_SHIFT = 14;
+	private static final int FIRST_SEGMENT = 1 << FIRST_SHIFT;
+	private static final int MAX_SEGMENT = 1 << MAX_SHIFT;
+	// segments from this one on are all MAX_SEGMENT postings long
+	private static final int FULL_SEGMENT = MAX_SHIFT - FIRST_SHIFT;
+	private static final long FULL_SEGMENT_START = FIRST_SEGMENT * ((1L << FULL_SEGMENT) - 1);
+	private static final int SLAB_SHIFT = 24;
+	private static final int SLAB_SIZE = 1 << SLAB_SHIFT;
+	private static final int MAX_SLABS = 1 << 16;
+	public static final long DEFAULT_MAX_BYTES = 1L << 30;
+	// the kind shares a long with the counterparty id
+	private static final int KIND_SHIFT = 56;
+	private static final long COUNTERPARTY_MASK = (1L << KIND_SHIFT) - 1;
+	private static final Posting.Kind[] KINDS = Posting.Kind.values();
+
+	private final boolean enabled;
+	private final ConcurrentLongMap<History> histories;
+	private final AtomicReferenceArray<ByteBuffer> slabs;
+	// next free byte of the slabs, segments never straddle two of them
+	private final AtomicLong next = new AtomicLong();
+
+	private Ledger(boolean enabled, long expectedAccounts, long maxBytes) {
+
+		if (enabled && maxBytes < SLAB_SIZE) {
+			throw new IllegalArgumentException("Ledger needs at least one slab of " + SLAB_SIZE + " bytes - " + maxBytes);
+		}
+		this.enabled = enabled;
+		this.histories = enabled ? new ConcurrentLongMap<>(64, expectedAccounts) : null;
+		this.slabs = enabled ? new AtomicReferenceArray<>((int) Math.min(MAX_SLABS, maxBytes >>> SLAB_SHIFT)) : null;
+	}
+
+	public Ledger() {
+		this(0);
+	}
+
+	public Ledger(long expectedAccounts) {
+		this(expectedAccounts, DEFAULT_MAX_BYTES);
+	}
+
+	public Ledger(long expectedAccounts, long maxBytes) {
+		this(true, expectedAccounts, maxBytes);
+	}
+
+	public static Ledger disabled() {
+		return new Ledger(false, 0, 0);
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	// Makes sure the next postings of the account have their slots, throws IllegalStateException
+	// when the ledger is full. Only the account's current writer may reserve.
+	public void reserve(long accountId, int postings) {
+
+		if (!enabled) {
+			return;
+		}
+		History history = historyOf(accountId);
+		int lastSegment = segmentOf(history.size + postings - 1);
+		while (history.allocated <= lastSegment) {
+			allocateSegment(history);
+		}
+	}
+
+	// only the account's current writer may append, see the class comment
+	public void append(long accountId, Posting.Kind kind, long timeMillis, long counterpartyId, long units, long balance,
+			long rate, long lsn) {
+
+		if (!enabled) {
+			return;
+		}
+		if (counterpartyId < 0 || counterpartyId > COUNTERPARTY_MASK) {
+			throw new IllegalArgumentException("Counterparty id is out of range - " + counterpartyId);
+		}
+
+		History history = historyOf(accountId);
+		long index = history.size;
+		long address = history.tail;
+		if (address == history.tailEnd) {
+			int segment = segmentOf(index);
+			if (segment >= history.allocated) {
+				// not reserved, the caller takes the chance of a full ledger
+				allocateSegment(history);
+			}
+			address = history.segments[segment];
+			history.tailEnd = address + segmentSize(segment) * POSTING_BYTES;
+		}
+
+		ByteBuffer slab = slabs.get((int) (address >>> SLAB_SHIFT));
+		int offset = (int) address & (SLAB_SIZE - 1);
+		slab.putLong(offset, timeMillis);
+		slab.putLong(offset + 8, (long) kind.ordinal() << KIND_SHIFT | counterpartyId);
+		slab.putLong(offset + 16, units);
+		slab.putLong(offset + 24, balance);
+		slab.putLong(offset + 32, rate);
+		slab.putLong(offset + 40, lsn);
+		history.tail = address + POSTING_BYTES;
+		History.SIZE.lazySet(history, index + 1);
+	}
+
+	public long size(long accountId) {
+
+		History history = enabled ? histories.get(accountId) : null;
+		return history == null ? 0 : history.size;
+	}
+
+	// up to limit postings with an index below before, newest first
+	public List<Posting> read(long accountId, long before, int limit) {
+
+		History history = enabled ? histories.get(accountId) : null;
+		if (history == null || limit <= 0) {
+			return Collections.emptyList();
+		}
+
+		long end = Math.min(before, history.size);
+		long[] directory = history.segments;
+		List<Posting> page = new ArrayList<>((int) Math.min(limit, Math.max(end, 0)));
+		for (long index = end - 1; index >= 0 && page.size() < limit; index--) {
+			int segment = segmentOf(index);
+			long address = directory[segment] + (index - firstIndexOf(segment)) * POSTING_BYTES;
+			ByteBuffer slab = slabs.get((int) (address >>> SLAB_SHIFT));
+			int offset = (int) address & (SLAB_SIZE - 1);
+			long kindAndCounterparty = slab.getLong(offset + 8);
+			page.add(new Posting(index, KINDS[(int) (kindAndCounterparty >>> KIND_SHIFT)], slab.getLong(offset),
+					kindAndCounterparty & COUNTERPARTY_MASK, slab.getLong(offset + 16), slab.getLong(offset + 24),
+					slab.getLong(offset + 32), slab.getLong(offset + 40)));
+		}
+		return page;
+	}
+
+	// bytes of slabs handed out to segments so far
+	public long getAllocatedBytes() {
+		return enabled ? next.get() : 0;
+	}
+
+	private History historyOf(long accountId) {
+
+		History history = histories.get(accountId);
+		if (history == null) {
+			// accounts restored at startup begin their history with their first transfer
+			history = new History();
+			histories.put(accountId, history);
+		}
+		return history;
+	}
+
+	private void allocateSegment(History history) {
+
+		int segment = history.allocated;
+		long address = allocate(segmentSize(segment) * POSTING_BYTES);
+		long[] directory = history.segments;
+		long[] grown = segment < directory.length ? directory.clone()
+				: Arrays.copyOf(directory, Math.max(directory.length * 2, segment + 1));
+		grown[segment] = address;
+		// published before the size, a reader that sees the posting also sees its segment
+		history.segments = grown;
+		history.allocated = segment + 1;
+	}
+
+	private long allocate(int bytes) {
+
+		while (true) {
+			long current = next.get();
+			long start = current;
+			if ((start & (SLAB_SIZE - 1)) + bytes > SLAB_SIZE) {
+				// the rest of the slab is too short, it is left unused
+				start = (start >>> SLAB_SHIFT) + 1 << SLAB_SHIFT;
+			}
+			int s = (int) (start >>> SLAB_SHIFT);
+			if (s >= slabs.length()) {
+				throw new IllegalStateException("Ledger is full - " + slabs.length() + " slabs of history are in use");
+			}
+			// the slab exists before any segment of it is handed out, a failed allocation takes nothing
+			if (slabs.get(s) == null) {
+				ByteBuffer slab;
+				try {
+					slab = ByteBuffer.allocateDirect(SLAB_SIZE).order(ByteOrder.nativeOrder());
+				} catch (OutOfMemoryError e) {
+					throw new IllegalStateException("Ledger cannot allocate another slab of history", e);
+				}
+				slabs.compareAndSet(s, null, slab);
+			}
+			if (next.compareAndSet(current, start + bytes)) {
+				return start;
+			}
+		}
+	}
+
+	private static int segmentSize(int segment) {
+		return segment >= FULL_SEGMENT ? MAX_SEGMENT : FIRST_SEGMENT << segment;
+	}
+
+	private static int segmentOf(long index) {
+
+		if (index >= FULL_SEGMENT_START) {
+			return FULL_SEGMENT + (int) ((index - FULL_SEGMENT_START) >>> MAX_SHIFT);
+		}
+		return 63 - Long.numberOfLeadingZeros((index >>> FIRST_SHIFT) + 1);
+	}
+
+	private static long firstIndexOf(int segment) {
+
+		if (segment >= FULL_SEGMENT) {
+			return FULL_SEGMENT_START + ((long) (segment - FULL_SEGMENT) << MAX_SHIFT);
+		}
+		return FIRST_SEGMENT * ((1L << segment) - 1);
+	}
+
+	private static final class History {
+
+		private static final AtomicLongFieldUpdater<History> SIZE = AtomicLongFieldUpdater.newUpdater(History.class,
+				"size");
+
+		// slab address of every segment
+		private volatile long[] segments = new long[1];
+		private volatile long size;
+		// where the next posting goes and the end of its segment, only used by the writer
+		private long tail;
+		private long tailEnd;
+		// segments with slab space, reserved ones included, only used by the writer
+		private int allocated;
+
+	}
+
+}
@@ -0,0 +1,243 @@
+package main.java.com.moneytransfer.log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import main.java.com.moneytransfer.config.ServerConfig;
+
+// Access log with a cheap request path: records are copied into a pre-allocated
+// ring buffer without locking and a background thread formats and writes them.
+// When the buffer is full, or the record cannot be written, it is dropped and counted
+// instead of waiting.
+public class AccessLog implements Closeable {
+
+	private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private final LogLevel level;
+	private final int sampleRate;
+	private final int mask;
+
+	// slot columns, a slot is readable once published[slot] holds its sequence
+	private final AtomicLongArray published;
+	private final String[] methods;
+	private final String[] uris;
+	private final int[] statuses;
+	private final long[] latencies;
+	private final long[] timestamps;
+
+	private final AtomicLong claimed = new AtomicLong();
+	private final AtomicLong sampled = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private volatile long consumed;
+
+	private final Writer writer;
+	private final boolean ownsWriter;
+	private final Thread drainer;
+	private volatile boolean running;
+
+	private AccessLog(LogLevel level, int sampleRate, int capacity, Writer writer, boolean ownsWriter) {
+
+		if (sampleRate < 1) {
+			throw new IllegalArgumentException("Sample rate must be positive - " + sampleRate);
+		}
+		int size = Integer.highestOneBit(Math.max(2, capacity));
+		if (size < capacity) {
+			size <<= 1;
+		}
+
+		this.level = level;
+		this.sampleRate = sampleRate;
+		this.mask = size - 1;
+		this.published = new AtomicLongArray(size);
+		this.methods = new String[size];
+		this.uris = new String[size];
+		this.statuses = new int[size];
+		this.latencies = new long[size];
+		this.timestamps = new long[size];
+		for (int i = 0; i < size; i++) {
+			published.set(i, -1L);
+		}
+
+		this.writer = writer;
+		this.ownsWriter = ownsWriter;
+		if (level == LogLevel.OFF) {
+			this.drainer = null;
+		} else {
+			this.running = true;
+			this.drainer = new Thread(this::drain, "access-log");
+			this.drainer.setDaemon(true);
+			this.drainer.start();
+		}
+	}
+
+	public static AccessLog disabled() {
+		return new AccessLog(LogLevel.OFF, 1, 2, null, false);
+	}
+
+	public static AccessLog toStream(OutputStream out, LogLevel level, int sampleRate, int capacity) {
+		return new AccessLog(level, sampleRate, capacity, new OutputStreamWriter(out, StandardCharsets.UTF_8), false);
+	}
+
+	public static AccessLog toFile(Path file, LogLevel level, int sampleRate, int capacity) throws IOException {
+
+		Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+				StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE);
+		return new AccessLog(level, sampleRate, capacity, writer, true);
+	}
+
+	// log.level, log.sample (1 in N successful requests), log.buffer (slots) and log.file,
+	// without log.file the records go to standard output
+	public static AccessLog create(ServerConfig config) throws IOException {
+
+		LogLevel level = LogLevel.fromName(config.get("log.level", LogLevel.INFO.name()));
+		int sampleRate = config.getInt("log.sample", 1);
+		int capacity = config.getInt("log.buffer", 16384);
+		String file = config.get("log.file", "");
+
+		if (level == LogLevel.OFF) {
+			return disabled();
+		}
+		return file.isEmpty() ? toStream(System.out, level, sampleRate, capacity)
+				: toFile(Paths.get(file), level, sampleRate, capacity);
+	}
+
+	public boolean isEnabled() {
+		return level != LogLevel.OFF;
+	}
+
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	public void log(String method, String uri, int status, long latencyNanos) {
+
+		LogLevel recordLevel = LogLevel.forStatus(status);
+		if (!level.includes(recordLevel)) {
+			return;
+		}
+		// only successful requests are sampled, failures are always kept
+		if (recordLevel == LogLevel.INFO && sampleRate > 1 && sampled.getAndIncrement() % sampleRate != 0) {
+			return;
+		}
+
+		long sequence;
+		do {
+			sequence = claimed.get();
+			if (sequence - consumed > mask) {
+				dropped.incrementAndGet();
+				return;
+			}
+		} while (!claimed.compareAndSet(sequence, sequence + 1));
+
+		int slot = (int) sequence & mask;
+		methods[slot] = method;
+		uris[slot] = uri;
+		statuses[slot] = status;
+		latencies[slot] = latencyNanos;
+		timestamps[slot] = System.currentTimeMillis();
+		published.lazySet(slot, sequence);
+	}
+
+	@Override
+	public void close() throws IOException {
+
+		if (drainer == null) {
+			return;
+		}
+		running = false;
+		LockSupport.unpark(drainer);
+		try {
+			drainer.join(TimeUnit.SECONDS.toMillis(5));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (ownsWriter) {
+			writer.close();
+		} else {
+			writer.flush();
+		}
+	}
+
+	private void drain() {
+
+		StringBuilder line = new StringBuilder(128);
+		long next = consumed;
+		// drainer only, a failing log is reported once until a write succeeds again
+		boolean failing = false;
+
+		while (true) {
+			boolean stopping = !running;
+			int drained = 0;
+			int written = 0;
+
+			int slot;
+			while (published.get(slot = (int) next & mask) == next) {
+				line.setLength(0);
+				format(line, slot);
+				try {
+					writer.write(line.toString());
+					written++;
+				} catch (IOException e) {
+					// the log must never take the server down, a record that cannot be written is dropped
+					dropped.incrementAndGet();
+					failing = reportFailure(failing, e);
+				}
+
+				methods[slot] = null;
+				uris[slot] = null;
+				consumed = ++next;
+				drained++;
+			}
+			if (written > 0 || stopping) {
+				try {
+					writer.flush();
+					failing = false;
+				} catch (IOException e) {
+					// the records of this round may not have reached the log
+					dropped.addAndGet(written);
+					failing = reportFailure(failing, e);
+				}
+			}
+
+			if (stopping) {
+				return;
+			}
+			if (drained == 0) {
+				LockSupport.parkNanos(IDLE_PARK_NANOS);
+			}
+		}
+	}
+
+	private static boolean reportFailure(boolean failing, IOException e) {
+
+		if (!failing) {
+			System.err.println("Access log write failed, records are dropped until it recovers - " + e.getMessage());
+		}
+		return true;
+	}
+
+	private void format(StringBuilder line, int slot) {
+
+		line.append(Instant.ofEpochMilli(timestamps[slot]))
+				.append(' ').append(LogLevel.forStatus(statuses[slot]))
+				.append(' ').append(methods[slot])
+				.append(' ').append(uris[slot])
+				.append(' ').append(statuses[slot])
+				.append(' ').append(TimeUnit.NANOSECONDS.toMicros(latencies[slot])).append("us")
+				.append(System.lineSeparator());
+	}
+
+}
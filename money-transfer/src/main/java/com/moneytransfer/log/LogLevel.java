@@ -0,0 +1,37 @@
+package main.java.com.moneytransfer.log;
+
+import java.util.Locale;
+
+public enum LogLevel {
+
+	OFF,
+	// server errors (5xx) only
+	ERROR,
+	// client errors (4xx) and server errors
+	WARN,
+	// every request, subject to sampling
+	INFO;
+
+	public static LogLevel fromName(String name) {
+
+		try {
+			return valueOf(name.trim().toUpperCase(Locale.ROOT));
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Unsupported log level - " + name
+					+ ". Supported levels are off, error, warn, and info.");
+		}
+	}
+
+	public static LogLevel forStatus(int status) {
+
+		if (status >= 500 || status == 0) {
+			return ERROR;
+		}
+		return status >= 400 ? WARN : INFO;
+	}
+
+	public boolean includes(LogLevel level) {
+		return level != OFF && level.ordinal() <= ordinal();
+	}
+
+}
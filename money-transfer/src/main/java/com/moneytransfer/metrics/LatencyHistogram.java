@@ -0,0 +1,107 @@
+package main.java.com.moneytransfer.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Log-linear latency histogram in the style of HdrHistogram.
+//
+// Values below 2^SUB_BITS nanoseconds get a bucket each, every power of two above that is
+// split into 2^SUB_BITS equal buckets, so a quantile is off by at most 1/32 of its value.
+// Recording is one atomic increment of the bucket plus a LongAdder for the sum, no lock is
+// taken and nothing is allocated. Values above the highest bucket go into it.
+public class LatencyHistogram {
+
+	private static final int SUB_BITS = 5;
+	private static final int SUB_COUNT = 1 << SUB_BITS;
+	// about 36 minutes in nanoseconds
+	private static final int MAX_BIT = 41;
+	static final int BUCKET_COUNT = (MAX_BIT - SUB_BITS + 1) * SUB_COUNT;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+	private final LongAdder sum = new LongAdder();
+
+	public void record(long nanos) {
+
+		long value = nanos < 0 ? 0 : nanos;
+		counts.getAndIncrement(bucketOf(value));
+		sum.add(value);
+	}
+
+	// a copy of the counts, the buckets are read one by one while recording goes on
+	public Snapshot snapshot() {
+
+		long[] copy = new long[BUCKET_COUNT];
+		long total = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			copy[i] = counts.get(i);
+			total += copy[i];
+		}
+		return new Snapshot(copy, total, sum.sum());
+	}
+
+	static int bucketOf(long value) {
+
+		if (value < SUB_COUNT) {
+			return (int) value;
+		}
+		int msb = 63 - Long.numberOfLeadingZeros(value);
+		if (msb >= MAX_BIT) {
+			return BUCKET_COUNT - 1;
+		}
+		// the top SUB_BITS + 1 bits of the value, the first of them is always set
+		int mantissa = (int) (value >>> (msb - SUB_BITS));
+		return (msb - SUB_BITS + 1) * SUB_COUNT + mantissa - SUB_COUNT;
+	}
+
+	// the highest value that falls into the bucket
+	static long highestValueOf(int bucket) {
+
+		int block = bucket >>> SUB_BITS;
+		int sub = bucket & (SUB_COUNT - 1);
+		if (block == 0) {
+			return sub;
+		}
+		long lowest = (long) (SUB_COUNT + sub) << (block - 1);
+		return lowest + (1L << (block - 1)) - 1;
+	}
+
+	public static class Snapshot {
+
+		private final long[] counts;
+		private final long count;
+		private final long sum;
+
+		Snapshot(long[] counts, long count, long sum) {
+			this.counts = counts;
+			this.count = count;
+			this.sum = sum;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public long getSum() {
+			return sum;
+		}
+
+		// the highest value of the bucket holding the quantile, 0 when nothing was recorded
+		public long getValueAtQuantile(double quantile) {
+
+			if (count == 0) {
+				return 0;
+			}
+			long rank = Math.max(1, (long) Math.ceil(quantile * count));
+			long seen = 0;
+			for (int i = 0; i < counts.length; i++) {
+				seen += counts[i];
+				if (seen >= rank) {
+					return highestValueOf(i);
+				}
+			}
+			return highestValueOf(counts.length - 1);
+		}
+
+	}
+
+}
@@ -0,0 +1,180 @@
+package main.java.com.moneytransfer.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+// Request metrics of the server, written in the Prometheus text format.
+//
+// Every endpoint has a latency histogram per outcome (2xx, 4xx, 5xx) and an in-flight gauge,
+// all allocated up front so that recording is a lookup in a fixed array and a few atomic
+// increments. Other components add their own counters and gauges as suppliers that are
+// only read when the metrics are scraped.
+public class Metrics {
+
+	private static final String PREFIX = "money_transfer_";
+	private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+	private static final String[] ENDPOINTS = { "/create", "/transfer", "/transfers/batch", "/accounts", "other" };
+	private static final int ACCOUNTS_ENDPOINT = ENDPOINTS.length - 2;
+	private static final int OTHER_ENDPOINT = ENDPOINTS.length - 1;
+	private static final String[] OUTCOMES = { "2xx", "4xx", "5xx", "other" };
+	private static final int OTHER_OUTCOME = OUTCOMES.length - 1;
+
+	private final boolean enabled;
+	private final LatencyHistogram[][] latencies;
+	private final LongAdder[] inFlight;
+	private final LongAdder accountsCreated = new LongAdder();
+	private final LongAdder transfersApplied = new LongAdder();
+	private final List<Supplied> supplied = new ArrayList<>();
+
+	private Metrics(boolean enabled) {
+
+		this.enabled = enabled;
+		this.latencies = new LatencyHistogram[ENDPOINTS.length][OUTCOMES.length];
+		this.inFlight = new LongAdder[ENDPOINTS.length];
+		if (enabled) {
+			for (int e = 0; e < ENDPOINTS.length; e++) {
+				for (int o = 0; o < OUTCOMES.length; o++) {
+					latencies[e][o] = new LatencyHistogram();
+				}
+				inFlight[e] = new LongAdder();
+			}
+		}
+	}
+
+	public Metrics() {
+		this(true);
+	}
+
+	public static Metrics disabled() {
+		return new Metrics(false);
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void requestStarted(String uri) {
+
+		if (enabled) {
+			inFlight[endpointOf(uri)].increment();
+		}
+	}
+
+	public void requestCompleted(String uri, int status, long latencyNanos) {
+
+		if (enabled) {
+			int endpoint = endpointOf(uri);
+			inFlight[endpoint].decrement();
+			latencies[endpoint][outcomeOf(status)].record(latencyNanos);
+		}
+	}
+
+	public void accountCreated() {
+		accountsCreated.increment();
+	}
+
+	public void transfersApplied(int count) {
+		transfersApplied.add(count);
+	}
+
+	// read on every scrape, suppliers must be thread safe and cheap
+	public synchronized void addCounter(String name, String help, LongSupplier value) {
+		supplied.add(new Supplied(PREFIX + name, help, "counter", value));
+	}
+
+	public synchronized void addGauge(String name, String help, LongSupplier value) {
+		supplied.add(new Supplied(PREFIX + name, help, "gauge", value));
+	}
+
+	public synchronized void write(StringBuilder out) {
+
+		String latency = PREFIX + "request_duration_seconds";
+		header(out, latency, "Request latency by endpoint and outcome.", "summary");
+		for (int e = 0; e < ENDPOINTS.length && enabled; e++) {
+			for (int o = 0; o < OUTCOMES.length; o++) {
+				LatencyHistogram.Snapshot snapshot = latencies[e][o].snapshot();
+				String labels = "endpoint=\"" + ENDPOINTS[e] + "\",outcome=\"" + OUTCOMES[o] + "\"";
+				for (double quantile : QUANTILES) {
+					out.append(latency).append('{').append(labels).append(",quantile=\"").append(quantile).append("\"} ")
+							.append(seconds(snapshot.getValueAtQuantile(quantile))).append('\n');
+				}
+				out.append(latency).append("_sum{").append(labels).append("} ").append(seconds(snapshot.getSum())).append('\n');
+				out.append(latency).append("_count{").append(labels).append("} ").append(snapshot.getCount()).append('\n');
+			}
+		}
+
+		String requests = PREFIX + "requests_in_flight";
+		header(out, requests, "Requests received and not yet answered, by endpoint.", "gauge");
+		for (int e = 0; e < ENDPOINTS.length && enabled; e++) {
+			out.append(requests).append("{endpoint=\"").append(ENDPOINTS[e]).append("\"} ").append(inFlight[e].sum())
+					.append('\n');
+		}
+
+		sample(out, PREFIX + "accounts_created_total", "Accounts created.", "counter", accountsCreated.sum());
+		sample(out, PREFIX + "transfers_applied_total", "Transfers applied, batch items included.", "counter",
+				transfersApplied.sum());
+		for (Supplied metric : supplied) {
+			sample(out, metric.name, metric.help, metric.type, metric.value.getAsLong());
+		}
+	}
+
+	private static int endpointOf(String uri) {
+
+		for (int e = 0; e < ACCOUNTS_ENDPOINT; e++) {
+			if (ENDPOINTS[e].equals(uri)) {
+				return e;
+			}
+		}
+		// account reads are counted together whatever their ids
+		return uri.startsWith(ENDPOINTS[ACCOUNTS_ENDPOINT]) ? ACCOUNTS_ENDPOINT : OTHER_ENDPOINT;
+	}
+
+	private static int outcomeOf(int status) {
+
+		switch (status / 100) {
+		case 2:
+			return 0;
+		case 4:
+			return 1;
+		case 5:
+			return 2;
+		default:
+			return OTHER_OUTCOME;
+		}
+	}
+
+	private static String seconds(long nanos) {
+		return String.format(Locale.ROOT, "%.9f", nanos / 1e9);
+	}
+
+	private static void header(StringBuilder out, String name, String help, String type) {
+		out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+	}
+
+	private static void sample(StringBuilder out, String name, String help, String type, long value) {
+		header(out, name, help, type);
+		out.append(name).append(' ').append(value).append('\n');
+	}
+
+	private static class Supplied {
+
+		private final String name;
+		private final String help;
+		private final String type;
+		private final LongSupplier value;
+
+		Supplied(String name, String help, String type, LongSupplier value) {
+			this.name = name;
+			this.help = help;
+			this.type = type;
+			this.value = value;
+		}
+
+	}
+
+}
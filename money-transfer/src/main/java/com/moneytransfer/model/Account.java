@@ -4,6 +4,8 @@ public class Account {
 
 	private Long id;
 	private Amount amount;
+	// lsn of the last journal record applied to this account
+	private long lsn;
 	
 	public Account() {
 		super();
@@ -30,6 +32,14 @@ public class Account {
 		this.amount = amount;
 	}
 
+	public long getLsn() {
+		return lsn;
+	}
+
+	public void setLsn(long lsn) {
+		this.lsn = lsn;
+	}
+
 	@Override
 	public String toString() {
 		return "Account { id=" + this.id + ", amount=" + this.amount + " }";
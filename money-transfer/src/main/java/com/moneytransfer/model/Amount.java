@@ -1,28 +1,48 @@
 package main.java.com.moneytransfer.model;
 
 import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 public class Amount {
-	
-	private BigDecimal value;
+
+	private static final AtomicLongFieldUpdater<Amount> UNITS = AtomicLongFieldUpdater.newUpdater(Amount.class, "units");
+
+	// balance in minor units, see Money. Transfers write it under the account lock and readers
+	// take it without one, a volatile read sees a whole value a transfer wrote. The writes are
+	// ordered stores, cheaper than volatile ones, the lock already orders writers.
+	private volatile long units;
 	private String currency;
-	
+
 	public Amount() {
 		super();
 	}
 
 	public Amount(BigDecimal value, String currency) {
 		super();
-		this.value = value;
+		UNITS.lazySet(this, Money.toUnits(value));
+		this.currency = currency;
+	}
+
+	public Amount(long units, String currency) {
+		super();
+		UNITS.lazySet(this, units);
 		this.currency = currency;
 	}
 
 	public BigDecimal getValue() {
-		return value;
+		return Money.toDecimal(units);
 	}
 
 	public void setValue(BigDecimal value) {
-		this.value = value;
+		UNITS.lazySet(this, Money.toUnits(value));
+	}
+
+	public long getUnits() {
+		return units;
+	}
+
+	public void setUnits(long units) {
+		UNITS.lazySet(this, units);
 	}
 
 	public String getCurrency() {
@@ -35,7 +55,7 @@ public class Amount {
 
 	@Override
 	public String toString() {
-		return this.value + " (" + this.currency + ")";
+		return Money.format(this.units) + " (" + this.currency + ")";
 	}
 
 }
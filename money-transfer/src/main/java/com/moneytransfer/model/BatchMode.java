@@ -0,0 +1,25 @@
+package main.java.com.moneytransfer.model;
+
+import java.util.Locale;
+
+public enum BatchMode {
+
+	// either every transfer of the batch is applied or none is
+	ALL_OR_NOTHING,
+	// each transfer is applied on its own, failures do not affect the others
+	BEST_EFFORT;
+
+	public static BatchMode fromName(String name) {
+
+		try {
+			return valueOf(name.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Supported batch modes are all-or-nothing and best-effort.");
+		}
+	}
+
+	public String toName() {
+		return name().toLowerCase(Locale.ROOT).replace('_', '-');
+	}
+
+}
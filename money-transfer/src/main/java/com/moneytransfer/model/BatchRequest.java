@@ -0,0 +1,36 @@
+package main.java.com.moneytransfer.model;
+
+import java.util.List;
+
+public class BatchRequest {
+
+	private BatchMode mode;
+	private List<TransferRequest> transfers;
+
+	public BatchRequest() {
+		super();
+	}
+
+	public BatchRequest(BatchMode mode, List<TransferRequest> transfers) {
+		super();
+		this.mode = mode;
+		this.transfers = transfers;
+	}
+
+	public BatchMode getMode() {
+		return mode;
+	}
+
+	public void setMode(BatchMode mode) {
+		this.mode = mode;
+	}
+
+	public List<TransferRequest> getTransfers() {
+		return transfers;
+	}
+
+	public void setTransfers(List<TransferRequest> transfers) {
+		this.transfers = transfers;
+	}
+
+}
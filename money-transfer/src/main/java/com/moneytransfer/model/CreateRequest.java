@@ -0,0 +1,49 @@
+package main.java.com.moneytransfer.model;
+
+public class CreateRequest {
+
+	private long amountUnits;
+	private String currency;
+	private boolean amountPresent;
+
+	public CreateRequest() {
+		super();
+	}
+
+	public CreateRequest(long amountUnits, String currency) {
+		super();
+		setAmountUnits(amountUnits);
+		this.currency = currency;
+	}
+
+	public long getAmountUnits() {
+		return amountUnits;
+	}
+
+	public void setAmountUnits(long amountUnits) {
+		this.amountUnits = amountUnits;
+		this.amountPresent = true;
+	}
+
+	public String getCurrency() {
+		return currency;
+	}
+
+	public void setCurrency(String currency) {
+		this.currency = currency;
+	}
+
+	public boolean isComplete() {
+		return amountPresent && currency != null;
+	}
+
+	public Amount toAmount() {
+		return new Amount(amountUnits, currency);
+	}
+
+	@Override
+	public String toString() {
+		return "CreateRequest { amount=" + Money.format(this.amountUnits) + " (" + this.currency + ") }";
+	}
+
+}
@@ -0,0 +1,181 @@
+package main.java.com.moneytransfer.model;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+// Fixed-point helpers for balances held as long minor units (1 unit = 0.01).
+// FX rates are fixed-point longs scaled by RATE_SCALE, and every conversion
+// rounds half-even to the nearest minor unit.
+public final class Money {
+
+	public static final int SCALE = 2;
+	public static final long UNITS_PER_MAJOR = 100L;
+	public static final long RATE_SCALE = 1000000L;
+	public static final RoundingMode ROUNDING_MODE = RoundingMode.HALF_EVEN;
+
+	public static final int FORMAT_LENGTH = 24;
+
+	private static final String OUT_OF_RANGE = "Amount is out of range.";
+
+	private Money() {
+	}
+
+	public static long toUnits(BigDecimal value) {
+
+		try {
+			return value.setScale(SCALE, ROUNDING_MODE).unscaledValue().longValueExact();
+		} catch (ArithmeticException e) {
+			throw new ArithmeticException(OUT_OF_RANGE);
+		}
+	}
+
+	// parses a plain decimal such as "1000" or "-12.345" straight into minor units
+	public static long parseUnits(char[] chars, int offset, int length) {
+
+		int end = offset + length;
+		int i = offset;
+		boolean negative = false;
+
+		if (i < end && (chars[i] == '-' || chars[i] == '+')) {
+			negative = chars[i] == '-';
+			i++;
+		}
+		if (i == end) {
+			throw new NumberFormatException("Empty amount.");
+		}
+
+		long units = 0;
+		int digits = 0;
+		int fractionDigits = -1;
+		int roundingDigit = 0;
+		boolean sticky = false;
+
+		for (; i < end; i++) {
+			char c = chars[i];
+			if (c == '.' && fractionDigits < 0) {
+				fractionDigits = 0;
+			} else if (c >= '0' && c <= '9') {
+				digits++;
+				if (fractionDigits < SCALE) {
+					if (units > (Long.MAX_VALUE - 9) / 10) {
+						throw new ArithmeticException(OUT_OF_RANGE);
+					}
+					units = units * 10 + (c - '0');
+					if (fractionDigits >= 0) {
+						fractionDigits++;
+					}
+				} else if (fractionDigits == SCALE) {
+					roundingDigit = c - '0';
+					fractionDigits++;
+				} else {
+					sticky |= c != '0';
+				}
+			} else if (c == 'e' || c == 'E') {
+				// exponent notation is rare enough to take the exact slow path
+				return toUnits(new BigDecimal(chars, offset, length));
+			} else {
+				throw new NumberFormatException("Invalid amount - " + new String(chars, offset, length));
+			}
+		}
+
+		if (digits == 0) {
+			throw new NumberFormatException("Invalid amount - " + new String(chars, offset, length));
+		}
+
+		for (int scale = Math.max(fractionDigits, 0); scale < SCALE; scale++) {
+			if (units > Long.MAX_VALUE / 10) {
+				throw new ArithmeticException(OUT_OF_RANGE);
+			}
+			units *= 10;
+		}
+
+		if (roundingDigit > 5 || (roundingDigit == 5 && (sticky || (units & 1) != 0))) {
+			units = add(units, 1);
+		}
+
+		return negative ? -units : units;
+	}
+
+	public static BigDecimal toDecimal(long units) {
+		return BigDecimal.valueOf(units, SCALE);
+	}
+
+	public static long add(long units, long delta) {
+
+		long result = units + delta;
+		if (((units ^ result) & (delta ^ result)) < 0) {
+			throw new ArithmeticException(OUT_OF_RANGE);
+		}
+		return result;
+	}
+
+	public static long subtract(long units, long delta) {
+
+		long result = units - delta;
+		if (((units ^ delta) & (units ^ result)) < 0) {
+			throw new ArithmeticException(OUT_OF_RANGE);
+		}
+		return result;
+	}
+
+	public static long convert(long units, long rate) {
+
+		long high = Math.abs(units);
+		if (high != 0 && (high > Long.MAX_VALUE / rate)) {
+			// product does not fit in a long, take the slow exact path
+			BigDecimal converted = BigDecimal.valueOf(units)
+					.multiply(BigDecimal.valueOf(rate))
+					.divide(BigDecimal.valueOf(RATE_SCALE), 0, ROUNDING_MODE);
+			try {
+				return converted.longValueExact();
+			} catch (ArithmeticException e) {
+				throw new ArithmeticException(OUT_OF_RANGE);
+			}
+		}
+
+		long product = units * rate;
+		long quotient = product / RATE_SCALE;
+		long remainder = Math.abs(product % RATE_SCALE);
+
+		// half-even: round away from zero above the half, and on the half only when odd
+		long twice = remainder * 2;
+		if (twice > RATE_SCALE || (twice == RATE_SCALE && (quotient & 1) != 0)) {
+			quotient += product < 0 ? -1 : 1;
+		}
+		return quotient;
+	}
+
+	public static String format(long units) {
+
+		char[] chars = new char[FORMAT_LENGTH];
+		int length = format(units, chars);
+		return new String(chars, 0, length);
+	}
+
+	// writes the plain decimal form of units into chars (at least FORMAT_LENGTH long)
+	// and returns its length, whole amounts are written without decimals
+	public static int format(long units, char[] chars) {
+
+		long major = Math.abs(units / UNITS_PER_MAJOR);
+		int minor = (int) Math.abs(units % UNITS_PER_MAJOR);
+
+		int end = FORMAT_LENGTH;
+		if (minor != 0) {
+			chars[--end] = (char) ('0' + minor % 10);
+			chars[--end] = (char) ('0' + minor / 10);
+			chars[--end] = '.';
+		}
+		do {
+			chars[--end] = (char) ('0' + major % 10);
+			major /= 10;
+		} while (major != 0);
+		if (units < 0) {
+			chars[--end] = '-';
+		}
+
+		int length = FORMAT_LENGTH - end;
+		System.arraycopy(chars, end, chars, 0, length);
+		return length;
+	}
+
+}
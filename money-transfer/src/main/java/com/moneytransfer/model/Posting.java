@@ -0,0 +1,87 @@
+package main.java.com.moneytransfer.model;
+
+import java.util.Locale;
+
+// One entry of an account's history. Units are signed, in the account's currency, and the
+// balance is the one the posting left. The rate converted the transfer's currency to the
+// account's, fixed-point like Money.RATE_SCALE.
+public class Posting {
+
+	public enum Kind {
+
+		// the balance the account was created with
+		OPEN,
+		DEBIT,
+		CREDIT,
+		// a cross-shard debit given back because the credit failed
+		REFUND;
+
+		public String toName() {
+			return name().toLowerCase(Locale.ROOT);
+		}
+
+	}
+
+	private final long index;
+	private final Kind kind;
+	private final long timeMillis;
+	private final long counterpartyId;
+	private final long units;
+	private final long balance;
+	private final long rate;
+	private final long lsn;
+
+	public Posting(long index, Kind kind, long timeMillis, long counterpartyId, long units, long balance, long rate,
+			long lsn) {
+		this.index = index;
+		this.kind = kind;
+		this.timeMillis = timeMillis;
+		this.counterpartyId = counterpartyId;
+		this.units = units;
+		this.balance = balance;
+		this.rate = rate;
+		this.lsn = lsn;
+	}
+
+	// position in the account's history from 0, the cursor of the next page
+	public long getIndex() {
+		return index;
+	}
+
+	public Kind getKind() {
+		return kind;
+	}
+
+	public long getTimeMillis() {
+		return timeMillis;
+	}
+
+	// 0 for an opening posting
+	public long getCounterpartyId() {
+		return counterpartyId;
+	}
+
+	public long getUnits() {
+		return units;
+	}
+
+	public long getBalance() {
+		return balance;
+	}
+
+	public long getRate() {
+		return rate;
+	}
+
+	// the journal record of the transfer, 0 without a journal
+	public long getLsn() {
+		return lsn;
+	}
+
+	@Override
+	public String toString() {
+		return "Posting { index=" + this.index + ", kind=" + this.kind.toName() + ", counterparty=" + this.counterpartyId
+				+ ", units=" + Money.format(this.units) + ", balance=" + Money.format(this.balance) + " }";
+	}
+
+}
@@ -0,0 +1,74 @@
+package main.java.com.moneytransfer.model;
+
+public class TransferRequest {
+
+	private long senderId;
+	private long receiverId;
+	private long amountUnits;
+	private String currency;
+
+	// bit set of the fields read so far, see isComplete()
+	private int present;
+
+	public TransferRequest() {
+		super();
+	}
+
+	public TransferRequest(long senderId, long receiverId, long amountUnits, String currency) {
+		super();
+		setSenderId(senderId);
+		setReceiverId(receiverId);
+		setAmountUnits(amountUnits);
+		this.currency = currency;
+	}
+
+	public long getSenderId() {
+		return senderId;
+	}
+
+	public void setSenderId(long senderId) {
+		this.senderId = senderId;
+		this.present |= 1;
+	}
+
+	public long getReceiverId() {
+		return receiverId;
+	}
+
+	public void setReceiverId(long receiverId) {
+		this.receiverId = receiverId;
+		this.present |= 2;
+	}
+
+	public long getAmountUnits() {
+		return amountUnits;
+	}
+
+	public void setAmountUnits(long amountUnits) {
+		this.amountUnits = amountUnits;
+		this.present |= 4;
+	}
+
+	public String getCurrency() {
+		return currency;
+	}
+
+	public void setCurrency(String currency) {
+		this.currency = currency;
+	}
+
+	public boolean isComplete() {
+		return present == 7 && currency != null;
+	}
+
+	public Amount toAmount() {
+		return new Amount(amountUnits, currency);
+	}
+
+	@Override
+	public String toString() {
+		return "TransferRequest { sender=" + this.senderId + ", receiver=" + this.receiverId
+				+ ", amount=" + Money.format(this.amountUnits) + " (" + this.currency + ") }";
+	}
+
+}
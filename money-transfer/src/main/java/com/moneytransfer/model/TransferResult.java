@@ -0,0 +1,38 @@
+package main.java.com.moneytransfer.model;
+
+public class TransferResult {
+
+	public static final String NOT_APPLIED = "Not applied. Another transfer in the batch failed.";
+
+	private static final TransferResult SUCCESS = new TransferResult(true, null);
+
+	private final boolean success;
+	private final String reason;
+
+	private TransferResult(boolean success, String reason) {
+		this.success = success;
+		this.reason = reason;
+	}
+
+	public static TransferResult success() {
+		return SUCCESS;
+	}
+
+	public static TransferResult failure(String reason) {
+		return new TransferResult(false, reason);
+	}
+
+	public boolean isSuccess() {
+		return success;
+	}
+
+	public String getReason() {
+		return reason;
+	}
+
+	@Override
+	public String toString() {
+		return success ? "TransferResult { success }" : "TransferResult { failed, reason=" + this.reason + " }";
+	}
+
+}
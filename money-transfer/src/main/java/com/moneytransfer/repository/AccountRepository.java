@@ -1,39 +1,99 @@
 package main.java.com.moneytransfer.repository;
 
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import main.java.com.moneytransfer.exception.AccountNotFoundException;
 import main.java.com.moneytransfer.model.Account;
 
-public class AccountRepository {
+// Keeps the accounts as objects in a concurrent map on the heap.
+public class AccountRepository implements AccountStore {
 
-	private Map<Long, Account> accounts;
-	private Long accountId;
+	private final ConcurrentLongMap<Account> accounts;
+	private final AtomicLong accountId;
 
 	public AccountRepository() {
-		this.accounts = new LinkedHashMap<>();
-		this.accountId = 1000000L;
+		this(0);
 	}
 
+	public AccountRepository(long expectedSize) {
+		this.accounts = new ConcurrentLongMap<>(64, expectedSize);
+		this.accountId = new AtomicLong(FIRST_ACCOUNT_ID);
+	}
+
+	@Override
 	public Account add(Account account) {
-		account.setId(this.accountId++);
+		account.setId(this.accountId.getAndIncrement());
 		this.accounts.put(account.getId(), account);
 
 		return account;
 	}
 
+	@Override
+	public long reserveId() {
+		return this.accountId.getAndIncrement();
+	}
+
+	@Override
+	public long reserveIds(int count) {
+		return this.accountId.getAndAdd(count);
+	}
+
+	@Override
+	public Account insert(Account account) {
+
+		long id = account.getId();
+		this.accounts.put(id, account);
+		this.accountId.accumulateAndGet(id + 1, Math::max);
+
+		return account;
+	}
+
+	@Override
+	public void insertAll(Account[] accounts, int count) {
+
+		long maxId = -1;
+		for (int i = 0; i < count; i++) {
+			this.accounts.put(accounts[i].getId(), accounts[i]);
+			maxId = Math.max(maxId, accounts[i].getId());
+		}
+		if (count > 0) {
+			this.accountId.accumulateAndGet(maxId + 1, Math::max);
+		}
+	}
+
+	@Override
 	public void update(Account account) {
 		this.accounts.replace(account.getId(), account);
 	}
 
-	public Account getById(Long id) throws AccountNotFoundException {
+	@Override
+	public Account getById(long id) throws AccountNotFoundException {
 
-		if (accounts.get(id) == null) {
-			throw new AccountNotFoundException("Account cannot be found - " + id);
+		Account account = accounts.get(id);
+		if (account == null) {
+			throw new AccountNotFoundException(id);
 		}
-		return accounts.get(id);
+		return account;
+
+	}
+
+	@Override
+	public boolean contains(long id) {
+		return accounts.get(id) != null;
+	}
+
+	@Override
+	public long size() {
+		return accounts.size();
+	}
 
+	@Override
+	public void forEach(ConcurrentLongMap.Visitor<? super Account> visitor) {
+		accounts.forEach((id, account) -> {
+			if (account != null) {
+				visitor.visit(id, account);
+			}
+		});
 	}
 
 }
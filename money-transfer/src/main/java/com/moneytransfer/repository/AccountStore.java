@@ -0,0 +1,48 @@
+package main.java.com.moneytransfer.repository;
+
+import main.java.com.moneytransfer.exception.AccountNotFoundException;
+import main.java.com.moneytransfer.model.Account;
+
+// Where the accounts are kept: on the heap (AccountRepository), in off-heap columns
+// (OffHeapAccountRepository) or split into one slice per shard (ShardedAccountRepository).
+public interface AccountStore {
+
+	long FIRST_ACCOUNT_ID = 1000000L;
+
+	// gives the account the next id and stores it
+	Account add(Account account);
+
+	// hands out an id without storing anything yet, see insert
+	long reserveId();
+
+	// hands out count consecutive ids, returns the first
+	long reserveIds(int count);
+
+	// stores an account that already has its id, ids handed out later stay above it
+	Account insert(Account account);
+
+	// inserts the first count accounts, moving the id counter once for all of them
+	void insertAll(Account[] accounts, int count);
+
+	// replaces an existing account, an unknown one is not stored
+	void update(Account account);
+
+	default Account getById(Long id) throws AccountNotFoundException {
+
+		if (id == null) {
+			throw new AccountNotFoundException("Account cannot be found - " + id);
+		}
+		return getById(id.longValue());
+
+	}
+
+	Account getById(long id) throws AccountNotFoundException;
+
+	boolean contains(long id);
+
+	long size();
+
+	// visits every stored account without locking, accounts added meanwhile may be missed
+	void forEach(ConcurrentLongMap.Visitor<? super Account> visitor);
+
+}
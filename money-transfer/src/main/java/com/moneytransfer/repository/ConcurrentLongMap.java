@@ -0,0 +1,193 @@
+package main.java.com.moneytransfer.repository;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Open-addressing hash map keyed by primitive longs.
+// Reads never lock: a reader takes the current table of a segment and probes it.
+// Writers lock only their segment, publish the value before the key, and replace
+// a full table by copying it, so a reader always sees a consistent table.
+// Key 0 is reserved for empty slots and entries are never removed.
+public class ConcurrentLongMap<V> {
+
+	public interface Visitor<V> {
+		void visit(long key, V value);
+	}
+
+	private static final long EMPTY = 0L;
+	private static final int DEFAULT_SEGMENTS = 64;
+	private static final int MIN_SEGMENT_CAPACITY = 16;
+
+	private final Segment<V>[] segments;
+	private final int segmentShift;
+
+	public ConcurrentLongMap() {
+		this(DEFAULT_SEGMENTS, 0);
+	}
+
+	@SuppressWarnings("unchecked")
+	public ConcurrentLongMap(int segmentCount, long expectedSize) {
+
+		int count = powerOfTwo(Math.max(1, segmentCount));
+		long perSegment = expectedSize / count + 1;
+		int capacity = powerOfTwo((int) Math.min(1 << 30, Math.max(MIN_SEGMENT_CAPACITY, perSegment * 4 / 3 + 1)));
+
+		this.segments = (Segment<V>[]) new Segment<?>[count];
+		for (int i = 0; i < count; i++) {
+			this.segments[i] = new Segment<>(capacity);
+		}
+		this.segmentShift = 64 - Integer.numberOfTrailingZeros(count);
+	}
+
+	public V get(long key) {
+
+		long hash = hash(key);
+		return segmentFor(hash).get(key, hash);
+	}
+
+	public V put(long key, V value) {
+
+		checkKey(key, value);
+		long hash = hash(key);
+		return segmentFor(hash).put(key, hash, value, false);
+	}
+
+	public V replace(long key, V value) {
+
+		checkKey(key, value);
+		long hash = hash(key);
+		return segmentFor(hash).put(key, hash, value, true);
+	}
+
+	public long size() {
+
+		long size = 0;
+		for (Segment<V> segment : segments) {
+			size += segment.size;
+		}
+		return size;
+	}
+
+	public void forEach(Visitor<? super V> visitor) {
+
+		for (Segment<V> segment : segments) {
+			Table<V> table = segment.table;
+			for (int i = 0; i < table.keys.length(); i++) {
+				long key = table.keys.get(i);
+				if (key != EMPTY) {
+					visitor.visit(key, table.values.get(i));
+				}
+			}
+		}
+	}
+
+	private Segment<V> segmentFor(long hash) {
+		return segments.length == 1 ? segments[0] : segments[(int) (hash >>> segmentShift)];
+	}
+
+	private static void checkKey(long key, Object value) {
+
+		if (key == EMPTY) {
+			throw new IllegalArgumentException("Key 0 is reserved.");
+		}
+		if (value == null) {
+			throw new NullPointerException("Null values are not supported.");
+		}
+	}
+
+	private static long hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return h ^ (h >>> 29);
+	}
+
+	private static int powerOfTwo(int value) {
+
+		int size = Integer.highestOneBit(value);
+		return size < value ? size << 1 : size;
+	}
+
+	private static final class Table<V> {
+
+		final AtomicLongArray keys;
+		final AtomicReferenceArray<V> values;
+		final int mask;
+
+		Table(int capacity) {
+			this.keys = new AtomicLongArray(capacity);
+			this.values = new AtomicReferenceArray<>(capacity);
+			this.mask = capacity - 1;
+		}
+
+		int slot(long key, long hash) {
+
+			int i = (int) hash & mask;
+			while (true) {
+				long current = keys.get(i);
+				if (current == key || current == EMPTY) {
+					return i;
+				}
+				i = (i + 1) & mask;
+			}
+		}
+
+	}
+
+	private static final class Segment<V> {
+
+		volatile Table<V> table;
+		volatile int size;
+
+		Segment(int capacity) {
+			this.table = new Table<>(capacity);
+		}
+
+		V get(long key, long hash) {
+
+			Table<V> current = table;
+			int i = current.slot(key, hash);
+			return current.keys.get(i) == key ? current.values.get(i) : null;
+		}
+
+		synchronized V put(long key, long hash, V value, boolean onlyIfPresent) {
+
+			Table<V> current = table;
+			int i = current.slot(key, hash);
+
+			if (current.keys.get(i) == key) {
+				return current.values.getAndSet(i, value);
+			}
+			if (onlyIfPresent) {
+				return null;
+			}
+
+			if ((size + 1) * 4L > (current.mask + 1) * 3L) {
+				current = grow(current);
+				i = current.slot(key, hash);
+			}
+
+			// value first, so a reader that sees the key also sees the value
+			current.values.set(i, value);
+			current.keys.set(i, key);
+			size = size + 1;
+
+			return null;
+		}
+
+		private Table<V> grow(Table<V> old) {
+
+			Table<V> grown = new Table<>((old.mask + 1) << 1);
+			for (int i = 0; i <= old.mask; i++) {
+				long key = old.keys.get(i);
+				if (key != EMPTY) {
+					int slot = grown.slot(key, hash(key));
+					grown.values.set(slot, old.values.get(i));
+					grown.keys.set(slot, key);
+				}
+			}
+			table = grown;
+			return grown;
+		}
+
+	}
+
+}
@@ -0,0 +1,259 @@
+package main.java.com.moneytransfer.repository;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import main.java.com.moneytransfer.exception.AccountNotFoundException;
+import main.java.com.moneytransfer.model.Account;
+import main.java.com.moneytransfer.model.Amount;
+
+// Account store that keeps balances, lsns and currency codes in off-heap columns indexed by
+// account id, so that the heap holds no per-account objects.
+//
+// Ids are dense from FIRST_ACCOUNT_ID, and the columns are split into pages of PAGE_SIZE
+// accounts that are allocated when the first id of the page is stored. A slot becomes
+// visible once its bit is set in the page's presence bitmap, after its columns are written.
+// getById returns a copy, changes to it are stored with update, which callers do under the
+// stripe lock of the account like with the heap store.
+public class OffHeapAccountRepository implements AccountStore {
+
+	public static final long DEFAULT_CAPACITY = 1L << 31;
+
+	static final int PAGE_SHIFT = 20;
+	static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+	private static final int SLOT_MASK = PAGE_SIZE - 1;
+
+	private final long capacity;
+	private final AtomicReferenceArray<Page> pages;
+	private final AtomicLong accountId;
+	private final AtomicLong count = new AtomicLong();
+
+	// currency codes are stored as a one byte index into this table, which is only ever appended to
+	private volatile String[] currencies = new String[0];
+
+	public OffHeapAccountRepository() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public OffHeapAccountRepository(long capacity) {
+
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Capacity must be positive - " + capacity);
+		}
+
+		this.capacity = capacity;
+		this.pages = new AtomicReferenceArray<>((int) ((capacity + PAGE_SIZE - 1) >>> PAGE_SHIFT));
+		this.accountId = new AtomicLong(FIRST_ACCOUNT_ID);
+	}
+
+	@Override
+	public Account add(Account account) {
+
+		account.setId(reserveId());
+		return insert(account);
+	}
+
+	@Override
+	public long reserveId() {
+		return this.accountId.getAndIncrement();
+	}
+
+	@Override
+	public long reserveIds(int count) {
+		return this.accountId.getAndAdd(count);
+	}
+
+	@Override
+	public Account insert(Account account) {
+
+		if (store(account)) {
+			count.incrementAndGet();
+		}
+		this.accountId.accumulateAndGet(account.getId() + 1, Math::max);
+
+		return account;
+	}
+
+	@Override
+	public void insertAll(Account[] accounts, int count) {
+
+		long maxId = -1;
+		int added = 0;
+		for (int i = 0; i < count; i++) {
+			if (store(accounts[i])) {
+				added++;
+			}
+			maxId = Math.max(maxId, accounts[i].getId());
+		}
+		this.count.addAndGet(added);
+		if (count > 0) {
+			this.accountId.accumulateAndGet(maxId + 1, Math::max);
+		}
+	}
+
+	// writes the account into its slot, true when the slot was empty
+	private boolean store(Account account) {
+
+		long id = account.getId();
+		long index = id - FIRST_ACCOUNT_ID;
+		if (index < 0 || index >= capacity) {
+			throw new IllegalArgumentException("Account id is out of the store capacity - " + id);
+		}
+
+		Page page = pageOf(index, true);
+		int slot = (int) index & SLOT_MASK;
+		page.write(slot, account.getAmount().getUnits(), account.getLsn(), currencyIndex(account.getAmount().getCurrency()));
+		return page.publish(slot);
+	}
+
+	@Override
+	public void update(Account account) {
+
+		long index = account.getId() - FIRST_ACCOUNT_ID;
+		Page page = index < 0 || index >= capacity ? null : pageOf(index, false);
+		int slot = (int) index & SLOT_MASK;
+
+		// like the heap store, only an existing account is replaced
+		if (page != null && page.isPresent(slot)) {
+			page.write(slot, account.getAmount().getUnits(), account.getLsn(),
+					currencyIndex(account.getAmount().getCurrency()));
+		}
+	}
+
+	@Override
+	public Account getById(long id) throws AccountNotFoundException {
+
+		long index = id - FIRST_ACCOUNT_ID;
+		Page page = index < 0 || index >= capacity ? null : pageOf(index, false);
+		int slot = (int) index & SLOT_MASK;
+
+		if (page == null || !page.isPresent(slot)) {
+			throw new AccountNotFoundException(id);
+		}
+		return page.read(id, slot);
+	}
+
+	@Override
+	public boolean contains(long id) {
+
+		long index = id - FIRST_ACCOUNT_ID;
+		Page page = index < 0 || index >= capacity ? null : pageOf(index, false);
+		return page != null && page.isPresent((int) index & SLOT_MASK);
+	}
+
+	@Override
+	public long size() {
+		return count.get();
+	}
+
+	@Override
+	public void forEach(ConcurrentLongMap.Visitor<? super Account> visitor) {
+
+		for (int p = 0; p < pages.length(); p++) {
+			Page page = pages.get(p);
+			if (page == null) {
+				continue;
+			}
+			long firstId = FIRST_ACCOUNT_ID + ((long) p << PAGE_SHIFT);
+			for (int slot = 0; slot < PAGE_SIZE; slot++) {
+				if (page.isPresent(slot)) {
+					visitor.visit(firstId + slot, page.read(firstId + slot, slot));
+				}
+			}
+		}
+	}
+
+	private Page pageOf(long index, boolean create) {
+
+		int p = (int) (index >>> PAGE_SHIFT);
+		Page page = pages.get(p);
+		if (page == null && create) {
+			Page created = new Page();
+			page = pages.compareAndSet(p, null, created) ? created : pages.get(p);
+		}
+		return page;
+	}
+
+	private int currencyIndex(String currency) {
+
+		String[] known = currencies;
+		for (int i = 0; i < known.length; i++) {
+			if (known[i].equals(currency)) {
+				return i;
+			}
+		}
+
+		synchronized (this) {
+			known = currencies;
+			for (int i = 0; i < known.length; i++) {
+				if (known[i].equals(currency)) {
+					return i;
+				}
+			}
+			if (known.length > 0xFF) {
+				throw new IllegalArgumentException("Too many currencies for the off-heap store - " + currency);
+			}
+			String[] grown = Arrays.copyOf(known, known.length + 1);
+			grown[known.length] = currency;
+			currencies = grown;
+			return known.length;
+		}
+	}
+
+	private String currencyOf(int index) {
+		return currencies[index];
+	}
+
+	private class Page {
+
+		private final ByteBuffer units = column(8);
+		private final ByteBuffer lsns = column(8);
+		private final ByteBuffer currencyCodes = column(1);
+		private final AtomicLongArray present = new AtomicLongArray(PAGE_SIZE / 64);
+
+		private ByteBuffer column(int width) {
+			return ByteBuffer.allocateDirect(PAGE_SIZE * width).order(ByteOrder.nativeOrder());
+		}
+
+		void write(int slot, long unitsValue, long lsn, int currency) {
+
+			units.putLong(slot << 3, unitsValue);
+			lsns.putLong(slot << 3, lsn);
+			currencyCodes.put(slot, (byte) currency);
+		}
+
+		Account read(long id, int slot) {
+
+			Account account = new Account(new Amount(units.getLong(slot << 3),
+					currencyOf(currencyCodes.get(slot) & 0xFF)));
+			account.setId(id);
+			account.setLsn(lsns.getLong(slot << 3));
+			return account;
+		}
+
+		// the volatile write of the bitmap publishes the columns written before it
+		boolean publish(int slot) {
+
+			long bit = 1L << slot;
+			while (true) {
+				long word = present.get(slot >>> 6);
+				if ((word & bit) != 0) {
+					return false;
+				}
+				if (present.compareAndSet(slot >>> 6, word, word | bit)) {
+					return true;
+				}
+			}
+		}
+
+		boolean isPresent(int slot) {
+			return (present.get(slot >>> 6) & (1L << slot)) != 0;
+		}
+
+	}
+
+}
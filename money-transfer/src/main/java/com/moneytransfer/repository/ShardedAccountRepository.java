@@ -0,0 +1,111 @@
+package main.java.com.moneytransfer.repository;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import main.java.com.moneytransfer.exception.AccountNotFoundException;
+import main.java.com.moneytransfer.model.Account;
+
+// Splits the accounts into slices by id, each slice is a repository of its own that a
+// shard thread of the ShardedTransferEngine owns. Ids are still handed out globally.
+public class ShardedAccountRepository implements AccountStore {
+
+	private final AccountRepository[] slices;
+	private final AtomicLong accountId = new AtomicLong(FIRST_ACCOUNT_ID);
+
+	public ShardedAccountRepository(int shardCount, long expectedSize) {
+
+		if (shardCount <= 0) {
+			throw new IllegalArgumentException("Shard count must be positive - " + shardCount);
+		}
+
+		this.slices = new AccountRepository[shardCount];
+		for (int i = 0; i < shardCount; i++) {
+			this.slices[i] = new AccountRepository(expectedSize / shardCount);
+		}
+	}
+
+	public int shardCount() {
+		return slices.length;
+	}
+
+	// consecutive ids go to consecutive shards, which spreads them evenly
+	public int shardOf(long id) {
+		return (int) Math.floorMod(id, (long) slices.length);
+	}
+
+	public AccountRepository getSlice(int shard) {
+		return slices[shard];
+	}
+
+	@Override
+	public Account add(Account account) {
+
+		account.setId(reserveId());
+		return insert(account);
+	}
+
+	@Override
+	public long reserveId() {
+		return accountId.getAndIncrement();
+	}
+
+	@Override
+	public long reserveIds(int count) {
+		return accountId.getAndAdd(count);
+	}
+
+	@Override
+	public Account insert(Account account) {
+
+		slices[shardOf(account.getId())].insert(account);
+		accountId.accumulateAndGet(account.getId() + 1, Math::max);
+		return account;
+	}
+
+	@Override
+	public void insertAll(Account[] accounts, int count) {
+
+		long maxId = -1;
+		for (int i = 0; i < count; i++) {
+			slices[shardOf(accounts[i].getId())].insert(accounts[i]);
+			maxId = Math.max(maxId, accounts[i].getId());
+		}
+		if (count > 0) {
+			accountId.accumulateAndGet(maxId + 1, Math::max);
+		}
+	}
+
+	@Override
+	public void update(Account account) {
+		slices[shardOf(account.getId())].update(account);
+	}
+
+	@Override
+	public Account getById(long id) throws AccountNotFoundException {
+		return slices[shardOf(id)].getById(id);
+	}
+
+	@Override
+	public boolean contains(long id) {
+		return slices[shardOf(id)].contains(id);
+	}
+
+	@Override
+	public long size() {
+
+		long size = 0;
+		for (AccountRepository slice : slices) {
+			size += slice.size();
+		}
+		return size;
+	}
+
+	@Override
+	public void forEach(ConcurrentLongMap.Visitor<? super Account> visitor) {
+
+		for (AccountRepository slice : slices) {
+			slice.forEach(visitor);
+		}
+	}
+
+}
@@ -0,0 +1,121 @@
+package main.java.com.moneytransfer.service;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class AccountLocks {
+
+	public static final int DEFAULT_STRIPES = 1024;
+
+	private final ReentrantLock[] stripes;
+	private final int mask;
+
+	public AccountLocks() {
+		this(DEFAULT_STRIPES);
+	}
+
+	public AccountLocks(int stripeCount) {
+
+		if (stripeCount <= 0) {
+			throw new IllegalArgumentException("Stripe count must be positive - " + stripeCount);
+		}
+
+		// round up to a power of two so that a stripe can be picked with a mask
+		int size = Integer.highestOneBit(stripeCount);
+		if (size < stripeCount) {
+			size <<= 1;
+		}
+
+		this.stripes = new ReentrantLock[size];
+		for (int i = 0; i < size; i++) {
+			this.stripes[i] = new ReentrantLock();
+		}
+		this.mask = size - 1;
+	}
+
+	public int stripeCount() {
+		return stripes.length;
+	}
+
+	public int stripeOf(long accountId) {
+		// spread sequential ids over all stripes
+		long h = accountId * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32)) & mask;
+	}
+
+	public void lock(long firstId, long secondId) {
+
+		int first = stripeOf(firstId);
+		int second = stripeOf(secondId);
+
+		// stripes are always taken in ascending index order, so two transfers
+		// touching the same pair of stripes can never wait on each other in a cycle
+		if (first == second) {
+			stripes[first].lock();
+		} else if (first < second) {
+			stripes[first].lock();
+			stripes[second].lock();
+		} else {
+			stripes[second].lock();
+			stripes[first].lock();
+		}
+	}
+
+	// locks the stripes of all given accounts in ascending order and returns
+	// them for unlockAll, each stripe is taken once however many ids share it
+	public int[] lockAll(long[] accountIds) {
+
+		int[] indexes = new int[accountIds.length];
+		for (int i = 0; i < accountIds.length; i++) {
+			indexes[i] = stripeOf(accountIds[i]);
+		}
+		Arrays.sort(indexes);
+
+		int count = 0;
+		for (int i = 0; i < indexes.length; i++) {
+			if (count == 0 || indexes[count - 1] != indexes[i]) {
+				indexes[count++] = indexes[i];
+			}
+		}
+		int[] locked = Arrays.copyOf(indexes, count);
+
+		for (int index : locked) {
+			stripes[index].lock();
+		}
+		return locked;
+	}
+
+	public void unlockAll(int[] lockedStripes) {
+
+		for (int i = lockedStripes.length - 1; i >= 0; i--) {
+			stripes[lockedStripes[i]].unlock();
+		}
+	}
+
+	// takes every stripe in ascending order, for a single writer that owns all accounts
+	public void lockAllStripes() {
+
+		for (ReentrantLock stripe : stripes) {
+			stripe.lock();
+		}
+	}
+
+	public void unlockAllStripes() {
+
+		for (int i = stripes.length - 1; i >= 0; i--) {
+			stripes[i].unlock();
+		}
+	}
+
+	public void unlock(long firstId, long secondId) {
+
+		int first = stripeOf(firstId);
+		int second = stripeOf(secondId);
+
+		stripes[first].unlock();
+		if (first != second) {
+			stripes[second].unlock();
+		}
+	}
+
+}
@@ -1,128 +1,577 @@
 package main.java.com.moneytransfer.service;
 
-import java.math.BigDecimal;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import main.java.com.moneytransfer.exception.AccountNotFoundException;
 import main.java.com.moneytransfer.exception.InsufficientBalanceException;
 import main.java.com.moneytransfer.exception.InvalidReceiverException;
 import main.java.com.moneytransfer.exception.UnsupportedCurrencyException;
+import main.java.com.moneytransfer.fx.ExchangeRates;
+import main.java.com.moneytransfer.fx.RateTable;
+import main.java.com.moneytransfer.journal.Journal;
+import main.java.com.moneytransfer.ledger.Ledger;
 import main.java.com.moneytransfer.model.Account;
 import main.java.com.moneytransfer.model.Amount;
+import main.java.com.moneytransfer.model.BatchMode;
+import main.java.com.moneytransfer.model.Money;
+import main.java.com.moneytransfer.model.Posting;
+import main.java.com.moneytransfer.model.TransferRequest;
+import main.java.com.moneytransfer.model.TransferResult;
 import main.java.com.moneytransfer.repository.AccountRepository;
+import main.java.com.moneytransfer.repository.AccountStore;
 
 public class AccountService {
+
+	public interface BalanceVisitor {
+		void visit(long id, long units, String currency);
+	}
+
+	// rejections are common, these carry no stack trace and are thrown again and again
+	private static final InvalidReceiverException SAME_ACCOUNT = new InvalidReceiverException(
+			"Sender and receiver cannot be the same account.");
+	private static final InsufficientBalanceException INSUFFICIENT_BALANCE = new InsufficientBalanceException(
+			"Insufficient balance. Cannot process the request.");
 	
-	private final AccountRepository accountRepository = new AccountRepository();
-	
-	private List<String> suppportedCurrencies = 
-			Arrays.asList(new String[] { "GBP", "EUR", "USD" });
-	
-	// currencyRates : 2d matrix storing currency rate information
-	// GBP index = 0, EUR index = 1, USD index = 2
-	// Ex) GBP to EUR rate = currencyRates[0][1]
+	private final AccountStore accountRepository;
+	private final AccountLocks accountLocks;
+	private final Journal journal;
 	
-	private double[][] currencyRates = { 
-			new double[] {1, 1.15, 1.31},
-			new double[] {0.87, 1, 1.13}, 
-			new double[] {0.77, 0.88, 1} };
+	// supported currencies and their rates, replaceable at runtime
+	private final ExchangeRates exchangeRates;
+	private final Ledger ledger;
+	// point-in-time views for exports, every write below reports to it
+	private final AccountVersions versions = new AccountVersions();
 
+	public AccountService() {
+		this(new AccountRepository(), new AccountLocks());
+	}
+
+	public AccountService(AccountStore accountRepository, AccountLocks accountLocks) {
+		this(accountRepository, accountLocks, Journal.disabled());
+	}
+
+	public AccountService(AccountStore accountRepository, AccountLocks accountLocks, Journal journal) {
+		this(accountRepository, accountLocks, journal, new ExchangeRates());
+	}
+
+	public AccountService(AccountStore accountRepository, AccountLocks accountLocks, Journal journal,
+			ExchangeRates exchangeRates) {
+		this(accountRepository, accountLocks, journal, exchangeRates, Ledger.disabled());
+	}
+
+	public AccountService(AccountStore accountRepository, AccountLocks accountLocks, Journal journal,
+			ExchangeRates exchangeRates, Ledger ledger) {
+		this.accountRepository = accountRepository;
+		this.accountLocks = accountLocks;
+		this.journal = journal;
+		this.exchangeRates = exchangeRates;
+		this.ledger = ledger;
+	}
 
 	public Account searchAccount(Long accountId) throws AccountNotFoundException {
 		return accountRepository.getById(accountId);
 	}
+
+	// Reads without taking the account locks, each balance is the one left by the last
+	// transfer that committed on the account. The accounts are read one after another, a
+	// transfer between two of them may show on one side only. Missing accounts are null.
+	public Account[] searchAccounts(long[] accountIds) {
+
+		Account[] accounts = new Account[accountIds.length];
+		for (int i = 0; i < accountIds.length; i++) {
+			try {
+				accounts[i] = accountRepository.contains(accountIds[i]) ? accountRepository.getById(accountIds[i]) : null;
+			} catch (AccountNotFoundException e) {
+				accounts[i] = null;
+			}
+		}
+		return accounts;
+	}
+
+	public boolean isLedgerEnabled() {
+		return ledger.isEnabled();
+	}
+
+	// the account's postings with an index below before, newest first, read without locks
+	public List<Posting> searchTransactions(long accountId, long before, int limit) throws AccountNotFoundException {
+
+		if (!accountRepository.contains(accountId)) {
+			throw new AccountNotFoundException(accountId);
+		}
+		return ledger.read(accountId, before, limit);
+	}
 	
 	public Account createAccount(Amount amount) throws UnsupportedCurrencyException {
 		
-		if (amount.getCurrency() == null || !suppportedCurrencies.contains(amount.getCurrency().toUpperCase())) {
-			throw new UnsupportedCurrencyException("Supported currencies are GBP, EUR, and USD.");
+		RateTable rates = exchangeRates.current();
+		int currencyIndex = amount.getCurrency() == null ? -1 : rates.indexOf(amount.getCurrency().toUpperCase());
+		if (currencyIndex < 0) {
+			throw rates.unsupported();
 		}
 
+		// the account keeps its own copy, its balance is updated in place by transfers
 		Account account = new Account();
-		account.setAmount(amount);
+		account.setAmount(new Amount(amount.getUnits(), rates.currency(currencyIndex)));
+
+		if (!journal.isEnabled() && !ledger.isEnabled()) {
+			long epoch = versions.enter();
+			try {
+				if (!versions.isTracking(epoch)) {
+					return accountRepository.add(account);
+				}
+				account.setId(accountRepository.reserveId());
+				versions.beforeCreate(epoch, account.getId());
+				return accountRepository.insert(account);
+			} finally {
+				versions.exit(epoch);
+			}
+		}
+
+		// the account is stored and journaled under its own stripe, so no transfer record can
+		// precede its creation and a snapshot never sees it without its lsn
+		long id = accountRepository.reserveId();
+		long lsn;
+		account.setId(id);
+		// the history is opened before the account can be found, no transfer can come first
+		ledger.append(id, Posting.Kind.OPEN, System.currentTimeMillis(), 0, amount.getUnits(), amount.getUnits(),
+				Money.RATE_SCALE, 0);
+		accountLocks.lock(id, id);
+		long epoch = versions.enter();
+		try {
+			versions.beforeCreate(epoch, id);
+			accountRepository.insert(account);
+			lsn = journal.appendCreate(id, account.getAmount().getUnits(), account.getAmount().getCurrency());
+			account.setLsn(lsn);
+		} finally {
+			versions.exit(epoch);
+			accountLocks.unlock(id, id);
+		}
+		journal.awaitDurable(lsn);
 
-		return accountRepository.add(account);
+		return account;
+	}
+
+	// Stores accounts whose ids were reserved and whose balances and currencies were already
+	// validated, each the way createAccount stores one, and waits for the journal once for
+	// the whole batch. Without journal and ledger the batch goes to the repository in one call.
+	public void importAccounts(Account[] accounts, int count) {
+
+		if (!journal.isEnabled() && !ledger.isEnabled()) {
+			long epoch = versions.enter();
+			try {
+				if (versions.isTracking(epoch)) {
+					for (int i = 0; i < count; i++) {
+						versions.beforeCreate(epoch, accounts[i].getId());
+					}
+				}
+				accountRepository.insertAll(accounts, count);
+			} finally {
+				versions.exit(epoch);
+			}
+			return;
+		}
+
+		long now = System.currentTimeMillis();
+		long lsn = 0;
+		for (int i = 0; i < count; i++) {
+			Account account = accounts[i];
+			long id = account.getId();
+			long units = account.getAmount().getUnits();
+			ledger.append(id, Posting.Kind.OPEN, now, 0, units, units, Money.RATE_SCALE, 0);
+			accountLocks.lock(id, id);
+			long epoch = versions.enter();
+			try {
+				versions.beforeCreate(epoch, id);
+				accountRepository.insert(account);
+				lsn = journal.appendCreate(id, units, account.getAmount().getCurrency());
+				account.setLsn(lsn);
+			} finally {
+				versions.exit(epoch);
+				accountLocks.unlock(id, id);
+			}
+		}
+		journal.awaitDurable(lsn);
 	}
 
 	public void transferAmount(Long senderId, Long receiverId, Amount amount)
 			throws InvalidReceiverException, AccountNotFoundException, UnsupportedCurrencyException, InsufficientBalanceException {
 
 		if (senderId.equals(receiverId)) {
-			throw new InvalidReceiverException("Sender and receiver cannot be the same account."); 
+			throw SAME_ACCOUNT;
 		}
 		
+		long lsn;
+		accountLocks.lock(senderId, receiverId);
+		try {
+			lsn = applyTransfer(senderId, receiverId, amount);
+		} finally {
+			accountLocks.unlock(senderId, receiverId);
+		}
+
+		// wait for the disk only after the locks are released, so other transfers can join the group
+		journal.awaitDurable(lsn);
+
+	}
+
+	public List<TransferResult> transferBatch(List<TransferRequest> transfers, BatchMode mode) {
+
+		long[] accountIds = new long[transfers.size() * 2];
+		for (int i = 0; i < transfers.size(); i++) {
+			accountIds[2 * i] = transfers.get(i).getSenderId();
+			accountIds[2 * i + 1] = transfers.get(i).getReceiverId();
+		}
+
+		// the whole batch runs under one acquisition of all the stripes it touches
+		List<TransferResult> results;
+		long lastLsn;
+		int[] lockedStripes = accountLocks.lockAll(accountIds);
+		try {
+			results = applyBatch(transfers, mode);
+			lastLsn = lastJournalLsn();
+		} finally {
+			accountLocks.unlockAll(lockedStripes);
+		}
+
+		journal.awaitDurable(lastLsn);
+		return results;
+	}
+
+	// callers must hold the stripes of every account in the batch
+	List<TransferResult> applyBatch(List<TransferRequest> transfers, BatchMode mode) {
+
+		// one epoch for the batch, a view holds all of it or none
+		long epoch = versions.enter();
+		try {
+			return mode == BatchMode.ALL_OR_NOTHING ? applyAllOrNothing(epoch, transfers)
+					: applyBestEffort(epoch, transfers);
+		} finally {
+			versions.exit(epoch);
+		}
+	}
+
+	// every record appended so far is at or before this lsn
+	long lastJournalLsn() {
+		return journal.mark()[0];
+	}
+
+	void awaitDurable(long lsn) {
+		journal.awaitDurable(lsn);
+	}
+
+	private List<TransferResult> applyBestEffort(long epoch, List<TransferRequest> transfers) {
+
+		List<TransferResult> results = new ArrayList<>(transfers.size());
+		for (TransferRequest transfer : transfers) {
+			try {
+				applyTransfer(exchangeRates.current(), epoch, transfer.getSenderId(), transfer.getReceiverId(),
+						transfer.toAmount());
+				results.add(TransferResult.success());
+			} catch (InvalidReceiverException | AccountNotFoundException | UnsupportedCurrencyException
+					| InsufficientBalanceException | ArithmeticException | IllegalStateException e) {
+				// a full ledger fails the transfer before anything is written, like a failed check
+				results.add(TransferResult.failure(e.getMessage()));
+			}
+		}
+		return results;
+	}
+
+	private List<TransferResult> applyAllOrNothing(long epoch, List<TransferRequest> transfers) {
+
+		// dry run on pending balances first, nothing is written unless every transfer succeeds
+		// keyed by id, a store may hand out a new copy of the account on every lookup
+		Map<Long, Long> pendingUnits = new HashMap<>();
+		// one rate table for the dry run and the transfers, a replacement cannot fail the batch
+		RateTable rates = exchangeRates.current();
+		int failedIndex = -1;
+		String failedReason = null;
+
+		for (int i = 0; i < transfers.size() && failedIndex < 0; i++) {
+			TransferRequest transfer = transfers.get(i);
+			try {
+				if (transfer.getSenderId() == transfer.getReceiverId()) {
+					throw SAME_ACCOUNT;
+				}
+				Account senderAccount = accountRepository.getById(transfer.getSenderId());
+				Account receiverAccount = accountRepository.getById(transfer.getReceiverId());
+				Amount amount = transfer.toAmount();
+
+				long senderUnits = pendingUnits.getOrDefault(senderAccount.getId(), senderAccount.getAmount().getUnits());
+				long receiverUnits = pendingUnits.getOrDefault(receiverAccount.getId(), receiverAccount.getAmount().getUnits());
+
+				pendingUnits.put(senderAccount.getId(),
+						calculateUnits(rates, senderUnits, senderAccount.getAmount().getCurrency(), amount, false));
+				pendingUnits.put(receiverAccount.getId(),
+						calculateUnits(rates, receiverUnits, receiverAccount.getAmount().getCurrency(), amount, true));
+
+			} catch (InvalidReceiverException | AccountNotFoundException | UnsupportedCurrencyException
+					| InsufficientBalanceException | ArithmeticException e) {
+				failedIndex = i;
+				failedReason = e.getMessage();
+			}
+		}
+
+		List<TransferResult> results = new ArrayList<>(transfers.size());
+		if (failedIndex >= 0) {
+			for (int i = 0; i < transfers.size(); i++) {
+				results.add(TransferResult.failure(i == failedIndex ? failedReason : TransferResult.NOT_APPLIED));
+			}
+			return results;
+		}
+
+		// the history of every account is reserved up front, a full ledger fails the whole batch
+		// before its first transfer is journaled
+		if (ledger.isEnabled()) {
+			Map<Long, Integer> postings = new HashMap<>();
+			for (TransferRequest transfer : transfers) {
+				postings.merge(transfer.getSenderId(), 1, Integer::sum);
+				postings.merge(transfer.getReceiverId(), 1, Integer::sum);
+			}
+			postings.forEach(ledger::reserve);
+		}
+
+		// the dry run passed with the stripes held, so replaying the transfers cannot fail
+		for (TransferRequest transfer : transfers) {
+			try {
+				applyTransfer(rates, epoch, transfer.getSenderId(), transfer.getReceiverId(), transfer.toAmount());
+			} catch (InvalidReceiverException | AccountNotFoundException | UnsupportedCurrencyException
+					| InsufficientBalanceException e) {
+				throw new IllegalStateException("Validated batch transfer failed - " + transfer, e);
+			}
+			results.add(TransferResult.success());
+		}
+		return results;
+	}
+
+	// callers must hold the stripes of both accounts, returns the journal lsn of the transfer
+	long applyTransfer(long senderId, long receiverId, Amount amount)
+			throws InvalidReceiverException, AccountNotFoundException, UnsupportedCurrencyException, InsufficientBalanceException {
+
+		long epoch = versions.enter();
+		try {
+			return applyTransfer(exchangeRates.current(), epoch, senderId, receiverId, amount);
+		} finally {
+			versions.exit(epoch);
+		}
+	}
+
+	private long applyTransfer(RateTable rates, long epoch, long senderId, long receiverId, Amount amount)
+			throws InvalidReceiverException, AccountNotFoundException, UnsupportedCurrencyException, InsufficientBalanceException {
+
+		if (senderId == receiverId) {
+			throw SAME_ACCOUNT;
+		}
+
 		Account senderAccount = accountRepository.getById(senderId);
 		Account receiverAccount = accountRepository.getById(receiverId);
 
 		Amount senderAmount = senderAccount.getAmount();
 		Amount receiverAmount = receiverAccount.getAmount();
 
-		Amount senderNewAmount = calculateAmount(senderAmount, amount, "subtract");
-		Amount receiverNewAmount = calculateAmount(receiverAmount, amount, "add");
+		// both balances are validated before either account is written
+		long senderNewUnits = calculateUnits(rates, senderAmount.getUnits(), senderAmount.getCurrency(), amount, false);
+		long receiverNewUnits = calculateUnits(rates, receiverAmount.getUnits(), receiverAmount.getCurrency(), amount, true);
+
+		// a full ledger fails the transfer here, before it is journaled
+		if (ledger.isEnabled()) {
+			ledger.reserve(senderId, 1);
+			ledger.reserve(receiverId, 1);
+		}
+
+		long lsn = journal.appendTransfer(senderId, receiverId,
+				senderAmount.getUnits() - senderNewUnits, receiverNewUnits - receiverAmount.getUnits());
+
+		if (ledger.isEnabled()) {
+			long now = System.currentTimeMillis();
+			ledger.append(senderId, Posting.Kind.DEBIT, now, receiverId, senderNewUnits - senderAmount.getUnits(),
+					senderNewUnits, rateOf(rates, amount.getCurrency(), senderAmount.getCurrency()), lsn);
+			ledger.append(receiverId, Posting.Kind.CREDIT, now, senderId, receiverNewUnits - receiverAmount.getUnits(),
+					receiverNewUnits, rateOf(rates, amount.getCurrency(), receiverAmount.getCurrency()), lsn);
+		}
+
+		versions.beforeWrite(epoch, senderId, senderAmount.getUnits());
+		versions.beforeWrite(epoch, receiverId, receiverAmount.getUnits());
 
-		senderAccount.setAmount(senderNewAmount);
+		senderAmount.setUnits(senderNewUnits);
+		senderAccount.setLsn(lsn);
 		accountRepository.update(senderAccount);
 
-		receiverAccount.setAmount(receiverNewAmount);
+		receiverAmount.setUnits(receiverNewUnits);
+		receiverAccount.setLsn(lsn);
 		accountRepository.update(receiverAccount);
-		
+
+		return lsn;
 	}
 
-	public Amount calculateAmount(Amount oldAmount, Amount changeAmount, String operation)
-			throws UnsupportedCurrencyException, InsufficientBalanceException {
+	// Visits every account with the balance it had at one point in time, taken when the call
+	// starts, while transfers go on. Writers never wait for it, they keep the old balance of an
+	// account they change during the scan, so the memory used grows with the accounts written
+	// meanwhile. Accounts created meanwhile are left out. Cross-shard transfers are applied in
+	// two steps and are not covered. Returns the number of accounts visited.
+	public long exportAccounts(BalanceVisitor visitor) {
 
-		String oldAmountCurrency = oldAmount.getCurrency();
-		String changeAmountCurrency = changeAmount.getCurrency();
+		AccountVersions.View view = versions.open();
+		long[] count = new long[1];
+		try {
+			accountRepository.forEach((id, account) -> {
+				// the current balance first, a writer keeps the old one before it changes it
+				Amount amount = account.getAmount();
+				long units = amount.getUnits();
+				Long kept = view.keptUnits(id);
+				if (kept != null && kept == AccountVersions.CREATED) {
+					return;
+				}
+				visitor.visit(id, kept == null ? units : kept, amount.getCurrency());
+				count[0]++;
+			});
+		} finally {
+			versions.close(view);
+		}
+		return count[0];
+	}
 
-		BigDecimal oldAmountValue = oldAmount.getValue();
-		BigDecimal changeAmountValue = changeAmount.getValue();
+	// the rate table both phases of a cross-shard transfer use, taken once before the debit
+	public RateTable currentRates() {
+		return exchangeRates.current();
+	}
 
-		Amount newAmount = new Amount();
-		newAmount.setCurrency(oldAmountCurrency);
+	// First phase of a transfer whose accounts are owned by different threads. Validates it
+	// like applyTransfer and takes the money from the sender, the caller must own the sender
+	// and hand the returned debit to applyCredit or refundDebit. The receiver is only read,
+	// its currency never changes.
+	long applyDebit(RateTable rates, long senderId, long receiverId, Amount amount)
+			throws InvalidReceiverException, AccountNotFoundException, UnsupportedCurrencyException, InsufficientBalanceException {
 
-		BigDecimal newAmountValue;
-		if (oldAmountCurrency.equals(changeAmountCurrency)) {
-			newAmountValue = "add".equals(operation) ? 
-					oldAmountValue.add(changeAmountValue)
-					: oldAmountValue.subtract(changeAmountValue);
-		} else {
-			Amount changeAmountConverted = convertCurrency(changeAmount, oldAmountCurrency);
-			newAmountValue = "add".equals(operation) ? 
-					oldAmountValue.add(changeAmountConverted.getValue())
-					: oldAmountValue.subtract(changeAmountConverted.getValue());
+		if (senderId == receiverId) {
+			throw SAME_ACCOUNT;
 		}
 
-		if (newAmountValue.compareTo(BigDecimal.ZERO) < 0) {
-			throw new InsufficientBalanceException("Insufficient balance. Cannot process the request.");
-		}
+		Account senderAccount = accountRepository.getById(senderId);
+		Account receiverAccount = accountRepository.getById(receiverId);
+		Amount senderAmount = senderAccount.getAmount();
+
+		long senderNewUnits = calculateUnits(rates, senderAmount.getUnits(), senderAmount.getCurrency(), amount, false);
+		// fails on an unsupported currency before the sender is written
+		creditUnits(rates, receiverAccount, amount);
+
+		long debitUnits = senderAmount.getUnits() - senderNewUnits;
+		// the debit and a possible refund, a full ledger fails the transfer before the sender is written
+		ledger.reserve(senderId, 2);
+		// journaled with the credit, so the debit has no lsn
+		ledger.append(senderId, Posting.Kind.DEBIT, System.currentTimeMillis(), receiverId, -debitUnits, senderNewUnits,
+				rateOf(rates, amount.getCurrency(), senderAmount.getCurrency()), 0);
+		senderAmount.setUnits(senderNewUnits);
+		accountRepository.update(senderAccount);
+
+		return debitUnits;
+	}
+
+	// the amount in the receiver's currency, as applyTransfer would credit it
+	long creditUnits(RateTable rates, long receiverId, Amount amount)
+			throws AccountNotFoundException, UnsupportedCurrencyException {
+		return creditUnits(rates, accountRepository.getById(receiverId), amount);
+	}
+
+	// Second phase, the caller must own the receiver. The transfer is journaled only now, as
+	// one record with both sides. Throws ArithmeticException when the balance would overflow
+	// and IllegalStateException when the ledger is full, the debit must then be refunded.
+	// Returns the journal lsn.
+	long applyCredit(RateTable rates, long senderId, long receiverId, Amount amount, long debitUnits, long creditUnits)
+			throws AccountNotFoundException {
+
+		Account receiverAccount = accountRepository.getById(receiverId);
+		Amount receiverAmount = receiverAccount.getAmount();
+		long receiverNewUnits = Money.add(receiverAmount.getUnits(), creditUnits);
+
+		// a full ledger fails the credit before it is journaled, the debit is then refunded
+		ledger.reserve(receiverId, 1);
+		long lsn = journal.appendTransfer(senderId, receiverId, debitUnits, creditUnits);
+		ledger.append(receiverId, Posting.Kind.CREDIT, System.currentTimeMillis(), senderId, creditUnits, receiverNewUnits,
+				rateOf(rates, amount.getCurrency(), receiverAmount.getCurrency()), lsn);
+
+		receiverAmount.setUnits(receiverNewUnits);
+		receiverAccount.setLsn(lsn);
+		accountRepository.update(receiverAccount);
+
+		return lsn;
+	}
+
+	// gives a debit back when its credit failed, the caller must own the sender
+	void refundDebit(RateTable rates, long senderId, long receiverId, Amount amount, long debitUnits)
+			throws AccountNotFoundException {
+
+		Account senderAccount = accountRepository.getById(senderId);
+		Amount senderAmount = senderAccount.getAmount();
+		long senderNewUnits = Money.add(senderAmount.getUnits(), debitUnits);
+		// the money goes back first, the debit reserved a slot for this posting but later
+		// postings of the sender may have taken it
+		senderAmount.setUnits(senderNewUnits);
+		accountRepository.update(senderAccount);
+		ledger.append(senderId, Posting.Kind.REFUND, System.currentTimeMillis(), receiverId, debitUnits, senderNewUnits,
+				rateOf(rates, amount.getCurrency(), senderAmount.getCurrency()), 0);
+	}
+
+	// the rate an amount was converted at, the currencies are known to the table
+	private static long rateOf(RateTable rates, String from, String to) {
+		return from.equals(to) ? Money.RATE_SCALE : rates.rate(rates.indexOf(from), rates.indexOf(to));
+	}
+
+	private long creditUnits(RateTable rates, Account receiverAccount, Amount amount) throws UnsupportedCurrencyException {
+
+		String receiverCurrency = receiverAccount.getAmount().getCurrency();
+		return receiverCurrency.equals(amount.getCurrency()) ?
+				amount.getUnits()
+				: convertUnits(rates, amount.getUnits(), amount.getCurrency(), receiverCurrency);
+	}
 
-		newAmount.setValue(newAmountValue);
+	public Amount calculateAmount(Amount oldAmount, Amount changeAmount, String operation)
+			throws UnsupportedCurrencyException, InsufficientBalanceException {
+
+		long newUnits = calculateUnits(exchangeRates.current(), oldAmount.getUnits(), oldAmount.getCurrency(), changeAmount,
+				"add".equals(operation));
 
-		return newAmount;
+		return new Amount(newUnits, oldAmount.getCurrency());
 	}
 	
 	public Amount convertCurrency(Amount oldAmount, String newCurrency) throws UnsupportedCurrencyException {
 		
-		String oldCurrency = oldAmount.getCurrency();
-		BigDecimal oldValue = oldAmount.getValue();
+		long newUnits = convertUnits(exchangeRates.current(), oldAmount.getUnits(), oldAmount.getCurrency(), newCurrency);
 		
-		double convertRate = currencyRates[getCurrencyInx(oldCurrency)][getCurrencyInx(newCurrency)];
-		BigDecimal newValue = oldValue.multiply(new BigDecimal(String.valueOf(convertRate)));
-		
-		return new Amount(newValue, newCurrency);
+		return new Amount(newUnits, newCurrency);
 	}
-	
-	private int getCurrencyInx(String currency) throws UnsupportedCurrencyException {
-		if ("GBP".equals(currency)) {
-			return 0;
-		} else if ("EUR".equals(currency)) {
-			return 1;
-		} else if ("USD".equals(currency)) {
-			return 2;
-		} else {
-			throw new UnsupportedCurrencyException("Supported currencies are GBP, EUR, and USD.");
+
+	private long calculateUnits(RateTable rates, long oldUnits, String oldAmountCurrency, Amount changeAmount, boolean add)
+			throws UnsupportedCurrencyException, InsufficientBalanceException {
+
+		String changeAmountCurrency = changeAmount.getCurrency();
+
+		long changeUnits = oldAmountCurrency.equals(changeAmountCurrency) ?
+				changeAmount.getUnits()
+				: convertUnits(rates, changeAmount.getUnits(), changeAmountCurrency, oldAmountCurrency);
+
+		long newUnits = add ?
+				Money.add(oldUnits, changeUnits)
+				: Money.subtract(oldUnits, changeUnits);
+
+		if (newUnits < 0) {
+			throw INSUFFICIENT_BALANCE;
 		}
+
+		return newUnits;
+	}
+
+	private long convertUnits(RateTable rates, long units, String oldCurrency, String newCurrency)
+			throws UnsupportedCurrencyException {
+
+		int from = rates.indexOf(oldCurrency);
+		int to = rates.indexOf(newCurrency);
+		if (from < 0 || to < 0) {
+			throw rates.unsupported();
+		}
+
+		return rates.convert(units, from, to);
 	}
 
 }
@@ -0,0 +1,133 @@
+package main.java.com.moneytransfer.service;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import main.java.com.moneytransfer.repository.ConcurrentLongMap;
+
+// Point-in-time views of the balances for readers that scan every account while transfers go
+// on, without making a writer wait.
+//
+// Every write runs inside an epoch, entered before the writer reads the accounts and left when
+// it is done. Opening a view moves to a new epoch and waits until the writers of the previous
+// one have left, so the view contains everything written before it and nothing after. Writers of
+// the new epoch see the view and keep the balance of an account in it before they change the
+// account for the first time, or mark the account when they create it. A reader reads the
+// current balance first and then the view, and uses the kept balance when there is one.
+public class AccountVersions {
+
+	// kept for an account created after the view was opened, no balance can be this low
+	public static final long CREATED = Long.MIN_VALUE;
+
+	private static final View[] NO_VIEWS = new View[0];
+
+	// writers inside an even and an odd epoch, only the previous epoch is ever waited for. A
+	// single counter each, the sum of a LongAdder is not a snapshot and may read zero while a
+	// writer that saw the old epoch is still inside
+	private final AtomicLong[] writers = { new AtomicLong(), new AtomicLong() };
+	private volatile long epoch;
+	private volatile View[] views = NO_VIEWS;
+
+	public static final class View {
+
+		private final long epoch;
+		private final ConcurrentLongMap<Long> kept = new ConcurrentLongMap<>();
+
+		private View(long epoch) {
+			this.epoch = epoch;
+		}
+
+		// the units the account had when the view was opened, null when it has not changed since,
+		// CREATED when it did not exist yet. Read after the current balance of the account.
+		public Long keptUnits(long id) {
+			return kept.get(id);
+		}
+
+		// accounts written since the view was opened
+		public long keptCount() {
+			return kept.size();
+		}
+
+	}
+
+	// returns the epoch to hand to the other calls and to exit
+	public long enter() {
+
+		while (true) {
+			long current = epoch;
+			AtomicLong counter = writers[(int) (current & 1)];
+			counter.incrementAndGet();
+			// checked again after the increment, an open either sees this writer or it sees the new epoch
+			if (epoch == current) {
+				return current;
+			}
+			counter.decrementAndGet();
+		}
+	}
+
+	public void exit(long writerEpoch) {
+		writers[(int) (writerEpoch & 1)].decrementAndGet();
+	}
+
+	// before the balance of an existing account changes, the caller holds the account's stripe
+	public void beforeWrite(long writerEpoch, long id, long units) {
+
+		View[] open = views;
+		for (View view : open) {
+			// writes to an account are serialized by its stripe, the first one keeps the balance
+			if (view.epoch <= writerEpoch && view.kept.get(id) == null) {
+				view.kept.put(id, units);
+			}
+		}
+	}
+
+	// before a new account is stored
+	public void beforeCreate(long writerEpoch, long id) {
+		beforeWrite(writerEpoch, id, CREATED);
+	}
+
+	// whether a writer of the epoch has to report its writes, creations then need their id first
+	public boolean isTracking(long writerEpoch) {
+
+		View[] open = views;
+		for (View view : open) {
+			if (view.epoch <= writerEpoch) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// waits only for the writers already inside, which hold their stripes for one transfer or batch
+	public synchronized View open() {
+
+		View view = new View(epoch + 1);
+		View[] open = Arrays.copyOf(views, views.length + 1);
+		open[open.length - 1] = view;
+		views = open;
+
+		long previous = epoch;
+		epoch = previous + 1;
+		AtomicLong counter = writers[(int) (previous & 1)];
+		while (counter.get() != 0) {
+			LockSupport.parkNanos(10_000L);
+		}
+		return view;
+	}
+
+	public synchronized void close(View view) {
+
+		View[] open = views;
+		for (int i = 0; i < open.length; i++) {
+			if (open[i] == view) {
+				View[] remaining = new View[open.length - 1];
+				System.arraycopy(open, 0, remaining, 0, i);
+				System.arraycopy(open, i + 1, remaining, i, open.length - i - 1);
+				views = remaining.length == 0 ? NO_VIEWS : remaining;
+				return;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,49 @@
+package main.java.com.moneytransfer.service;
+
+import java.util.List;
+
+import main.java.com.moneytransfer.model.Amount;
+import main.java.com.moneytransfer.model.BatchMode;
+import main.java.com.moneytransfer.model.TransferRequest;
+import main.java.com.moneytransfer.model.TransferResult;
+
+// Runs every transfer on the calling thread under the account stripe locks, the callback
+// is completed before the call returns.
+public class LockingTransferEngine implements TransferEngine {
+
+	private final AccountService accountService;
+
+	public LockingTransferEngine(AccountService accountService) {
+		this.accountService = accountService;
+	}
+
+	@Override
+	public void transfer(long senderId, long receiverId, Amount amount, TransferCallback callback) {
+
+		Exception error = null;
+		try {
+			accountService.transferAmount(senderId, receiverId, amount);
+		} catch (Exception e) {
+			error = e;
+		}
+		callback.onComplete(error);
+	}
+
+	@Override
+	public void transferBatch(List<TransferRequest> transfers, BatchMode mode, BatchCallback callback) {
+
+		List<TransferResult> results = null;
+		Exception error = null;
+		try {
+			results = accountService.transferBatch(transfers, mode);
+		} catch (RuntimeException e) {
+			error = e;
+		}
+		callback.onComplete(results, error);
+	}
+
+	@Override
+	public void close() {
+	}
+
+}
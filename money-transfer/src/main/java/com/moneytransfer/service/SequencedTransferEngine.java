@@ -0,0 +1,295 @@
+package main.java.com.moneytransfer.service;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import main.java.com.moneytransfer.model.Amount;
+import main.java.com.moneytransfer.model.BatchMode;
+import main.java.com.moneytransfer.model.TransferRequest;
+import main.java.com.moneytransfer.model.TransferResult;
+
+// Single-writer transfer engine.
+//
+// Request threads claim a slot of a pre-allocated ring buffer, fill in the command and
+// publish it. One writer thread applies the commands in sequence order with the same code
+// path as the locking engine, but without taking a lock per transfer: it holds every account
+// stripe once per run of up to MAX_RUN commands, which only ever waits for account creations
+// and snapshots. Callbacks are handed to the completion executor after the run, together with
+// the wait for the journal, so the writer never blocks on I/O.
+public class SequencedTransferEngine implements TransferEngine {
+
+	public static final int DEFAULT_RING_SIZE = 64 * 1024;
+
+	private static final int MAX_RUN = 256;
+	private static final int SPIN_TRIES = 100;
+	private static final int YIELD_TRIES = 100;
+	private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private static final int TRANSFER = 1;
+	private static final int BATCH = 2;
+	// a slot claimed while the engine closed, the writer skips it
+	private static final int CLOSED = 3;
+
+	private final AccountService accountService;
+	private final AccountLocks accountLocks;
+	private final Executor completionExecutor;
+
+	private final Command[] ring;
+	private final int mask;
+	private final AtomicLong claimed = new AtomicLong();
+	// sequence of the next command the writer will read, every slot before it can be reused
+	private final AtomicLong consumed = new AtomicLong();
+
+	private final Thread writer;
+	private volatile boolean sleeping;
+	private volatile boolean running = true;
+
+	public SequencedTransferEngine(AccountService accountService, AccountLocks accountLocks, int ringSize,
+			Executor completionExecutor) {
+
+		if (ringSize <= 0 || Integer.bitCount(ringSize) != 1) {
+			throw new IllegalArgumentException("Ring size must be a power of two - " + ringSize);
+		}
+
+		this.accountService = accountService;
+		this.accountLocks = accountLocks;
+		this.completionExecutor = completionExecutor;
+		this.ring = new Command[ringSize];
+		for (int i = 0; i < ringSize; i++) {
+			this.ring[i] = new Command();
+		}
+		this.mask = ringSize - 1;
+
+		this.writer = new Thread(this::run, "transfer-writer");
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	@Override
+	public void transfer(long senderId, long receiverId, Amount amount, TransferCallback callback) {
+
+		long sequence = claim();
+		Command command = ring[(int) sequence & mask];
+		command.type = TRANSFER;
+		command.senderId = senderId;
+		command.receiverId = receiverId;
+		command.amount = amount;
+		command.transferCallback = callback;
+		publish(command, sequence);
+	}
+
+	@Override
+	public void transferBatch(List<TransferRequest> transfers, BatchMode mode, BatchCallback callback) {
+
+		long sequence = claim();
+		Command command = ring[(int) sequence & mask];
+		command.type = BATCH;
+		command.transfers = transfers;
+		command.mode = mode;
+		command.batchCallback = callback;
+		publish(command, sequence);
+	}
+
+	// stops the writer once every published command has been applied
+	@Override
+	public void close() {
+
+		running = false;
+		LockSupport.unpark(writer);
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private long claim() {
+
+		if (!running) {
+			throw new IllegalStateException("Transfer engine is closed.");
+		}
+
+		long sequence = claimed.getAndIncrement();
+		// wait for the writer to free the slot when the ring is full, a stopped writer frees none
+		for (int tries = 0; sequence - ring.length >= consumed.get() && (running || writer.isAlive()); tries++) {
+			if (tries < YIELD_TRIES) {
+				Thread.yield();
+			} else {
+				LockSupport.parkNanos(1000);
+			}
+		}
+
+		// checked again after the claim, the writer may already have stopped or it waits for this
+		// slot, so the slot is published as skipped either way
+		if (!running) {
+			Command command = ring[(int) sequence & mask];
+			command.type = CLOSED;
+			publish(command, sequence);
+			throw new IllegalStateException("Transfer engine is closed.");
+		}
+		return sequence;
+	}
+
+	private void publish(Command command, long sequence) {
+
+		command.sequence = sequence;
+		if (sleeping) {
+			LockSupport.unpark(writer);
+		}
+	}
+
+	private void run() {
+
+		Runnable[] completions = new Runnable[MAX_RUN];
+		long next = 0;
+		int idle = 0;
+
+		while (true) {
+			if (ring[(int) next & mask].sequence != next) {
+				if (!running && claimed.get() == next) {
+					return;
+				}
+				idle = idle(idle, next);
+				continue;
+			}
+			idle = 0;
+
+			int count = 0;
+			accountLocks.lockAllStripes();
+			try {
+				Command command;
+				while (count < MAX_RUN && (command = ring[(int) next & mask]).sequence == next) {
+					Runnable completion = execute(command);
+					if (completion != null) {
+						completions[count++] = completion;
+					}
+					next++;
+				}
+			} finally {
+				accountLocks.unlockAllStripes();
+			}
+			consumed.set(next);
+
+			for (int i = 0; i < count; i++) {
+				complete(completions[i]);
+				completions[i] = null;
+			}
+		}
+	}
+
+	// applies the command and clears the slot, the returned completion no longer refers to it
+	private Runnable execute(Command command) {
+
+		if (command.type == CLOSED) {
+			return null;
+		}
+		Runnable completion;
+		if (command.type == TRANSFER) {
+			TransferCallback callback = command.transferCallback;
+			long lsn = 0;
+			Exception error = null;
+			try {
+				lsn = accountService.applyTransfer(command.senderId, command.receiverId, command.amount);
+			} catch (Exception e) {
+				error = e;
+			}
+			completion = completeTransfer(callback, lsn, error);
+		} else {
+			BatchCallback callback = command.batchCallback;
+			List<TransferResult> results = null;
+			Exception error = null;
+			try {
+				results = accountService.applyBatch(command.transfers, command.mode);
+			} catch (RuntimeException e) {
+				error = e;
+			}
+			completion = completeBatch(callback, accountService.lastJournalLsn(), results, error);
+		}
+
+		command.amount = null;
+		command.transferCallback = null;
+		command.transfers = null;
+		command.batchCallback = null;
+		return completion;
+	}
+
+	// a saturated or shut down executor must not stop the writer, the completion then runs here
+	private void complete(Runnable completion) {
+
+		try {
+			completionExecutor.execute(completion);
+		} catch (RejectedExecutionException e) {
+			completion.run();
+		}
+	}
+
+	private Runnable completeTransfer(TransferCallback callback, long lsn, Exception error) {
+		return () -> {
+			Exception failure = error;
+			if (failure == null) {
+				failure = awaitDurable(lsn);
+			}
+			callback.onComplete(failure);
+		};
+	}
+
+	private Runnable completeBatch(BatchCallback callback, long lsn, List<TransferResult> results, Exception error) {
+		return () -> {
+			Exception failure = error;
+			if (failure == null) {
+				failure = awaitDurable(lsn);
+			}
+			callback.onComplete(failure == null ? results : null, failure);
+		};
+	}
+
+	private RuntimeException awaitDurable(long lsn) {
+
+		try {
+			accountService.awaitDurable(lsn);
+			return null;
+		} catch (RuntimeException e) {
+			return e;
+		}
+	}
+
+	// spins first, then yields, then parks until a producer unparks the writer
+	private int idle(int idle, long next) {
+
+		if (idle < SPIN_TRIES) {
+			return idle + 1;
+		}
+		if (idle < SPIN_TRIES + YIELD_TRIES) {
+			Thread.yield();
+			return idle + 1;
+		}
+
+		sleeping = true;
+		// a command published before the flag was set would not unpark the writer
+		if (ring[(int) next & mask].sequence != next && running) {
+			LockSupport.parkNanos(this, PARK_NANOS);
+		}
+		sleeping = false;
+		return idle;
+	}
+
+	private static class Command {
+
+		private volatile long sequence = -1;
+
+		private int type;
+		private long senderId;
+		private long receiverId;
+		private Amount amount;
+		private TransferCallback transferCallback;
+		private List<TransferRequest> transfers;
+		private BatchMode mode;
+		private BatchCallback batchCallback;
+
+	}
+
+}
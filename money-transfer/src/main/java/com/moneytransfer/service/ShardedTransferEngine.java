@@ -0,0 +1,395 @@
+package main.java.com.moneytransfer.service;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+import main.java.com.moneytransfer.exception.AccountNotFoundException;
+import main.java.com.moneytransfer.fx.RateTable;
+import main.java.com.moneytransfer.model.Amount;
+import main.java.com.moneytransfer.model.BatchMode;
+import main.java.com.moneytransfer.model.TransferRequest;
+import main.java.com.moneytransfer.model.TransferResult;
+import main.java.com.moneytransfer.repository.ShardedAccountRepository;
+
+// Partitioned transfer engine.
+//
+// Every shard of the repository is owned by one thread, which is the only one that writes
+// its balances, so no account lock is taken. A transfer is queued to the shard of its sender.
+// When the receiver lives in the same shard it is applied in one step, otherwise the sender's
+// shard debits the sender and forwards the credit to the receiver's shard, which journals the
+// transfer and completes it. A credit that would overflow is sent back and refunded.
+//
+// Batches may touch any shard, they pause every shard thread and run on the caller's thread.
+public class ShardedTransferEngine implements TransferEngine {
+
+	public static final int DEFAULT_QUEUE_SIZE = 64 * 1024;
+
+	private static final int SPIN_TRIES = 100;
+	private static final int YIELD_TRIES = 100;
+	private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private static final int TRANSFER = 1;
+	private static final int CREDIT = 2;
+	private static final int REFUND = 3;
+	private static final int PAUSE = 4;
+
+	private final AccountService accountService;
+	private final ShardedAccountRepository accountRepository;
+	private final Executor completionExecutor;
+	private final int queueSize;
+
+	private final Shard[] shards;
+	// transfers submitted and not yet completed and batches running, the shards stop only once
+	// it drops to zero
+	private final AtomicLong inFlight = new AtomicLong();
+	private final ReentrantLock batchLock = new ReentrantLock();
+	private volatile boolean running = true;
+
+	public ShardedTransferEngine(AccountService accountService, ShardedAccountRepository accountRepository,
+			int queueSize, Executor completionExecutor) {
+
+		if (queueSize <= 0) {
+			throw new IllegalArgumentException("Queue size must be positive - " + queueSize);
+		}
+
+		this.accountService = accountService;
+		this.accountRepository = accountRepository;
+		this.completionExecutor = completionExecutor;
+		this.queueSize = queueSize;
+
+		this.shards = new Shard[accountRepository.shardCount()];
+		for (int i = 0; i < shards.length; i++) {
+			this.shards[i] = new Shard(i);
+		}
+		for (Shard shard : shards) {
+			shard.thread.start();
+		}
+	}
+
+	@Override
+	public void transfer(long senderId, long receiverId, Amount amount, TransferCallback callback) {
+
+		enter();
+		Message message = new Message(TRANSFER);
+		message.senderId = senderId;
+		message.receiverId = receiverId;
+		message.amount = amount;
+		message.callback = callback;
+		shards[accountRepository.shardOf(senderId)].submit(message);
+	}
+
+	@Override
+	public void transferBatch(List<TransferRequest> transfers, BatchMode mode, BatchCallback callback) {
+
+		enter();
+		List<TransferResult> results = null;
+		RuntimeException error = null;
+		long lsn = 0;
+
+		batchLock.lock();
+		try {
+			CountDownLatch resumed = pauseShards();
+			try {
+				results = accountService.applyBatch(transfers, mode);
+				lsn = accountService.lastJournalLsn();
+			} catch (RuntimeException e) {
+				error = e;
+			} finally {
+				resumed.countDown();
+			}
+		} finally {
+			batchLock.unlock();
+			inFlight.decrementAndGet();
+		}
+
+		List<TransferResult> batchResults = results;
+		RuntimeException batchError = error;
+		long batchLsn = lsn;
+		execute(() -> {
+			Exception failure = batchError;
+			if (failure == null) {
+				failure = awaitDurable(batchLsn);
+			}
+			callback.onComplete(failure == null ? batchResults : null, failure);
+		});
+	}
+
+	// a cross-shard transfer is debited and credited by different threads at different times
+	@Override
+	public boolean appliesAtomically() {
+		return false;
+	}
+
+	// stops the shards once every submitted transfer has been completed
+	@Override
+	public void close() {
+
+		running = false;
+		for (Shard shard : shards) {
+			LockSupport.unpark(shard.thread);
+		}
+		for (Shard shard : shards) {
+			try {
+				shard.thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	// counts the caller in flight, or throws when the engine is closed. Counted first and checked
+	// after, a shard that saw no transfer in flight after close has stopped and the check fails
+	private void enter() {
+
+		inFlight.incrementAndGet();
+		if (!running) {
+			inFlight.decrementAndGet();
+			throw new IllegalStateException("Transfer engine is closed.");
+		}
+	}
+
+	// returns once every shard thread waits on the returned latch, the caller is in flight so
+	// no shard stops before its pause arrives
+	private CountDownLatch pauseShards() {
+
+		CountDownLatch paused = new CountDownLatch(shards.length);
+		CountDownLatch resumed = new CountDownLatch(1);
+		for (Shard shard : shards) {
+			Message message = new Message(PAUSE);
+			message.paused = paused;
+			message.resumed = resumed;
+			shard.forward(message);
+		}
+		awaitUninterruptibly(paused);
+		return resumed;
+	}
+
+	private void complete(Message message, long lsn, Exception error) {
+
+		TransferCallback callback = message.callback;
+		inFlight.decrementAndGet();
+		execute(() -> {
+			Exception failure = error;
+			if (failure == null) {
+				failure = awaitDurable(lsn);
+			}
+			callback.onComplete(failure);
+		});
+	}
+
+	// a saturated or shut down executor must not stop a shard, the completion then runs on it
+	private void execute(Runnable completion) {
+
+		try {
+			completionExecutor.execute(completion);
+		} catch (RejectedExecutionException e) {
+			completion.run();
+		}
+	}
+
+	private RuntimeException awaitDurable(long lsn) {
+
+		try {
+			accountService.awaitDurable(lsn);
+			return null;
+		} catch (RuntimeException e) {
+			return e;
+		}
+	}
+
+	private static void awaitUninterruptibly(CountDownLatch latch) {
+
+		boolean interrupted = false;
+		while (true) {
+			try {
+				latch.await();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private class Shard {
+
+		private final int index;
+		private final Thread thread;
+		private final Queue<Message> inbox = new ConcurrentLinkedQueue<>();
+		// transfers submitted to this shard and not yet picked up, forwarded messages are not
+		// counted so that two full shards never wait for each other
+		private final AtomicInteger pending = new AtomicInteger();
+		private volatile boolean sleeping;
+
+		Shard(int index) {
+
+			this.index = index;
+			this.thread = new Thread(this::run, "transfer-shard-" + index);
+			this.thread.setDaemon(true);
+		}
+
+		void submit(Message message) {
+
+			// wait for the shard to catch up when its queue is full
+			for (int tries = 0; pending.get() >= queueSize; tries++) {
+				if (tries < YIELD_TRIES) {
+					Thread.yield();
+				} else {
+					LockSupport.parkNanos(1000);
+				}
+			}
+			pending.incrementAndGet();
+			forward(message);
+		}
+
+		void forward(Message message) {
+
+			inbox.offer(message);
+			if (sleeping) {
+				LockSupport.unpark(thread);
+			}
+		}
+
+		private void run() {
+
+			int idle = 0;
+			while (true) {
+				Message message = inbox.poll();
+				if (message == null) {
+					if (!running && inFlight.get() == 0) {
+						return;
+					}
+					idle = idle(idle);
+					continue;
+				}
+				idle = 0;
+
+				switch (message.type) {
+				case TRANSFER:
+					pending.decrementAndGet();
+					transfer(message);
+					break;
+				case CREDIT:
+					credit(message);
+					break;
+				case REFUND:
+					refund(message);
+					break;
+				default:
+					message.paused.countDown();
+					awaitUninterruptibly(message.resumed);
+				}
+			}
+		}
+
+		private void transfer(Message message) {
+
+			int receiverShard = accountRepository.shardOf(message.receiverId);
+			if (receiverShard == index) {
+				long lsn = 0;
+				Exception error = null;
+				try {
+					lsn = accountService.applyTransfer(message.senderId, message.receiverId, message.amount);
+				} catch (Exception e) {
+					error = e;
+				}
+				complete(message, lsn, error);
+				return;
+			}
+
+			try {
+				message.rates = accountService.currentRates();
+				message.debitUnits = accountService.applyDebit(message.rates, message.senderId, message.receiverId,
+						message.amount);
+				message.creditUnits = accountService.creditUnits(message.rates, message.receiverId, message.amount);
+			} catch (Exception e) {
+				complete(message, 0, e);
+				return;
+			}
+			message.type = CREDIT;
+			shards[receiverShard].forward(message);
+		}
+
+		private void credit(Message message) {
+
+			try {
+				long lsn = accountService.applyCredit(message.rates, message.senderId, message.receiverId, message.amount,
+						message.debitUnits, message.creditUnits);
+				complete(message, lsn, null);
+			} catch (ArithmeticException | IllegalStateException | AccountNotFoundException e) {
+				message.type = REFUND;
+				message.error = e;
+				shards[accountRepository.shardOf(message.senderId)].forward(message);
+			}
+		}
+
+		private void refund(Message message) {
+
+			Exception error = message.error;
+			try {
+				accountService.refundDebit(message.rates, message.senderId, message.receiverId, message.amount,
+						message.debitUnits);
+			} catch (AccountNotFoundException e) {
+				// accounts are never removed, the sender was found for the debit, the shard keeps running
+				error = new IllegalStateException("Debited account cannot be found - " + message.senderId, e);
+			}
+			complete(message, 0, error);
+		}
+
+		// spins first, then yields, then parks until a message unparks the shard
+		private int idle(int idle) {
+
+			if (idle < SPIN_TRIES) {
+				return idle + 1;
+			}
+			if (idle < SPIN_TRIES + YIELD_TRIES) {
+				Thread.yield();
+				return idle + 1;
+			}
+
+			sleeping = true;
+			// a message offered before the flag was set would not unpark the shard
+			if (inbox.isEmpty() && running) {
+				LockSupport.parkNanos(this, PARK_NANOS);
+			}
+			sleeping = false;
+			return idle;
+		}
+
+	}
+
+	// one message follows a transfer through every phase, only one shard refers to it at a time
+	private static class Message {
+
+		private int type;
+		private long senderId;
+		private long receiverId;
+		private Amount amount;
+		// the same rates convert both sides of a cross-shard transfer
+		private RateTable rates;
+		private TransferCallback callback;
+		private long debitUnits;
+		private long creditUnits;
+		private Exception error;
+		private CountDownLatch paused;
+		private CountDownLatch resumed;
+
+		Message(int type) {
+			this.type = type;
+		}
+
+	}
+
+}
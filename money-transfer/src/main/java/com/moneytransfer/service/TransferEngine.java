@@ -0,0 +1,39 @@
+package main.java.com.moneytransfer.service;
+
+import java.util.List;
+
+import main.java.com.moneytransfer.model.Amount;
+import main.java.com.moneytransfer.model.BatchMode;
+import main.java.com.moneytransfer.model.TransferRequest;
+import main.java.com.moneytransfer.model.TransferResult;
+
+// Executes transfers and completes them through a callback, which may run on another thread
+// after the call has returned. The rules are those of AccountService.transferAmount.
+public interface TransferEngine extends AutoCloseable {
+
+	interface TransferCallback {
+
+		// error is null when the transfer was applied
+		void onComplete(Exception error);
+
+	}
+
+	interface BatchCallback {
+
+		void onComplete(List<TransferResult> results, Exception error);
+
+	}
+
+	void transfer(long senderId, long receiverId, Amount amount, TransferCallback callback);
+
+	void transferBatch(List<TransferRequest> transfers, BatchMode mode, BatchCallback callback);
+
+	// whether both sides of a transfer are written in one step, which point-in-time reads need
+	default boolean appliesAtomically() {
+		return true;
+	}
+
+	@Override
+	void close();
+
+}
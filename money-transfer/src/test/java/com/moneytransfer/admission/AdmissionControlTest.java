@@ -0,0 +1,123 @@
+package test.java.com.moneytransfer.admission;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import main.java.com.moneytransfer.admission.AdmissionControl;
+import main.java.com.moneytransfer.admission.GradientLimit;
+
+public class AdmissionControlTest {
+
+	private final AtomicInteger runs = new AtomicInteger();
+
+	@Test
+	public void tryExecute_AtLimit_RejectedUntilCompleted() {
+
+		AdmissionControl admission = new AdmissionControl(null, new GradientLimit(2, 2, 2, 100), 10, 1);
+
+		assertTrue(admission.tryExecute(runs::incrementAndGet));
+		assertTrue(admission.tryExecute(runs::incrementAndGet));
+		assertFalse(admission.tryExecute(runs::incrementAndGet));
+		assertEquals(2, runs.get());
+		assertEquals(1, admission.getRejected());
+
+		admission.completed(1000);
+		assertTrue(admission.tryExecute(runs::incrementAndGet));
+		assertEquals(2, admission.getInFlight());
+
+	}
+
+	@Test
+	public void tryExecute_QueueFull_RejectedWithoutRunning() {
+
+		List<Runnable> queue = new ArrayList<>();
+		AdmissionControl admission = new AdmissionControl(queue::add, new GradientLimit(10, 1, 10, 100), 2, 1);
+
+		assertTrue(admission.tryExecute(runs::incrementAndGet));
+		assertTrue(admission.tryExecute(runs::incrementAndGet));
+		assertFalse(admission.tryExecute(runs::incrementAndGet));
+		assertEquals(2, admission.getQueued());
+		assertEquals(1, admission.getQueueFull());
+		assertEquals(2, admission.getInFlight());
+
+		queue.get(0).run();
+		assertEquals(1, runs.get());
+		assertEquals(1, admission.getQueued());
+		assertTrue(admission.tryExecute(runs::incrementAndGet));
+
+	}
+
+	@Test
+	public void tryExecute_Disabled_RunsEveryRequest() {
+
+		AdmissionControl admission = AdmissionControl.disabled();
+
+		for (int i = 0; i < 1000; i++) {
+			assertTrue(admission.tryExecute(runs::incrementAndGet));
+		}
+		assertEquals(1000, runs.get());
+		assertEquals(0, admission.getRejected());
+
+	}
+
+	@Test
+	public void sample_SteadyLatencyAtTheLimit_LimitGrows() {
+
+		GradientLimit limit = new GradientLimit(10, 1, 100, 10);
+
+		feed(limit, 20, 1000, true);
+
+		assertTrue(limit.getLimit() > 10);
+		assertTrue(limit.getLimit() <= 100);
+
+	}
+
+	@Test
+	public void sample_LimitNotUsed_LimitUnchanged() {
+
+		GradientLimit limit = new GradientLimit(10, 1, 100, 10);
+
+		feed(limit, 20, 1000, false);
+
+		assertEquals(10, limit.getLimit());
+
+	}
+
+	@Test
+	public void sample_LatencyRises_LimitShrinksToMinimum() {
+
+		GradientLimit limit = new GradientLimit(50, 20, 100, 10);
+		feed(limit, 5, 1000, true);
+		int before = limit.getLimit();
+
+		feed(limit, 1, 4000, true);
+		assertTrue(limit.getLimit() < before);
+
+		for (long latency = 8000; latency < 1L << 40; latency *= 2) {
+			feed(limit, 1, latency, true);
+		}
+		assertEquals(20, limit.getLimit());
+
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void constructor_InitialAboveMax_IllegalArgumentException() {
+		new GradientLimit(20, 1, 10, 10);
+	}
+
+	// windows of 10 samples, with the limit fully used or idle
+	private static void feed(GradientLimit limit, int windows, long latencyNanos, boolean busy) {
+
+		for (int i = 0; i < windows * 10; i++) {
+			limit.sample(latencyNanos, busy ? limit.getLimit() : 0);
+		}
+	}
+
+}
@@ -0,0 +1,131 @@
+package test.java.com.moneytransfer.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import main.java.com.moneytransfer.api.IdempotencyCache;
+
+public class IdempotencyCacheTest {
+
+	private final AtomicLong now = new AtomicLong();
+
+	@Test
+	public void begin_DuplicateWhileRunning_WaitsForFirstResponse() {
+
+		IdempotencyCache cache = new IdempotencyCache(10, 1000, now::get);
+		AtomicReference<IdempotencyCache.Response> duplicate = new AtomicReference<>();
+
+		assertTrue(cache.begin("key", response -> {
+		}));
+		assertFalse(cache.begin("key", duplicate::set));
+		assertNull(duplicate.get());
+
+		IdempotencyCache.Response response = response(200);
+		cache.complete("key", response);
+
+		assertSame(response, duplicate.get());
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+
+	}
+
+	@Test
+	public void begin_CompletedKey_StoredResponseReturned() {
+
+		IdempotencyCache cache = new IdempotencyCache(10, 1000, now::get);
+		IdempotencyCache.Response response = response(400);
+		AtomicReference<IdempotencyCache.Response> retried = new AtomicReference<>();
+
+		cache.begin("key", stored -> {
+		});
+		cache.complete("key", response);
+
+		assertFalse(cache.begin("key", retried::set));
+		assertSame(response, retried.get());
+		assertEquals(0.5, cache.getHitRate(), 0);
+
+	}
+
+	@Test
+	public void abandon_RunningKey_DuplicatesAnsweredAndKeyExecutedAgain() {
+
+		IdempotencyCache cache = new IdempotencyCache(10, 1000, now::get);
+		AtomicReference<IdempotencyCache.Response> duplicate = new AtomicReference<>();
+
+		cache.begin("key", response -> {
+		});
+		assertFalse(cache.begin("key", duplicate::set));
+
+		IdempotencyCache.Response failure = response(500);
+		cache.abandon("key", failure);
+
+		assertSame(failure, duplicate.get());
+		assertEquals(0, cache.size());
+		assertTrue(cache.begin("key", response -> {
+		}));
+
+		// a stored response is kept
+		IdempotencyCache.Response stored = response(200);
+		cache.complete("key", stored);
+		cache.abandon("key", failure);
+		AtomicReference<IdempotencyCache.Response> retried = new AtomicReference<>();
+		assertFalse(cache.begin("key", retried::set));
+		assertSame(stored, retried.get());
+
+	}
+
+	@Test
+	public void begin_ExpiredKey_ExecutedAgain() {
+
+		IdempotencyCache cache = new IdempotencyCache(10, 1000, now::get);
+		cache.begin("key", response -> {
+		});
+		cache.complete("key", response(200));
+
+		now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+
+		assertTrue(cache.begin("key", response -> {
+		}));
+		assertEquals(1, cache.getExpirations());
+
+	}
+
+	@Test
+	public void begin_CacheFull_OldestCompletedEvictedAndRunningKept() {
+
+		// a small cache has a single segment, the order of the keys is the order of eviction
+		IdempotencyCache cache = new IdempotencyCache(2, 0, now::get);
+		cache.begin("running", response -> {
+		});
+		cache.begin("first", response -> {
+		});
+		cache.complete("first", response(200));
+		cache.begin("second", response -> {
+		});
+		cache.complete("second", response(200));
+
+		assertEquals(2, cache.size());
+		assertEquals(1, cache.getEvictions());
+		assertFalse(cache.begin("running", response -> {
+		}));
+		assertFalse(cache.begin("second", response -> {
+		}));
+		assertTrue(cache.begin("first", response -> {
+		}));
+
+	}
+
+	private static IdempotencyCache.Response response(int code) {
+		return new IdempotencyCache.Response(code, "text/plain; charset=utf-8", new byte[] { 'o', 'k' });
+	}
+
+}
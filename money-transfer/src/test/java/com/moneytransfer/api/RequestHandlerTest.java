@@ -1,6 +1,13 @@
 package test.java.com.moneytransfer.api;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 import java.io.ByteArrayInputStream;
@@ -9,6 +16,12 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.math.BigDecimal;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -16,12 +29,28 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import com.sun.net.httpserver.Headers;
 import com.sun.net.httpserver.HttpExchange;
 
+import main.java.com.moneytransfer.admission.AdmissionControl;
+import main.java.com.moneytransfer.admission.GradientLimit;
+import main.java.com.moneytransfer.api.IdempotencyCache;
+import main.java.com.moneytransfer.api.JsonCodec;
 import main.java.com.moneytransfer.api.RequestHandler;
+import main.java.com.moneytransfer.exception.UnsupportedCurrencyException;
+import main.java.com.moneytransfer.fx.ExchangeRates;
+import main.java.com.moneytransfer.journal.Journal;
+import main.java.com.moneytransfer.ledger.Ledger;
+import main.java.com.moneytransfer.log.AccessLog;
+import main.java.com.moneytransfer.metrics.Metrics;
 import main.java.com.moneytransfer.model.Account;
 import main.java.com.moneytransfer.model.Amount;
+import main.java.com.moneytransfer.model.Money;
+import main.java.com.moneytransfer.repository.AccountRepository;
+import main.java.com.moneytransfer.service.AccountLocks;
 import main.java.com.moneytransfer.service.AccountService;
+import main.java.com.moneytransfer.service.LockingTransferEngine;
+import main.java.com.moneytransfer.service.SequencedTransferEngine;
 
 @RunWith(MockitoJUnitRunner.class)
 public class RequestHandlerTest {
@@ -34,6 +63,7 @@ public class RequestHandlerTest {
 	@Before
 	public void setUp() throws Exception {
 		requestHandler = new RequestHandler(new AccountService());
+		given(exchange.getResponseHeaders()).willReturn(new Headers());
 	}
 
 	@Test
@@ -132,7 +162,7 @@ public class RequestHandlerTest {
 		expectedAccount.setAmount(new Amount(new BigDecimal("1000"), "GBP"));
 
 		int expectedCode = 200;
-		String expectedMessage = "Account create success\n" + expectedAccount.toString();
+		String expectedMessage = createdJson(expectedAccount);
 
 		verify(exchange).sendResponseHeaders(expectedCode, expectedMessage.getBytes().length);
 
@@ -190,7 +220,7 @@ public class RequestHandlerTest {
 		senderAccount.setAmount(new Amount(new BigDecimal("500"), "GBP"));
 
 		int expectedCode = 200;
-		String expectedMessage = "Account create success\n" + senderAccount.toString();
+		String expectedMessage = createdJson(senderAccount);
 
 		verify(exchange).sendResponseHeaders(expectedCode, expectedMessage.getBytes().length);
 
@@ -247,7 +277,7 @@ public class RequestHandlerTest {
 		senderAccount.setAmount(new Amount(new BigDecimal("1000"), "GBP"));
 
 		int expectedCode = 200;
-		String expectedMessage = "Account create success\n" + senderAccount.toString();
+		String expectedMessage = createdJson(senderAccount);
 
 		verify(exchange).sendResponseHeaders(expectedCode, expectedMessage.getBytes().length);
 
@@ -274,7 +304,7 @@ public class RequestHandlerTest {
 		receiverAccount.setAmount(new Amount(new BigDecimal("500"), "GBP"));
 
 		expectedCode = 200;
-		expectedMessage = "Account create success\n" + receiverAccount.toString();
+		expectedMessage = createdJson(receiverAccount);
 
 		verify(exchange).sendResponseHeaders(expectedCode, expectedMessage.getBytes().length);
 
@@ -303,14 +333,385 @@ public class RequestHandlerTest {
 		receiverAccount.setAmount(new Amount(new BigDecimal("700"), "GBP"));
 
 		expectedCode = 200;
-		expectedMessage = new StringBuilder()
-				.append("Transfer success")
-				.append("\nSender ").append(senderAccount)
-				.append("\nReceiver ").append(receiverAccount)
-				.toString();
+		expectedMessage = transferredJson(senderAccount, receiverAccount);
 		
 		verify(exchange).sendResponseHeaders(expectedCode, expectedMessage.getBytes().length);
 
 	}
 
+	@Test
+	public void handlCreate_NormalInputs_JsonBody() throws IOException {
+
+		StringBuilder input = new StringBuilder()
+				.append("{")
+				.append("\"amount\":1000.5,")
+				.append("\"currency\":\"EUR\",")
+				.append("\"note\":{\"ignored\":[1,2]}")
+				.append("}");
+
+		InputStream requestBody = new ByteArrayInputStream(input.toString().getBytes());
+		ByteArrayOutputStream responseBody = new ByteArrayOutputStream();
+
+		given(exchange.getRequestURI()).willReturn(URI.create("/create"));
+		given(exchange.getRequestMethod()).willReturn("POST");
+		given(exchange.getRequestBody()).willReturn(requestBody);
+		given(exchange.getResponseBody()).willReturn(responseBody);
+
+		requestHandler.handle(exchange);
+
+		String expectedMessage = "{\"message\":\"Account create success\","
+				+ "\"account\":{\"id\":1000000,\"amount\":\"1000.50\",\"currency\":\"EUR\"}}";
+
+		verify(exchange).sendResponseHeaders(200, expectedMessage.getBytes().length);
+		assertEquals(expectedMessage, responseBody.toString("UTF-8"));
+
+	}
+
+	@Test
+	public void handlCreate_MalformedAmount_ResponseCode400() throws IOException {
+
+		StringBuilder input = new StringBuilder()
+				.append("{")
+				.append("\"amount\":\"10O0\",")
+				.append("\"currency\":\"GBP\"")
+				.append("}");
+
+		InputStream requestBody = new ByteArrayInputStream(input.toString().getBytes());
+
+		given(exchange.getRequestURI()).willReturn(URI.create("/create"));
+		given(exchange.getRequestMethod()).willReturn("POST");
+		given(exchange.getRequestBody()).willReturn(requestBody);
+		given(exchange.getResponseBody()).willReturn(new ByteArrayOutputStream());
+
+		requestHandler.handle(exchange);
+
+		int expectedCode = 400;
+		String expectedMessage = "Incorrect request body format. Please refer to API Document for correct input format.";
+
+		verify(exchange).sendResponseHeaders(expectedCode, expectedMessage.getBytes().length);
+
+	}
+
+	@Test
+	public void handlBatchTransfer_BestEffort_PerItemResults() throws IOException {
+
+		AccountService accountService = new AccountService();
+		requestHandler = new RequestHandler(accountService);
+		try {
+			accountService.createAccount(new Amount(new BigDecimal("100"), "GBP"));
+			accountService.createAccount(new Amount(new BigDecimal("100"), "GBP"));
+		} catch (UnsupportedCurrencyException e) {
+			throw new AssertionError(e);
+		}
+
+		StringBuilder input = new StringBuilder()
+				.append("{\"mode\":\"best-effort\",\"transfers\":[")
+				.append("{\"sender\":\"1000000\",\"receiver\":\"1000001\",\"amount\":\"50\",\"currency\":\"GBP\"},")
+				.append("{\"sender\":\"1000000\",\"receiver\":\"1000000\",\"amount\":\"10\",\"currency\":\"GBP\"}")
+				.append("]}");
+
+		InputStream requestBody = new ByteArrayInputStream(input.toString().getBytes());
+		ByteArrayOutputStream responseBody = new ByteArrayOutputStream();
+
+		given(exchange.getRequestURI()).willReturn(URI.create("/transfers/batch"));
+		given(exchange.getRequestMethod()).willReturn("POST");
+		given(exchange.getRequestBody()).willReturn(requestBody);
+		given(exchange.getResponseBody()).willReturn(responseBody);
+
+		requestHandler.handle(exchange);
+
+		String expectedMessage = "{\"message\":\"Batch transfer processed\",\"mode\":\"best-effort\","
+				+ "\"succeeded\":1,\"failed\":1,\"results\":["
+				+ "{\"index\":0,\"status\":\"success\"},"
+				+ "{\"index\":1,\"status\":\"failed\",\"reason\":\"Sender and receiver cannot be the same account.\"}]}";
+
+		verify(exchange).sendResponseHeaders(200, expectedMessage.getBytes().length);
+		assertEquals(expectedMessage, responseBody.toString("UTF-8"));
+
+	}
+
+	@Test
+	public void handlTransfer_SequencedEngine_CompletedAsynchronously() throws Exception {
+
+		AccountLocks accountLocks = new AccountLocks(1);
+		AccountService accountService = new AccountService(new AccountRepository(), accountLocks);
+		Account senderAccount = accountService.createAccount(new Amount(new BigDecimal("1000"), "GBP"));
+		Account receiverAccount = accountService.createAccount(new Amount(new BigDecimal("500"), "GBP"));
+
+		ExecutorService completionExecutor = Executors.newSingleThreadExecutor();
+		SequencedTransferEngine engine = new SequencedTransferEngine(accountService, accountLocks, 16, completionExecutor);
+		requestHandler = new RequestHandler(accountService, engine, new JsonCodec(), AccessLog.disabled());
+
+		StringBuilder transferInput = new StringBuilder()
+				.append("{")
+				.append("\"sender\":\"1000000\",")
+				.append("\"receiver\":\"1000001\",")
+				.append("\"amount\":\"200\",")
+				.append("\"currency\":\"GBP\"")
+				.append("}");
+
+		given(exchange.getRequestURI()).willReturn(URI.create("/transfer"));
+		given(exchange.getRequestMethod()).willReturn("POST");
+		given(exchange.getRequestBody()).willReturn(new ByteArrayInputStream(transferInput.toString().getBytes()));
+		given(exchange.getResponseBody()).willReturn(new ByteArrayOutputStream());
+
+		requestHandler.handle(exchange);
+
+		senderAccount.setAmount(new Amount(new BigDecimal("800"), "GBP"));
+		receiverAccount.setAmount(new Amount(new BigDecimal("700"), "GBP"));
+		String expectedMessage = transferredJson(senderAccount, receiverAccount);
+
+		verify(exchange, timeout(5000)).sendResponseHeaders(200, expectedMessage.getBytes().length);
+
+		engine.close();
+		completionExecutor.shutdown();
+
+	}
+
+	@Test
+	public void handlTransfer_RepeatedIdempotencyKey_TransferredOnce() throws Exception {
+
+		AccountService accountService = new AccountService();
+		IdempotencyCache idempotencyCache = new IdempotencyCache(100, 60000);
+		requestHandler = new RequestHandler(accountService, new LockingTransferEngine(accountService), new JsonCodec(),
+				AccessLog.disabled(), idempotencyCache);
+		Account senderAccount = accountService.createAccount(new Amount(new BigDecimal("1000"), "GBP"));
+		Account receiverAccount = accountService.createAccount(new Amount(new BigDecimal("500"), "GBP"));
+
+		String transferInput = "{\"sender\":\"1000000\",\"receiver\":\"1000001\",\"amount\":\"200\",\"currency\":\"GBP\"}";
+		Headers requestHeaders = new Headers();
+		requestHeaders.set("Idempotency-Key", "retry-1");
+		ByteArrayOutputStream firstResponse = new ByteArrayOutputStream();
+		ByteArrayOutputStream retriedResponse = new ByteArrayOutputStream();
+
+		given(exchange.getRequestURI()).willReturn(URI.create("/transfer"));
+		given(exchange.getRequestMethod()).willReturn("POST");
+		given(exchange.getRequestHeaders()).willReturn(requestHeaders);
+		given(exchange.getRequestBody()).willReturn(new ByteArrayInputStream(transferInput.getBytes()),
+				new ByteArrayInputStream(transferInput.getBytes()));
+		given(exchange.getResponseBody()).willReturn(firstResponse, firstResponse, retriedResponse);
+
+		requestHandler.handle(exchange);
+		requestHandler.handle(exchange);
+
+		senderAccount.setAmount(new Amount(new BigDecimal("800"), "GBP"));
+		receiverAccount.setAmount(new Amount(new BigDecimal("700"), "GBP"));
+		String expectedMessage = transferredJson(senderAccount, receiverAccount);
+
+		verify(exchange, times(2)).sendResponseHeaders(200, expectedMessage.getBytes().length);
+		assertEquals(expectedMessage, firstResponse.toString("UTF-8"));
+		assertEquals(expectedMessage, retriedResponse.toString("UTF-8"));
+		assertEquals(new BigDecimal("800.00"), accountService.searchAccount(1000000L).getAmount().getValue());
+		assertEquals(1, idempotencyCache.getHits());
+
+	}
+
+	@Test
+	public void handlTransfer_BodyReadFails_IdempotencyKeyReleased() throws Exception {
+
+		AccountService accountService = new AccountService();
+		IdempotencyCache idempotencyCache = new IdempotencyCache(100, 60000);
+		requestHandler = new RequestHandler(accountService, new LockingTransferEngine(accountService), new JsonCodec(),
+				AccessLog.disabled(), idempotencyCache);
+		accountService.createAccount(new Amount(new BigDecimal("1000"), "GBP"));
+		accountService.createAccount(new Amount(new BigDecimal("500"), "GBP"));
+
+		String transferInput = "{\"sender\":\"1000000\",\"receiver\":\"1000001\",\"amount\":\"200\",\"currency\":\"GBP\"}";
+		Headers requestHeaders = new Headers();
+		requestHeaders.set("Idempotency-Key", "retry-2");
+		InputStream disconnected = new InputStream() {
+			@Override
+			public int read() throws IOException {
+				throw new IOException("Connection reset");
+			}
+		};
+
+		given(exchange.getRequestURI()).willReturn(URI.create("/transfer"));
+		given(exchange.getRequestMethod()).willReturn("POST");
+		given(exchange.getRequestHeaders()).willReturn(requestHeaders);
+		given(exchange.getRequestBody()).willReturn(disconnected, new ByteArrayInputStream(transferInput.getBytes()));
+		given(exchange.getResponseBody()).willReturn(new ByteArrayOutputStream());
+
+		try {
+			requestHandler.handle(exchange);
+			fail("The read failure is passed on to the server.");
+		} catch (IOException e) {
+			assertEquals("Connection reset", e.getMessage());
+		}
+		assertEquals(0, idempotencyCache.size());
+
+		// the retry runs the transfer instead of waiting for the failed request
+		requestHandler.handle(exchange);
+
+		verify(exchange).sendResponseHeaders(eq(200), anyLong());
+		assertEquals(new BigDecimal("800.00"), accountService.searchAccount(1000000L).getAmount().getValue());
+		assertEquals(0, idempotencyCache.getHits());
+
+	}
+
+	@Test
+	public void handleAccounts_ExistingAndMissingIds_Ok() throws IOException, UnsupportedCurrencyException {
+
+		AccountService accountService = new AccountService();
+		Account firstAccount = accountService.createAccount(new Amount(new BigDecimal("500"), "GBP"));
+		Account secondAccount = accountService.createAccount(new Amount(new BigDecimal("20.5"), "EUR"));
+		ByteArrayOutputStream response = new ByteArrayOutputStream();
+
+		given(exchange.getRequestURI()).willReturn(URI.create("/accounts?ids=1000001,5000000,1000000"));
+		given(exchange.getRequestMethod()).willReturn("GET");
+		given(exchange.getResponseBody()).willReturn(response);
+
+		new RequestHandler(accountService).handle(exchange);
+
+		String expectedMessage = "{\"accounts\":[" + accountJson(secondAccount) + "," + accountJson(firstAccount)
+				+ "],\"notFound\":[5000000]}";
+
+		verify(exchange).sendResponseHeaders(200, expectedMessage.getBytes().length);
+		assertEquals(expectedMessage, response.toString("UTF-8"));
+
+	}
+
+	@Test
+	public void handleAccount_NonexistentId_ResponseCode404() throws IOException {
+
+		given(exchange.getRequestURI()).willReturn(URI.create("/accounts/5000000"));
+		given(exchange.getRequestMethod()).willReturn("GET");
+		given(exchange.getResponseBody()).willReturn(new ByteArrayOutputStream());
+
+		requestHandler.handle(exchange);
+
+		String expectedMessage = "Account cannot be found - 5000000";
+
+		verify(exchange).sendResponseHeaders(404, expectedMessage.getBytes().length);
+
+	}
+
+	@Test
+	public void handleAccounts_IncorrectMethod_ResponseCode405() throws IOException {
+
+		given(exchange.getRequestURI()).willReturn(URI.create("/accounts/1000000"));
+		given(exchange.getRequestMethod()).willReturn("POST");
+		given(exchange.getResponseBody()).willReturn(new ByteArrayOutputStream());
+
+		requestHandler.handle(exchange);
+
+		String expectedMessage = "Incorrect HTTP method. Only GET is allowed for this request.";
+
+		verify(exchange).sendResponseHeaders(405, expectedMessage.getBytes().length);
+
+	}
+
+	@Test
+	public void handleExport_AcceptsGzip_GzippedAccountLines() throws Exception {
+
+		AccountService accountService = new AccountService();
+		Account firstAccount = accountService.createAccount(new Amount(new BigDecimal("500"), "GBP"));
+		Account secondAccount = accountService.createAccount(new Amount(new BigDecimal("20.5"), "EUR"));
+		ByteArrayOutputStream response = new ByteArrayOutputStream();
+		Headers requestHeaders = new Headers();
+		requestHeaders.set("Accept-Encoding", "deflate, gzip;q=0.8");
+		Headers responseHeaders = new Headers();
+
+		given(exchange.getRequestURI()).willReturn(URI.create("/accounts/export"));
+		given(exchange.getRequestMethod()).willReturn("GET");
+		given(exchange.getRequestHeaders()).willReturn(requestHeaders);
+		given(exchange.getResponseHeaders()).willReturn(responseHeaders);
+		given(exchange.getResponseBody()).willReturn(response);
+
+		new RequestHandler(accountService).handle(exchange);
+
+		// streamed, so the length is not known up front
+		verify(exchange).sendResponseHeaders(200, 0);
+		assertEquals("gzip", responseHeaders.getFirst("Content-Encoding"));
+		assertTrue(responseHeaders.getFirst("Content-Type").startsWith("application/x-ndjson"));
+
+		ByteArrayOutputStream lines = new ByteArrayOutputStream();
+		try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(response.toByteArray()))) {
+			byte[] buffer = new byte[1024];
+			int read;
+			while ((read = in.read(buffer)) > 0) {
+				lines.write(buffer, 0, read);
+			}
+		}
+		String[] exported = lines.toString("UTF-8").split("\n");
+		Arrays.sort(exported);
+		assertEquals(Arrays.asList(accountJson(firstAccount), accountJson(secondAccount)), Arrays.asList(exported));
+		assertTrue(lines.toString("UTF-8").endsWith("}\n"));
+
+	}
+
+	@Test
+	public void handleTransactions_Paged_NextCursorUntilOpening() throws Exception {
+
+		AccountService accountService = new AccountService(new AccountRepository(), new AccountLocks(), Journal.disabled(),
+				new ExchangeRates(), new Ledger());
+		long senderId = accountService.createAccount(new Amount(new BigDecimal("500"), "GBP")).getId();
+		long receiverId = accountService.createAccount(new Amount(new BigDecimal("0"), "GBP")).getId();
+		accountService.transferAmount(senderId, receiverId, new Amount(new BigDecimal("200"), "GBP"));
+		ByteArrayOutputStream firstPage = new ByteArrayOutputStream();
+		ByteArrayOutputStream lastPage = new ByteArrayOutputStream();
+
+		given(exchange.getRequestURI()).willReturn(URI.create("/accounts/1000000/transactions?limit=1"),
+				URI.create("/accounts/1000000/transactions?limit=1&cursor=1"));
+		given(exchange.getRequestMethod()).willReturn("GET");
+		given(exchange.getResponseBody()).willReturn(firstPage, firstPage, lastPage, lastPage);
+
+		RequestHandler handler = new RequestHandler(accountService);
+		handler.handle(exchange);
+		handler.handle(exchange);
+
+		assertTrue(firstPage.toString("UTF-8").matches("\\{\"accountId\":1000000,\"transactions\":\\[\\{\"index\":1,"
+				+ "\"kind\":\"debit\",\"time\":\"[^\"]+\",\"counterparty\":1000001,\"amount\":\"-200\","
+				+ "\"balance\":\"300\",\"rate\":\"1\"\\}\\],\"nextCursor\":1\\}"));
+		assertTrue(lastPage.toString("UTF-8").matches(".*\"index\":0,\"kind\":\"open\".*\\}\\]\\}"));
+
+	}
+
+	@Test
+	public void handle_AdmissionLimitReached_ResponseCode429WithRetryAfter() throws Exception {
+
+		AccountService accountService = new AccountService();
+		List<Runnable> queued = new ArrayList<>();
+		AdmissionControl admission = new AdmissionControl(queued::add, new GradientLimit(1, 1, 1, 100), 10, 3);
+		RequestHandler handler = new RequestHandler(accountService, new LockingTransferEngine(accountService),
+				new JsonCodec(), AccessLog.disabled(), IdempotencyCache.disabled(), Metrics.disabled(), admission);
+		Headers responseHeaders = new Headers();
+		ByteArrayOutputStream responseBody = new ByteArrayOutputStream();
+
+		given(exchange.getRequestURI()).willReturn(URI.create("/accounts/1000000"));
+		given(exchange.getRequestMethod()).willReturn("GET");
+		given(exchange.getResponseHeaders()).willReturn(responseHeaders);
+		given(exchange.getResponseBody()).willReturn(responseBody);
+
+		handler.handle(exchange);
+		handler.handle(exchange);
+
+		String expectedMessage = "Server is overloaded. Please retry later.";
+		verify(exchange).sendResponseHeaders(429, expectedMessage.getBytes().length);
+		assertEquals("3", responseHeaders.getFirst("Retry-After"));
+		assertEquals(1, queued.size());
+		assertEquals(1, admission.getRejected());
+
+		// the admitted request runs once a worker takes it and frees its place
+		queued.get(0).run();
+		verify(exchange).sendResponseHeaders(404, "Account cannot be found - 1000000".getBytes().length);
+		assertEquals(0, admission.getInFlight());
+
+	}
+
+	private static String accountJson(Account account) {
+		return "{\"id\":" + account.getId()
+				+ ",\"amount\":\"" + Money.format(account.getAmount().getUnits())
+				+ "\",\"currency\":\"" + account.getAmount().getCurrency() + "\"}";
+	}
+
+	private static String createdJson(Account account) {
+		return "{\"message\":\"Account create success\",\"account\":" + accountJson(account) + "}";
+	}
+
+	private static String transferredJson(Account senderAccount, Account receiverAccount) {
+		return "{\"message\":\"Transfer success\",\"sender\":" + accountJson(senderAccount)
+				+ ",\"receiver\":" + accountJson(receiverAccount) + "}";
+	}
+
 }
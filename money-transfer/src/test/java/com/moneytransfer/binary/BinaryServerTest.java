@@ -0,0 +1,191 @@
+package test.java.com.moneytransfer.binary;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import main.java.com.moneytransfer.binary.BinaryClient;
+import main.java.com.moneytransfer.binary.BinaryProtocol;
+import main.java.com.moneytransfer.binary.BinaryServer;
+import main.java.com.moneytransfer.exception.AccountNotFoundException;
+import main.java.com.moneytransfer.exception.InsufficientBalanceException;
+import main.java.com.moneytransfer.exception.UnsupportedCurrencyException;
+import main.java.com.moneytransfer.metrics.Metrics;
+import main.java.com.moneytransfer.model.Account;
+import main.java.com.moneytransfer.model.Amount;
+import main.java.com.moneytransfer.service.AccountService;
+import main.java.com.moneytransfer.service.LockingTransferEngine;
+
+public class BinaryServerTest {
+
+	private AccountService accountService;
+	private BinaryServer server;
+	private ExecutorService executor;
+	private BinaryClient client;
+
+	@Before
+	public void setUp() throws Exception {
+		accountService = new AccountService();
+		server = new BinaryServer(accountService, new LockingTransferEngine(accountService), Metrics.disabled(), 1, 16);
+		server.bind(new InetSocketAddress("127.0.0.1", 0), 0);
+		executor = Executors.newFixedThreadPool(2);
+		server.setExecutor(executor);
+		server.start();
+		client = new BinaryClient(server.getAddress(), 16);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		client.close();
+		server.stop();
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void createAccount_ValidAmount_AccountReadBack() throws Exception {
+
+		Account created = get(client.createAccount(new Amount(12345L, "EUR")));
+		Account read = get(client.getAccount(created.getId()));
+
+		assertEquals(created.getId(), read.getId());
+		assertEquals(12345L, read.getAmount().getUnits());
+		assertEquals("EUR", read.getAmount().getCurrency());
+	}
+
+	@Test
+	public void transfer_SameCurrency_BothAccountsReturned() throws Exception {
+
+		Account sender = get(client.createAccount(new Amount(10000L, "GBP")));
+		Account receiver = get(client.createAccount(new Amount(0L, "GBP")));
+
+		Account[] accounts = get(client.transfer(sender.getId(), receiver.getId(), new Amount(2500L, "GBP")));
+
+		assertEquals(7500L, accounts[0].getAmount().getUnits());
+		assertEquals(2500L, accounts[1].getAmount().getUnits());
+		assertEquals(2500L, accountService.searchAccount(receiver.getId()).getAmount().getUnits());
+	}
+
+	@Test
+	public void transfer_InsufficientBalance_InsufficientBalanceException() throws Exception {
+
+		Account sender = get(client.createAccount(new Amount(100L, "GBP")));
+		Account receiver = get(client.createAccount(new Amount(0L, "GBP")));
+
+		assertTrue(error(client.transfer(sender.getId(), receiver.getId(), new Amount(200L, "GBP")))
+				instanceof InsufficientBalanceException);
+	}
+
+	@Test
+	public void getAccount_UnknownId_AccountNotFoundException() throws Exception {
+
+		Exception error = error(client.getAccount(42L));
+
+		assertTrue(error instanceof AccountNotFoundException);
+		assertEquals("Account cannot be found - 42", error.getMessage());
+	}
+
+	@Test
+	public void createAccount_UnsupportedCurrency_UnsupportedCurrencyException() throws Exception {
+		assertTrue(error(client.createAccount(new Amount(1L, "XYZ"))) instanceof UnsupportedCurrencyException);
+	}
+
+	@Test
+	public void getAccount_ManyInFlight_EachResponseMatchesItsRequest() throws Exception {
+
+		List<Long> ids = new ArrayList<>();
+		for (int i = 0; i < 50; i++) {
+			ids.add(get(client.createAccount(new Amount(i, "USD"))).getId());
+		}
+
+		// more requests than may be in flight, sent in batches
+		client.setAutoFlush(false);
+		List<CompletableFuture<Account>> reads = new ArrayList<>();
+		for (int i = 0; i < 160; i++) {
+			reads.add(client.getAccount(ids.get(i % ids.size())));
+		}
+		client.flush();
+
+		for (int i = 0; i < reads.size(); i++) {
+			assertEquals(ids.get(i % ids.size()), get(reads.get(i)).getId());
+			assertEquals(i % ids.size(), get(reads.get(i)).getAmount().getUnits());
+		}
+	}
+
+	@Test
+	public void handle_UnknownOpcode_BadRequestAndConnectionStaysOpen() throws IOException {
+
+		try (Socket socket = connect()) {
+			DataOutputStream output = new DataOutputStream(socket.getOutputStream());
+			DataInputStream input = new DataInputStream(socket.getInputStream());
+
+			output.writeInt(9);
+			output.writeLong(7L);
+			output.writeByte(99);
+			output.flush();
+			input.readInt();
+			assertEquals(7L, input.readLong());
+			assertEquals(BinaryProtocol.BAD_REQUEST, input.readByte());
+			input.readFully(new byte[input.readUnsignedShort()]);
+
+			output.writeInt(17);
+			output.writeLong(8L);
+			output.writeByte(BinaryProtocol.GET);
+			output.writeLong(1L);
+			output.flush();
+			input.readInt();
+			assertEquals(8L, input.readLong());
+			assertEquals(BinaryProtocol.NOT_FOUND, input.readByte());
+		}
+	}
+
+	@Test
+	public void handle_MalformedLength_ConnectionClosed() throws IOException {
+
+		try (Socket socket = connect()) {
+			DataOutputStream output = new DataOutputStream(socket.getOutputStream());
+			output.writeInt(1 << 20);
+			output.flush();
+			assertEquals(-1, socket.getInputStream().read());
+		}
+	}
+
+	private Socket connect() throws IOException {
+
+		Socket socket = new Socket("127.0.0.1", server.getAddress().getPort());
+		socket.setSoTimeout(5000);
+		return socket;
+	}
+
+	private static <T> T get(CompletableFuture<T> future) throws Exception {
+		return future.get(5, TimeUnit.SECONDS);
+	}
+
+	private static Exception error(CompletableFuture<?> future) throws Exception {
+
+		try {
+			future.get(5, TimeUnit.SECONDS);
+		} catch (ExecutionException e) {
+			return (Exception) e.getCause();
+		}
+		fail("Request should have failed.");
+		return null;
+	}
+
+}
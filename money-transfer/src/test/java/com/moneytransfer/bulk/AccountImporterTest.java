@@ -0,0 +1,196 @@
+package test.java.com.moneytransfer.bulk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.Test;
+
+import main.java.com.moneytransfer.api.JsonCodec;
+import main.java.com.moneytransfer.bulk.AccountImporter;
+import main.java.com.moneytransfer.bulk.ImportFormat;
+import main.java.com.moneytransfer.bulk.ImportResult;
+import main.java.com.moneytransfer.exception.AccountNotFoundException;
+import main.java.com.moneytransfer.exception.IncorrectInputException;
+import main.java.com.moneytransfer.fx.ExchangeRates;
+import main.java.com.moneytransfer.journal.DurabilityMode;
+import main.java.com.moneytransfer.journal.Journal;
+import main.java.com.moneytransfer.journal.JournalRecovery;
+import main.java.com.moneytransfer.ledger.Ledger;
+import main.java.com.moneytransfer.model.Account;
+import main.java.com.moneytransfer.model.Posting;
+import main.java.com.moneytransfer.repository.AccountRepository;
+import main.java.com.moneytransfer.repository.AccountStore;
+import main.java.com.moneytransfer.repository.OffHeapAccountRepository;
+import main.java.com.moneytransfer.service.AccountLocks;
+import main.java.com.moneytransfer.service.AccountService;
+
+public class AccountImporterTest {
+
+	private static final long FIRST = AccountRepository.FIRST_ACCOUNT_ID;
+
+	@Test
+	public void importFrom_CsvWithHeader_AccountsInLineOrder() throws Exception {
+
+		AccountRepository repository = new AccountRepository();
+		ImportResult result = importer(repository, new AccountService(repository, new AccountLocks()), 2, 1024)
+				.importFrom(input("\uFEFFamount,currency\n1000.50,GBP\n\n  \"20\" , eur \r\n0.01,USD"), ImportFormat.CSV,
+						null);
+
+		assertEquals(3, result.getRecords());
+		assertEquals(3, result.getImported());
+		assertEquals(0, result.getRejected());
+		assertEquals(FIRST, result.getFirstId());
+		assertEquals(FIRST + 2, result.getLastId());
+		assertAccount(repository, FIRST, 100050, "GBP");
+		assertAccount(repository, FIRST + 1, 2000, "EUR");
+		assertAccount(repository, FIRST + 2, 1, "USD");
+		assertEquals(3, repository.size());
+
+	}
+
+	@Test
+	public void importFrom_InvalidLines_RejectedWithTheirLineNumbers() throws Exception {
+
+		AccountRepository repository = new AccountRepository();
+		ImportResult result = importer(repository, new AccountService(repository, new AccountLocks()), 2, 1024)
+				.importFrom(input("10,GBP\nten,GBP\n10,CAD\n-5,EUR\n10\n10,GBP,x\n30,USD\n"), ImportFormat.CSV, null);
+
+		assertEquals(7, result.getRecords());
+		assertEquals(2, result.getImported());
+		assertEquals(5, result.getRejected());
+		assertAccount(repository, FIRST, 1000, "GBP");
+		assertAccount(repository, FIRST + 6, 3000, "USD");
+		for (long id = FIRST + 1; id < FIRST + 6; id++) {
+			assertFalse(repository.contains(id));
+		}
+
+		List<String> errors = result.getErrors();
+		assertEquals(5, errors.size());
+		assertEquals("Line 2: Invalid amount - ten", errors.get(0));
+		assertTrue(errors.get(1).startsWith("Line 3: "));
+		assertEquals("Line 4: Balance cannot be negative.", errors.get(2));
+		assertTrue(errors.get(3).startsWith("Line 5: "));
+		assertTrue(errors.get(4).startsWith("Line 6: "));
+
+		// ids handed out afterwards stay above the import
+		assertEquals(FIRST + 7, repository.reserveId());
+
+	}
+
+	@Test
+	public void importFrom_Ndjson_AccountsCreatedLikeCreateRequests() throws Exception {
+
+		AccountRepository repository = new AccountRepository();
+		ImportResult result = importer(repository, new AccountService(repository, new AccountLocks()), 1, 1024)
+				.importFrom(input("{\"amount\":\"12.34\",\"currency\":\"GBP\"}\n{\"currency\":\"usd\",\"amount\":5}\n"
+						+ "{\"amount\":\"1\"}\n{broken\n"), ImportFormat.NDJSON, null);
+
+		assertEquals(2, result.getImported());
+		assertEquals(2, result.getRejected());
+		assertAccount(repository, FIRST, 1234, "GBP");
+		assertAccount(repository, FIRST + 1, 500, "USD");
+		assertEquals("Line 3: " + JsonCodec.INCORRECT_FORMAT, result.getErrors().get(0));
+		assertEquals("Line 4: " + JsonCodec.INCORRECT_FORMAT, result.getErrors().get(1));
+
+	}
+
+	@Test
+	public void importFrom_ChunksSmallerThanInput_EveryLineImportedOnce() throws Exception {
+
+		StringBuilder csv = new StringBuilder();
+		for (int i = 0; i < 20000; i++) {
+			csv.append(i).append(".").append(i % 100 < 10 ? "0" : "").append(i % 100).append(",GBP\n");
+		}
+
+		AccountRepository repository = new AccountRepository();
+		ImportResult result = importer(repository, new AccountService(repository, new AccountLocks()), 4, 100)
+				.importFrom(input(csv.toString()), ImportFormat.CSV, null);
+
+		assertEquals(20000, result.getImported());
+		assertEquals(20000, repository.size());
+		for (int i = 0; i < 20000; i += 997) {
+			assertAccount(repository, FIRST + i, i * 100L + i % 100, "GBP");
+		}
+
+	}
+
+	@Test(expected = IncorrectInputException.class)
+	public void importFrom_LineLongerThanChunk_IncorrectInputException() throws Exception {
+
+		AccountRepository repository = new AccountRepository();
+		importer(repository, new AccountService(repository, new AccountLocks()), 2, 16)
+				.importFrom(input("1,GBP\n1000000000000000.00,GBP\n"), ImportFormat.CSV, null);
+
+	}
+
+	@Test
+	public void importFrom_JournalAndLedger_AccountsRecoveredWithOpeningPostings() throws Exception {
+
+		Path file = Files.createTempFile("journal", ".log");
+		Files.delete(file);
+		try {
+			AccountRepository repository = new AccountRepository();
+			Journal journal = Journal.open(file, DurabilityMode.GROUP_COMMIT, 100,
+					Journal.replay(file, new JournalRecovery(repository)));
+			Ledger ledger = new Ledger(0);
+			AccountService service = new AccountService(repository, new AccountLocks(), journal, new ExchangeRates(),
+					ledger);
+			ImportResult result = importer(repository, service, 2, 64)
+					.importFrom(input("1,GBP\n2,EUR\n3,USD\n4,GBP\n5,EUR\n"), ImportFormat.CSV, null);
+			journal.close();
+
+			assertEquals(5, result.getImported());
+			List<Posting> postings = service.searchTransactions(FIRST + 3, Long.MAX_VALUE, 10);
+			assertEquals(1, postings.size());
+			assertEquals(Posting.Kind.OPEN, postings.get(0).getKind());
+			assertEquals(400, postings.get(0).getBalance());
+
+			AccountRepository recovered = new AccountRepository();
+			Journal.replay(file, new JournalRecovery(recovered));
+			assertEquals(5, recovered.size());
+			assertAccount(recovered, FIRST + 4, 500, "EUR");
+		} finally {
+			Files.deleteIfExists(file);
+		}
+
+	}
+
+	@Test
+	public void importFrom_OffHeapStore_AccountsStored() throws Exception {
+
+		AccountStore repository = new OffHeapAccountRepository(1 << 16);
+		ImportResult result = importer(repository, new AccountService(repository, new AccountLocks()), 2, 32)
+				.importFrom(input("1.50,GBP\n2.50,EUR\n3.50,USD\n"), ImportFormat.CSV, null);
+
+		assertEquals(3, result.getImported());
+		assertEquals(3, repository.size());
+		assertAccount(repository, FIRST + 1, 250, "EUR");
+
+	}
+
+	private static AccountImporter importer(AccountStore repository, AccountService service, int workers,
+			int chunkBytes) {
+		return new AccountImporter(repository, service, new JsonCodec(), workers, chunkBytes);
+	}
+
+	private static InputStream input(String text) {
+		return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static void assertAccount(AccountStore repository, long id, long units, String currency)
+			throws AccountNotFoundException {
+
+		Account account = repository.getById(id);
+		assertEquals(units, account.getAmount().getUnits());
+		assertEquals(currency, account.getAmount().getCurrency());
+	}
+
+}
@@ -0,0 +1,62 @@
+package test.java.com.moneytransfer.config;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import main.java.com.moneytransfer.config.ExecutorMode;
+import main.java.com.moneytransfer.config.ServerConfig;
+
+public class ServerConfigTest {
+
+	@Test
+	public void fromArgs_NoArgs_Defaults() throws IOException {
+
+		ServerConfig config = ServerConfig.fromArgs(new String[0]);
+
+		assertEquals(8080, config.getPort());
+		assertEquals(0, config.getBacklog());
+		assertEquals(ExecutorMode.FIXED, config.getExecutorMode());
+
+	}
+
+	@Test
+	public void fromArgs_FlagsOverrideConfigFile_Ok() throws IOException {
+
+		Path file = Files.createTempFile("server", ".properties");
+		try {
+			Files.write(file, Arrays.asList("port=9090", "backlog=128", "executor=virtual"));
+
+			ServerConfig config = ServerConfig.fromArgs(new String[] {
+					"--config=" + file, "--executor=work-stealing", "--threads=3" });
+
+			assertEquals(9090, config.getPort());
+			assertEquals(128, config.getBacklog());
+			assertEquals(ExecutorMode.WORK_STEALING, config.getExecutorMode());
+			assertEquals(3, config.getThreads());
+		} finally {
+			Files.delete(file);
+		}
+
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void getExecutorMode_UnknownExecutor_IllegalArgumentException() throws IOException {
+
+		ServerConfig.fromArgs(new String[] { "--executor=forkjoin" }).getExecutorMode();
+
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void fromArgs_MalformedArgument_IllegalArgumentException() throws IOException {
+
+		ServerConfig.fromArgs(new String[] { "port=9090" });
+
+	}
+
+}
@@ -0,0 +1,88 @@
+package test.java.com.moneytransfer.fx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.Test;
+
+import main.java.com.moneytransfer.exception.UnsupportedCurrencyException;
+import main.java.com.moneytransfer.fx.ExchangeRates;
+import main.java.com.moneytransfer.fx.RateTable;
+import main.java.com.moneytransfer.journal.Journal;
+import main.java.com.moneytransfer.model.Account;
+import main.java.com.moneytransfer.model.Amount;
+import main.java.com.moneytransfer.repository.AccountRepository;
+import main.java.com.moneytransfer.service.AccountLocks;
+import main.java.com.moneytransfer.service.AccountService;
+
+public class ExchangeRatesTest {
+
+	private static final String WITH_JPY = "GBP.EUR=1.2\nGBP.USD=1.31\nGBP.JPY=190\n"
+			+ "EUR.GBP=0.87\nEUR.USD=1.13\nEUR.JPY=160\n"
+			+ "USD.GBP=0.77\nUSD.EUR=0.88\nUSD.JPY=150\n"
+			+ "JPY.GBP=0.005\nJPY.EUR=0.006\nJPY.USD=0.0066\n";
+
+	@Test(expected = IllegalArgumentException.class)
+	public void replace_CurrencyDropped_Rejected() throws IOException {
+
+		new ExchangeRates().replace(RateTable.parse(new StringReader("GBP.EUR=1.15\nEUR.GBP=0.87\n")));
+
+	}
+
+	@Test
+	public void replace_NewTable_UsedByNextTransfers() throws Exception {
+
+		ExchangeRates exchangeRates = new ExchangeRates();
+		AccountService accountService = new AccountService(new AccountRepository(), new AccountLocks(),
+				Journal.disabled(), exchangeRates);
+		Account gbp = accountService.createAccount(new Amount(new BigDecimal("100"), "GBP"));
+		Account eur = accountService.createAccount(new Amount(new BigDecimal("0"), "EUR"));
+
+		try {
+			accountService.createAccount(new Amount(new BigDecimal("1000"), "JPY"));
+			fail("JPY account was created before JPY had rates.");
+		} catch (UnsupportedCurrencyException e) {
+			assertEquals("Supported currencies are GBP, EUR, and USD.", e.getMessage());
+		}
+
+		exchangeRates.replace(RateTable.parse(new StringReader(WITH_JPY)));
+		Account jpy = accountService.createAccount(new Amount(new BigDecimal("1000"), "jpy"));
+		accountService.transferAmount(gbp.getId(), eur.getId(), new Amount(new BigDecimal("10"), "GBP"));
+
+		assertEquals("JPY", jpy.getAmount().getCurrency());
+		assertEquals(new BigDecimal("12.00"), accountService.searchAccount(eur.getId()).getAmount().getValue());
+
+	}
+
+	@Test
+	public void reloadIfModified_FileChanged_Reloaded() throws IOException {
+
+		Path file = Files.createTempFile("rates", ".properties");
+		try {
+			ExchangeRates exchangeRates = new ExchangeRates();
+			Files.write(file, RateTable.defaults().format().getBytes(StandardCharsets.UTF_8));
+			exchangeRates.load(file);
+			assertFalse(exchangeRates.reloadIfModified(file));
+
+			Files.write(file, WITH_JPY.getBytes(StandardCharsets.UTF_8));
+			Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 1000));
+
+			assertTrue(exchangeRates.reloadIfModified(file));
+			assertEquals(4, exchangeRates.current().size());
+		} finally {
+			Files.delete(file);
+		}
+
+	}
+
+}
@@ -0,0 +1,105 @@
+package test.java.com.moneytransfer.fx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import main.java.com.moneytransfer.fx.RateTable;
+
+public class RateTableTest {
+
+	@Test
+	public void defaults_HardCodedRates_Kept() {
+
+		RateTable table = RateTable.defaults();
+
+		assertEquals(Arrays.asList("GBP", "EUR", "USD"), table.getCurrencies());
+		assertEquals(1150000, table.rate(table.indexOf("GBP"), table.indexOf("EUR")));
+		assertEquals(880000, table.rate(table.indexOf("USD"), table.indexOf("EUR")));
+		assertEquals(1000000, table.rate(table.indexOf("USD"), table.indexOf("USD")));
+		assertEquals("Supported currencies are GBP, EUR, and USD.", table.supportedMessage());
+
+	}
+
+	@Test
+	public void indexOf_UnknownOrMalformedCode_Minus1() {
+
+		RateTable table = RateTable.defaults();
+
+		assertEquals(-1, table.indexOf("CAD"));
+		assertEquals(-1, table.indexOf("gbp"));
+		assertEquals(-1, table.indexOf("GB"));
+		assertEquals(-1, table.indexOf("GBPX"));
+		assertEquals(-1, table.indexOf(null));
+
+	}
+
+	@Test
+	public void parse_ManyCurrencies_EveryCodeFound() throws IOException {
+
+		String[] codes = { "GBP", "EUR", "USD", "JPY", "CHF", "CAD", "AUD", "SEK", "NOK", "DKK", "PLN", "CZK" };
+		StringBuilder text = new StringBuilder("# generated\n");
+		for (String from : codes) {
+			for (String to : codes) {
+				if (!from.equals(to)) {
+					text.append(from).append('.').append(to).append("=0.5\n");
+				}
+			}
+		}
+
+		RateTable table = RateTable.parse(new StringReader(text.toString()));
+
+		assertEquals(codes.length, table.size());
+		for (int i = 0; i < codes.length; i++) {
+			assertEquals(i, table.indexOf(new String(codes[i].toCharArray())));
+			assertSame(table.currency(i), table.currency(table.indexOf(codes[i])));
+		}
+		// 0.5 of 1.01 rounds half-even to 0.50
+		assertEquals(50, table.convert(101, table.indexOf("JPY"), table.indexOf("PLN")));
+
+	}
+
+	@Test
+	public void parse_FormattedTable_SameRates() throws IOException {
+
+		RateTable table = RateTable.defaults();
+		RateTable parsed = RateTable.parse(new StringReader(table.format()));
+
+		for (int from = 0; from < table.size(); from++) {
+			for (int to = 0; to < table.size(); to++) {
+				assertEquals(table.rate(from, to), parsed.rate(from, to));
+			}
+		}
+
+	}
+
+	@Test
+	public void parse_InvalidTables_Rejected() throws IOException {
+
+		assertRejected("GBP.EUR=1.15\n", "missing");
+		assertRejected("GBP.EUR=1.15\nEUR.GBP=-0.87\n", "positive");
+		assertRejected("GBP.EUR=1.1234567\nEUR.GBP=0.87\n", "decimals");
+		assertRejected("GBP.eur=1.15\n", "upper case");
+		assertRejected("GBP-EUR\n", "FROM.TO=rate");
+		assertRejected("# nothing\n", "no currencies");
+
+	}
+
+	private static void assertRejected(String text, String reason) throws IOException {
+
+		try {
+			RateTable.parse(new StringReader(text));
+			fail("Rate table was accepted - " + text);
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains(reason));
+		}
+	}
+
+}
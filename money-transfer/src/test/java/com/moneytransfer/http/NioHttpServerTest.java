@@ -0,0 +1,360 @@
+package test.java.com.moneytransfer.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import main.java.com.moneytransfer.http.NioHttpServer;
+
+public class NioHttpServerTest {
+
+	private NioHttpServer server;
+	private ExecutorService executor;
+	private static final int STREAM_LINES = 20000;
+
+	private final CountDownLatch slowRelease = new CountDownLatch(1);
+
+	@Before
+	public void setUp() throws Exception {
+		server = new NioHttpServer(1, 30000, 64);
+		server.bind(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/echo", exchange -> respond(exchange, exchange.getRequestMethod() + " "
+				+ exchange.getRequestURI() + " " + new String(readAll(exchange.getRequestBody()), StandardCharsets.UTF_8)));
+		server.createContext("/slow", exchange -> {
+			try {
+				slowRelease.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			respond(exchange, "slow");
+		});
+		server.createContext("/stream", exchange -> {
+			// unknown length, more than one buffer of it
+			exchange.sendResponseHeaders(200, 0);
+			try (OutputStream body = exchange.getResponseBody()) {
+				for (int i = 0; i < STREAM_LINES; i++) {
+					body.write(streamLine(i));
+				}
+			}
+		});
+		executor = Executors.newFixedThreadPool(4);
+		server.setExecutor(executor);
+		server.start();
+	}
+
+	@After
+	public void tearDown() {
+		slowRelease.countDown();
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void handle_KeepAlive_RequestsShareConnection() throws IOException {
+
+		try (Socket socket = connect()) {
+			send(socket, "GET /echo/1 HTTP/1.1\r\nHost: x\r\n\r\n");
+			assertEquals("GET /echo/1 ", readResponse(socket.getInputStream()).body);
+			send(socket, "GET /echo/2 HTTP/1.1\r\nHost: x\r\n\r\n");
+			assertEquals("GET /echo/2 ", readResponse(socket.getInputStream()).body);
+		}
+	}
+
+	@Test
+	public void handle_Pipelined_ResponsesInRequestOrder() throws Exception {
+
+		try (Socket socket = connect()) {
+			send(socket, "GET /slow HTTP/1.1\r\n\r\n"
+					+ "POST /echo HTTP/1.1\r\nContent-Length: 5\r\n\r\nhello"
+					+ "GET /echo/3 HTTP/1.1\r\n\r\n");
+			// the later requests finish first, their responses still wait for the slow one
+			Thread.sleep(200);
+			slowRelease.countDown();
+			InputStream input = socket.getInputStream();
+			assertEquals("slow", readResponse(input).body);
+			assertEquals("POST /echo hello", readResponse(input).body);
+			assertEquals("GET /echo/3 ", readResponse(input).body);
+		}
+	}
+
+	@Test
+	public void handle_ConnectionClose_ClosedAfterResponse() throws IOException {
+
+		try (Socket socket = connect()) {
+			send(socket, "GET /echo HTTP/1.1\r\nConnection: close\r\n\r\n");
+			InputStream input = socket.getInputStream();
+			Response response = readResponse(input);
+			assertEquals(200, response.code);
+			assertTrue(response.head.contains("Connection: close"));
+			assertEquals(-1, input.read());
+		}
+	}
+
+	@Test
+	public void handle_Http10WithoutKeepAlive_ClosedAfterResponse() throws IOException {
+
+		try (Socket socket = connect()) {
+			send(socket, "GET /echo HTTP/1.0\r\n\r\n");
+			InputStream input = socket.getInputStream();
+			assertEquals(200, readResponse(input).code);
+			assertEquals(-1, input.read());
+		}
+	}
+
+	@Test
+	public void handle_ExpectContinue_ContinueBeforeBody() throws IOException {
+
+		try (Socket socket = connect()) {
+			send(socket, "POST /echo HTTP/1.1\r\nContent-Length: 2\r\nExpect: 100-continue\r\n\r\n");
+			InputStream input = socket.getInputStream();
+			assertEquals(100, readResponse(input).code);
+			send(socket, "ok");
+			assertEquals("POST /echo ok", readResponse(input).body);
+		}
+	}
+
+	@Test
+	public void handle_MalformedRequestLine_ResponseCode400() throws IOException {
+
+		try (Socket socket = connect()) {
+			send(socket, "NONSENSE\r\n\r\n");
+			InputStream input = socket.getInputStream();
+			assertEquals(400, readResponse(input).code);
+			assertEquals(-1, input.read());
+		}
+	}
+
+	@Test
+	public void handle_UnknownContext_ResponseCode404() throws IOException {
+
+		try (Socket socket = connect()) {
+			send(socket, "GET /missing HTTP/1.1\r\n\r\n");
+			assertEquals(404, readResponse(socket.getInputStream()).code);
+		}
+	}
+
+	@Test
+	public void handle_ChunkedRequestBody_ResponseCode501() throws IOException {
+
+		try (Socket socket = connect()) {
+			send(socket, "POST /echo HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n0\r\n\r\n");
+			assertEquals(501, readResponse(socket.getInputStream()).code);
+		}
+	}
+
+	@Test
+	public void handle_UnknownLengthResponse_StreamedInChunks() throws IOException {
+
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < STREAM_LINES; i++) {
+			expected.append(new String(streamLine(i), StandardCharsets.US_ASCII));
+		}
+
+		try (Socket socket = connect()) {
+			send(socket, "GET /stream HTTP/1.1\r\nHost: x\r\n\r\n");
+			Response response = readResponse(socket.getInputStream());
+			assertTrue(response.head.contains("Transfer-Encoding: chunked"));
+			assertEquals(expected.toString(), response.body);
+			// the connection is kept for the next request
+			send(socket, "GET /echo/after HTTP/1.1\r\nHost: x\r\n\r\n");
+			assertEquals("GET /echo/after ", readResponse(socket.getInputStream()).body);
+		}
+	}
+
+	@Test
+	public void handle_Http10UnknownLengthResponse_StreamedUntilClose() throws IOException {
+
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < STREAM_LINES; i++) {
+			expected.append(new String(streamLine(i), StandardCharsets.US_ASCII));
+		}
+
+		try (Socket socket = connect()) {
+			send(socket, "GET /stream HTTP/1.0\r\nConnection: keep-alive\r\n\r\n");
+			InputStream input = socket.getInputStream();
+			StringBuilder head = new StringBuilder();
+			while (head.length() < 4 || !head.substring(head.length() - 4).equals("\r\n\r\n")) {
+				head.append((char) input.read());
+			}
+			assertTrue(head.toString().startsWith("HTTP/1.1 200"));
+			assertTrue(head.toString().contains("Connection: close"));
+			assertFalse(head.toString().contains("Content-Length"));
+			assertFalse(head.toString().contains("Transfer-Encoding"));
+			// the body ends with the connection
+			assertEquals(expected.toString(), new String(readAll(input), StandardCharsets.US_ASCII));
+		}
+	}
+
+	@Test
+	public void handle_StreamOnSelectorThreadSocketFull_FailsWithoutBlockingLoop() throws Exception {
+
+		NioHttpServer dispatcherServer = new NioHttpServer(1, 30000, 64);
+		dispatcherServer.bind(new InetSocketAddress("127.0.0.1", 0), 0);
+		dispatcherServer.createContext("/echo", exchange -> respond(exchange, "echo"));
+		dispatcherServer.createContext("/large", exchange -> {
+			// far more than the socket buffers hold while the client reads nothing
+			exchange.sendResponseHeaders(200, 0);
+			byte[] block = new byte[64 * 1024];
+			try (OutputStream body = exchange.getResponseBody()) {
+				for (int i = 0; i < 1024; i++) {
+					body.write(block);
+				}
+			}
+		});
+		// no executor, handlers run on the selector thread
+		dispatcherServer.start();
+
+		try (Socket stalled = new Socket("127.0.0.1", dispatcherServer.getAddress().getPort());
+				Socket other = new Socket("127.0.0.1", dispatcherServer.getAddress().getPort())) {
+			stalled.setSoTimeout(5000);
+			other.setSoTimeout(5000);
+			send(stalled, "GET /large HTTP/1.1\r\nHost: x\r\n\r\n");
+			Thread.sleep(200);
+
+			// the loop still serves its other connections
+			send(other, "GET /echo HTTP/1.1\r\nHost: x\r\n\r\n");
+			assertEquals("echo", readResponse(other.getInputStream()).body);
+
+			// the stalled response is cut short, it never ends with the last chunk
+			ByteArrayOutputStream received = new ByteArrayOutputStream();
+			byte[] buffer = new byte[64 * 1024];
+			int read;
+			while ((read = stalled.getInputStream().read(buffer)) > 0) {
+				received.write(buffer, 0, read);
+			}
+			assertTrue(received.size() < 64 * 1024 * 1024);
+			assertFalse(received.toString("US-ASCII").endsWith("\r\n0\r\n\r\n"));
+		} finally {
+			dispatcherServer.stop(0);
+		}
+	}
+
+	private static byte[] streamLine(int i) {
+		return ("line " + i + "\n").getBytes(StandardCharsets.US_ASCII);
+	}
+
+	private Socket connect() throws IOException {
+
+		Socket socket = new Socket("127.0.0.1", server.getAddress().getPort());
+		socket.setSoTimeout(5000);
+		return socket;
+	}
+
+	private static void send(Socket socket, String request) throws IOException {
+
+		OutputStream output = socket.getOutputStream();
+		output.write(request.getBytes(StandardCharsets.US_ASCII));
+		output.flush();
+	}
+
+	private static void respond(HttpExchange exchange, String body) throws IOException {
+
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.sendResponseHeaders(200, bytes.length);
+		exchange.getResponseBody().write(bytes);
+		exchange.close();
+	}
+
+	private static byte[] readAll(InputStream input) throws IOException {
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1024];
+		int read;
+		while ((read = input.read(buffer)) > 0) {
+			bytes.write(buffer, 0, read);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static Response readResponse(InputStream input) throws IOException {
+
+		StringBuilder head = new StringBuilder();
+		while (head.length() < 4 || !head.substring(head.length() - 4).equals("\r\n\r\n")) {
+			int b = input.read();
+			if (b < 0) {
+				throw new IOException("Connection closed in the middle of a response - " + head);
+			}
+			head.append((char) b);
+		}
+		String text = head.toString();
+		int code = Integer.parseInt(text.substring(9, 12));
+		int length = 0;
+		for (String line : text.split("\r\n")) {
+			if (line.regionMatches(true, 0, "Content-Length:", 0, 15)) {
+				length = Integer.parseInt(line.substring(15).trim());
+			}
+		}
+		if (!text.contains("Transfer-Encoding: chunked")) {
+			return new Response(code, text, new String(readBytes(input, length), StandardCharsets.UTF_8));
+		}
+
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		while (true) {
+			int size = Integer.parseInt(readLine(input), 16);
+			body.write(readBytes(input, size));
+			readLine(input);
+			if (size == 0) {
+				return new Response(code, text, new String(body.toByteArray(), StandardCharsets.UTF_8));
+			}
+		}
+	}
+
+	private static byte[] readBytes(InputStream input, int length) throws IOException {
+
+		byte[] bytes = new byte[length];
+		for (int read = 0; read < length;) {
+			int count = input.read(bytes, read, length - read);
+			if (count < 0) {
+				throw new IOException("Connection closed in the middle of a body.");
+			}
+			read += count;
+		}
+		return bytes;
+	}
+
+	private static String readLine(InputStream input) throws IOException {
+
+		StringBuilder line = new StringBuilder();
+		int b;
+		while ((b = input.read()) != '\n') {
+			if (b < 0) {
+				throw new IOException("Connection closed in the middle of a chunk.");
+			}
+			line.append((char) b);
+		}
+		return line.toString().trim();
+	}
+
+	private static final class Response {
+
+		final int code;
+		final String head;
+		final String body;
+
+		Response(int code, String head, String body) {
+			this.code = code;
+			this.head = head;
+			this.body = body;
+		}
+
+	}
+
+}
@@ -0,0 +1,165 @@
+package test.java.com.moneytransfer.journal;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import main.java.com.moneytransfer.exception.AccountNotFoundException;
+import main.java.com.moneytransfer.exception.InsufficientBalanceException;
+import main.java.com.moneytransfer.exception.InvalidReceiverException;
+import main.java.com.moneytransfer.exception.UnsupportedCurrencyException;
+import main.java.com.moneytransfer.journal.DurabilityMode;
+import main.java.com.moneytransfer.journal.Journal;
+import main.java.com.moneytransfer.journal.JournalRecovery;
+import main.java.com.moneytransfer.model.Account;
+import main.java.com.moneytransfer.model.Amount;
+import main.java.com.moneytransfer.model.BatchMode;
+import main.java.com.moneytransfer.model.TransferRequest;
+import main.java.com.moneytransfer.repository.AccountRepository;
+import main.java.com.moneytransfer.service.AccountLocks;
+import main.java.com.moneytransfer.service.AccountService;
+
+public class JournalTest {
+
+	private Path file;
+
+	@Before
+	public void setUp() throws IOException {
+		file = Files.createTempFile("journal", ".log");
+		Files.delete(file);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(file);
+	}
+
+	@Test
+	public void replay_GroupCommit_RecordsReadBack() throws IOException {
+		assertRoundTrip(DurabilityMode.GROUP_COMMIT);
+	}
+
+	@Test
+	public void replay_Async_RecordsReadBack() throws IOException {
+		assertRoundTrip(DurabilityMode.ASYNC);
+	}
+
+	@Test
+	public void replay_Sync_RecordsReadBack() throws IOException {
+		assertRoundTrip(DurabilityMode.SYNC);
+	}
+
+	@Test
+	public void open_TornTail_TruncatedToLastRecord() throws IOException {
+
+		Journal journal = Journal.open(file, DurabilityMode.SYNC, 0, Journal.replay(file, new Recorder()));
+		journal.appendCreate(1000000L, 100000, "GBP");
+		journal.appendTransfer(1000000L, 1000001L, 500, 575);
+		long validLength = journal.mark()[1];
+		journal.close();
+
+		// half of a third record made it to disk before the crash
+		try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+			raf.seek(validLength);
+			raf.writeInt(41);
+			raf.writeInt(12345);
+			raf.write(new byte[10]);
+		}
+
+		Recorder recorder = new Recorder();
+		Journal.Replay replay = Journal.replay(file, recorder);
+		assertEquals(2, replay.getRecords());
+		assertEquals(2, replay.getLastLsn());
+		assertEquals(validLength, replay.getValidLength());
+
+		journal = Journal.open(file, DurabilityMode.SYNC, 0, replay);
+		assertEquals(3, journal.appendTransfer(1000000L, 1000001L, 100, 115));
+		journal.close();
+
+		recorder = new Recorder();
+		assertEquals(3, Journal.replay(file, recorder).getRecords());
+		assertEquals("T3 1000000 1000001 100 115", recorder.records.get(2));
+
+	}
+
+	@Test
+	public void transferAmount_Restart_BalancesRecovered() throws IOException, UnsupportedCurrencyException,
+			InvalidReceiverException, AccountNotFoundException, InsufficientBalanceException {
+
+		AccountRepository accountRepository = new AccountRepository();
+		Journal journal = Journal.open(file, DurabilityMode.GROUP_COMMIT, 100,
+				Journal.replay(file, new JournalRecovery(accountRepository)));
+		AccountService accountService = new AccountService(accountRepository, new AccountLocks(), journal);
+
+		Account gbp = accountService.createAccount(new Amount(new BigDecimal("1000"), "GBP"));
+		Account eur = accountService.createAccount(new Amount(new BigDecimal("500"), "EUR"));
+		accountService.transferAmount(gbp.getId(), eur.getId(), new Amount(new BigDecimal("100"), "GBP"));
+
+		List<TransferRequest> batch = new ArrayList<>();
+		batch.add(new TransferRequest(eur.getId(), gbp.getId(), 1000, "EUR"));
+		batch.add(new TransferRequest(eur.getId(), gbp.getId(), 100000000, "EUR"));
+		accountService.transferBatch(batch, BatchMode.BEST_EFFORT);
+		journal.close();
+
+		AccountRepository recovered = new AccountRepository();
+		Journal.Replay replay = Journal.replay(file, new JournalRecovery(recovered));
+		assertEquals(4, replay.getRecords());
+
+		assertEquals(new BigDecimal("908.70"), recovered.getById(gbp.getId()).getAmount().getValue());
+		assertEquals(new BigDecimal("605.00"), recovered.getById(eur.getId()).getAmount().getValue());
+
+		// ids handed out after recovery continue after the recovered accounts
+		Account created = new AccountService(recovered, new AccountLocks())
+				.createAccount(new Amount(new BigDecimal("1"), "USD"));
+		assertEquals(eur.getId() + 1, created.getId().longValue());
+
+	}
+
+	private void assertRoundTrip(DurabilityMode mode) throws IOException {
+
+		Journal journal = Journal.open(file, mode, 100, Journal.replay(file, new Recorder()));
+		assertEquals(1, journal.appendCreate(1000000L, 100000, "GBP"));
+		assertEquals(2, journal.appendCreate(1000001L, 50000, "EUR"));
+		long lsn = journal.appendTransfer(1000000L, 1000001L, 10000, 11500);
+		journal.awaitDurable(lsn);
+		journal.close();
+
+		Recorder recorder = new Recorder();
+		Journal.Replay replay = Journal.replay(file, recorder);
+
+		assertEquals(3, replay.getRecords());
+		assertEquals(3, replay.getLastLsn());
+		assertEquals(Files.size(file), replay.getValidLength());
+		assertEquals("C1 1000000 100000 GBP", recorder.records.get(0));
+		assertEquals("C2 1000001 50000 EUR", recorder.records.get(1));
+		assertEquals("T3 1000000 1000001 10000 11500", recorder.records.get(2));
+
+	}
+
+	private static class Recorder implements Journal.Visitor {
+
+		private final List<String> records = new ArrayList<>();
+
+		@Override
+		public void onCreate(long lsn, long accountId, long units, String currency) {
+			records.add("C" + lsn + " " + accountId + " " + units + " " + currency);
+		}
+
+		@Override
+		public void onTransfer(long lsn, long senderId, long receiverId, long debitUnits, long creditUnits) {
+			records.add("T" + lsn + " " + senderId + " " + receiverId + " " + debitUnits + " " + creditUnits);
+		}
+
+	}
+
+}
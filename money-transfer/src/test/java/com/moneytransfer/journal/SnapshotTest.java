@@ -0,0 +1,201 @@
+package test.java.com.moneytransfer.journal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import main.java.com.moneytransfer.exception.AccountNotFoundException;
+import main.java.com.moneytransfer.exception.InsufficientBalanceException;
+import main.java.com.moneytransfer.exception.InvalidReceiverException;
+import main.java.com.moneytransfer.exception.UnsupportedCurrencyException;
+import main.java.com.moneytransfer.journal.DurabilityMode;
+import main.java.com.moneytransfer.journal.Journal;
+import main.java.com.moneytransfer.journal.JournalRecovery;
+import main.java.com.moneytransfer.journal.Snapshot;
+import main.java.com.moneytransfer.model.Account;
+import main.java.com.moneytransfer.model.Amount;
+import main.java.com.moneytransfer.repository.AccountRepository;
+import main.java.com.moneytransfer.service.AccountLocks;
+import main.java.com.moneytransfer.service.AccountService;
+
+public class SnapshotTest {
+
+	private static final int ACCOUNT_COUNT = 200;
+
+	private Path journalFile;
+	private Path snapshotFile;
+
+	@Before
+	public void setUp() throws IOException {
+		journalFile = Files.createTempFile("journal", ".log");
+		snapshotFile = Files.createTempFile("snapshot", ".bin");
+		Files.delete(journalFile);
+		Files.delete(snapshotFile);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(journalFile);
+		Files.deleteIfExists(snapshotFile);
+	}
+
+	@Test
+	public void load_NoSnapshot_ReturnsNull() throws IOException {
+		assertNull(Snapshot.load(snapshotFile, new AccountRepository()));
+	}
+
+	@Test
+	public void load_WrittenSnapshot_AccountsRestored() throws IOException, UnsupportedCurrencyException,
+			AccountNotFoundException {
+
+		AccountRepository accountRepository = new AccountRepository();
+		AccountService accountService = new AccountService(accountRepository, new AccountLocks());
+		Account gbp = accountService.createAccount(new Amount(new BigDecimal("1000.25"), "GBP"));
+		Account usd = accountService.createAccount(new Amount(new BigDecimal("7"), "usd"));
+
+		Snapshot written = Snapshot.write(snapshotFile, accountRepository, new AccountLocks(), Journal.disabled());
+		assertEquals(2, written.getAccountCount());
+		assertEquals(2, Snapshot.accountCount(snapshotFile));
+
+		AccountRepository loaded = new AccountRepository();
+		Snapshot snapshot = Snapshot.load(snapshotFile, loaded);
+
+		assertEquals(2, snapshot.getAccountCount());
+		assertEquals(new BigDecimal("1000.25"), loaded.getById(gbp.getId()).getAmount().getValue());
+		assertEquals("GBP", loaded.getById(gbp.getId()).getAmount().getCurrency());
+		assertEquals(new BigDecimal("7.00"), loaded.getById(usd.getId()).getAmount().getValue());
+		assertEquals("USD", loaded.getById(usd.getId()).getAmount().getCurrency());
+
+	}
+
+	@Test
+	public void load_CorruptSnapshot_Rejected() throws IOException, UnsupportedCurrencyException {
+
+		AccountRepository accountRepository = new AccountRepository();
+		new AccountService(accountRepository, new AccountLocks()).createAccount(new Amount(new BigDecimal("10"), "EUR"));
+		Snapshot.write(snapshotFile, accountRepository, new AccountLocks(), Journal.disabled());
+
+		try (RandomAccessFile raf = new RandomAccessFile(snapshotFile.toFile(), "rw")) {
+			raf.seek(raf.length() - 13);
+			raf.write(0x7F);
+		}
+
+		try {
+			Snapshot.load(snapshotFile, new AccountRepository());
+			fail("Corrupt snapshot was loaded.");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("corrupt"));
+		}
+
+	}
+
+	@Test
+	public void write_JournalFlushPending_JournalOnDiskUpToSnapshotMark() throws Exception {
+
+		AccountRepository accountRepository = new AccountRepository();
+		// the flusher would otherwise wait a minute before writing the group
+		Journal journal = Journal.open(journalFile, DurabilityMode.ASYNC, TimeUnit.MINUTES.toMicros(1),
+				Journal.replay(journalFile, new JournalRecovery(accountRepository)));
+		AccountService accountService = new AccountService(accountRepository, new AccountLocks(), journal);
+		for (int i = 0; i < 10; i++) {
+			accountService.createAccount(new Amount(new BigDecimal("100"), "GBP"));
+		}
+
+		long start = System.nanoTime();
+		Snapshot snapshot = Snapshot.write(snapshotFile, accountRepository, new AccountLocks(), journal);
+
+		assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+		assertTrue(snapshot.getJournalOffset() > 0);
+		assertTrue(Files.size(journalFile) >= snapshot.getJournalOffset());
+		journal.close();
+
+	}
+
+	@Test
+	public void write_TransfersRunning_SnapshotPlusJournalTailRecoversFinalState() throws Exception {
+
+		AccountRepository accountRepository = new AccountRepository();
+		AccountLocks accountLocks = new AccountLocks(16);
+		Journal journal = Journal.open(journalFile, DurabilityMode.ASYNC, 100,
+				Journal.replay(journalFile, new JournalRecovery(accountRepository)));
+		AccountService accountService = new AccountService(accountRepository, accountLocks, journal);
+
+		long firstId = 0;
+		for (int i = 0; i < ACCOUNT_COUNT; i++) {
+			Account account = accountService.createAccount(new Amount(new BigDecimal("1000"), i % 2 == 0 ? "GBP" : "EUR"));
+			if (i == 0) {
+				firstId = account.getId();
+			}
+		}
+		final long baseId = firstId;
+
+		AtomicBoolean running = new AtomicBoolean(true);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		for (int t = 0; t < 4; t++) {
+			executor.submit(() -> {
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				while (running.get()) {
+					long senderId = baseId + random.nextInt(ACCOUNT_COUNT);
+					long receiverId = baseId + random.nextInt(ACCOUNT_COUNT);
+					try {
+						accountService.transferAmount(senderId, receiverId, new Amount(1 + random.nextInt(5000), "GBP"));
+					} catch (InsufficientBalanceException | InvalidReceiverException e) {
+						// expected now and then
+					}
+				}
+				return null;
+			});
+		}
+
+		// a few accounts are created while the snapshot is taken as well
+		Thread.sleep(50);
+		Snapshot snapshot = Snapshot.write(snapshotFile, accountRepository, accountLocks, journal);
+		for (int i = 0; i < 10; i++) {
+			accountService.createAccount(new Amount(new BigDecimal("1"), "USD"));
+		}
+		Thread.sleep(50);
+		running.set(false);
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+		journal.close();
+
+		AccountRepository recovered = new AccountRepository();
+		Snapshot loaded = Snapshot.load(snapshotFile, recovered);
+		assertEquals(snapshot.getJournalLsn(), loaded.getJournalLsn());
+		Journal.Replay replay = Journal.replay(journalFile, loaded.getJournalOffset(), loaded.getJournalLsn(),
+				new JournalRecovery(recovered));
+
+		assertTrue(replay.getRecords() > 0);
+		assertEquals(accountRepository.size(), recovered.size());
+		accountRepository.forEach((id, account) -> {
+			try {
+				assertEquals(account.getAmount().getUnits(), recovered.getById(id).getAmount().getUnits());
+			} catch (AccountNotFoundException e) {
+				fail(e.getMessage());
+			}
+		});
+
+		// the reopened journal continues after the last recovered lsn
+		Journal reopened = Journal.open(journalFile, DurabilityMode.SYNC, 0, replay);
+		assertEquals(replay.getLastLsn() + 1, reopened.appendCreate(recovered.reserveId(), 1, "GBP"));
+		reopened.close();
+
+	}
+
+}
@@ -0,0 +1,173 @@
+package test.java.com.moneytransfer.ledger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import main.java.com.moneytransfer.fx.ExchangeRates;
+import main.java.com.moneytransfer.journal.Journal;
+import main.java.com.moneytransfer.ledger.Ledger;
+import main.java.com.moneytransfer.model.Account;
+import main.java.com.moneytransfer.model.Amount;
+import main.java.com.moneytransfer.model.BatchMode;
+import main.java.com.moneytransfer.model.Money;
+import main.java.com.moneytransfer.model.Posting;
+import main.java.com.moneytransfer.model.TransferRequest;
+import main.java.com.moneytransfer.model.TransferResult;
+import main.java.com.moneytransfer.repository.AccountRepository;
+import main.java.com.moneytransfer.service.AccountLocks;
+import main.java.com.moneytransfer.service.AccountService;
+
+public class LedgerTest {
+
+	@Test
+	public void read_ManySegments_PagesNewestFirst() {
+
+		Ledger ledger = new Ledger();
+		// past the doubling segments into the ones of equal size
+		for (int i = 0; i < 40000; i++) {
+			ledger.append(1000000L, Posting.Kind.CREDIT, i, 1000001L, i, i, Money.RATE_SCALE, 0);
+		}
+
+		List<Posting> page = ledger.read(1000000L, Long.MAX_VALUE, 3);
+		assertEquals(3, page.size());
+		assertEquals(39999, page.get(0).getIndex());
+		assertEquals(39997, page.get(2).getIndex());
+
+		// every posting once across the pages, whichever segment it is in
+		long before = Long.MAX_VALUE;
+		long expected = 39999;
+		while (!(page = ledger.read(1000000L, before, 1000)).isEmpty()) {
+			for (Posting posting : page) {
+				assertEquals(expected, posting.getIndex());
+				assertEquals(expected, posting.getUnits());
+				assertEquals(1000001L, posting.getCounterpartyId());
+				expected--;
+			}
+			before = page.get(page.size() - 1).getIndex();
+		}
+		assertEquals(-1, expected);
+
+	}
+
+	@Test
+	public void read_UnknownOrDisabled_Empty() {
+
+		assertTrue(new Ledger().read(1000000L, Long.MAX_VALUE, 10).isEmpty());
+
+		Ledger ledger = Ledger.disabled();
+		ledger.append(1000000L, Posting.Kind.OPEN, 0, 0, 100, 100, Money.RATE_SCALE, 0);
+		assertTrue(ledger.read(1000000L, Long.MAX_VALUE, 10).isEmpty());
+
+	}
+
+	@Test
+	public void read_WhileAppending_OnlyWholePostings() throws InterruptedException {
+
+		Ledger ledger = new Ledger();
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		Thread reader = new Thread(() -> {
+			try {
+				for (int i = 0; i < 20000; i++) {
+					for (Posting posting : ledger.read(1000000L, Long.MAX_VALUE, 8)) {
+						// the writer puts the index in every field
+						assertEquals(posting.getIndex(), posting.getUnits());
+						assertEquals(posting.getIndex(), posting.getBalance());
+						assertEquals(posting.getIndex(), posting.getLsn());
+					}
+				}
+			} catch (Throwable e) {
+				failure.set(e);
+			}
+		});
+
+		reader.start();
+		for (long i = 0; i < 100000; i++) {
+			ledger.append(1000000L, Posting.Kind.DEBIT, i, 1000001L, i, i, Money.RATE_SCALE, i);
+		}
+		reader.join();
+
+		assertNull(failure.get());
+		assertEquals(100000, ledger.size(1000000L));
+
+	}
+
+	@Test
+	public void transferAmount_WithLedger_OpeningAndBothLegs() throws Exception {
+
+		AccountService accountService = new AccountService(new AccountRepository(), new AccountLocks(), Journal.disabled(),
+				new ExchangeRates(), new Ledger());
+		Account senderAccount = accountService.createAccount(new Amount(new BigDecimal("1000"), "GBP"));
+		Account receiverAccount = accountService.createAccount(new Amount(new BigDecimal("500"), "EUR"));
+
+		accountService.transferAmount(senderAccount.getId(), receiverAccount.getId(), new Amount(new BigDecimal("100"), "USD"));
+		accountService.transferBatch(Arrays.asList(
+				new TransferRequest(receiverAccount.getId(), senderAccount.getId(), 1000, "EUR")), BatchMode.ALL_OR_NOTHING);
+
+		List<Posting> sender = accountService.searchTransactions(senderAccount.getId(), Long.MAX_VALUE, 10);
+		assertEquals(3, sender.size());
+		assertEquals(Posting.Kind.CREDIT, sender.get(0).getKind());
+		// 100 USD == 77 GBP, 10 EUR == 8.70 GBP
+		assertEquals(870, sender.get(0).getUnits());
+		assertEquals(93170, sender.get(0).getBalance());
+		assertEquals(Posting.Kind.DEBIT, sender.get(1).getKind());
+		assertEquals(-7700, sender.get(1).getUnits());
+		assertEquals(770000, sender.get(1).getRate());
+		assertEquals(receiverAccount.getId().longValue(), sender.get(1).getCounterpartyId());
+		assertEquals(Posting.Kind.OPEN, sender.get(2).getKind());
+		assertEquals(100000, sender.get(2).getBalance());
+
+		List<Posting> receiver = accountService.searchTransactions(receiverAccount.getId(), Long.MAX_VALUE, 1);
+		assertEquals(Posting.Kind.DEBIT, receiver.get(0).getKind());
+		assertEquals(2, receiver.get(0).getIndex());
+
+	}
+
+	@Test
+	public void transferAmount_LedgerFull_FailsBeforeAnyBalanceChanges() throws Exception {
+
+		// a single slab of history
+		Ledger ledger = new Ledger(0, 16 << 20);
+		AccountService accountService = new AccountService(new AccountRepository(), new AccountLocks(), Journal.disabled(),
+				new ExchangeRates(), ledger);
+		long senderId = accountService.createAccount(new Amount(new BigDecimal("1000"), "GBP")).getId();
+		long receiverId = accountService.createAccount(new Amount(new BigDecimal("1000"), "GBP")).getId();
+		// both first segments are full, the next posting of either account needs a new one
+		for (int i = 0; i < 3; i++) {
+			accountService.transferAmount(senderId, receiverId, new Amount(new BigDecimal("1"), "GBP"));
+		}
+		long id = 1;
+		try {
+			while (true) {
+				ledger.reserve(id++, 1);
+			}
+		} catch (IllegalStateException e) {
+			// every slot of the slab is taken
+		}
+
+		try {
+			accountService.transferAmount(senderId, receiverId, new Amount(new BigDecimal("1"), "GBP"));
+			fail("Transfer was applied to a full ledger.");
+		} catch (IllegalStateException e) {
+			assertTrue(e.getMessage().contains("full"));
+		}
+		List<TransferResult> results = accountService.transferBatch(Arrays.asList(
+				new TransferRequest(receiverId, senderId, 100, "GBP")), BatchMode.BEST_EFFORT);
+		assertTrue(results.get(0).getReason().contains("full"));
+
+		assertEquals(new BigDecimal("997.00"), accountService.searchAccount(senderId).getAmount().getValue());
+		assertEquals(new BigDecimal("1003.00"), accountService.searchAccount(receiverId).getAmount().getValue());
+		assertEquals(4, ledger.size(senderId));
+		assertEquals(4, ledger.size(receiverId));
+
+	}
+
+}
@@ -0,0 +1,127 @@
+package test.java.com.moneytransfer.log;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import main.java.com.moneytransfer.log.AccessLog;
+import main.java.com.moneytransfer.log.LogLevel;
+
+public class AccessLogTest {
+
+	@Test
+	public void log_InfoLevel_RecordWritten() throws IOException {
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		AccessLog accessLog = AccessLog.toStream(out, LogLevel.INFO, 1, 16);
+
+		accessLog.log("POST", "/transfer", 200, TimeUnit.MICROSECONDS.toNanos(153));
+		accessLog.close();
+
+		String line = out.toString("UTF-8").trim();
+		assertTrue(line, line.endsWith(" INFO POST /transfer 200 153us"));
+
+	}
+
+	@Test
+	public void log_WarnLevel_SuccessFiltered() throws IOException {
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		AccessLog accessLog = AccessLog.toStream(out, LogLevel.WARN, 1, 16);
+
+		accessLog.log("POST", "/create", 200, 1000);
+		accessLog.log("POST", "/create", 400, 1000);
+		accessLog.log("GET", "/create", 405, 1000);
+		accessLog.close();
+
+		String[] lines = out.toString("UTF-8").trim().split("\\R");
+		assertEquals(2, lines.length);
+		assertTrue(lines[0].contains(" WARN POST /create 400 "));
+		assertTrue(lines[1].contains(" WARN GET /create 405 "));
+
+	}
+
+	@Test
+	public void log_SampleRate_OneInNSuccessesWritten() throws IOException {
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		AccessLog accessLog = AccessLog.toStream(out, LogLevel.INFO, 10, 1024);
+
+		for (int i = 0; i < 100; i++) {
+			accessLog.log("POST", "/create", 200, 1000);
+		}
+		accessLog.log("POST", "/create", 400, 1000);
+		accessLog.close();
+
+		String[] lines = out.toString("UTF-8").trim().split("\\R");
+		assertEquals(11, lines.length);
+
+	}
+
+	@Test
+	public void log_ConcurrentWriters_EveryRecordWrittenOrDropped() throws Exception {
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		AccessLog accessLog = AccessLog.toStream(out, LogLevel.INFO, 1, 64);
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		for (int t = 0; t < 4; t++) {
+			executor.submit(() -> {
+				for (int i = 0; i < 5000; i++) {
+					accessLog.log("POST", "/transfer", 200, 1000);
+				}
+			});
+		}
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+		accessLog.close();
+
+		String text = out.toString("UTF-8");
+		long written = text.isEmpty() ? 0 : text.trim().split("\\R").length;
+		assertEquals(20000, written + accessLog.getDropped());
+
+	}
+
+	@Test
+	public void log_WriteFails_RecordDroppedAndLogRecovers() throws Exception {
+
+		AtomicBoolean failing = new AtomicBoolean(true);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		AccessLog accessLog = AccessLog.toStream(new FilterOutputStream(out) {
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				if (failing.get()) {
+					throw new IOException("Disk full");
+				}
+				out.write(b, off, len);
+			}
+		}, LogLevel.INFO, 1, 16);
+
+		accessLog.log("POST", "/transfer", 200, 1000);
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (accessLog.getDropped() == 0 && System.nanoTime() < deadline) {
+			Thread.sleep(1);
+		}
+		assertEquals(1, accessLog.getDropped());
+
+		failing.set(false);
+		accessLog.log("POST", "/accounts", 200, 1000);
+		accessLog.close();
+
+		String[] lines = out.toString("UTF-8").trim().split("\\R");
+		assertEquals(1, lines.length);
+		assertTrue(lines[0], lines[0].endsWith(" INFO POST /accounts 200 1us"));
+		assertEquals(1, accessLog.getDropped());
+
+	}
+
+}
@@ -0,0 +1,74 @@
+package test.java.com.moneytransfer.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.junit.Test;
+
+import main.java.com.moneytransfer.metrics.LatencyHistogram;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void getValueAtQuantile_SmallValues_Exact() {
+
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long value = 1; value <= 10; value++) {
+			histogram.record(value);
+		}
+
+		LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+		assertEquals(10, snapshot.getCount());
+		assertEquals(55, snapshot.getSum());
+		assertEquals(5, snapshot.getValueAtQuantile(0.5));
+		assertEquals(10, snapshot.getValueAtQuantile(1));
+
+	}
+
+	@Test
+	public void getValueAtQuantile_LargeValues_WithinRelativeError() {
+
+		for (long value = 33; value < 1L << 40; value = value * 3 + 7) {
+			LatencyHistogram histogram = new LatencyHistogram();
+			histogram.record(value);
+
+			long reported = histogram.snapshot().getValueAtQuantile(0.99);
+			assertTrue(value + " reported as " + reported, reported >= value);
+			assertTrue(value + " reported as " + reported, reported - value <= value / 32);
+		}
+
+	}
+
+	@Test
+	public void getValueAtQuantile_NothingRecorded_Zero() {
+
+		assertEquals(0, new LatencyHistogram().snapshot().getValueAtQuantile(0.5));
+
+	}
+
+	@Test
+	public void record_ConcurrentThreads_NoneLost() throws InterruptedException {
+
+		LatencyHistogram histogram = new LatencyHistogram();
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 4; t++) {
+			threads.add(new Thread(() -> {
+				for (int i = 0; i < 100000; i++) {
+					histogram.record(ThreadLocalRandom.current().nextLong(1000000));
+				}
+			}));
+		}
+		threads.forEach(Thread::start);
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertEquals(400000, histogram.snapshot().getCount());
+
+	}
+
+}
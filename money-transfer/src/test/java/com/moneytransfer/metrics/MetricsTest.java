@@ -0,0 +1,68 @@
+package test.java.com.moneytransfer.metrics;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import main.java.com.moneytransfer.metrics.Metrics;
+
+public class MetricsTest {
+
+	@Test
+	public void write_CompletedRequests_CountedByEndpointAndOutcome() {
+
+		Metrics metrics = new Metrics();
+		metrics.requestStarted("/transfer");
+		metrics.requestCompleted("/transfer", 200, 2000000);
+		metrics.requestStarted("/transfer");
+		metrics.requestCompleted("/transfer", 400, 1000000);
+		metrics.requestStarted("/create");
+		metrics.transfersApplied(1);
+
+		StringBuilder out = new StringBuilder();
+		metrics.write(out);
+		String text = out.toString();
+
+		assertTrue(text.contains(
+				"money_transfer_request_duration_seconds_count{endpoint=\"/transfer\",outcome=\"2xx\"} 1\n"));
+		assertTrue(text.contains(
+				"money_transfer_request_duration_seconds_count{endpoint=\"/transfer\",outcome=\"4xx\"} 1\n"));
+		assertTrue(text.contains(
+				"money_transfer_request_duration_seconds_sum{endpoint=\"/transfer\",outcome=\"2xx\"} 0.002000000\n"));
+		assertTrue(text.contains("money_transfer_requests_in_flight{endpoint=\"/create\"} 1\n"));
+		assertTrue(text.contains("money_transfer_requests_in_flight{endpoint=\"/transfer\"} 0\n"));
+		assertTrue(text.contains("money_transfer_transfers_applied_total 1\n"));
+
+	}
+
+	@Test
+	public void write_AddedGauge_ReadOnWrite() {
+
+		Metrics metrics = new Metrics();
+		long[] value = { 3 };
+		metrics.addGauge("queue_depth", "Queued transfers.", () -> value[0]);
+		value[0] = 7;
+
+		StringBuilder out = new StringBuilder();
+		metrics.write(out);
+
+		assertTrue(out.toString().contains("# TYPE money_transfer_queue_depth gauge\nmoney_transfer_queue_depth 7\n"));
+
+	}
+
+	@Test
+	public void write_Disabled_NoLatencies() {
+
+		Metrics metrics = Metrics.disabled();
+		metrics.requestStarted("/transfer");
+		metrics.requestCompleted("/transfer", 200, 1000);
+
+		StringBuilder out = new StringBuilder();
+		metrics.write(out);
+
+		assertFalse(out.toString().contains("endpoint="));
+
+	}
+
+}
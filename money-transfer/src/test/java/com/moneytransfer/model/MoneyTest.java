@@ -0,0 +1,65 @@
+package test.java.com.moneytransfer.model;
+
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigDecimal;
+
+import org.junit.Test;
+
+import main.java.com.moneytransfer.model.Money;
+
+public class MoneyTest {
+
+	@Test
+	public void toUnits_MoreDecimalsThanScale_RoundedHalfEven() {
+
+		assertEquals(100012L, Money.toUnits(new BigDecimal("1000.125")));
+		assertEquals(100014L, Money.toUnits(new BigDecimal("1000.135")));
+		assertEquals(100000L, Money.toUnits(new BigDecimal("1000")));
+
+	}
+
+	@Test(expected = ArithmeticException.class)
+	public void toUnits_TooLarge_ArithmeticException() {
+
+		Money.toUnits(new BigDecimal("100000000000000000000"));
+
+	}
+
+	@Test
+	public void convert_NormalInputs_RoundedHalfEven() {
+
+		// 100.00 * 1.15 = 115.00
+		assertEquals(11500L, Money.convert(10000L, 1150000L));
+		// 0.01 * 0.5 = 0.005 -> 0.00, 0.03 * 0.5 = 0.015 -> 0.02
+		assertEquals(0L, Money.convert(1L, 500000L));
+		assertEquals(2L, Money.convert(3L, 500000L));
+
+	}
+
+	@Test
+	public void convert_ProductOverflowsLong_ExactResult() {
+
+		long units = Long.MAX_VALUE / 2;
+		assertEquals(units, Money.convert(units, Money.RATE_SCALE));
+
+	}
+
+	@Test(expected = ArithmeticException.class)
+	public void add_Overflow_ArithmeticException() {
+
+		Money.add(Long.MAX_VALUE, 1L);
+
+	}
+
+	@Test
+	public void format_NormalInputs_Ok() {
+
+		assertEquals("1000", Money.format(100000L));
+		assertEquals("1000.50", Money.format(100050L));
+		assertEquals("0.05", Money.format(5L));
+		assertEquals("-0.50", Money.format(-50L));
+
+	}
+
+}
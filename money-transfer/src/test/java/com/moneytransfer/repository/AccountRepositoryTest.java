@@ -12,14 +12,19 @@ import main.java.com.moneytransfer.exception.AccountNotFoundException;
 import main.java.com.moneytransfer.model.Account;
 import main.java.com.moneytransfer.model.Amount;
 import main.java.com.moneytransfer.repository.AccountRepository;
+import main.java.com.moneytransfer.repository.AccountStore;
 
 public class AccountRepositoryTest {
 
-	private AccountRepository accountRepository;
+	private AccountStore accountRepository;
 
 	@Before
 	public void setUp() {
-		accountRepository = new AccountRepository();
+		accountRepository = createRepository();
+	}
+
+	protected AccountStore createRepository() {
+		return new AccountRepository();
 	}
 	
 	@Test (expected = AccountNotFoundException.class)
@@ -0,0 +1,97 @@
+package test.java.com.moneytransfer.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import main.java.com.moneytransfer.repository.ConcurrentLongMap;
+
+public class ConcurrentLongMapTest {
+
+	private ConcurrentLongMap<String> map;
+
+	@Before
+	public void setUp() {
+		map = new ConcurrentLongMap<>(4, 0);
+	}
+
+	@Test
+	public void get_NonexistentKey_Null() {
+
+		assertNull(map.get(42L));
+
+	}
+
+	@Test
+	public void putAndReplace_NormalInputs_Ok() {
+
+		assertNull(map.put(1000000L, "first"));
+		assertEquals("first", map.get(1000000L));
+
+		assertEquals("first", map.replace(1000000L, "second"));
+		assertEquals("second", map.get(1000000L));
+
+		assertNull(map.replace(1000001L, "missing"));
+		assertNull(map.get(1000001L));
+		assertEquals(1, map.size());
+
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void put_ReservedKey_IllegalArgumentException() {
+
+		map.put(0L, "zero");
+
+	}
+
+	@Test
+	public void put_ConcurrentWritersAndReaders_AllEntriesVisible() throws InterruptedException {
+
+		final int writers = 4;
+		final int perWriter = 50000;
+		AtomicLong misses = new AtomicLong();
+
+		ExecutorService executor = Executors.newFixedThreadPool(writers + 2);
+		for (int w = 0; w < writers; w++) {
+			final long base = 1 + (long) w * perWriter;
+			executor.submit(() -> {
+				for (long key = base; key < base + perWriter; key++) {
+					map.put(key, String.valueOf(key));
+					// a key is visible to everyone as soon as put returns
+					if (!String.valueOf(key).equals(map.get(key))) {
+						misses.incrementAndGet();
+					}
+				}
+			});
+		}
+		for (int r = 0; r < 2; r++) {
+			executor.submit(() -> {
+				for (long key = 1; key <= writers * perWriter; key++) {
+					String value = map.get(key);
+					if (value != null && !value.equals(String.valueOf(key))) {
+						misses.incrementAndGet();
+					}
+				}
+			});
+		}
+
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+
+		assertEquals(0, misses.get());
+		assertEquals(writers * perWriter, map.size());
+		for (long key = 1; key <= writers * perWriter; key++) {
+			assertEquals(String.valueOf(key), map.get(key));
+		}
+
+	}
+
+}
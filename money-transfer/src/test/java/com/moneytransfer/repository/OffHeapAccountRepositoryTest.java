@@ -0,0 +1,73 @@
+package test.java.com.moneytransfer.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+
+import org.junit.Test;
+
+import main.java.com.moneytransfer.exception.AccountNotFoundException;
+import main.java.com.moneytransfer.model.Account;
+import main.java.com.moneytransfer.model.Amount;
+import main.java.com.moneytransfer.repository.AccountStore;
+import main.java.com.moneytransfer.repository.OffHeapAccountRepository;
+
+// runs the AccountRepositoryTest cases against the off-heap store as well
+public class OffHeapAccountRepositoryTest extends AccountRepositoryTest {
+
+	@Override
+	protected AccountStore createRepository() {
+		return new OffHeapAccountRepository(1L << 22);
+	}
+
+	@Test
+	public void getById_StoredAccount_CopyReturned() throws AccountNotFoundException {
+
+		AccountStore accountRepository = createRepository();
+		Account account = accountRepository.add(new Account(new Amount(new BigDecimal("10"), "GBP")));
+
+		Account copy = accountRepository.getById(account.getId());
+		copy.getAmount().setValue(new BigDecimal("20"));
+		assertEquals(new BigDecimal("10.00"), accountRepository.getById(account.getId()).getAmount().getValue());
+
+		accountRepository.update(copy);
+		assertEquals(new BigDecimal("20.00"), accountRepository.getById(account.getId()).getAmount().getValue());
+
+	}
+
+	@Test
+	public void insert_IdsAcrossPages_AllFound() throws AccountNotFoundException {
+
+		AccountStore accountRepository = createRepository();
+		long[] ids = { AccountStore.FIRST_ACCOUNT_ID, AccountStore.FIRST_ACCOUNT_ID + (1 << 20) + 7,
+				AccountStore.FIRST_ACCOUNT_ID + (3 << 20) - 1 };
+
+		for (int i = 0; i < ids.length; i++) {
+			Account account = new Account(new Amount(i + 1, i == 1 ? "EUR" : "USD"));
+			account.setId(ids[i]);
+			account.setLsn(100 + i);
+			accountRepository.insert(account);
+		}
+
+		assertEquals(3, accountRepository.size());
+		assertFalse(accountRepository.contains(AccountStore.FIRST_ACCOUNT_ID + 1));
+		assertTrue(accountRepository.contains(ids[2]));
+		assertEquals("EUR", accountRepository.getById(ids[1]).getAmount().getCurrency());
+		assertEquals(3, accountRepository.getById(ids[2]).getAmount().getUnits());
+		assertEquals(102, accountRepository.getById(ids[2]).getLsn());
+
+		// new ids continue after the highest stored one
+		assertEquals(ids[2] + 1, accountRepository.reserveId());
+
+	}
+
+	@Test(expected = AccountNotFoundException.class)
+	public void getById_IdOutOfCapacity_AccountNotFoundException() throws AccountNotFoundException {
+
+		createRepository().getById(AccountStore.FIRST_ACCOUNT_ID + (1L << 40));
+
+	}
+
+}
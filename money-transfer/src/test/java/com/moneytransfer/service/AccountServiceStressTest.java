@@ -0,0 +1,208 @@
+package test.java.com.moneytransfer.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import main.java.com.moneytransfer.exception.AccountNotFoundException;
+import main.java.com.moneytransfer.exception.InsufficientBalanceException;
+import main.java.com.moneytransfer.exception.InvalidReceiverException;
+import main.java.com.moneytransfer.exception.UnsupportedCurrencyException;
+import main.java.com.moneytransfer.model.Account;
+import main.java.com.moneytransfer.model.Amount;
+import main.java.com.moneytransfer.repository.AccountRepository;
+import main.java.com.moneytransfer.service.AccountLocks;
+import main.java.com.moneytransfer.service.AccountService;
+
+public class AccountServiceStressTest {
+
+	private static final int ACCOUNT_COUNT = 64;
+	private static final int THREAD_COUNT = 8;
+	private static final int TRANSFERS_PER_THREAD = 20000;
+
+	private AccountService accountService;
+	private List<Long> accountIds;
+
+	@Before
+	public void setUp() throws UnsupportedCurrencyException {
+
+		// few stripes on purpose, so that unrelated accounts also share locks
+		accountService = new AccountService(new AccountRepository(), new AccountLocks(16));
+		accountIds = new ArrayList<>();
+
+		for (int i = 0; i < ACCOUNT_COUNT; i++) {
+			Account account = accountService.createAccount(new Amount(new BigDecimal("1000"), "GBP"));
+			accountIds.add(account.getId());
+		}
+	}
+
+	@Test
+	public void transferAmount_ConcurrentRandomTransfers_TotalConserved() throws Exception {
+
+		BigDecimal totalBefore = totalBalance();
+
+		ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+		CountDownLatch start = new CountDownLatch(1);
+		AtomicLong succeeded = new AtomicLong();
+		AtomicLong failed = new AtomicLong();
+
+		for (int t = 0; t < THREAD_COUNT; t++) {
+			executor.submit(() -> {
+				start.await();
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+
+				for (int i = 0; i < TRANSFERS_PER_THREAD; i++) {
+					Long senderId = accountIds.get(random.nextInt(ACCOUNT_COUNT));
+					Long receiverId = accountIds.get(random.nextInt(ACCOUNT_COUNT));
+					Amount amount = new Amount(new BigDecimal(1 + random.nextInt(50)), "GBP");
+
+					try {
+						accountService.transferAmount(senderId, receiverId, amount);
+						succeeded.incrementAndGet();
+					} catch (InvalidReceiverException | InsufficientBalanceException e) {
+						failed.incrementAndGet();
+					}
+				}
+				return null;
+			});
+		}
+
+		start.countDown();
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+
+		assertEquals(THREAD_COUNT * TRANSFERS_PER_THREAD, succeeded.get() + failed.get());
+		assertTrue(succeeded.get() > 0);
+		assertEquals(totalBefore.compareTo(totalBalance()), 0);
+
+		for (Long accountId : accountIds) {
+			assertTrue(accountService.searchAccount(accountId).getAmount().getValue().signum() >= 0);
+		}
+
+	}
+
+	@Test
+	public void searchAccounts_DuringTransfers_OnlyCommittedBalances() throws Exception {
+
+		ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+		CountDownLatch start = new CountDownLatch(1);
+		AtomicLong reads = new AtomicLong();
+		long[] ids = new long[ACCOUNT_COUNT];
+		for (int i = 0; i < ACCOUNT_COUNT; i++) {
+			ids[i] = accountIds.get(i);
+		}
+
+		for (int t = 0; t < THREAD_COUNT / 2; t++) {
+			executor.submit(() -> {
+				start.await();
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+
+				// whole pounds only, a balance with pence in it was never committed
+				for (int i = 0; i < TRANSFERS_PER_THREAD; i++) {
+					try {
+						accountService.transferAmount(accountIds.get(random.nextInt(ACCOUNT_COUNT)),
+								accountIds.get(random.nextInt(ACCOUNT_COUNT)), new Amount(100L * (1 + random.nextInt(50)), "GBP"));
+					} catch (InvalidReceiverException | InsufficientBalanceException e) {
+					}
+				}
+				return null;
+			});
+			executor.submit(() -> {
+				start.await();
+				for (int i = 0; i < TRANSFERS_PER_THREAD / 10; i++) {
+					for (Account account : accountService.searchAccounts(ids)) {
+						long units = account.getAmount().getUnits();
+						assertTrue(units >= 0 && units % 100 == 0);
+					}
+					reads.incrementAndGet();
+				}
+				return null;
+			});
+		}
+
+		start.countDown();
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+
+		assertEquals(THREAD_COUNT / 2 * TRANSFERS_PER_THREAD / 10, reads.get());
+
+	}
+
+	@Test
+	public void exportAccounts_DuringTransfers_TotalConserved() throws Exception {
+
+		long totalBefore = totalBalance().movePointRight(2).longValueExact();
+		ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+		CountDownLatch start = new CountDownLatch(1);
+		AtomicLong transfersLeft = new AtomicLong(THREAD_COUNT / 2);
+		AtomicLong exports = new AtomicLong();
+		List<Future<?>> exporters = new ArrayList<>();
+
+		for (int t = 0; t < THREAD_COUNT / 2; t++) {
+			executor.submit(() -> {
+				start.await();
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				try {
+					for (int i = 0; i < TRANSFERS_PER_THREAD; i++) {
+						try {
+							accountService.transferAmount(accountIds.get(random.nextInt(ACCOUNT_COUNT)),
+									accountIds.get(random.nextInt(ACCOUNT_COUNT)), new Amount(1 + random.nextInt(5000), "GBP"));
+						} catch (InvalidReceiverException | InsufficientBalanceException e) {
+						}
+					}
+				} finally {
+					transfersLeft.decrementAndGet();
+				}
+				return null;
+			});
+		}
+		for (int t = 0; t < THREAD_COUNT / 2; t++) {
+			exporters.add(executor.submit(() -> {
+				start.await();
+				// each export is of one point in time, money in flight is never counted twice or lost
+				do {
+					long[] total = new long[1];
+					assertEquals(ACCOUNT_COUNT, accountService.exportAccounts((id, units, currency) -> total[0] += units));
+					assertEquals(totalBefore, total[0]);
+					exports.incrementAndGet();
+				} while (transfersLeft.get() > 0);
+				return null;
+			}));
+		}
+
+		start.countDown();
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+		for (Future<?> exporter : exporters) {
+			// rethrows a failed assertion of the exporter
+			exporter.get();
+		}
+
+		assertTrue(exports.get() >= THREAD_COUNT / 2);
+		assertEquals(totalBefore, totalBalance().movePointRight(2).longValueExact());
+
+	}
+
+	private BigDecimal totalBalance() throws AccountNotFoundException {
+
+		BigDecimal total = BigDecimal.ZERO;
+		for (Long accountId : accountIds) {
+			total = total.add(accountService.searchAccount(accountId).getAmount().getValue());
+		}
+		return total;
+	}
+
+}
@@ -1,9 +1,16 @@
 package test.java.com.moneytransfer.service;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -14,6 +21,9 @@ import main.java.com.moneytransfer.exception.InvalidReceiverException;
 import main.java.com.moneytransfer.exception.UnsupportedCurrencyException;
 import main.java.com.moneytransfer.model.Account;
 import main.java.com.moneytransfer.model.Amount;
+import main.java.com.moneytransfer.model.BatchMode;
+import main.java.com.moneytransfer.model.TransferRequest;
+import main.java.com.moneytransfer.model.TransferResult;
 import main.java.com.moneytransfer.service.AccountService;
 
 public class AccountServiceTest {
@@ -22,7 +32,11 @@ public class AccountServiceTest {
 
 	@Before
 	public void setUp() {
-		accountService = new AccountService();
+		accountService = createAccountService();
+	}
+
+	protected AccountService createAccountService() {
+		return new AccountService();
 	}
 
 	@Test(expected = AccountNotFoundException.class)
@@ -64,6 +78,19 @@ public class AccountServiceTest {
 
 	}
 
+	@Test
+	public void searchAccounts_MissingId_Null() throws UnsupportedCurrencyException {
+
+		Account createdAccount = accountService.createAccount(new Amount(new BigDecimal("1000"), "GBP"));
+
+		Account[] accounts = accountService.searchAccounts(new long[] { 5000000L, createdAccount.getId() });
+
+		assertNull(accounts[0]);
+		assertEquals(createdAccount.getId(), accounts[1].getId());
+		assertEquals(new BigDecimal("1000.00"), accounts[1].getAmount().getValue());
+
+	}
+
 	@Test(expected = UnsupportedCurrencyException.class)
 	public void convertCurrency_UnsupportedCurrency_UnsupportedCurrencyException() throws UnsupportedCurrencyException {
 
@@ -239,6 +266,42 @@ public class AccountServiceTest {
 		accountService.transferAmount(senderId, receiverId, transferAmount);
 
 	}
+
+	@Test
+	public void transferAmount_Rejected_SameMessageWithoutStackTrace() throws UnsupportedCurrencyException {
+
+		Account senderAccount = accountService.createAccount(new Amount(new BigDecimal("300"), "GBP"));
+		Account receiverAccount = accountService.createAccount(new Amount(new BigDecimal("500"), "GBP"));
+
+		Exception overdraft = transferError(senderAccount.getId(), receiverAccount.getId(), "350", "GBP");
+		assertEquals("Insufficient balance. Cannot process the request.", overdraft.getMessage());
+		assertEquals(0, overdraft.getStackTrace().length);
+		// the next rejection is the same object
+		assertTrue(overdraft == transferError(senderAccount.getId(), receiverAccount.getId(), "400", "GBP"));
+
+		Exception missing = transferError(senderAccount.getId(), 5000000L, "1", "GBP");
+		assertEquals("Account cannot be found - 5000000", missing.getMessage());
+		assertEquals(0, missing.getStackTrace().length);
+
+		Exception currency = transferError(senderAccount.getId(), receiverAccount.getId(), "1", "CAD");
+		assertEquals("Supported currencies are GBP, EUR, and USD.", currency.getMessage());
+
+		Exception sameAccount = transferError(senderAccount.getId(), senderAccount.getId(), "1", "GBP");
+		assertEquals("Sender and receiver cannot be the same account.", sameAccount.getMessage());
+		assertEquals(0, sameAccount.getStackTrace().length);
+
+	}
+
+	private Exception transferError(Long senderId, Long receiverId, String value, String currency) {
+
+		try {
+			accountService.transferAmount(senderId, receiverId, new Amount(new BigDecimal(value), currency));
+		} catch (InvalidReceiverException | AccountNotFoundException | UnsupportedCurrencyException
+				| InsufficientBalanceException e) {
+			return e;
+		}
+		throw new AssertionError("Transfer was not rejected.");
+	}
 	
 	public void transferAmount_NormalInputs_Ok() throws InvalidReceiverException, AccountNotFoundException,
 			UnsupportedCurrencyException, InsufficientBalanceException {
@@ -304,4 +367,106 @@ public class AccountServiceTest {
 
 	}
 
+	@Test
+	public void transferBatch_BestEffort_FailuresDoNotAffectOthers() throws UnsupportedCurrencyException, AccountNotFoundException {
+
+		Long firstId = accountService.createAccount(new Amount(new BigDecimal("100"), "GBP")).getId();
+		Long secondId = accountService.createAccount(new Amount(new BigDecimal("100"), "GBP")).getId();
+
+		List<TransferRequest> transfers = Arrays.asList(
+				new TransferRequest(firstId, secondId, 3000L, "GBP"),
+				new TransferRequest(firstId, secondId, 9000L, "GBP"),
+				new TransferRequest(secondId, firstId, 1000L, "GBP"));
+
+		List<TransferResult> results = accountService.transferBatch(transfers, BatchMode.BEST_EFFORT);
+
+		assertTrue(results.get(0).isSuccess());
+		assertFalse(results.get(1).isSuccess());
+		assertEquals("Insufficient balance. Cannot process the request.", results.get(1).getReason());
+		assertTrue(results.get(2).isSuccess());
+
+		// £100 - £30 + £10 = £80, £100 + £30 - £10 = £120
+		assertEquals(accountService.searchAccount(firstId).getAmount().getValue().compareTo(new BigDecimal("80")), 0);
+		assertEquals(accountService.searchAccount(secondId).getAmount().getValue().compareTo(new BigDecimal("120")), 0);
+
+	}
+
+	@Test
+	public void transferBatch_AllOrNothing_OneFailureAppliesNothing() throws UnsupportedCurrencyException, AccountNotFoundException {
+
+		Long firstId = accountService.createAccount(new Amount(new BigDecimal("100"), "GBP")).getId();
+		Long secondId = accountService.createAccount(new Amount(new BigDecimal("100"), "GBP")).getId();
+
+		// the second transfer only fits if the first one was applied, the third one fails
+		List<TransferRequest> transfers = Arrays.asList(
+				new TransferRequest(firstId, secondId, 8000L, "GBP"),
+				new TransferRequest(secondId, firstId, 17000L, "GBP"),
+				new TransferRequest(firstId, 5000000L, 100L, "GBP"));
+
+		List<TransferResult> results = accountService.transferBatch(transfers, BatchMode.ALL_OR_NOTHING);
+
+		assertEquals(TransferResult.NOT_APPLIED, results.get(0).getReason());
+		assertEquals(TransferResult.NOT_APPLIED, results.get(1).getReason());
+		assertEquals("Account cannot be found - 5000000", results.get(2).getReason());
+
+		assertEquals(accountService.searchAccount(firstId).getAmount().getValue().compareTo(new BigDecimal("100")), 0);
+		assertEquals(accountService.searchAccount(secondId).getAmount().getValue().compareTo(new BigDecimal("100")), 0);
+
+	}
+
+	@Test
+	public void transferBatch_AllOrNothing_Ok() throws UnsupportedCurrencyException, AccountNotFoundException {
+
+		Long firstId = accountService.createAccount(new Amount(new BigDecimal("100"), "GBP")).getId();
+		Long secondId = accountService.createAccount(new Amount(new BigDecimal("100"), "GBP")).getId();
+
+		List<TransferRequest> transfers = Arrays.asList(
+				new TransferRequest(firstId, secondId, 8000L, "GBP"),
+				new TransferRequest(secondId, firstId, 17000L, "GBP"));
+
+		List<TransferResult> results = accountService.transferBatch(transfers, BatchMode.ALL_OR_NOTHING);
+
+		assertTrue(results.get(0).isSuccess());
+		assertTrue(results.get(1).isSuccess());
+
+		// 100 - 80 + 170 = 190 GBP, 100 + 80 - 170 = 10 GBP
+		assertEquals(accountService.searchAccount(firstId).getAmount().getValue().compareTo(new BigDecimal("190")), 0);
+		assertEquals(accountService.searchAccount(secondId).getAmount().getValue().compareTo(new BigDecimal("10")), 0);
+
+	}
+
+	@Test
+	public void exportAccounts_WrittenDuringExport_BalancesWhenStarted() throws Exception {
+
+		Long firstId = accountService.createAccount(new Amount(new BigDecimal("100"), "GBP")).getId();
+		Long secondId = accountService.createAccount(new Amount(new BigDecimal("50"), "GBP")).getId();
+		Map<Long, Long> exported = new HashMap<>();
+		long[] createdId = new long[1];
+
+		long count = accountService.exportAccounts((id, units, currency) -> {
+			// written while the export runs, it must not wait for it
+			if (exported.isEmpty()) {
+				try {
+					accountService.transferAmount(firstId, secondId, new Amount(new BigDecimal("30"), "GBP"));
+					createdId[0] = accountService.createAccount(new Amount(new BigDecimal("1"), "EUR")).getId();
+				} catch (Exception e) {
+					throw new IllegalStateException(e);
+				}
+			}
+			exported.put(id, units);
+		});
+
+		assertEquals(2, count);
+		assertEquals(Long.valueOf(10000), exported.get(firstId));
+		assertEquals(Long.valueOf(5000), exported.get(secondId));
+		assertFalse(exported.containsKey(createdId[0]));
+		assertEquals(7000, accountService.searchAccount(firstId).getAmount().getUnits());
+
+		// later exports see the transfer
+		exported.clear();
+		assertEquals(3, accountService.exportAccounts((id, units, currency) -> exported.put(id, units)));
+		assertEquals(Long.valueOf(8000), exported.get(secondId));
+
+	}
+
 }
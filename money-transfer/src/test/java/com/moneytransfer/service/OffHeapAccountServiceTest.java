@@ -0,0 +1,15 @@
+package test.java.com.moneytransfer.service;
+
+import main.java.com.moneytransfer.repository.OffHeapAccountRepository;
+import main.java.com.moneytransfer.service.AccountLocks;
+import main.java.com.moneytransfer.service.AccountService;
+
+// runs the AccountServiceTest cases on top of the off-heap store
+public class OffHeapAccountServiceTest extends AccountServiceTest {
+
+	@Override
+	protected AccountService createAccountService() {
+		return new AccountService(new OffHeapAccountRepository(1L << 22), new AccountLocks());
+	}
+
+}
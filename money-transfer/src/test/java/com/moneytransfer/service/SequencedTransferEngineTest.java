@@ -0,0 +1,216 @@
+package test.java.com.moneytransfer.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import main.java.com.moneytransfer.exception.AccountNotFoundException;
+import main.java.com.moneytransfer.exception.InsufficientBalanceException;
+import main.java.com.moneytransfer.exception.InvalidReceiverException;
+import main.java.com.moneytransfer.exception.UnsupportedCurrencyException;
+import main.java.com.moneytransfer.model.Amount;
+import main.java.com.moneytransfer.model.BatchMode;
+import main.java.com.moneytransfer.model.TransferRequest;
+import main.java.com.moneytransfer.model.TransferResult;
+import main.java.com.moneytransfer.repository.AccountRepository;
+import main.java.com.moneytransfer.service.AccountLocks;
+import main.java.com.moneytransfer.service.AccountService;
+import main.java.com.moneytransfer.service.SequencedTransferEngine;
+
+public class SequencedTransferEngineTest {
+
+	private AccountLocks accountLocks;
+	private AccountService accountService;
+	private SequencedTransferEngine engine;
+	private ExecutorService completionExecutor;
+
+	@Before
+	public void setUp() {
+
+		accountLocks = new AccountLocks(1);
+		accountService = new AccountService(new AccountRepository(), accountLocks);
+		completionExecutor = Executors.newFixedThreadPool(2);
+		// a small ring, so that producers have to wait for the writer
+		engine = new SequencedTransferEngine(accountService, accountLocks, 8, completionExecutor);
+	}
+
+	@After
+	public void tearDown() {
+		engine.close();
+		completionExecutor.shutdown();
+	}
+
+	@Test
+	public void transfer_NormalInputs_BalancesUpdated() throws Exception {
+
+		long senderId = createAccount("1000", "GBP");
+		long receiverId = createAccount("500", "EUR");
+
+		assertNull(transfer(senderId, receiverId, "100", "GBP"));
+
+		// 100 GBP == 115 EUR
+		assertEquals(new BigDecimal("900.00"), accountService.searchAccount(senderId).getAmount().getValue());
+		assertEquals(new BigDecimal("615.00"), accountService.searchAccount(receiverId).getAmount().getValue());
+
+	}
+
+	@Test
+	public void transfer_InvalidInputs_SameErrorsAsTransferAmount() throws Exception {
+
+		long senderId = createAccount("100", "GBP");
+		long receiverId = createAccount("100", "GBP");
+
+		assertTrue(transfer(senderId, senderId, "10", "GBP") instanceof InvalidReceiverException);
+		assertTrue(transfer(senderId, 5000000L, "10", "GBP") instanceof AccountNotFoundException);
+		assertTrue(transfer(senderId, receiverId, "10", "CAD") instanceof UnsupportedCurrencyException);
+		assertTrue(transfer(senderId, receiverId, "100.01", "GBP") instanceof InsufficientBalanceException);
+
+		assertEquals(new BigDecimal("100.00"), accountService.searchAccount(senderId).getAmount().getValue());
+
+	}
+
+	@Test
+	public void transferBatch_AllOrNothing_ResultsCompleted() throws Exception {
+
+		long firstId = createAccount("100", "GBP");
+		long secondId = createAccount("100", "GBP");
+
+		List<TransferRequest> transfers = Arrays.asList(
+				new TransferRequest(firstId, secondId, 5000, "GBP"),
+				new TransferRequest(firstId, secondId, 6000, "GBP"));
+
+		CompletableFuture<List<TransferResult>> future = new CompletableFuture<>();
+		engine.transferBatch(transfers, BatchMode.ALL_OR_NOTHING, (results, error) -> future.complete(results));
+		List<TransferResult> results = future.get(10, TimeUnit.SECONDS);
+
+		assertEquals(2, results.size());
+		assertEquals(TransferResult.NOT_APPLIED, results.get(0).getReason());
+		assertEquals(new BigDecimal("100.00"), accountService.searchAccount(firstId).getAmount().getValue());
+
+	}
+
+	@Test
+	public void transfer_ConcurrentProducers_EveryCallbackCompletedAndTotalKept() throws Exception {
+
+		int accountCount = 16;
+		int producers = 4;
+		int transfersPerProducer = 20000;
+
+		long firstId = createAccount("1000", "GBP");
+		for (int i = 1; i < accountCount; i++) {
+			createAccount("1000", "GBP");
+		}
+
+		CountDownLatch completed = new CountDownLatch(producers * transfersPerProducer);
+		AtomicLong failed = new AtomicLong();
+		ExecutorService executor = Executors.newFixedThreadPool(producers);
+		for (int p = 0; p < producers; p++) {
+			executor.submit(() -> {
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				for (int i = 0; i < transfersPerProducer; i++) {
+					long senderId = firstId + random.nextInt(accountCount);
+					long receiverId = firstId + random.nextInt(accountCount);
+					engine.transfer(senderId, receiverId, new Amount(1 + random.nextInt(10000), "GBP"), error -> {
+						if (error != null && !(error instanceof InsufficientBalanceException
+								|| error instanceof InvalidReceiverException)) {
+							failed.incrementAndGet();
+						}
+						completed.countDown();
+					});
+				}
+			});
+		}
+
+		assertTrue(completed.await(30, TimeUnit.SECONDS));
+		executor.shutdown();
+		assertEquals(0, failed.get());
+
+		long total = 0;
+		for (int i = 0; i < accountCount; i++) {
+			total += accountService.searchAccount(firstId + i).getAmount().getUnits();
+		}
+		assertEquals(accountCount * 100000L, total);
+
+	}
+
+	@Test
+	public void transfer_CompletionExecutorRejects_CompletedOnWriterThread() throws Exception {
+
+		long senderId = createAccount("1000", "GBP");
+		long receiverId = createAccount("1000", "GBP");
+
+		// a shut down pool rejects every completion
+		completionExecutor.shutdown();
+		assertNull(transfer(senderId, receiverId, "100", "GBP"));
+		// the writer is still running
+		assertNull(transfer(senderId, receiverId, "100", "GBP"));
+
+		assertEquals(new BigDecimal("800.00"), accountService.searchAccount(senderId).getAmount().getValue());
+
+	}
+
+	@Test
+	public void transfer_ClosedWhileProducing_EveryAcceptedTransferCompleted() throws Exception {
+
+		long senderId = createAccount("1000", "GBP");
+		long receiverId = createAccount("1000", "GBP");
+
+		for (int round = 0; round < 50; round++) {
+			SequencedTransferEngine closing = new SequencedTransferEngine(accountService, accountLocks, 8, completionExecutor);
+			AtomicLong accepted = new AtomicLong();
+			AtomicLong completed = new AtomicLong();
+			ExecutorService executor = Executors.newFixedThreadPool(2);
+			for (int p = 0; p < 2; p++) {
+				executor.submit(() -> {
+					try {
+						while (true) {
+							closing.transfer(senderId, receiverId, new Amount(1, "GBP"), error -> completed.incrementAndGet());
+							accepted.incrementAndGet();
+						}
+					} catch (IllegalStateException e) {
+						// closed
+					}
+				});
+			}
+			Thread.sleep(1);
+			closing.close();
+			executor.shutdown();
+			assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+			// a transfer is either rejected or completed, never left in the ring
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+			while (completed.get() != accepted.get() && System.nanoTime() < deadline) {
+				Thread.sleep(1);
+			}
+			assertEquals(accepted.get(), completed.get());
+		}
+
+	}
+
+	private long createAccount(String value, String currency) throws UnsupportedCurrencyException {
+		return accountService.createAccount(new Amount(new BigDecimal(value), currency)).getId();
+	}
+
+	private Exception transfer(long senderId, long receiverId, String value, String currency) throws Exception {
+
+		CompletableFuture<Exception> future = new CompletableFuture<>();
+		engine.transfer(senderId, receiverId, new Amount(new BigDecimal(value), currency), future::complete);
+		return future.get(10, TimeUnit.SECONDS);
+	}
+
+}
@@ -0,0 +1,316 @@
+package test.java.com.moneytransfer.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import main.java.com.moneytransfer.exception.AccountNotFoundException;
+import main.java.com.moneytransfer.exception.InsufficientBalanceException;
+import main.java.com.moneytransfer.exception.InvalidReceiverException;
+import main.java.com.moneytransfer.exception.UnsupportedCurrencyException;
+import main.java.com.moneytransfer.fx.ExchangeRates;
+import main.java.com.moneytransfer.journal.Journal;
+import main.java.com.moneytransfer.ledger.Ledger;
+import main.java.com.moneytransfer.model.Amount;
+import main.java.com.moneytransfer.model.BatchMode;
+import main.java.com.moneytransfer.model.Money;
+import main.java.com.moneytransfer.model.Posting;
+import main.java.com.moneytransfer.model.TransferRequest;
+import main.java.com.moneytransfer.model.TransferResult;
+import main.java.com.moneytransfer.repository.ShardedAccountRepository;
+import main.java.com.moneytransfer.service.AccountLocks;
+import main.java.com.moneytransfer.service.AccountService;
+import main.java.com.moneytransfer.service.ShardedTransferEngine;
+
+public class ShardedTransferEngineTest {
+
+	private ShardedAccountRepository accountRepository;
+	private AccountService accountService;
+	private ShardedTransferEngine engine;
+	private ExecutorService completionExecutor;
+
+	@Before
+	public void setUp() {
+
+		accountRepository = new ShardedAccountRepository(4, 0);
+		accountService = new AccountService(accountRepository, new AccountLocks(), Journal.disabled(), new ExchangeRates(),
+				new Ledger());
+		completionExecutor = Executors.newFixedThreadPool(2);
+		// a small queue, so that producers have to wait for the shards
+		engine = new ShardedTransferEngine(accountService, accountRepository, 8, completionExecutor);
+	}
+
+	@After
+	public void tearDown() {
+		engine.close();
+		completionExecutor.shutdown();
+	}
+
+	@Test
+	public void transfer_SameShard_BalancesUpdated() throws Exception {
+
+		long senderId = createAccount("1000", "GBP");
+		for (int i = 1; i < accountRepository.shardCount(); i++) {
+			createAccount("0", "GBP");
+		}
+		long receiverId = createAccount("500", "EUR");
+		assertEquals(accountRepository.shardOf(senderId), accountRepository.shardOf(receiverId));
+
+		assertNull(transfer(senderId, receiverId, "100", "GBP"));
+
+		// 100 GBP == 115 EUR
+		assertEquals(new BigDecimal("900.00"), accountService.searchAccount(senderId).getAmount().getValue());
+		assertEquals(new BigDecimal("615.00"), accountService.searchAccount(receiverId).getAmount().getValue());
+
+	}
+
+	@Test
+	public void transfer_OtherShard_DebitedAndCredited() throws Exception {
+
+		long senderId = createAccount("1000", "GBP");
+		long receiverId = createAccount("500", "EUR");
+		assertTrue(accountRepository.shardOf(senderId) != accountRepository.shardOf(receiverId));
+
+		assertNull(transfer(senderId, receiverId, "100", "GBP"));
+
+		assertEquals(new BigDecimal("900.00"), accountService.searchAccount(senderId).getAmount().getValue());
+		assertEquals(new BigDecimal("615.00"), accountService.searchAccount(receiverId).getAmount().getValue());
+
+	}
+
+	@Test
+	public void transfer_InvalidInputs_SameErrorsAsTransferAmount() throws Exception {
+
+		long senderId = createAccount("100", "GBP");
+		long receiverId = createAccount("100", "GBP");
+
+		assertTrue(transfer(senderId, senderId, "10", "GBP") instanceof InvalidReceiverException);
+		assertTrue(transfer(senderId, 5000001L, "10", "GBP") instanceof AccountNotFoundException);
+		assertTrue(transfer(senderId, receiverId, "10", "CAD") instanceof UnsupportedCurrencyException);
+		assertTrue(transfer(senderId, receiverId, "100.01", "GBP") instanceof InsufficientBalanceException);
+
+		assertEquals(new BigDecimal("100.00"), accountService.searchAccount(senderId).getAmount().getValue());
+		assertEquals(new BigDecimal("100.00"), accountService.searchAccount(receiverId).getAmount().getValue());
+
+	}
+
+	@Test
+	public void transfer_CreditOverflows_DebitRefunded() throws Exception {
+
+		long senderId = createAccount("100", "GBP");
+		long receiverId = accountService.createAccount(new Amount(Long.MAX_VALUE - 10, "GBP")).getId();
+
+		assertTrue(transfer(senderId, receiverId, "1", "GBP") instanceof ArithmeticException);
+
+		assertEquals(new BigDecimal("100.00"), accountService.searchAccount(senderId).getAmount().getValue());
+		assertEquals(Long.MAX_VALUE - 10, accountService.searchAccount(receiverId).getAmount().getUnits());
+
+	}
+
+	@Test
+	public void transfer_OtherShard_BothLegsInHistory() throws Exception {
+
+		long senderId = createAccount("1000", "GBP");
+		long receiverId = createAccount("500", "EUR");
+
+		assertNull(transfer(senderId, receiverId, "100", "GBP"));
+
+		Posting debit = accountService.searchTransactions(senderId, Long.MAX_VALUE, 10).get(0);
+		Posting credit = accountService.searchTransactions(receiverId, Long.MAX_VALUE, 10).get(0);
+		assertEquals(Posting.Kind.DEBIT, debit.getKind());
+		assertEquals(-10000, debit.getUnits());
+		assertEquals(Money.RATE_SCALE, debit.getRate());
+		assertEquals(Posting.Kind.CREDIT, credit.getKind());
+		assertEquals(11500, credit.getUnits());
+		assertEquals(61500, credit.getBalance());
+		assertEquals(1150000, credit.getRate());
+
+	}
+
+	@Test
+	public void transfer_CreditOverflows_RefundInHistory() throws Exception {
+
+		long senderId = createAccount("100", "GBP");
+		long receiverId = accountService.createAccount(new Amount(Long.MAX_VALUE - 10, "GBP")).getId();
+
+		assertTrue(transfer(senderId, receiverId, "1", "GBP") instanceof ArithmeticException);
+
+		List<Posting> postings = accountService.searchTransactions(senderId, Long.MAX_VALUE, 10);
+		assertEquals(3, postings.size());
+		assertEquals(Posting.Kind.REFUND, postings.get(0).getKind());
+		assertEquals(100, postings.get(0).getUnits());
+		assertEquals(10000, postings.get(0).getBalance());
+		assertEquals(Posting.Kind.DEBIT, postings.get(1).getKind());
+		assertEquals(1, accountService.searchTransactions(receiverId, Long.MAX_VALUE, 10).size());
+
+	}
+
+	@Test
+	public void transferBatch_AllOrNothing_ResultsCompleted() throws Exception {
+
+		long firstId = createAccount("100", "GBP");
+		long secondId = createAccount("100", "GBP");
+
+		List<TransferRequest> transfers = Arrays.asList(
+				new TransferRequest(firstId, secondId, 5000, "GBP"),
+				new TransferRequest(firstId, secondId, 6000, "GBP"));
+
+		CompletableFuture<List<TransferResult>> future = new CompletableFuture<>();
+		engine.transferBatch(transfers, BatchMode.ALL_OR_NOTHING, (results, error) -> future.complete(results));
+		List<TransferResult> results = future.get(10, TimeUnit.SECONDS);
+
+		assertEquals(2, results.size());
+		assertEquals(TransferResult.NOT_APPLIED, results.get(0).getReason());
+		assertEquals(new BigDecimal("100.00"), accountService.searchAccount(firstId).getAmount().getValue());
+
+	}
+
+	@Test
+	public void transfer_ConcurrentProducersAndBatches_EveryCallbackCompletedAndTotalKept() throws Exception {
+
+		int accountCount = 16;
+		int producers = 4;
+		int transfersPerProducer = 20000;
+
+		long firstId = createAccount("1000", "GBP");
+		for (int i = 1; i < accountCount; i++) {
+			createAccount("1000", "GBP");
+		}
+
+		CountDownLatch completed = new CountDownLatch(producers * transfersPerProducer);
+		AtomicLong failed = new AtomicLong();
+		ExecutorService executor = Executors.newFixedThreadPool(producers + 1);
+		for (int p = 0; p < producers; p++) {
+			executor.submit(() -> {
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				for (int i = 0; i < transfersPerProducer; i++) {
+					long senderId = firstId + random.nextInt(accountCount);
+					long receiverId = firstId + random.nextInt(accountCount);
+					engine.transfer(senderId, receiverId, new Amount(1 + random.nextInt(10000), "GBP"), error -> {
+						if (error != null && !(error instanceof InsufficientBalanceException
+								|| error instanceof InvalidReceiverException)) {
+							failed.incrementAndGet();
+						}
+						completed.countDown();
+					});
+				}
+			});
+		}
+		// batches pause the shards in between
+		executor.submit(() -> {
+			for (int i = 0; i < 100; i++) {
+				CompletableFuture<List<TransferResult>> future = new CompletableFuture<>();
+				engine.transferBatch(Arrays.asList(new TransferRequest(firstId, firstId + 1, 1, "GBP")),
+						BatchMode.BEST_EFFORT, (results, error) -> future.complete(results));
+				future.get(10, TimeUnit.SECONDS);
+			}
+			return null;
+		}).get(30, TimeUnit.SECONDS);
+
+		assertTrue(completed.await(30, TimeUnit.SECONDS));
+		executor.shutdown();
+		assertEquals(0, failed.get());
+
+		long total = 0;
+		for (int i = 0; i < accountCount; i++) {
+			total += accountService.searchAccount(firstId + i).getAmount().getUnits();
+		}
+		assertEquals(accountCount * 100000L, total);
+
+	}
+
+	@Test
+	public void transfer_CompletionExecutorRejects_CompletedOnShardThread() throws Exception {
+
+		long senderId = createAccount("1000", "GBP");
+		long receiverId = createAccount("1000", "GBP");
+
+		// a shut down pool rejects every completion
+		completionExecutor.shutdown();
+		assertNull(transfer(senderId, receiverId, "100", "GBP"));
+		// the shards are still running
+		assertNull(transfer(senderId, receiverId, "100", "GBP"));
+		CompletableFuture<List<TransferResult>> future = new CompletableFuture<>();
+		engine.transferBatch(Arrays.asList(new TransferRequest(senderId, receiverId, 10000, "GBP")), BatchMode.BEST_EFFORT,
+				(results, error) -> future.complete(results));
+		assertTrue(future.get(10, TimeUnit.SECONDS).get(0).isSuccess());
+
+		assertEquals(new BigDecimal("700.00"), accountService.searchAccount(senderId).getAmount().getValue());
+
+	}
+
+	@Test
+	public void transfer_ClosedWhileProducing_EveryAcceptedTransferCompleted() throws Exception {
+
+		long senderId = createAccount("1000", "GBP");
+		long receiverId = createAccount("1000", "GBP");
+
+		for (int round = 0; round < 30; round++) {
+			ShardedTransferEngine closing = new ShardedTransferEngine(accountService, accountRepository, 8, completionExecutor);
+			AtomicLong accepted = new AtomicLong();
+			AtomicLong completed = new AtomicLong();
+			ExecutorService executor = Executors.newFixedThreadPool(2);
+			executor.submit(() -> {
+				try {
+					while (true) {
+						closing.transfer(senderId, receiverId, new Amount(1, "GBP"), error -> completed.incrementAndGet());
+						accepted.incrementAndGet();
+					}
+				} catch (IllegalStateException e) {
+					// closed
+				}
+			});
+			// a batch must not wait for shards that have stopped
+			executor.submit(() -> {
+				try {
+					while (true) {
+						closing.transferBatch(Arrays.asList(new TransferRequest(receiverId, senderId, 1, "GBP")),
+								BatchMode.BEST_EFFORT, (results, error) -> completed.incrementAndGet());
+						accepted.incrementAndGet();
+					}
+				} catch (IllegalStateException e) {
+					// closed
+				}
+			});
+			Thread.sleep(1);
+			closing.close();
+			executor.shutdown();
+			assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+			// a transfer is either rejected or completed, never left in an inbox
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+			while (completed.get() != accepted.get() && System.nanoTime() < deadline) {
+				Thread.sleep(1);
+			}
+			assertEquals(accepted.get(), completed.get());
+		}
+
+	}
+
+	private long createAccount(String value, String currency) throws UnsupportedCurrencyException {
+		return accountService.createAccount(new Amount(new BigDecimal(value), currency)).getId();
+	}
+
+	private Exception transfer(long senderId, long receiverId, String value, String currency) throws Exception {
+
+		CompletableFuture<Exception> future = new CompletableFuture<>();
+		engine.transfer(senderId, receiverId, new Amount(new BigDecimal(value), currency), future::complete);
+		return future.get(10, TimeUnit.SECONDS);
+	}
+
+}